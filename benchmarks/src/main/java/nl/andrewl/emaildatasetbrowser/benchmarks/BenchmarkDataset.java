@@ -0,0 +1,87 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.TagRepository;
+import nl.andrewl.email_indexer.gen.EmailDatasetGenerator;
+import nl.andrewl.email_indexer.util.DbUtils;
+import nl.andrewl.email_indexer.util.Status;
+import nl.andrewl.emaildatasetbrowser.gen.SyntheticMboxGenerator;
+import nl.andrewl.emaildatasetbrowser.gen.SyntheticMboxParameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The dataset that the benchmarks run against.
+ * <p>
+ *     By default, a synthetic dataset with the requested number of emails is
+ *     generated from mbox files written by a {@link SyntheticMboxGenerator},
+ *     and is then kept in the <code>edb.fixtures</code> directory
+ *     (<code>target/fixtures</code> by default) so that later runs can reuse
+ *     it. The contents only depend on
+ *     the email count, so results are comparable between releases. About 5%
+ *     of all emails are hidden, and the first few tags are each added to a
+ *     different fraction of the emails. To run the benchmarks on a real
+ *     dataset instead, set the <code>edb.dataset</code> system property to
+ *     its directory.
+ * </p>
+ */
+final class BenchmarkDataset {
+	static final int TAG_COUNT = 5;
+	private static final String COMPLETE_MARKER = ".complete";
+
+	private BenchmarkDataset() {}
+
+	/**
+	 * Opens the dataset to benchmark, generating it first if needed.
+	 * @param emailCount The number of emails in the synthetic dataset.
+	 * @return The open dataset.
+	 */
+	static EmailDataset open(int emailCount) throws IOException {
+		String existing = System.getProperty("edb.dataset");
+		Path dir = existing != null ? Path.of(existing) : prepare(emailCount);
+		return EmailDataset.open(dir).join();
+	}
+
+	private static Path prepare(int emailCount) throws IOException {
+		Path fixtureDir = Path.of(System.getProperty("edb.fixtures", "target/fixtures")).resolve("synthetic-" + emailCount);
+		Path datasetDir = fixtureDir.resolve("dataset");
+		if (Files.exists(fixtureDir.resolve(COMPLETE_MARKER))) return datasetDir;
+
+		deleteRecursively(fixtureDir);
+		Path mboxDir = fixtureDir.resolve("mbox");
+		Files.createDirectories(datasetDir);
+		new SyntheticMboxGenerator(new SyntheticMboxParameters().withEmailCount(emailCount)).generate(mboxDir, System.out::println);
+		new EmailDatasetGenerator(new Status().withMessageConsumer(System.out::println))
+				.generate(List.of(mboxDir), datasetDir)
+				.join();
+
+		EmailDataset ds = EmailDataset.open(datasetDir).join();
+		try {
+			var c = ds.getConnection();
+			var tagRepo = new TagRepository(ds);
+			for (int i = 0; i < TAG_COUNT; i++) {
+				int tagId = tagRepo.createTag("bench-" + i, "Added to every " + (i + 3) + "th email.");
+				DbUtils.update(c, "INSERT INTO EMAIL_TAG (EMAIL_ID, TAG_ID) SELECT ID, ? FROM EMAIL WHERE MOD(ID, ?) = 0", tagId, i + 3);
+			}
+			DbUtils.update(c, "UPDATE EMAIL SET HIDDEN = TRUE WHERE MOD(ID, 20) = 1");
+		} finally {
+			ds.close().join();
+		}
+		Files.createFile(fixtureDir.resolve(COMPLETE_MARKER));
+		return datasetDir;
+	}
+
+	static void deleteRecursively(Path dir) throws IOException {
+		if (Files.notExists(dir)) return;
+		try (Stream<Path> paths = Files.walk(dir)) {
+			for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+}
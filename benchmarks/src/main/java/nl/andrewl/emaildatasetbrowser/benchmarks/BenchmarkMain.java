@@ -0,0 +1,55 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.emaildatasetbrowser.EdbApp;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Entry point of the benchmarks JAR. It accepts the same arguments as JMH's
+ * own main class, but unless another result file or format is given, the
+ * results are written as JSON to
+ * <code>results/&lt;label&gt;-&lt;timestamp&gt;.json</code>, so that runs of
+ * different releases can be compared. The label is taken from the
+ * <code>edb.label</code> system property, and defaults to the version of the
+ * browser that's being benchmarked.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListWithParams() ||
+				cmdOptions.shouldListProfilers() || cmdOptions.shouldListResultFormats()) {
+			Main.main(args);
+			return;
+		}
+
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+		if (!cmdOptions.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+		if (!cmdOptions.getResult().hasValue()) {
+			String extension = cmdOptions.getResultFormat().orElse(ResultFormatType.JSON).name().toLowerCase();
+			String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+			Path resultFile = Path.of("results", getLabel() + "-" + timestamp + "." + extension);
+			Files.createDirectories(resultFile.getParent());
+			builder.result(resultFile.toString());
+			System.out.println("Writing results to " + resultFile.toAbsolutePath());
+		}
+		new Runner(builder.build()).run();
+	}
+
+	private static String getLabel() {
+		String label = System.getProperty("edb.label");
+		if (label != null) return label;
+		String version = EdbApp.class.getPackage().getImplementationVersion();
+		return version == null ? "dev" : version;
+	}
+}
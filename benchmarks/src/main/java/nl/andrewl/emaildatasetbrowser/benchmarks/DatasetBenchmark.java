@@ -0,0 +1,64 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Base class for benchmarks that run against a {@link BenchmarkDataset}. The
+ * dataset is opened once per trial, and closed when the trial is done.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class DatasetBenchmark {
+	@Param({"10000"})
+	public int emailCount;
+
+	protected EmailDataset ds;
+
+	@Setup(Level.Trial)
+	public void openDataset() throws IOException {
+		ds = BenchmarkDataset.open(emailCount);
+		prepare();
+	}
+
+	/**
+	 * Prepares anything that the benchmark needs, once the dataset is open.
+	 */
+	protected void prepare() throws IOException {}
+
+	/**
+	 * Waits for something that's prepared in the background, like an index,
+	 * so that every run measures the same path.
+	 * @param name The name of what's waited for, for the error message.
+	 * @param ready Tells whether it's ready.
+	 * @throws IOException If it's not ready within a few minutes, or if the
+	 * wait was interrupted.
+	 */
+	protected static void await(String name, BooleanSupplier ready) throws IOException {
+		long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+		while (!ready.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) throw new IOException("The " + name + " wasn't ready in time.");
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the " + name + ".", e);
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void closeDataset() {
+		EmailIndex.release(ds);
+		ds.close().join();
+	}
+}
@@ -0,0 +1,83 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.email_indexer.data.search.EmailSearcher;
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+import nl.andrewl.email_indexer.data.search.filter.HiddenFilter;
+import nl.andrewl.email_indexer.data.search.filter.RootFilter;
+import nl.andrewl.email_indexer.data.search.filter.TagFilter;
+import nl.andrewl.email_indexer.data.TagRepository;
+import nl.andrewl.emaildatasetbrowser.data.KeysetEmailSearcher;
+import nl.andrewl.emaildatasetbrowser.data.TagIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Measures paging through emails with the browse panel's filters, using the
+ * offset-based {@link EmailSearcher#findAll(int, int, List)} as well as the
+ * browser's {@link KeysetEmailSearcher}, at the first and the last page. The
+ * last page is fetched by the keyset searcher both with a cursor, and by
+ * jumping to its offset. Each trial waits for the dataset's {@link TagIndex}
+ * to be built, so that every run measures the same path.
+ */
+public class EmailSearcherBenchmark extends DatasetBenchmark {
+	@Param({"none", "roots", "visible-roots", "tagged"})
+	public String filter;
+
+	@Param({"20"})
+	public int pageSize;
+
+	private List<SearchFilter> filters;
+	private int lastPage;
+	private KeysetEmailSearcher.Cursor lastPageCursor;
+
+	@Override
+	protected void prepare() throws IOException {
+		// Pages are found with the database until the tag index is built.
+		await("tag index", TagIndex.of(ds)::isReady);
+		filters = switch (filter) {
+			case "none" -> List.of();
+			case "roots" -> List.of(new RootFilter(true));
+			case "visible-roots" -> List.of(new RootFilter(true), new HiddenFilter(false));
+			case "tagged" -> {
+				var tagIds = new TagRepository(ds).findAll().stream().map(tag -> tag.id()).limit(2).toList();
+				yield List.of(new TagFilter(tagIds, TagFilter.Type.INCLUDE_ANY));
+			}
+			default -> throw new IllegalArgumentException("Unknown filter: " + filter);
+		};
+		lastPage = new EmailSearcher(ds).findAll(1, pageSize, filters).join().pageCount();
+		long lastPageOffset = (long) (lastPage - 1) * pageSize;
+		if (lastPageOffset > 0) {
+			var emails = new KeysetEmailSearcher(ds).findPageAtOffset(lastPageOffset - 1, 1, filters).join().emails();
+			lastPageCursor = emails.isEmpty() ? null : KeysetEmailSearcher.Cursor.after(emails.get(0));
+		} else {
+			lastPageCursor = null;
+		}
+	}
+
+	@Benchmark
+	public Object findAllFirstPage() {
+		return new EmailSearcher(ds).findAll(1, pageSize, filters).join();
+	}
+
+	@Benchmark
+	public Object findAllLastPage() {
+		return new EmailSearcher(ds).findAll(lastPage, pageSize, filters).join();
+	}
+
+	@Benchmark
+	public Object keysetFirstPage() {
+		return new KeysetEmailSearcher(ds).findPage(null, pageSize, filters).join();
+	}
+
+	@Benchmark
+	public Object keysetLastPage() {
+		return new KeysetEmailSearcher(ds).findPage(lastPageCursor, pageSize, filters).join();
+	}
+
+	@Benchmark
+	public Object keysetOffsetLastPage() {
+		return new KeysetEmailSearcher(ds).findPageAtOffset((long) (lastPage - 1) * pageSize, pageSize, filters).join();
+	}
+}
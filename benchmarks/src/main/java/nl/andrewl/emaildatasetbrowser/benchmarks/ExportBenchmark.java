@@ -0,0 +1,78 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.email_indexer.data.search.filter.HiddenFilter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportSample;
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ExportEngine;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat.Compression;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat.Field;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporters.FilterListExporter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.ArrowExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.CsvExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.JsonLinesExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.PdfExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.TxtExportType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures exporting the visible emails with each {@link ExportType}, and with
+ * several at once, in the same way as the export dialog does. Since a single
+ * export can take a while, each one is timed separately. Arrow needs access to
+ * direct buffers, so the forked JVM opens them.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.nio=ALL-UNNAMED")
+public class ExportBenchmark extends DatasetBenchmark {
+	@Param({"pdf", "txt", "csv", "txt-thread", "csv-thread", "arrow", "jsonl", "jsonl-gzip", "jsonl-zstd", "csv-thread,txt-thread"})
+	public String type;
+
+	@Param({"500"})
+	public int maxResults;
+
+	@Param({"false", "true"})
+	public boolean separateThreads;
+
+	private List<ExportType> exportTypes;
+	private Path outputDir;
+	private int exportCount = 0;
+
+	@Override
+	protected void prepare() throws IOException {
+		exportTypes = Arrays.stream(type.split(",")).<ExportType>map(name -> switch (name) {
+			case "pdf" -> new PdfExportType();
+			case "txt" -> new TxtExportType();
+			case "csv" -> new CsvExportType();
+			case "txt-thread" -> new TxtExportType(true);
+			case "csv-thread" -> new CsvExportType(true);
+			case "arrow" -> new ArrowExportType();
+			case "jsonl" -> new JsonLinesExportType();
+			case "jsonl-gzip" -> new JsonLinesExportType(EnumSet.allOf(Field.class), true, Compression.GZIP);
+			case "jsonl-zstd" -> new JsonLinesExportType(EnumSet.allOf(Field.class), true, Compression.ZSTD);
+			default -> throw new IllegalArgumentException("Unknown export type: " + name);
+		}).toList();
+		outputDir = Files.createTempDirectory("edb-export-benchmark");
+	}
+
+	@Benchmark
+	public void export() {
+		ExportSample sample = new FilterListExporter(List.of(new HiddenFilter(false)));
+		Path output = outputDir.resolve("export-" + exportCount++ + "." + type.split(",")[0]);
+		new ExportEngine(ds, sample, exportTypes, maxResults, separateThreads, message -> {}).export(output).join();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteExports() throws IOException {
+		BenchmarkDataset.deleteRecursively(outputDir);
+	}
+}
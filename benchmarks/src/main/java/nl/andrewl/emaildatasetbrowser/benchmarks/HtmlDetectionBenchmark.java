@@ -0,0 +1,119 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.emaildatasetbrowser.util.HTMLHelper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the original regular expression used to detect HTML email bodies
+ * with the single-pass sniffer in {@link HTMLHelper#isHtml(String)}.
+ * <p>
+ *     By default, a corpus of typical bodies is generated: plain text replies
+ *     full of quoted <code>&lt;user@host&gt;</code> addresses, which is the
+ *     worst case for the regex, as well as actual HTML bodies. To run it on
+ *     real bodies instead, set the <code>edb.bodies</code> system property to
+ *     a directory of files that each contain one email body.
+ * </p>
+ * <p>
+ *     Before measuring, the setup checks that both give the same answer for
+ *     every body, and for a few inputs where they once disagreed.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlDetectionBenchmark {
+	/**
+	 * Inputs on which the sniffer and the regex once disagreed.
+	 */
+	private static final List<String> REGRESSIONS = List.of(
+			// An end tag within the attribute value of the only start tag.
+			"x<x a=</a>",
+			"<a b=\"</c>\">"
+	);
+
+	@Param({"plain", "html", "mixed"})
+	public String corpus;
+
+	@Param({"50"})
+	public int quotedLines;
+
+	private List<String> bodies;
+
+	@Setup
+	public void setup() throws IOException {
+		String dir = System.getProperty("edb.bodies");
+		if (dir != null) {
+			bodies = readBodies(Path.of(dir));
+		} else {
+			bodies = switch (corpus) {
+				case "plain" -> List.of(plainBody(quotedLines));
+				case "html" -> List.of(htmlBody(quotedLines));
+				default -> List.of(plainBody(quotedLines), htmlBody(quotedLines), plainBody(quotedLines * 10));
+			};
+		}
+		List<String> checked = new ArrayList<>(bodies);
+		checked.addAll(REGRESSIONS);
+		for (var body : checked) {
+			if (HTMLHelper.isHtml(body) != HTMLHelper.htmlPattern.matcher(body).find()) {
+				String start = body.length() > 80 ? body.substring(0, 80) + "..." : body;
+				throw new IllegalStateException("The sniffer and the regex disagree on: " + start);
+			}
+		}
+	}
+
+	@Benchmark
+	public void regex(Blackhole bh) {
+		for (var body : bodies) bh.consume(HTMLHelper.htmlPattern.matcher(body).find());
+	}
+
+	@Benchmark
+	public void sniffer(Blackhole bh) {
+		for (var body : bodies) bh.consume(HTMLHelper.isHtml(body));
+	}
+
+	private static List<String> readBodies(Path dir) throws IOException {
+		List<String> bodies = new ArrayList<>();
+		try (Stream<Path> files = Files.list(dir)) {
+			for (var file : files.filter(Files::isRegularFile).toList()) {
+				bodies.add(Files.readString(file, StandardCharsets.UTF_8));
+			}
+		}
+		return bodies;
+	}
+
+	/**
+	 * Generates a plain-text reply, which quotes a number of earlier messages
+	 * by their author's address.
+	 */
+	static String plainBody(int quotedLines) {
+		StringBuilder sb = new StringBuilder("Hi all,\n\nI think we should go ahead with the proposal.\n\n");
+		for (int i = 0; i < quotedLines; i++) {
+			sb.append("On Mon, 3 Jan 2022 at 10:").append(i % 60).append(", Developer ").append(i)
+					.append(" <dev").append(i).append("@lists.example.org> wrote:\n");
+			sb.append("> ".repeat(1 + i % 4)).append("The cache size should be < 64 MB, and x > y holds.\n");
+		}
+		return sb.append("\n-- \nRegards, <someone@example.org>\n").toString();
+	}
+
+	static String htmlBody(int paragraphs) {
+		StringBuilder sb = new StringBuilder("<html><head><meta charset=\"utf-8\"></head><body>");
+		for (int i = 0; i < paragraphs; i++) {
+			sb.append("<p class=\"quote\" data-level='").append(i % 4).append("'>On Monday, dev").append(i)
+					.append("&#64;lists.example.org wrote:<br/>The cache size should be &lt; 64 MB.</p>\n");
+		}
+		return sb.append("</body></html>").toString();
+	}
+}
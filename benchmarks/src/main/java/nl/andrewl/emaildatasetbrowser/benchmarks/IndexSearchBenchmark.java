@@ -0,0 +1,37 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.email_indexer.data.search.EmailIndexSearcher;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Measures Lucene searches through {@link EmailIndexSearcher} and through the
+ * browser's own {@link EmailIndex}, with a single term, a boolean query and a
+ * phrase query.
+ */
+public class IndexSearchBenchmark extends DatasetBenchmark {
+	@Param({"cache", "release AND vote", "\"thread pool\""})
+	public String query;
+
+	@Param({"100"})
+	public int maxResults;
+
+	@Override
+	protected void prepare() throws IOException {
+		EmailIndex index = EmailIndex.of(ds);
+		await("search index", index::isReady);
+	}
+
+	@Benchmark
+	public List<Long> searchAsync() {
+		return new EmailIndexSearcher().searchAsync(ds, query, maxResults).join();
+	}
+
+	@Benchmark
+	public List<Long> emailIndex() {
+		return EmailIndex.of(ds).search(query, maxResults).join();
+	}
+}
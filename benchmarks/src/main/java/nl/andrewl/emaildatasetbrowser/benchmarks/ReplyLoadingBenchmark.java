@@ -0,0 +1,56 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.email_indexer.data.search.EmailSearcher;
+import nl.andrewl.email_indexer.data.search.filter.RootFilter;
+import nl.andrewl.emaildatasetbrowser.data.BulkEmailRepository;
+import nl.andrewl.emaildatasetbrowser.view.search.EmailTreeNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures loading the replies of a page of thread roots into
+ * {@link EmailTreeNode}s, as the search results tree does when they become
+ * visible: once with a query per node, and once with the bulk query that the
+ * tree uses now.
+ */
+public class ReplyLoadingBenchmark extends DatasetBenchmark {
+	@Param({"20"})
+	public int pageSize;
+
+	private List<EmailEntryPreview> roots;
+
+	@Override
+	protected void prepare() {
+		roots = new EmailSearcher(ds).findAll(1, pageSize, List.of(new RootFilter(true))).join().emails();
+	}
+
+	@Benchmark
+	public List<EmailTreeNode> perNode() {
+		var repo = new EmailRepository(ds);
+		List<EmailTreeNode> nodes = new ArrayList<>(roots.size());
+		for (var root : roots) {
+			var node = new EmailTreeNode(root);
+			node.setReplies(repo.findAllReplies(root.id()));
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	@Benchmark
+	public List<EmailTreeNode> bulk() {
+		Map<Long, List<EmailEntryPreview>> replies = new BulkEmailRepository(ds)
+				.findRepliesByParentIds(roots.stream().map(EmailEntryPreview::id).toList());
+		List<EmailTreeNode> nodes = new ArrayList<>(roots.size());
+		for (var root : roots) {
+			var node = new EmailTreeNode(root);
+			node.setReplies(replies.getOrDefault(root.id(), List.of()));
+			nodes.add(node);
+		}
+		return nodes;
+	}
+}
@@ -0,0 +1,59 @@
+package nl.andrewl.emaildatasetbrowser.benchmarks;
+
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.email_indexer.data.TagRepository;
+import nl.andrewl.email_indexer.data.search.EmailSearcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+
+/**
+ * Measures the tag lookups that are done whenever an email is shown: its own
+ * tags, the tags inherited from its thread, and the list of all tags with
+ * their email counts. Each invocation looks up the next email of a fixed
+ * sample, so that the database's own caching doesn't dominate.
+ */
+public class TagRepositoryBenchmark extends DatasetBenchmark {
+	@Param({"200"})
+	public int sampleSize;
+
+	private long[] emailIds;
+	private int next = 0;
+
+	@Override
+	protected void prepare() {
+		List<EmailEntryPreview> sample = new EmailSearcher(ds).findAll(1, sampleSize, List.of()).join().emails();
+		emailIds = sample.stream().mapToLong(EmailEntryPreview::id).toArray();
+	}
+
+	private long nextEmailId() {
+		long id = emailIds[next];
+		next = (next + 1) % emailIds.length;
+		return id;
+	}
+
+	@Benchmark
+	public Object getTags() {
+		return new TagRepository(ds).getTags(nextEmailId());
+	}
+
+	@Benchmark
+	public Object getAllParentTags() {
+		return new TagRepository(ds).getAllParentTags(nextEmailId());
+	}
+
+	@Benchmark
+	public Object getAllChildTags() {
+		return new TagRepository(ds).getAllChildTags(nextEmailId());
+	}
+
+	@Benchmark
+	public long findAllAndCount() {
+		var repo = new TagRepository(ds);
+		long total = 0;
+		for (var tag : repo.findAll()) {
+			total += repo.countTaggedEmails(tag.id());
+		}
+		return total;
+	}
+}
@@ -1,16 +1,21 @@
 package nl.andrewl.emaildatasetbrowser;
 
 import com.formdev.flatlaf.FlatDarkLaf;
-import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.cli.EdbCli;
+import nl.andrewl.emaildatasetbrowser.data.ZipDatasetCache;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
  * The application entry point.
  */
 public class EdbApp {
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals(EdbCli.CLI_ARG)) {
+			System.exit(EdbCli.run(Arrays.asList(args).subList(1, args.length)));
+		}
 		FlatDarkLaf.setup();
 		var browser = new EmailDatasetBrowser();
 		if (args.length > 0) {
@@ -26,7 +31,7 @@ public class EdbApp {
 			System.err.println(path + " doesn't exist.");
 			System.exit(1);
 		}
-		EmailDataset.open(path)
+		ZipDatasetCache.open(path, System.out::println)
 				.exceptionally(throwable -> {
 					throwable.printStackTrace();
 					System.exit(1);
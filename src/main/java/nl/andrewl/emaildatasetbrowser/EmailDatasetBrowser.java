@@ -4,6 +4,10 @@ import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.emaildatasetbrowser.control.*;
 import nl.andrewl.emaildatasetbrowser.control.email.*;
 import nl.andrewl.emaildatasetbrowser.control.tag.ManageTagsAction;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
+import nl.andrewl.emaildatasetbrowser.data.TagIndex;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
 import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 import nl.andrewl.emaildatasetbrowser.view.search.LuceneSearchPanel;
@@ -80,6 +84,12 @@ public class EmailDatasetBrowser extends JFrame {
 		}
 		return cf.thenAccept(unused -> {
 			this.currentDataset = ds;
+			// Start building the tag index right away, so it's ready by the time it's needed.
+			if (ds != null) {
+				TagIndex.of(ds);
+				// Opens the search index in the background, and warms it up with the user's recent searches.
+				EmailIndex.of(ds).warmUp(LuceneSearchPanel.getRecentQueries());
+			}
 			browsePanel.setDataset(ds);
 			searchPanel.setDataset(ds);
 			emailViewPanel.setDataset(ds);
@@ -104,6 +114,7 @@ public class EmailDatasetBrowser extends JFrame {
 		fileMenu.add(new JMenuItem(new DatasetOpenAction(this)));
 		fileMenu.add(new JMenuItem(new UpgradeDatasetAction(this)));
 		fileMenu.add(new JMenuItem(new GenerateDatasetAction(this)));
+		fileMenu.add(new JMenuItem(new AppendDatasetAction(this)));
 		fileMenu.add(new JMenuItem(new RegenerateIndexesAction(this)));
 		fileMenu.add(new JMenuItem(new ExportDatasetAction(this)));
 		fileMenu.add(new JMenuItem(new CloseDatasetAction(this)));
@@ -120,6 +131,7 @@ public class EmailDatasetBrowser extends JFrame {
 
 		JMenu viewMenu = new JMenu("View");
 		viewMenu.add(new JMenuItem(new ViewSelectionAction(this)));
+		viewMenu.add(new JMenuItem(new CacheStatsAction(this)));
 		menuBar.add(viewMenu);
 
 		JMenu tagMenu = new JMenu("Tag");
@@ -141,6 +153,8 @@ public class EmailDatasetBrowser extends JFrame {
 		);
 		dialog.appendF("Closing the currently open dataset at %s", currentDataset.getOpenDir());
 		dialog.activate();
+		// The index writes to the dataset's directory, so it must be closed first.
+		EmailIndex.release(currentDataset);
 		return currentDataset.close().handle((unused, throwable) -> {
 			if (throwable != null) {
 				throwable.printStackTrace();
@@ -154,6 +168,10 @@ public class EmailDatasetBrowser extends JFrame {
 				dialog.append("Dataset closed successfully.");
 			}
 			dialog.done();
+			// The services below keep a reference to the dataset, so we discard them here.
+			TagIndex.release(currentDataset);
+			EmailCache.release(currentDataset);
+			DatasetEventBus.release(currentDataset);
 			currentDataset = null;
 			return null;
 		});
@@ -19,7 +19,8 @@ public class EmailListItemRenderer extends JLabel implements ListCellRenderer<Em
 			setBackground(list.getBackground());
 			setForeground(list.getForeground());
 		}
-		setText(value.subject());
+		// Rows of a lazily loaded list may not have been fetched yet.
+		setText(value != null ? value.subject() : "Loading...");
 		return this;
 	}
 }
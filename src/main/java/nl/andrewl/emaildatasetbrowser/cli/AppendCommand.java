@@ -0,0 +1,38 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.util.Status;
+import nl.andrewl.emaildatasetbrowser.gen.DatasetAppender;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Command that appends the emails from new mbox files to the dataset.
+ */
+public class AppendCommand implements CliCommand {
+	@Override
+	public String getName() {
+		return "append";
+	}
+
+	@Override
+	public String getUsage() {
+		return "append <mbox-dir> [mbox-dir...]";
+	}
+
+	@Override
+	public void run(EmailDataset ds, CommandArgs args, Consumer<String> out) {
+		List<Path> dirs = args.positional().stream().map(Path::of).toList();
+		if (dirs.isEmpty()) throw new IllegalArgumentException("Missing argument: mbox-dir");
+		for (var dir : dirs) {
+			if (!Files.isDirectory(dir)) throw new IllegalArgumentException(dir + " is not a directory.");
+		}
+		var result = new DatasetAppender(new Status().withMessageConsumer(out)).append(ds, dirs).join();
+		out.accept("Appended %d emails; skipped %d duplicate emails and %d known mbox files.".formatted(
+				result.insertedCount(), result.duplicateCount(), result.skippedFileCount()
+		));
+	}
+}
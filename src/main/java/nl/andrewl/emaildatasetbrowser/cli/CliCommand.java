@@ -0,0 +1,51 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A single subcommand of the command-line interface, which performs one job
+ * on an open dataset.
+ */
+public interface CliCommand {
+	/**
+	 * @return The name that's used to invoke this command.
+	 */
+	String getName();
+
+	/**
+	 * @return A short description of the arguments that this command takes.
+	 */
+	String getUsage();
+
+	/**
+	 * @return The names of all options that don't take a value.
+	 */
+	default Set<String> getFlags() {
+		return Set.of();
+	}
+
+	/**
+	 * Prepares this command's dataset before it's opened, for commands that
+	 * create or change a dataset on disk. This is called for all commands one
+	 * at a time, in order, before any of them are run.
+	 * @param datasetPath The path of the dataset, which may not exist yet.
+	 * @param args The command's arguments.
+	 * @param out A consumer for progress and result messages.
+	 * @throws Exception If preparing fails.
+	 */
+	default void prepare(Path datasetPath, CommandArgs args, Consumer<String> out) throws Exception {}
+
+	/**
+	 * Runs this command. This blocks until the command is done, and may be
+	 * called concurrently with other commands on the same dataset.
+	 * @param ds The dataset to run the command on.
+	 * @param args The command's arguments.
+	 * @param out A consumer for progress and result messages.
+	 * @throws Exception If the command fails.
+	 */
+	void run(EmailDataset ds, CommandArgs args, Consumer<String> out) throws Exception;
+}
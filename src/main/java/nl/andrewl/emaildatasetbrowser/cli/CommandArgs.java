@@ -0,0 +1,68 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import java.util.*;
+
+/**
+ * The parsed arguments of a single command, consisting of positional
+ * arguments and <code>--name value</code> options.
+ */
+public class CommandArgs {
+	private final List<String> positional = new ArrayList<>();
+	private final Map<String, String> options = new HashMap<>();
+
+	/**
+	 * Parses a command's arguments.
+	 * @param tokens The raw arguments.
+	 * @param flags The names of options that don't take a value.
+	 * @return The parsed arguments.
+	 * @throws IllegalArgumentException If an option is missing its value.
+	 */
+	public static CommandArgs parse(List<String> tokens, Set<String> flags) {
+		CommandArgs args = new CommandArgs();
+		for (int i = 0; i < tokens.size(); i++) {
+			String token = tokens.get(i);
+			if (token.startsWith("--") && token.length() > 2) {
+				String name = token.substring(2);
+				if (flags.contains(name)) {
+					args.options.put(name, "true");
+				} else if (i + 1 < tokens.size()) {
+					args.options.put(name, tokens.get(++i));
+				} else {
+					throw new IllegalArgumentException("Missing value for option --" + name);
+				}
+			} else {
+				args.positional.add(token);
+			}
+		}
+		return args;
+	}
+
+	public String positional(int index, String name) {
+		if (index >= positional.size()) throw new IllegalArgumentException("Missing argument: " + name);
+		return positional.get(index);
+	}
+
+	public List<String> positional() {
+		return Collections.unmodifiableList(positional);
+	}
+
+	public Optional<String> option(String name) {
+		return Optional.ofNullable(options.get(name));
+	}
+
+	public int intOption(String name, int defaultValue) {
+		return option(name).map(Integer::parseInt).orElse(defaultValue);
+	}
+
+	public long longOption(String name, long defaultValue) {
+		return option(name).map(Long::parseLong).orElse(defaultValue);
+	}
+
+	public double doubleOption(String name, double defaultValue) {
+		return option(name).map(Double::parseDouble).orElse(defaultValue);
+	}
+
+	public boolean flag(String name) {
+		return options.containsKey(name);
+	}
+}
@@ -0,0 +1,173 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
+import nl.andrewl.emaildatasetbrowser.data.TagIndex;
+import nl.andrewl.emaildatasetbrowser.data.ZipDatasetCache;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A headless command-line interface, which runs one or more commands on a
+ * dataset without opening the browser's window. It's invoked like this:
+ * <pre>
+ *     --cli &lt;dataset&gt; &lt;command&gt; [args...] [-- &lt;command&gt; [args...]]...
+ * </pre>
+ * All commands that are separated by <code>--</code> are run concurrently on
+ * the same open dataset, and each line of output is prefixed with the job
+ * that produced it. Before the dataset is opened, each command may first
+ * prepare it, which is how a dataset can be generated and then used.
+ */
+public class EdbCli {
+	public static final String CLI_ARG = "--cli";
+	private static final String JOB_SEPARATOR = "--";
+
+	private static final Map<String, CliCommand> COMMANDS = Stream.of(
+			new OpenCommand(),
+			new SearchCommand(),
+			new ExportCommand(),
+			new HideBySqlCommand(),
+			new AppendCommand(),
+			new RegenerateIndexCommand(),
+			new StatsCommand(),
+			new GenerateSyntheticCommand()
+	).collect(Collectors.toMap(CliCommand::getName, Function.identity(), (a, b) -> a, LinkedHashMap::new));
+
+	private record Job(int number, CliCommand command, CommandArgs args) {
+		String label() {
+			return "[%d:%s]".formatted(number, command.getName());
+		}
+	}
+
+	/**
+	 * Runs the command-line interface.
+	 * @param args The arguments that come after {@link #CLI_ARG}.
+	 * @return The exit code; 0 if all jobs succeeded, or 1 otherwise.
+	 */
+	public static int run(List<String> args) {
+		if (args.size() < 2) {
+			printUsage(System.err);
+			return 1;
+		}
+		Path datasetPath = Path.of(args.get(0).trim());
+		List<Job> jobs;
+		try {
+			jobs = parseJobs(args.subList(1, args.size()));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage(System.err);
+			return 1;
+		}
+		for (var job : jobs) {
+			String label = job.label();
+			try {
+				job.command().prepare(datasetPath, job.args(), message -> print(System.out, label + " " + message));
+			} catch (Exception e) {
+				print(System.err, label + " Failed: " + causeOf(e).getMessage());
+				return 1;
+			}
+		}
+		if (Files.notExists(datasetPath)) {
+			System.err.println(datasetPath + " doesn't exist.");
+			return 1;
+		}
+
+		EmailDataset ds;
+		try {
+			ds = ZipDatasetCache.open(datasetPath, System.err::println).join();
+		} catch (Exception e) {
+			System.err.println("Could not open dataset: " + e.getMessage());
+			return 1;
+		}
+
+		boolean success = true;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs.size(), Runtime.getRuntime().availableProcessors())));
+		try {
+			List<CompletableFuture<Boolean>> results = jobs.stream()
+					.map(job -> CompletableFuture.supplyAsync(() -> runJob(ds, job), executor))
+					.toList();
+			for (var result : results) {
+				success &= result.join();
+			}
+		} finally {
+			executor.shutdown();
+			EmailIndex.release(ds);
+			TagIndex.release(ds);
+			EmailCache.release(ds);
+			DatasetEventBus.release(ds);
+			try {
+				ds.close().join();
+			} catch (CompletionException e) {
+				System.err.println("Could not close dataset: " + e.getCause().getMessage());
+				success = false;
+			}
+		}
+		return success ? 0 : 1;
+	}
+
+	private static boolean runJob(EmailDataset ds, Job job) {
+		String label = job.label();
+		try {
+			job.command().run(ds, job.args(), message -> print(System.out, label + " " + message));
+			print(System.out, label + " Done.");
+			return true;
+		} catch (Exception e) {
+			print(System.err, label + " Failed: " + causeOf(e).getMessage());
+			return false;
+		}
+	}
+
+	private static Throwable causeOf(Exception e) {
+		return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+	}
+
+	private static List<Job> parseJobs(List<String> args) {
+		List<List<String>> groups = new ArrayList<>();
+		List<String> current = new ArrayList<>();
+		for (var arg : args) {
+			if (arg.equals(JOB_SEPARATOR)) {
+				groups.add(current);
+				current = new ArrayList<>();
+			} else {
+				current.add(arg);
+			}
+		}
+		groups.add(current);
+
+		List<Job> jobs = new ArrayList<>(groups.size());
+		for (var group : groups) {
+			if (group.isEmpty()) throw new IllegalArgumentException("Missing command.");
+			CliCommand command = COMMANDS.get(group.get(0));
+			if (command == null) throw new IllegalArgumentException("Unknown command: " + group.get(0));
+			CommandArgs commandArgs = CommandArgs.parse(group.subList(1, group.size()), command.getFlags());
+			jobs.add(new Job(jobs.size() + 1, command, commandArgs));
+		}
+		return jobs;
+	}
+
+	private static void print(PrintStream stream, String message) {
+		synchronized (EdbCli.class) {
+			stream.println(message);
+		}
+	}
+
+	private static void printUsage(PrintStream stream) {
+		stream.println("Usage: " + CLI_ARG + " <dataset> <command> [args...] [" + JOB_SEPARATOR + " <command> [args...]]...");
+		stream.println("Commands:");
+		for (var command : COMMANDS.values()) {
+			stream.println("  " + command.getUsage());
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+import nl.andrewl.email_indexer.data.search.filter.HiddenFilter;
+import nl.andrewl.email_indexer.data.search.filter.RootFilter;
+import nl.andrewl.email_indexer.data.search.filter.TagFilter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportSample;
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ExportEngine;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat.Compression;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat.Field;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporters.FilterListExporter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporters.QueryStringExporter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.ArrowExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.CsvExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.JsonLinesExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.PdfExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.TxtExportType;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Command that exports a sample of emails, using the same exporters as the
+ * browser's export dialog. The sample is either the result of a Lucene query,
+ * or all emails that match a set of filters. Several comma-separated types
+ * can be exported at once. JSON Lines files are configured with their own
+ * options, and CSV and text files are written in the thread layout when the
+ * --thread-layout flag is given.
+ */
+public class ExportCommand implements CliCommand {
+	private static final Map<String, Function<CommandArgs, ExportType>> EXPORT_TYPES = Map.of(
+			"pdf", args -> new PdfExportType(),
+			"txt", args -> new TxtExportType(args.flag("thread-layout")),
+			"csv", args -> new CsvExportType(args.flag("thread-layout")),
+			"arrow", args -> new ArrowExportType(),
+			"jsonl", ExportCommand::parseJsonLinesType
+	);
+
+	@Override
+	public String getName() {
+		return "export";
+	}
+
+	@Override
+	public String getUsage() {
+		return "export <pdf|txt|csv|arrow|jsonl>[,...] <output-path> [--query <query>] [--hidden <true|false>] [--root <true|false>] " +
+				"[--tags <id,...>] [--exclude-tags <id,...>] [--max <count>] [--separate-threads] [--thread-layout] " +
+				"[--jsonl-per <thread|email>] [--jsonl-compression <none|gzip|zstd>] [--jsonl-fields <field,...>]";
+	}
+
+	@Override
+	public Set<String> getFlags() {
+		return Set.of("separate-threads", "thread-layout");
+	}
+
+	@Override
+	public void run(EmailDataset ds, CommandArgs args, Consumer<String> out) {
+		Map<String, ExportType> typesByName = new LinkedHashMap<>();
+		for (String typeName : args.positional(0, "type").split(",")) {
+			String name = typeName.trim().toLowerCase();
+			var factory = EXPORT_TYPES.get(name);
+			if (factory == null) throw new IllegalArgumentException("Unknown export type: " + typeName);
+			if (!typesByName.containsKey(name)) typesByName.put(name, factory.apply(args));
+		}
+		List<ExportType> types = new ArrayList<>(typesByName.values());
+		Path outputPath = Path.of(args.positional(1, "output-path"));
+
+		ExportSample sample = args.option("query")
+				.<ExportSample>map(QueryStringExporter::new)
+				.orElseGet(() -> new FilterListExporter(parseFilters(args)));
+		ExportEngine engine = new ExportEngine(
+				ds,
+				sample,
+				types,
+				args.intOption("max", 100),
+				args.flag("separate-threads"),
+				out
+		);
+
+		String typeNames = String.join(", ", types.stream().map(ExportType::getName).toList());
+		out.accept("Generating export with target(s) %s to %s ...".formatted(typeNames, outputPath.toAbsolutePath()));
+		long start = System.currentTimeMillis();
+		engine.export(outputPath).join();
+		out.accept("Export completed in %.1f seconds.".formatted((System.currentTimeMillis() - start) / 1000f));
+	}
+
+	private static ExportType parseJsonLinesType(CommandArgs args) {
+		boolean threadPerLine = switch (args.option("jsonl-per").orElse("thread").toLowerCase()) {
+			case "thread" -> true;
+			case "email" -> false;
+			default -> throw new IllegalArgumentException("--jsonl-per must be thread or email.");
+		};
+		Compression compression = switch (args.option("jsonl-compression").orElse("none").toLowerCase()) {
+			case "none" -> Compression.NONE;
+			case "gzip" -> Compression.GZIP;
+			case "zstd" -> Compression.ZSTD;
+			default -> throw new IllegalArgumentException("--jsonl-compression must be none, gzip or zstd.");
+		};
+		Set<Field> fields = args.option("jsonl-fields")
+				.map(v -> {
+					Set<Field> set = EnumSet.noneOf(Field.class);
+					for (String name : v.split(",")) {
+						if (!name.isBlank()) set.add(Field.ofJsonName(name.trim().toLowerCase()));
+					}
+					return set;
+				})
+				.orElseGet(() -> EnumSet.allOf(Field.class));
+		return new JsonLinesExportType(fields, threadPerLine, compression);
+	}
+
+	private static List<SearchFilter> parseFilters(CommandArgs args) {
+		List<SearchFilter> filters = new ArrayList<>(3);
+		args.option("hidden").ifPresent(v -> filters.add(new HiddenFilter(Boolean.parseBoolean(v))));
+		args.option("root").ifPresent(v -> filters.add(new RootFilter(Boolean.parseBoolean(v))));
+		args.option("tags").ifPresent(v -> filters.add(new TagFilter(parseIds(v), TagFilter.Type.INCLUDE_ANY)));
+		args.option("exclude-tags").ifPresent(v -> filters.add(new TagFilter(parseIds(v), TagFilter.Type.EXCLUDE_ANY)));
+		return filters;
+	}
+
+	private static List<Integer> parseIds(String s) {
+		return Arrays.stream(s.split(","))
+				.map(String::trim)
+				.filter(id -> !id.isEmpty())
+				.map(Integer::parseInt)
+				.toList();
+	}
+}
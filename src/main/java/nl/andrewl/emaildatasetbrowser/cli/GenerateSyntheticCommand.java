@@ -0,0 +1,98 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.email_indexer.gen.EmailDatasetGenerator;
+import nl.andrewl.email_indexer.util.FileUtils;
+import nl.andrewl.email_indexer.util.Status;
+import nl.andrewl.emaildatasetbrowser.gen.ParallelDatasetGenerator;
+import nl.andrewl.emaildatasetbrowser.gen.SyntheticMboxGenerator;
+import nl.andrewl.emaildatasetbrowser.gen.SyntheticMboxParameters;
+import nl.andrewl.emaildatasetbrowser.util.FileHelper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Command that generates a new dataset from synthetic mbox files, for load
+ * and scale testing. The dataset is generated before it's opened, so other
+ * commands can run on it right away, and the time that each step takes is
+ * reported.
+ */
+public class GenerateSyntheticCommand implements CliCommand {
+	@Override
+	public String getName() {
+		return "generate-synthetic";
+	}
+
+	@Override
+	public String getUsage() {
+		return "generate-synthetic [--emails <count>] [--authors <count>] [--mean-thread-size <n>] [--max-depth <n>] " +
+				"[--reply-to-latest <ratio>] [--median-body-words <n>] [--body-spread <n>] [--max-body-words <n>] " +
+				"[--html-ratio <ratio>] [--quote-ratio <ratio>] [--max-quoted-lines <n>] [--emails-per-file <n>] " +
+				"[--seed <n>] [--mbox-dir <path>] [--keep-mbox] [--parallel]";
+	}
+
+	@Override
+	public Set<String> getFlags() {
+		return Set.of("keep-mbox", "parallel");
+	}
+
+	@Override
+	public void prepare(Path datasetPath, CommandArgs args, Consumer<String> out) throws Exception {
+		if (Files.exists(datasetPath) && (!Files.isDirectory(datasetPath) || !FileUtils.isDirEmpty(datasetPath))) {
+			throw new IllegalArgumentException("The dataset directory " + datasetPath + " must be empty.");
+		}
+		SyntheticMboxParameters params = parseParameters(args);
+		Path mboxDir = args.option("mbox-dir")
+				.map(Path::of)
+				.orElseGet(() -> datasetPath.toAbsolutePath().resolveSibling(datasetPath.getFileName() + "-mbox"));
+		boolean keepMbox = args.flag("keep-mbox") || args.option("mbox-dir").isPresent();
+
+		long start = System.currentTimeMillis();
+		new SyntheticMboxGenerator(params).generate(mboxDir, out);
+		report(out, "Wrote mbox files to " + mboxDir, params.getEmailCount(), start);
+
+		start = System.currentTimeMillis();
+		Files.createDirectories(datasetPath);
+		Status status = new Status().withMessageConsumer(out);
+		var future = args.flag("parallel")
+				? new ParallelDatasetGenerator(status).generate(List.of(mboxDir), datasetPath)
+				: new EmailDatasetGenerator(status).generate(List.of(mboxDir), datasetPath);
+		future.join();
+		report(out, "Generated dataset in " + datasetPath, params.getEmailCount(), start);
+
+		if (!keepMbox) FileHelper.deleteRecursively(mboxDir);
+	}
+
+	@Override
+	public void run(EmailDataset ds, CommandArgs args, Consumer<String> out) {
+		out.accept("The dataset contains %d emails.".formatted(new EmailRepository(ds).countEmails()));
+	}
+
+	private static SyntheticMboxParameters parseParameters(CommandArgs args) {
+		var defaults = new SyntheticMboxParameters();
+		return new SyntheticMboxParameters()
+				.withEmailCount(args.longOption("emails", defaults.getEmailCount()))
+				.withAuthorCount(args.intOption("authors", defaults.getAuthorCount()))
+				.withMeanThreadSize(args.doubleOption("mean-thread-size", defaults.getMeanThreadSize()))
+				.withMaxThreadDepth(args.intOption("max-depth", defaults.getMaxThreadDepth()))
+				.withReplyToLatestRatio(args.doubleOption("reply-to-latest", defaults.getReplyToLatestRatio()))
+				.withMedianBodyWords(args.intOption("median-body-words", defaults.getMedianBodyWords()))
+				.withBodySizeSpread(args.doubleOption("body-spread", defaults.getBodySizeSpread()))
+				.withMaxBodyWords(args.intOption("max-body-words", defaults.getMaxBodyWords()))
+				.withHtmlRatio(args.doubleOption("html-ratio", defaults.getHtmlRatio()))
+				.withQuoteRatio(args.doubleOption("quote-ratio", defaults.getQuoteRatio()))
+				.withMaxQuotedLines(args.intOption("max-quoted-lines", defaults.getMaxQuotedLines()))
+				.withEmailsPerFile(args.longOption("emails-per-file", defaults.getEmailsPerFile()))
+				.withSeed(args.longOption("seed", defaults.getSeed()));
+	}
+
+	private static void report(Consumer<String> out, String message, long emailCount, long start) {
+		double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+		out.accept("%s in %.1f seconds (%.0f emails/sec).".formatted(message, seconds, emailCount / seconds));
+	}
+}
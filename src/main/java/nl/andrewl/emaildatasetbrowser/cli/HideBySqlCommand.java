@@ -0,0 +1,31 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.data.HiddenEmailRepository;
+
+import java.util.function.Consumer;
+
+/**
+ * Command that hides all emails matching an SQL clause, just like the
+ * <em>Hide by SQL</em> action.
+ */
+public class HideBySqlCommand implements CliCommand {
+	@Override
+	public String getName() {
+		return "hide-by-sql";
+	}
+
+	@Override
+	public String getUsage() {
+		return "hide-by-sql <where-clause>";
+	}
+
+	@Override
+	public void run(EmailDataset ds, CommandArgs args, Consumer<String> out) {
+		String clause = args.positional(0, "where-clause");
+		if (clause.isBlank()) throw new IllegalArgumentException("SQL clause cannot be empty.");
+		out.accept("Executing: " + HiddenEmailRepository.buildHideQuery(clause));
+		int count = new HiddenEmailRepository(ds).hideBySql(clause);
+		out.accept(count + " emails were hidden by this update.");
+	}
+}
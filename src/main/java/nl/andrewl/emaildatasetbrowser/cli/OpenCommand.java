@@ -0,0 +1,36 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.email_indexer.data.TagRepository;
+
+import java.util.function.Consumer;
+
+/**
+ * Command that shows a summary of the opened dataset, the same as when a
+ * dataset is opened in the browser.
+ */
+public class OpenCommand implements CliCommand {
+	@Override
+	public String getName() {
+		return "open";
+	}
+
+	@Override
+	public String getUsage() {
+		return "open";
+	}
+
+	@Override
+	public void run(EmailDataset ds, CommandArgs args, Consumer<String> out) throws Exception {
+		var repo = new EmailRepository(ds);
+		var tagRepo = new TagRepository(ds);
+		out.accept("Opened dataset from %s (version %d) with %d emails, %d tags, %d tagged emails".formatted(
+				ds.getOpenDir(),
+				ds.getVersion(),
+				repo.countEmails(),
+				tagRepo.countTags(),
+				repo.countTaggedEmails()
+		));
+	}
+}
@@ -0,0 +1,43 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.gen.EmailIndexGenerator;
+import nl.andrewl.email_indexer.util.Status;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Command that regenerates the dataset's Lucene indexes from scratch, which is
+ * only needed to recover from a corrupted index.
+ */
+public class RegenerateIndexCommand implements CliCommand {
+	private static final long REPORT_INTERVAL_MS = 5_000;
+
+	@Override
+	public String getName() {
+		return "regenerate-index";
+	}
+
+	@Override
+	public String getUsage() {
+		return "regenerate-index";
+	}
+
+	@Override
+	public void run(EmailDataset ds, CommandArgs args, Consumer<String> out) throws Exception {
+		out.accept("Starting the process of regenerating indexes.");
+		new EmailIndexGenerator(new Status().withMessageConsumer(out)).generateIndex(ds);
+		out.accept("Rebuilding the browser's search index.");
+		AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+		EmailIndex.of(ds).rebuild(out, progress -> {
+			long now = System.currentTimeMillis();
+			if (now - lastReport.get() >= REPORT_INTERVAL_MS) {
+				lastReport.set(now);
+				out.accept(progress.describe());
+			}
+		}).join();
+		out.accept("Indexes have been regenerated successfully.");
+	}
+}
@@ -0,0 +1,43 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
+
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Command that runs a Lucene query on the dataset's index, and prints the
+ * email threads that match it.
+ */
+public class SearchCommand implements CliCommand {
+	@Override
+	public String getName() {
+		return "search";
+	}
+
+	@Override
+	public String getUsage() {
+		return "search <query> [--max <count>] [--time-limit <seconds>]";
+	}
+
+	@Override
+	public void run(EmailDataset ds, CommandArgs args, Consumer<String> out) {
+		String query = args.positional(0, "query");
+		int max = args.intOption("max", 100);
+		int timeLimit = args.intOption("time-limit", 0);
+		long start = System.currentTimeMillis();
+		Instant deadline = timeLimit > 0 ? Instant.ofEpochMilli(start).plusSeconds(timeLimit) : null;
+		var page = EmailIndex.of(ds).searchPage(query, null, max, deadline).join();
+		var ids = page.rootIds();
+		out.accept("Found %d email threads in %d ms.".formatted(ids.size(), System.currentTimeMillis() - start));
+		if (page.truncated()) {
+			out.accept("The time limit was reached, so the results are incomplete.");
+		}
+		int rank = 1;
+		for (var email : EmailCache.of(ds).getPreviews(ids)) {
+			out.accept("%d. #%d %s | %s | %s".formatted(rank++, email.id(), email.date(), email.sentFrom(), email.subject()));
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package nl.andrewl.emaildatasetbrowser.cli;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.TagRepository;
+import nl.andrewl.email_indexer.util.DbUtils;
+
+import java.util.function.Consumer;
+
+/**
+ * Command that prints statistics about the dataset's emails and tags.
+ */
+public class StatsCommand implements CliCommand {
+	@Override
+	public String getName() {
+		return "stats";
+	}
+
+	@Override
+	public String getUsage() {
+		return "stats";
+	}
+
+	@Override
+	public void run(EmailDataset ds, CommandArgs args, Consumer<String> out) {
+		var c = ds.getConnection();
+		out.accept("Emails:         " + DbUtils.count(c, "SELECT COUNT(ID) FROM EMAIL"));
+		out.accept("Hidden emails:  " + DbUtils.count(c, "SELECT COUNT(ID) FROM EMAIL WHERE HIDDEN = TRUE"));
+		out.accept("Thread roots:   " + DbUtils.count(c, "SELECT COUNT(ID) FROM EMAIL WHERE PARENT_ID IS NULL"));
+		out.accept("Tagged emails:  " + DbUtils.count(c, "SELECT COUNT(DISTINCT EMAIL_ID) FROM EMAIL_TAG"));
+		out.accept("Mutations:      " + DbUtils.count(c, "SELECT COUNT(ID) FROM MUTATION"));
+		var tagRepo = new TagRepository(ds);
+		for (var tag : tagRepo.findAll()) {
+			out.accept("Tag #%d %s: %d emails".formatted(tag.id(), tag.name(), tagRepo.countTaggedEmails(tag.id())));
+		}
+	}
+}
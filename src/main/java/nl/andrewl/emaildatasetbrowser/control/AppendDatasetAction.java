@@ -0,0 +1,78 @@
+package nl.andrewl.emaildatasetbrowser.control;
+
+import nl.andrewl.email_indexer.util.Status;
+import nl.andrewl.emaildatasetbrowser.EmailDatasetBrowser;
+import nl.andrewl.emaildatasetbrowser.gen.DatasetAppender;
+import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Action for adding the emails from new mbox files to the open dataset,
+ * keeping all existing tags and hidden emails.
+ */
+public class AppendDatasetAction extends AbstractAction {
+	private final EmailDatasetBrowser browser;
+
+	public AppendDatasetAction(EmailDatasetBrowser browser) {
+		super("Append to Dataset");
+		this.browser = browser;
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		var ds = browser.getCurrentDataset();
+		if (ds == null) return;
+		JDialog dialog = new JDialog(browser, "Append to Dataset", true);
+		JPanel p = new JPanel(new BorderLayout());
+		var items = GenerateDatasetAction.buildMBoxDirsPanel(browser, dialog);
+		p.add(new JLabel("Emails that are already in the dataset are skipped."), BorderLayout.NORTH);
+		p.add(items.getKey(), BorderLayout.CENTER);
+		JList<Path> mboxDirsList = items.getValue();
+
+		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		JButton cancelButton = new JButton("Cancel");
+		cancelButton.addActionListener(event -> dialog.dispose());
+		JButton appendButton = new JButton("Append");
+		appendButton.addActionListener(event -> {
+			if (mboxDirsList.getModel().getSize() < 1) {
+				JOptionPane.showMessageDialog(
+						dialog,
+						"No MBox directories have been added.",
+						"No MBox Directories",
+						JOptionPane.WARNING_MESSAGE
+				);
+				return;
+			}
+			List<Path> paths = new ArrayList<>();
+			for (int i = 0; i < mboxDirsList.getModel().getSize(); i++) {
+				paths.add(mboxDirsList.getModel().getElementAt(i));
+			}
+			dialog.dispose();
+			ProgressDialog progressDialog = new ProgressDialog(browser, "Appending...", "Appending emails to the dataset.");
+			progressDialog.activate();
+			Status status = new Status().withMessageConsumer(progressDialog);
+			new DatasetAppender(status).append(ds, paths).handle((result, throwable) -> {
+				progressDialog.done();
+				if (throwable != null) {
+					throwable.printStackTrace();
+					progressDialog.accept("An exception occurred: " + throwable.getMessage());
+				}
+				return null;
+			});
+		});
+		buttonPanel.add(appendButton);
+		buttonPanel.add(cancelButton);
+		p.add(buttonPanel, BorderLayout.SOUTH);
+
+		dialog.setContentPane(p);
+		dialog.pack();
+		dialog.setLocationRelativeTo(browser);
+		dialog.setVisible(true);
+	}
+}
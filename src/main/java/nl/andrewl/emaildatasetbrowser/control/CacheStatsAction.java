@@ -0,0 +1,46 @@
+package nl.andrewl.emaildatasetbrowser.control;
+
+import nl.andrewl.emaildatasetbrowser.EmailDatasetBrowser;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+
+/**
+ * Action that shows the usage statistics of the current dataset's cache, which
+ * helps to find out whether its tiers are sized well.
+ */
+public class CacheStatsAction extends AbstractAction {
+	private final EmailDatasetBrowser browser;
+
+	public CacheStatsAction(EmailDatasetBrowser browser) {
+		super("Cache Statistics");
+		this.browser = browser;
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		if (browser.getCurrentDataset() == null) return;
+		StringBuilder sb = new StringBuilder();
+		sb.append("%-12s %8s %12s %12s %10s %10s %10s %8s%n".formatted(
+				"Tier", "Entries", "Weight", "Capacity", "Hits", "Misses", "Evictions", "Hit rate"
+		));
+		for (var stats : EmailCache.of(browser.getCurrentDataset()).getStats()) {
+			sb.append("%-12s %8d %12d %12d %10d %10d %10d %7.1f%%%n".formatted(
+					stats.name(),
+					stats.size(),
+					stats.weight(),
+					stats.capacity(),
+					stats.hits(),
+					stats.misses(),
+					stats.evictions(),
+					stats.hitRate() * 100
+			));
+		}
+		JTextArea textArea = new JTextArea(sb.toString());
+		textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		textArea.setEditable(false);
+		JOptionPane.showMessageDialog(browser, textArea, "Cache Statistics", JOptionPane.PLAIN_MESSAGE);
+	}
+}
@@ -1,9 +1,9 @@
 package nl.andrewl.emaildatasetbrowser.control;
 
-import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.EmailRepository;
 import nl.andrewl.email_indexer.data.TagRepository;
 import nl.andrewl.emaildatasetbrowser.EmailDatasetBrowser;
+import nl.andrewl.emaildatasetbrowser.data.ZipDatasetCache;
 import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
 
 import javax.swing.*;
@@ -42,7 +42,7 @@ public class DatasetOpenAction extends AbstractAction {
 			progress.append("Opening dataset from " + f.getAbsolutePath());
 			Path datasetPath = f.toPath();
 			prefs.put(PREF_OPEN_DIR, datasetPath.getParent().toAbsolutePath().toString());
-			var future = EmailDataset.open(datasetPath);
+			var future = ZipDatasetCache.open(datasetPath, progress);
 			future.handle((dataset, throwable) -> {
 				if (throwable != null) {
 					progress.append("Could not open dataset: " + throwable.getMessage());
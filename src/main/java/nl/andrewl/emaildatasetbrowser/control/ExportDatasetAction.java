@@ -1,7 +1,7 @@
 package nl.andrewl.emaildatasetbrowser.control;
 
-import nl.andrewl.email_indexer.data.export.dataset.ZipExporter;
 import nl.andrewl.emaildatasetbrowser.EmailDatasetBrowser;
+import nl.andrewl.emaildatasetbrowser.data.ParallelZipExporter;
 import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
 
 import javax.swing.*;
@@ -24,6 +24,8 @@ public class ExportDatasetAction extends AbstractAction {
 			String fileName = ds.getOpenDir().getFileName().toString() + ".zip";
 			Path dsPath = parentDir.resolve(fileName);
 			JFileChooser fc = new JFileChooser(dsPath.toFile());
+			JCheckBox storeIndexesCheckBox = new JCheckBox("<html>Store search indexes<br>without compressing<br>(much faster)</html>", true);
+			fc.setAccessory(storeIndexesCheckBox);
 			int result = fc.showSaveDialog(browser);
 			if (result == JFileChooser.APPROVE_OPTION) {
 				if (!fc.getSelectedFile().toPath().getFileName().toString().toLowerCase().endsWith(".zip")) {
@@ -40,7 +42,10 @@ public class ExportDatasetAction extends AbstractAction {
 					progress.append("Exporting dataset to " + file.toAbsolutePath());
 					long start = System.currentTimeMillis();
 					// TODO: Add a choice of exports instead of just zip.
-					new ZipExporter().export(browser.getCurrentDataset(), file)
+					new ParallelZipExporter(storeIndexesCheckBox.isSelected())
+							.export(browser.getCurrentDataset(), file, progress, p -> progress.setProgress(
+									p.bytesRead(), p.totalBytes(), p.describe()
+							))
 							.handle((unused, throwable) -> {
 								if (throwable != null) {
 									progress.append("An error occurred: " + throwable.getMessage());
@@ -4,6 +4,7 @@ import nl.andrewl.email_indexer.gen.EmailDatasetGenerator;
 import nl.andrewl.email_indexer.util.FileUtils;
 import nl.andrewl.email_indexer.util.Status;
 import nl.andrewl.emaildatasetbrowser.EmailDatasetBrowser;
+import nl.andrewl.emaildatasetbrowser.gen.ParallelDatasetGenerator;
 import nl.andrewl.emaildatasetbrowser.view.PathSelectField;
 import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
 
@@ -32,12 +33,16 @@ public class GenerateDatasetAction extends AbstractAction {
 		JPanel inputPanel = new JPanel();
 		inputPanel.setLayout(new BoxLayout(inputPanel, BoxLayout.PAGE_AXIS));
 
-		var items = buildMBoxDirsPanel(dialog);
+		var items = buildMBoxDirsPanel(browser, dialog);
 		inputPanel.add(items.getKey());
 		JList<Path> mboxDirsList = items.getValue();
 
 		PathSelectField datasetDirField = PathSelectField.directorySelectField();
 		inputPanel.add(datasetDirField);
+		JCheckBox parallelCheckBox = new JCheckBox("Parse mbox files in parallel");
+		parallelCheckBox.setToolTipText("Splits the mbox files into parts that are parsed at the same time, and then merges them.");
+		parallelCheckBox.setSelected(Runtime.getRuntime().availableProcessors() > 1);
+		inputPanel.add(parallelCheckBox);
 		p.add(inputPanel, BorderLayout.CENTER);
 
 		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
@@ -55,7 +60,10 @@ public class GenerateDatasetAction extends AbstractAction {
 			ProgressDialog progressDialog = new ProgressDialog(browser, "Generating...", "Generating the dataset.");
 			progressDialog.activate();
 			Status status = new Status().withMessageConsumer(progressDialog);
-			new EmailDatasetGenerator(status).generate(paths, dsDir).handle((unused, throwable) -> {
+			var future = parallelCheckBox.isSelected()
+					? new ParallelDatasetGenerator(status).generate(paths, dsDir)
+					: new EmailDatasetGenerator(status).generate(paths, dsDir);
+			future.handle((unused, throwable) -> {
 				progressDialog.done();
 				if (throwable != null) {
 					throwable.printStackTrace();
@@ -74,7 +82,13 @@ public class GenerateDatasetAction extends AbstractAction {
 		dialog.setVisible(true);
 	}
 
-	private Map.Entry<JPanel, JList<Path>> buildMBoxDirsPanel(JDialog owner) {
+	/**
+	 * Builds a panel for selecting a list of directories with mbox files.
+	 * @param browser The browser that owns the dialog.
+	 * @param owner The dialog that the panel is shown in.
+	 * @return The panel, and the list that contains the selected directories.
+	 */
+	static Map.Entry<JPanel, JList<Path>> buildMBoxDirsPanel(EmailDatasetBrowser browser, JDialog owner) {
 		DefaultListModel<Path> mboxDirsListModel = new DefaultListModel<>();
 		JList<Path> mboxDirsList = new JList<>(mboxDirsListModel);
 		mboxDirsList.setPreferredSize(new Dimension(500, 300));
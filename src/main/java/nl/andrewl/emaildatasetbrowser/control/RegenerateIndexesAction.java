@@ -3,18 +3,26 @@ package nl.andrewl.emaildatasetbrowser.control;
 import nl.andrewl.email_indexer.gen.EmailIndexGenerator;
 import nl.andrewl.email_indexer.util.Status;
 import nl.andrewl.emaildatasetbrowser.EmailDatasetBrowser;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
 import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ForkJoinPool;
 
+/**
+ * Action which rebuilds both the email indexer's index and the browser's
+ * {@link EmailIndex} from scratch. Since the browser's index is updated
+ * incrementally, this is only needed to recover from a corrupted index.
+ */
 public class RegenerateIndexesAction extends AbstractAction {
     private final EmailDatasetBrowser browser;
 
     public RegenerateIndexesAction(EmailDatasetBrowser browser) {
         super("Regenerate Indexes");
+        putValue(SHORT_DESCRIPTION, "Rebuilds the search indexes from scratch, which is only needed if they are corrupted.");
         this.browser = browser;
     }
 
@@ -27,8 +35,12 @@ public class RegenerateIndexesAction extends AbstractAction {
             ForkJoinPool.commonPool().submit(() -> {
                 try {
                     new EmailIndexGenerator(new Status().withMessageConsumer(progress)).generateIndex(ds);
+                    progress.append("Rebuilding the browser's search index.");
+                    EmailIndex.of(ds).rebuild(progress, p -> progress.setProgress(
+                            p.indexedCount(), p.totalCount(), p.describe()
+                    )).join();
                     progress.append("Indexes have been regenerated successfully.");
-                } catch (IOException ex) {
+                } catch (IOException | CompletionException ex) {
                     progress.append("An error occurred: " + ex.getMessage());
                 }
                 progress.done();
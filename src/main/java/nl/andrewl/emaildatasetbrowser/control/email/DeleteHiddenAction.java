@@ -1,6 +1,9 @@
 package nl.andrewl.emaildatasetbrowser.control.email;
 
 import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.index.IndexChangeLog;
 import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 
@@ -28,7 +31,17 @@ public class DeleteHiddenAction extends AbstractAction {
 		if (result == JOptionPane.YES_OPTION) {
 			ProgressDialog progress = ProgressDialog.minimal(emailViewPanel, "Deleting Hidden Emails", "Deleting all hidden emails permanently...");
 			ForkJoinPool.commonPool().submit(() -> {
-				new EmailRepository(emailViewPanel.getCurrentDataset()).deleteAllHidden();
+				var ds = emailViewPanel.getCurrentDataset();
+				// The changes are recorded first, since the deleted emails can't be selected afterwards.
+				var changeLog = new IndexChangeLog(ds);
+				changeLog.recordAll(ds.getConnection(), IndexChangeLog.Kind.DELETED, "HIDDEN = TRUE");
+				changeLog.recordAll(
+						ds.getConnection(),
+						IndexChangeLog.Kind.PARENT,
+						"HIDDEN = FALSE AND PARENT_ID IN (SELECT ID FROM EMAIL WHERE HIDDEN = TRUE)"
+				);
+				new EmailRepository(ds).deleteAllHidden();
+				DatasetEventBus.of(ds).publish(new DatasetEvent.HiddenEmailsDeleted());
 				progress.append("All emails have been deleted.");
 				progress.done();
 			});
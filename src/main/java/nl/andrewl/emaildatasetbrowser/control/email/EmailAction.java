@@ -1,6 +1,7 @@
 package nl.andrewl.emaildatasetbrowser.control.email;
 
 import nl.andrewl.email_indexer.data.EmailEntry;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewListener;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 
@@ -20,5 +21,11 @@ public abstract class EmailAction extends AbstractAction implements EmailViewLis
 		setEnabled(email != null && shouldBeEnabled(email));
 	}
 
+	@Override
+	public void datasetChanged(DatasetEvent event) {
+		// The current email's hidden status might have changed.
+		emailUpdated(emailViewPanel.getEmail());
+	}
+
 	protected abstract boolean shouldBeEnabled(EmailEntry email);
 }
@@ -2,6 +2,9 @@ package nl.andrewl.emaildatasetbrowser.control.email;
 
 import nl.andrewl.email_indexer.data.EmailEntry;
 import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.index.IndexChangeLog;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 
 import java.awt.event.ActionEvent;
@@ -14,7 +17,9 @@ public class HideAction extends EmailAction {
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		new EmailRepository(emailViewPanel.getCurrentDataset()).hideEmail(emailViewPanel.getEmail().id());
-		emailViewPanel.refresh();
+		new IndexChangeLog(emailViewPanel.getCurrentDataset()).record(emailViewPanel.getEmail().id(), IndexChangeLog.Kind.HIDDEN);
+		DatasetEventBus.of(emailViewPanel.getCurrentDataset())
+				.publish(new DatasetEvent.EmailHidden(emailViewPanel.getEmail().id()));
 	}
 
 	@Override
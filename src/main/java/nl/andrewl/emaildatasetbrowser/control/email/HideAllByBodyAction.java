@@ -2,6 +2,9 @@ package nl.andrewl.emaildatasetbrowser.control.email;
 
 import nl.andrewl.email_indexer.data.EmailEntry;
 import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.index.IndexChangeLog;
 import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 
@@ -25,6 +28,9 @@ public class HideAllByBodyAction extends EmailAction {
 		ForkJoinPool.commonPool().submit(() -> {
 			long count = new EmailRepository(emailViewPanel.getCurrentDataset())
 					.hideAllEmailsByBody(emailViewPanel.getEmail().body());
+			// We don't know which emails were hidden, so the index compares itself to the dataset.
+			new IndexChangeLog(emailViewPanel.getCurrentDataset()).recordUnknownChanges();
+			DatasetEventBus.of(emailViewPanel.getCurrentDataset()).publish(new DatasetEvent.EmailsHidden(count));
 			progress.append("Hid %d emails.".formatted(count));
 			progress.done();
 		});
@@ -1,7 +1,7 @@
 package nl.andrewl.emaildatasetbrowser.control.email;
 
-import nl.andrewl.email_indexer.util.DbUtils;
 import nl.andrewl.emaildatasetbrowser.EmailDatasetBrowser;
+import nl.andrewl.emaildatasetbrowser.data.HiddenEmailRepository;
 import nl.andrewl.emaildatasetbrowser.view.SwingUtils;
 
 import javax.swing.*;
@@ -28,21 +28,17 @@ public class HideBySqlAction extends AbstractAction {
 		if (clause == null || clause.isBlank()) {
 			JOptionPane.showMessageDialog(browser, "SQL clause cannot be empty.");
 		} else {
-			long count = DbUtils.count(browser.getCurrentDataset().getConnection(), "SELECT COUNT(ID) FROM EMAIL WHERE HIDDEN = FALSE AND " + clause);
-			String query = "UPDATE EMAIL SET HIDDEN = TRUE WHERE HIDDEN = FALSE AND " + clause;
+			var repo = new HiddenEmailRepository(browser.getCurrentDataset());
+			long count = repo.countHideableBySql(clause);
+			String query = HiddenEmailRepository.buildHideQuery(clause);
 			if (count > 0 && SwingUtils.confirm(browser, "Are you sure you want to execute the following query:\n" + query + "\n" + count + " emails will be hidden.")) {
-				DbUtils.doTransaction(browser.getCurrentDataset().getConnection(), c -> {
-					long mutId = DbUtils.insertWithId(c, "INSERT INTO MUTATION (DESCRIPTION) VALUES (?)", "Hiding all by SQL clause: " + clause);
-					int hiddenCount = DbUtils.update(c, query);
-					DbUtils.update(c, "UPDATE MUTATION SET AFFECTED_EMAIL_COUNT = ? WHERE ID = ?", hiddenCount, mutId);
-					JOptionPane.showMessageDialog(
-							browser,
-							hiddenCount + " emails were hidden by this update.",
-							"Emails Hidden",
-							JOptionPane.INFORMATION_MESSAGE
-					);
-					browser.getEmailViewPanel().refresh();
-				});
+				int hiddenCount = repo.hideBySql(clause);
+				JOptionPane.showMessageDialog(
+						browser,
+						hiddenCount + " emails were hidden by this update.",
+						"Emails Hidden",
+						JOptionPane.INFORMATION_MESSAGE
+				);
 			} else if (count < 1) {
 				JOptionPane.showMessageDialog(
 						browser,
@@ -2,6 +2,9 @@ package nl.andrewl.emaildatasetbrowser.control.email;
 
 import nl.andrewl.email_indexer.data.EmailEntry;
 import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.index.IndexChangeLog;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 
 import java.awt.event.ActionEvent;
@@ -19,6 +22,8 @@ public class ShowAction extends EmailAction {
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		new EmailRepository(emailViewPanel.getCurrentDataset()).showEmail(emailViewPanel.getEmail().id());
-		emailViewPanel.refresh();
+		new IndexChangeLog(emailViewPanel.getCurrentDataset()).record(emailViewPanel.getEmail().id(), IndexChangeLog.Kind.HIDDEN);
+		DatasetEventBus.of(emailViewPanel.getCurrentDataset())
+				.publish(new DatasetEvent.EmailShown(emailViewPanel.getEmail().id()));
 	}
 }
@@ -1,8 +1,10 @@
 package nl.andrewl.emaildatasetbrowser.control.search.export;
 
+import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.export.ExporterParameters;
 import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
 import nl.andrewl.email_indexer.data.export.datasample.sampletype.SampleExporter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.SampleSource;
 
 /**
  * Generic exporter interface for factory objects of different types of
@@ -13,10 +15,12 @@ public interface ExportSample {
      * Called before exporting, allowing export parameters to be updated according
      * to the concrete exporter implementation.
      * 
-     * @param params parameter object with common parameters already set.
+     * @param params     parameter object with common parameters already set.
+     * @param dataset    The dataset that is exported.
+     * @param maxResults The maximum number of emails in the sample.
      * @return updated parameters
      */
-    public ExporterParameters specifyParameters(ExporterParameters params);
+    public ExporterParameters specifyParameters(ExporterParameters params, EmailDataset dataset, int maxResults);
 
     /**
      * Factory method for creating the concrete SampleExporter corresponding with
@@ -27,4 +31,13 @@ public interface ExportSample {
      * @return A newly built concrete sample exporter corresponding with this class.
      */
     public SampleExporter buildSampleExporter(TypeExporter typeExporter, ExporterParameters params);
+
+    /**
+     * Factory method for creating the source of the emails in this sample,
+     * which the export engine reads in batches.
+     * 
+     * @param dataset The dataset that is exported.
+     * @return A new source of the emails in this sample.
+     */
+    public SampleSource buildSampleSource(EmailDataset dataset);
 }
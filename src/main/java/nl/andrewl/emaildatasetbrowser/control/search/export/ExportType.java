@@ -1,11 +1,16 @@
 package nl.andrewl.emaildatasetbrowser.control.search.export;
 
+import java.util.Optional;
+
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ThreadExportFormat;
 
 /**
  * Common interface for factory objects of different export (file) types.
+ * Every type can be exported with a thread format, with a type exporter of
+ * the email indexer, or both.
  */
 public interface ExportType {
     /**
@@ -25,10 +30,22 @@ public interface ExportType {
 
     /**
      * Factory method for building a concrete exporter corresponding with this
-     * export type class.
+     * export type class, if the email indexer has one for it.
+     * 
+     * @return built type exporter, if any.
+     */
+    public default Optional<TypeExporter> buildTypeExporter() {
+        return Optional.empty();
+    }
+
+    /**
+     * The format in which the export engine writes this type a thread at a
+     * time, if it can. Types without one are exported with their type
+     * exporter instead.
      * 
-     * @param params to-be-used export parameters.
-     * @return built query exporter.
+     * @return the thread format of this type, if any.
      */
-    public TypeExporter buildTypeExporter();
+    public default Optional<ThreadExportFormat> getThreadFormat() {
+        return Optional.empty();
+    }
 }
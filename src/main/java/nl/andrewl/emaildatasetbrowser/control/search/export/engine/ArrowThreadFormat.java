@@ -0,0 +1,205 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes threads as an Arrow IPC file, also known as Feather, with a row for
+ * each email and a typed column for each of its fields. The file can be
+ * loaded directly by pandas, polars, DuckDB and Spark, without parsing.
+ * <p>
+ *     Rows are buffered and written in record batches of at most
+ *     {@value #ROWS_PER_BATCH} emails, so memory use doesn't grow with the
+ *     size of the export.
+ * </p>
+ */
+public class ArrowThreadFormat implements ThreadExportFormat {
+    /**
+     * The maximum number of emails in each record batch.
+     */
+    private static final int ROWS_PER_BATCH = 10_000;
+    /**
+     * The maximum number of UTF-8 bytes of all string columns in each record
+     * batch, so that batches of long emails don't get too large.
+     */
+    private static final long MAX_BATCH_TEXT_BYTES = 64 * 1024 * 1024;
+
+    private static final Schema SCHEMA = new Schema(List.of(
+            field("rank", false, new ArrowType.Int(32, true)),
+            field("thread_id", false, new ArrowType.Int(64, true)),
+            field("id", false, new ArrowType.Int(64, true)),
+            field("parent_id", true, new ArrowType.Int(64, true)),
+            field("depth", false, new ArrowType.Int(32, true)),
+            field("message_id", true, ArrowType.Utf8.INSTANCE),
+            field("in_reply_to", true, ArrowType.Utf8.INSTANCE),
+            field("date", true, new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC")),
+            field("sent_from", true, ArrowType.Utf8.INSTANCE),
+            field("subject", true, ArrowType.Utf8.INSTANCE),
+            field("body", true, ArrowType.Utf8.INSTANCE),
+            new Field(
+                    "tags",
+                    new FieldType(false, ArrowType.List.INSTANCE, null),
+                    List.of(field("tag", false, ArrowType.Utf8.INSTANCE))
+            ),
+            field("hidden", false, ArrowType.Bool.INSTANCE)
+    ));
+
+    private static Field field(String name, boolean nullable, ArrowType type) {
+        return new Field(name, new FieldType(nullable, type, null), null);
+    }
+
+    @Override
+    public String getExtension() {
+        return "arrow";
+    }
+
+    @Override
+    public ThreadWriter open(OutputStream out) throws IOException {
+        BufferAllocator allocator = new RootAllocator();
+        VectorSchemaRoot root = VectorSchemaRoot.create(SCHEMA, allocator);
+        ArrowFileWriter fileWriter = new ArrowFileWriter(root, null, Channels.newChannel(out));
+        try {
+            fileWriter.start();
+        } catch (IOException | RuntimeException e) {
+            fileWriter.close();
+            root.close();
+            allocator.close();
+            throw e;
+        }
+        return new ThreadWriter() {
+            private final List<ExportEmail> emails = new ArrayList<>(ROWS_PER_BATCH);
+            private final List<ExportThread> threads = new ArrayList<>(ROWS_PER_BATCH);
+            private long textBytes = 0;
+
+            @Override
+            public void write(ExportThread thread) throws IOException {
+                for (var email : thread.emails()) {
+                    emails.add(email);
+                    threads.add(thread);
+                    textBytes += textBytes(email);
+                    if (emails.size() >= ROWS_PER_BATCH || textBytes >= MAX_BATCH_TEXT_BYTES) flush();
+                }
+            }
+
+            private void flush() throws IOException {
+                if (emails.isEmpty()) return;
+                root.allocateNew();
+                var rank = (IntVector) root.getVector("rank");
+                var threadId = (BigIntVector) root.getVector("thread_id");
+                var id = (BigIntVector) root.getVector("id");
+                var parentId = (BigIntVector) root.getVector("parent_id");
+                var depth = (IntVector) root.getVector("depth");
+                var messageId = (VarCharVector) root.getVector("message_id");
+                var inReplyTo = (VarCharVector) root.getVector("in_reply_to");
+                var date = (TimeStampMilliTZVector) root.getVector("date");
+                var sentFrom = (VarCharVector) root.getVector("sent_from");
+                var subject = (VarCharVector) root.getVector("subject");
+                var body = (VarCharVector) root.getVector("body");
+                var tags = (ListVector) root.getVector("tags");
+                var tagNames = (VarCharVector) tags.getDataVector();
+                var hidden = (BitVector) root.getVector("hidden");
+                for (int i = 0; i < emails.size(); i++) {
+                    ExportEmail email = emails.get(i);
+                    ExportThread thread = threads.get(i);
+                    rank.setSafe(i, thread.rank());
+                    threadId.setSafe(i, thread.rootId());
+                    id.setSafe(i, email.id());
+                    if (email.parentId() != null) {
+                        parentId.setSafe(i, email.parentId());
+                    } else {
+                        parentId.setNull(i);
+                    }
+                    depth.setSafe(i, email.depth());
+                    setString(messageId, i, email.messageId());
+                    setString(inReplyTo, i, email.inReplyTo());
+                    if (email.date() != null) {
+                        date.setSafe(i, email.date().toInstant().toEpochMilli());
+                    } else {
+                        date.setNull(i);
+                    }
+                    setString(sentFrom, i, email.sentFrom());
+                    setString(subject, i, email.subject());
+                    setString(body, i, email.body());
+                    int offset = tags.startNewValue(i);
+                    for (int j = 0; j < email.tags().size(); j++) {
+                        tagNames.setSafe(offset + j, email.tags().get(j).getBytes(StandardCharsets.UTF_8));
+                    }
+                    tags.endValue(i, email.tags().size());
+                    hidden.setSafe(i, email.hidden() ? 1 : 0);
+                }
+                root.setRowCount(emails.size());
+                fileWriter.writeBatch();
+                emails.clear();
+                threads.clear();
+                textBytes = 0;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    flush();
+                    fileWriter.end();
+                } finally {
+                    fileWriter.close();
+                    root.close();
+                    allocator.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Counts the bytes that the email's strings take up in the batch.
+     */
+    private static long textBytes(ExportEmail email) {
+        long bytes = utf8Length(email.messageId()) + utf8Length(email.inReplyTo()) + utf8Length(email.sentFrom()) +
+                utf8Length(email.subject()) + utf8Length(email.body());
+        for (var tag : email.tags()) bytes += utf8Length(tag);
+        return bytes;
+    }
+
+    /**
+     * Counts the bytes of a string in UTF-8, without encoding it.
+     */
+    private static long utf8Length(String s) {
+        if (s == null) return 0;
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void setString(VarCharVector vector, int index, String value) {
+        if (value == null) {
+            vector.setNull(index);
+        } else {
+            vector.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes threads as CSV, with a row for each email.
+ */
+public class CsvThreadFormat implements ThreadExportFormat {
+    private static final String[] HEADERS = {
+            "rank", "thread_root_id", "id", "parent_id", "depth", "message_id", "in_reply_to",
+            "date", "sent_from", "subject", "tags", "hidden", "body"
+    };
+
+    @Override
+    public String getExtension() {
+        return "csv";
+    }
+
+    @Override
+    public ThreadWriter open(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeRow(writer, (Object[]) HEADERS);
+        return new ThreadWriter() {
+            @Override
+            public void write(ExportThread thread) throws IOException {
+                for (var email : thread.emails()) {
+                    writeRow(
+                            writer,
+                            thread.rank(),
+                            thread.rootId(),
+                            email.id(),
+                            email.parentId(),
+                            email.depth(),
+                            email.messageId(),
+                            email.inReplyTo(),
+                            email.date(),
+                            email.sentFrom(),
+                            email.subject(),
+                            String.join(";", email.tags()),
+                            email.hidden(),
+                            email.body()
+                    );
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    private static void writeRow(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) writer.write(',');
+            if (values[i] != null) writer.write(escape(values[i].toString()));
+        }
+        writer.write('\n');
+    }
+
+    private static String escape(String value) {
+        boolean needsQuotes = value.indexOf(',') >= 0
+                || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0
+                || value.indexOf('\r') >= 0;
+        if (!needsQuotes) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,48 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A search filter that selects emails by their ids. It lets the email
+ * indexer's exporters export a sample that was read from a
+ * {@link SampleSource}, such as the results of the browser's own search
+ * index, instead of searching for it themselves.
+ */
+public class EmailIdFilter implements SearchFilter {
+    private final String whereClause;
+
+    /**
+     * @param ids The ids of the emails to select.
+     */
+    public EmailIdFilter(List<Long> ids) {
+        this.whereClause = ids.isEmpty()
+                ? "FALSE"
+                : ids.stream().map(String::valueOf).collect(Collectors.joining(", ", "ID IN (", ")"));
+    }
+
+    /**
+     * Reads a sample from a source, and selects its emails.
+     *
+     * @param source     The source to read.
+     * @param maxResults The maximum number of emails to read.
+     * @return A filter that selects the emails of the sample.
+     */
+    public static EmailIdFilter of(SampleSource source, int maxResults) {
+        List<Long> ids = new ArrayList<>();
+        while (ids.size() < maxResults) {
+            List<Long> batch = source.nextBatch(Math.min(1000, maxResults - ids.size()));
+            if (batch.isEmpty()) break;
+            ids.addAll(batch);
+        }
+        return new EmailIdFilter(ids);
+    }
+
+    @Override
+    public String getWhereClause() {
+        return whereClause;
+    }
+}
@@ -0,0 +1,36 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * A single email of an exported thread, with everything that's written for
+ * it.
+ *
+ * @param id        The email's id.
+ * @param parentId  The id of the email that this one replies to, or null.
+ * @param messageId The email's message id.
+ * @param subject   The email's subject.
+ * @param inReplyTo The message id that this email replies to, or null.
+ * @param sentFrom  The email's sender.
+ * @param date      The date at which the email was sent, or null.
+ * @param body      The email's body.
+ * @param hidden    Whether the email is hidden.
+ * @param tags      The names of the email's tags, ordered by name.
+ * @param depth     The number of replies between the root of the exported
+ *                  thread and this email, which is 0 for the root itself.
+ */
+public record ExportEmail(
+        long id,
+        Long parentId,
+        String messageId,
+        String subject,
+        String inReplyTo,
+        String sentFrom,
+        ZonedDateTime date,
+        String body,
+        boolean hidden,
+        List<String> tags,
+        int depth
+) {
+}
@@ -0,0 +1,276 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.export.ExporterParameters;
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportSample;
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Exports a sample of emails, with all of their replies, in one or more
+ * formats at once.
+ * <p>
+ *     The sample is read in batches of threads, each of which is handed to
+ *     a pool of writer threads while the next batch is read. Only a few
+ *     batches are ever in memory at once, so memory use doesn't grow with
+ *     the size of the sample. A batch only holds the ids of its threads'
+ *     emails, which each format reads a few at a time while it writes them,
+ *     so memory use doesn't grow with the size of the largest threads
+ *     either. Every format is written from the same batches, so the threads
+ *     are only searched once for all of them. When threads are
+ *     written to a single file, each format's file is written by one task at
+ *     a time, in order, while different formats are written in parallel.
+ *     When threads are written to separate files, all of those files are
+ *     written in parallel.
+ * </p>
+ * <p>
+ *     Formats that can't be written a thread at a time, like PDF, and CSV
+ *     and text files in the email indexer's layout, are still exported with
+ *     the email indexer's exporters, alongside the others.
+ *     Samples that are found with the browser's search index are handed to
+ *     them as an {@link EmailIdFilter}, so they contain the same emails.
+ * </p>
+ */
+public class ExportEngine {
+    /**
+     * The number of threads that are read at once.
+     */
+    private static final int BATCH_SIZE = 100;
+    /**
+     * The number of batches that may be read but not yet written. Reading
+     * waits for the writers when this is reached.
+     */
+    private static final int MAX_BATCHES_IN_FLIGHT = 4;
+    private static final int PROGRESS_INTERVAL_BATCHES = 10;
+
+    private final EmailDataset dataset;
+    private final ExportSample sample;
+    private final List<ExportType> types;
+    private final int maxResults;
+    private final boolean separateThreads;
+    private final Consumer<String> messages;
+
+    /**
+     * A file that threads are written to in order, by one task at a time.
+     */
+    private static final class ThreadFile {
+        private final ThreadWriter writer;
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        private ThreadFile(ThreadWriter writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Writes a batch of threads once all previous batches are written.
+         */
+        private CompletableFuture<Void> append(List<ExportThread> threads, Executor executor) {
+            tail = tail.thenRunAsync(() -> {
+                try {
+                    for (var thread : threads) writer.write(thread);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+            return tail;
+        }
+    }
+
+    /**
+     * @param dataset         The dataset to export from.
+     * @param sample          The sample to export.
+     * @param types           The formats to export in.
+     * @param maxResults      The maximum number of threads to export.
+     * @param separateThreads Whether each thread is written to its own file.
+     * @param messages        Receives messages about the progress of the
+     *                        export.
+     */
+    public ExportEngine(
+            EmailDataset dataset,
+            ExportSample sample,
+            List<ExportType> types,
+            int maxResults,
+            boolean separateThreads,
+            Consumer<String> messages
+    ) {
+        if (types.isEmpty()) throw new IllegalArgumentException("At least one export type is required.");
+        for (var type : types) {
+            if (type.getThreadFormat().isEmpty() && type.buildTypeExporter().isEmpty()) {
+                throw new IllegalArgumentException(type.getName() + " can't be exported.");
+            }
+        }
+        this.dataset = dataset;
+        this.sample = sample;
+        this.types = types;
+        this.maxResults = maxResults;
+        this.separateThreads = separateThreads;
+        this.messages = messages;
+    }
+
+    /**
+     * Starts the export. Cancelling the returned future stops reading the
+     * sample, and the files that were written until then are kept.
+     *
+     * @param outputPath The directory to write to if threads are separated,
+     *                   or the file to write to otherwise. If there are
+     *                   several types, each one's file gets the type's
+     *                   extension instead.
+     * @return A future that completes when all files were written.
+     */
+    public CompletableFuture<Void> export(Path outputPath) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> {
+            try {
+                run(outputPath, future::isDone);
+                future.complete(null);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void run(Path outputPath, BooleanSupplier cancelled) throws IOException, InterruptedException {
+        if (separateThreads) Files.createDirectories(outputPath);
+        List<ThreadExportFormat> formats = new ArrayList<>();
+        List<CompletableFuture<Void>> libraryExports = new ArrayList<>();
+        for (var type : types) {
+            var format = type.getThreadFormat();
+            if (format.isPresent()) {
+                formats.add(format.get());
+            } else {
+                // Checked when the engine was created.
+                var typeExporter = type.buildTypeExporter().orElseThrow();
+                ExporterParameters params = new ExporterParameters()
+                        .withMaxResultCount(maxResults)
+                        .withSeparateMailingThreads(separateThreads);
+                params = sample.specifyParameters(params, dataset, maxResults);
+                libraryExports.add(sample.buildSampleExporter(typeExporter, params)
+                        .export(dataset, getOutputPath(outputPath, type.getFileNameExtentionFilter().getExtensions()[0])));
+            }
+        }
+        if (!formats.isEmpty()) stream(outputPath, formats, cancelled);
+        for (var export : libraryExports) {
+            try {
+                export.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException ioException) throw ioException;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads the sample in batches, and writes each batch in all formats.
+     */
+    private void stream(Path outputPath, List<ThreadExportFormat> formats, BooleanSupplier cancelled) throws IOException, InterruptedException {
+        final long start = System.currentTimeMillis();
+        ExecutorService writers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "export-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(MAX_BATCHES_IN_FLIGHT);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<ThreadFile> files = new ArrayList<>();
+        int threadCount = 0;
+        long emailCount = 0;
+        try {
+            if (!separateThreads) {
+                for (var format : formats) {
+                    Path file = getOutputPath(outputPath, format.getExtension());
+                    files.add(new ThreadFile(format.open(Files.newOutputStream(file))));
+                }
+            }
+            SampleSource source = sample.buildSampleSource(dataset);
+            ThreadLoader loader = new ThreadLoader(dataset);
+            int batchCount = 0;
+            int rank = 1;
+            while (rank <= maxResults && failure.get() == null) {
+                if (cancelled.getAsBoolean()) throw new CancellationException("The export was cancelled.");
+                inFlight.acquire();
+                List<Long> ids = source.nextBatch(Math.min(BATCH_SIZE, maxResults - rank + 1));
+                if (ids.isEmpty()) {
+                    inFlight.release();
+                    break;
+                }
+                List<ExportThread> threads = loader.load(ids, rank);
+                rank += ids.size();
+                threadCount += threads.size();
+                for (var thread : threads) emailCount += thread.size();
+
+                List<CompletableFuture<Void>> writes = new ArrayList<>();
+                if (separateThreads) {
+                    for (var thread : threads) {
+                        for (var format : formats) {
+                            writes.add(CompletableFuture.runAsync(() -> writeThreadFile(outputPath, format, thread), writers));
+                        }
+                    }
+                } else {
+                    for (var file : files) writes.add(file.append(threads, writers));
+                }
+                CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).whenComplete((v, e) -> {
+                    if (e != null) failure.compareAndSet(null, e instanceof CompletionException ? e.getCause() : e);
+                    inFlight.release();
+                });
+                if (++batchCount % PROGRESS_INTERVAL_BATCHES == 0) {
+                    messages.accept("Read %d threads with %d emails.".formatted(threadCount, emailCount));
+                }
+            }
+        } finally {
+            // Waits for every write that was started, so that no file is closed while it's being written.
+            writers.shutdown();
+            if (!writers.awaitTermination(1, TimeUnit.HOURS)) {
+                failure.compareAndSet(null, new IOException("Timed out while writing the export."));
+            }
+            for (var file : files) {
+                try {
+                    file.writer.close();
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }
+        Throwable cause = failure.get();
+        if (cause instanceof UncheckedIOException uncheckedIOException) throw uncheckedIOException.getCause();
+        if (cause instanceof IOException ioException) throw ioException;
+        if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+        if (cause != null) throw new IllegalStateException(cause);
+        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+        messages.accept("Exported %d threads with %d emails in %d format(s) in %.1f seconds.".formatted(
+                threadCount, emailCount, formats.size(), seconds
+        ));
+    }
+
+    private static void writeThreadFile(Path directory, ThreadExportFormat format, ExportThread thread) {
+        Path file = directory.resolve("thread-%d-%d.%s".formatted(thread.rank(), thread.rootId(), format.getExtension()));
+        try (var writer = format.open(Files.newOutputStream(file))) {
+            writer.write(thread);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the path to write a type's export to. Only when several types are
+     * exported to single files, the extension of the path is replaced by the
+     * type's own.
+     */
+    private Path getOutputPath(Path outputPath, String extension) {
+        if (separateThreads || types.size() == 1) return outputPath;
+        String name = outputPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        return outputPath.resolveSibling(name + "." + extension);
+    }
+}
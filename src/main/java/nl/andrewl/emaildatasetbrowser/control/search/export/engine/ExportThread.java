@@ -0,0 +1,111 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An email of an exported sample, together with all replies to it.
+ * <p>
+ *     Only the ids of the thread's emails are kept in memory. The emails
+ *     themselves, with their bodies, are read from the dataset as they're
+ *     iterated, a few at a time, so that a writer never holds more than a
+ *     handful of them, no matter how large the thread is.
+ * </p>
+ */
+public final class ExportThread {
+    /**
+     * The number of emails that are read from the dataset at once.
+     */
+    private static final int EMAILS_PER_READ = 50;
+
+    private final int rank;
+    private final long[] emailIds;
+    private final int[] depths;
+    private final ThreadLoader loader;
+
+    /**
+     * @param rank     The position of the thread in the sample, starting at 1.
+     * @param emailIds The ids of the emails of the thread, with the root
+     *                 first, and every reply directly after the email it
+     *                 replies to.
+     * @param depths   The depth of each email in the thread.
+     * @param loader   The loader that reads the emails.
+     */
+    ExportThread(int rank, long[] emailIds, int[] depths, ThreadLoader loader) {
+        this.rank = rank;
+        this.emailIds = emailIds;
+        this.depths = depths;
+        this.loader = loader;
+    }
+
+    /**
+     * @return The position of the thread in the sample, starting at 1.
+     */
+    public int rank() {
+        return rank;
+    }
+
+    /**
+     * @return The id of the thread's root email.
+     */
+    public long rootId() {
+        return emailIds[0];
+    }
+
+    /**
+     * @return The number of emails in the thread.
+     */
+    public int size() {
+        return emailIds.length;
+    }
+
+    /**
+     * Gets the emails of the thread, with the root first, and every reply
+     * directly after the email it replies to. Each iteration reads the emails
+     * from the dataset again, while it goes. Emails that were deleted since
+     * the thread was loaded are skipped, together with their replies.
+     *
+     * @return The emails of the thread.
+     */
+    public Iterable<ExportEmail> emails() {
+        return () -> new Iterator<>() {
+            private int next = 0;
+            private List<ExportEmail> buffer = List.of();
+            private int bufferIndex = 0;
+            private int skippedDepth = Integer.MAX_VALUE;
+
+            @Override
+            public boolean hasNext() {
+                while (bufferIndex >= buffer.size() && next < emailIds.length) read();
+                return bufferIndex < buffer.size();
+            }
+
+            @Override
+            public ExportEmail next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return buffer.get(bufferIndex++);
+            }
+
+            private void read() {
+                int end = Math.min(emailIds.length, next + EMAILS_PER_READ);
+                Map<Long, ExportEmail> emails = loader.read(emailIds, depths, next, end);
+                buffer = new ArrayList<>(end - next);
+                bufferIndex = 0;
+                for (int i = next; i < end; i++) {
+                    if (depths[i] > skippedDepth) continue;
+                    skippedDepth = Integer.MAX_VALUE;
+                    ExportEmail email = emails.get(emailIds[i]);
+                    if (email == null) {
+                        skippedDepth = depths[i];
+                    } else {
+                        buffer.add(email);
+                    }
+                }
+                next = end;
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+import nl.andrewl.emaildatasetbrowser.data.KeysetEmailSearcher;
+
+import java.util.List;
+
+/**
+ * A sample of the emails that match a list of filters, newest first, which is
+ * paged through with a {@link KeysetEmailSearcher}.
+ */
+public class FilterSampleSource implements SampleSource {
+    private final KeysetEmailSearcher searcher;
+    private final List<SearchFilter> filters;
+    private KeysetEmailSearcher.Cursor cursor = null;
+    private boolean done = false;
+
+    /**
+     * @param dataset The dataset to search.
+     * @param filters The filters that select the emails of the sample.
+     */
+    public FilterSampleSource(EmailDataset dataset, List<SearchFilter> filters) {
+        this.searcher = new KeysetEmailSearcher(dataset);
+        this.filters = filters;
+    }
+
+    @Override
+    public List<Long> nextBatch(int size) {
+        if (done) return List.of();
+        KeysetEmailSearcher.Page page = searcher.findPage(cursor, size, filters).join();
+        cursor = page.nextCursor();
+        done = !page.hasNextPage();
+        return page.emails().stream().map(EmailEntryPreview::id).toList();
+    }
+}
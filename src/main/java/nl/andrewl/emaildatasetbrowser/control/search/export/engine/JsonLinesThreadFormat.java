@@ -0,0 +1,235 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes threads as JSON Lines, with either a line for each thread, in which
+ * replies are nested in the email they reply to, or a line for each email.
+ * Only the chosen fields of each email are written, and the file can be
+ * compressed while it's written.
+ * <p>
+ *     Each line is encoded straight to the output as the thread's emails are
+ *     visited, without building a tree of the thread first. Emails are in
+ *     the order of {@link ExportThread#emails()}, so an email's replies are
+ *     nested by closing the objects of all deeper emails once a shallower
+ *     one comes along. The emails are read from the dataset while they're
+ *     encoded, so neither mode holds a whole thread in memory.
+ * </p>
+ */
+public class JsonLinesThreadFormat implements ThreadExportFormat {
+    /**
+     * The fields of an email that can be written.
+     */
+    public enum Field {
+        ID("id"),
+        PARENT_ID("parent_id"),
+        MESSAGE_ID("message_id"),
+        IN_REPLY_TO("in_reply_to"),
+        DATE("date"),
+        SENT_FROM("sent_from"),
+        SUBJECT("subject"),
+        BODY("body"),
+        TAGS("tags"),
+        HIDDEN("hidden");
+
+        private final String jsonName;
+
+        Field(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        public String getJsonName() {
+            return jsonName;
+        }
+
+        /**
+         * Finds a field by its name in the JSON output.
+         *
+         * @param jsonName The name, like "sent_from".
+         * @return The field.
+         * @throws IllegalArgumentException If there's no field with the name.
+         */
+        public static Field ofJsonName(String jsonName) {
+            for (var field : values()) {
+                if (field.jsonName.equals(jsonName)) return field;
+            }
+            throw new IllegalArgumentException("Unknown field: " + jsonName);
+        }
+    }
+
+    /**
+     * The ways in which the file can be compressed.
+     */
+    public enum Compression {
+        NONE(""),
+        GZIP(".gz"),
+        ZSTD(".zst");
+
+        private final String extension;
+
+        Compression(String extension) {
+            this.extension = extension;
+        }
+
+        private OutputStream wrap(OutputStream out) throws IOException {
+            return switch (this) {
+                case NONE -> out;
+                case GZIP -> new GZIPOutputStream(out, 64 * 1024);
+                case ZSTD -> new ZstdCompressorOutputStream(out);
+            };
+        }
+    }
+
+    private final Set<Field> fields;
+    private final boolean threadPerLine;
+    private final Compression compression;
+
+    /**
+     * @param fields        The fields of each email to write.
+     * @param threadPerLine Whether each line is a whole thread, rather than a
+     *                      single email.
+     * @param compression   How to compress the file.
+     */
+    public JsonLinesThreadFormat(Set<Field> fields, boolean threadPerLine, Compression compression) {
+        this.fields = fields.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(fields));
+        this.threadPerLine = threadPerLine;
+        this.compression = compression;
+    }
+
+    /**
+     * Writes all fields, a thread per line, without compression.
+     */
+    public JsonLinesThreadFormat() {
+        this(EnumSet.allOf(Field.class), true, Compression.NONE);
+    }
+
+    @Override
+    public String getExtension() {
+        return "jsonl" + compression.extension;
+    }
+
+    @Override
+    public ThreadWriter open(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(compression.wrap(out), StandardCharsets.UTF_8));
+        return new ThreadWriter() {
+            @Override
+            public void write(ExportThread thread) throws IOException {
+                if (threadPerLine) {
+                    writeThread(writer, thread);
+                } else {
+                    for (var email : thread.emails()) {
+                        writer.write("{\"rank\":");
+                        writer.write(Integer.toString(thread.rank()));
+                        writer.write(",\"thread_id\":");
+                        writer.write(Long.toString(thread.rootId()));
+                        writer.write(",\"depth\":");
+                        writer.write(Integer.toString(email.depth()));
+                        writeFields(writer, email);
+                        writer.write("}\n");
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    /**
+     * Writes a thread on a single line, as its root email, with each email's
+     * replies in its "replies" array. Every email starts with its depth, so
+     * that the chosen fields can always follow a comma.
+     */
+    private void writeThread(Writer writer, ExportThread thread) throws IOException {
+        int depth = -1;
+        for (var email : thread.emails()) {
+            if (depth < 0) {
+                writer.write("{\"rank\":");
+                writer.write(Integer.toString(thread.rank()));
+                writer.write(',');
+            } else {
+                if (email.depth() > depth) {
+                    writer.write(",\"replies\":[{");
+                } else {
+                    writer.write(",\"replies\":[]}");
+                    for (int d = depth; d > email.depth(); d--) writer.write("]}");
+                    writer.write(",{");
+                }
+            }
+            depth = email.depth();
+            writer.write("\"depth\":");
+            writer.write(Integer.toString(depth));
+            writeFields(writer, email);
+        }
+        // The whole thread may have been deleted since it was loaded.
+        if (depth < 0) return;
+        writer.write(",\"replies\":[]}");
+        for (int d = depth; d > 0; d--) writer.write("]}");
+        writer.write('\n');
+    }
+
+    /**
+     * Writes the chosen fields of an email, each preceded by a comma.
+     */
+    private void writeFields(Writer writer, ExportEmail email) throws IOException {
+        for (var field : fields) {
+            writer.write(",\"");
+            writer.write(field.jsonName);
+            writer.write("\":");
+            switch (field) {
+                case ID -> writer.write(Long.toString(email.id()));
+                case PARENT_ID -> writer.write(email.parentId() == null ? "null" : email.parentId().toString());
+                case MESSAGE_ID -> writeString(writer, email.messageId());
+                case IN_REPLY_TO -> writeString(writer, email.inReplyTo());
+                case DATE -> writeString(writer, email.date() == null ? null : email.date().toOffsetDateTime().toString());
+                case SENT_FROM -> writeString(writer, email.sentFrom());
+                case SUBJECT -> writeString(writer, email.subject());
+                case BODY -> writeString(writer, email.body());
+                case TAGS -> {
+                    writer.write('[');
+                    for (int i = 0; i < email.tags().size(); i++) {
+                        if (i > 0) writer.write(',');
+                        writeString(writer, email.tags().get(i));
+                    }
+                    writer.write(']');
+                }
+                case HIDDEN -> writer.write(Boolean.toString(email.hidden()));
+            }
+        }
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> writer.write("\\\"");
+                case '\\' -> writer.write("\\\\");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                case '\t' -> writer.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writer.write("\\u%04x".formatted((int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,35 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
+
+import java.util.List;
+
+/**
+ * A sample of the threads that match a Lucene query, best match first, which
+ * is paged through with the dataset's {@link EmailIndex}.
+ */
+public class QuerySampleSource implements SampleSource {
+    private final EmailIndex index;
+    private final String query;
+    private EmailIndex.Cursor cursor = null;
+    private boolean done = false;
+
+    /**
+     * @param dataset The dataset to search.
+     * @param query   The query whose results are the sample.
+     */
+    public QuerySampleSource(EmailDataset dataset, String query) {
+        this.index = EmailIndex.of(dataset);
+        this.query = query;
+    }
+
+    @Override
+    public List<Long> nextBatch(int size) {
+        if (done) return List.of();
+        EmailIndex.Page page = index.searchPage(query, cursor, size).join();
+        cursor = page.nextCursor();
+        done = !page.hasNextPage();
+        return page.rootIds();
+    }
+}
@@ -0,0 +1,19 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import java.util.List;
+
+/**
+ * Provides the ids of the emails in a sample, in order, a batch at a time,
+ * so that the whole sample never has to be fetched at once. Each email is
+ * exported as the root of a thread.
+ */
+public interface SampleSource {
+    /**
+     * Fetches the next batch of the sample. This blocks until the batch has
+     * been fetched.
+     *
+     * @param size The maximum number of ids in the batch.
+     * @return The ids, or an empty list once the whole sample was fetched.
+     */
+    List<Long> nextBatch(int size);
+}
@@ -0,0 +1,26 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A file format that {@link ExportEngine} writes threads in, one at a time,
+ * so that the whole sample never has to be in memory at once.
+ */
+public interface ThreadExportFormat {
+    /**
+     * The file extension of this format, without the dot.
+     *
+     * @return the file extension.
+     */
+    String getExtension();
+
+    /**
+     * Starts writing a new file in this format.
+     *
+     * @param out The stream to write to. It's closed when the writer is.
+     * @return A writer that the threads of the file are passed to, in order.
+     * @throws IOException If the start of the file couldn't be written.
+     */
+    ThreadWriter open(OutputStream out) throws IOException;
+}
@@ -0,0 +1,131 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.Tag;
+import nl.andrewl.emaildatasetbrowser.data.BulkEmailRepository;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Loads the structure of whole threads for a batch of roots at once. Rather
+ * than querying each thread separately, the replies of all threads are
+ * fetched one level at a time, so a batch only takes a query per level of
+ * replies. Only the ids of the emails are loaded; their contents and tags
+ * are read by {@link ExportThread#emails()} while they're written.
+ */
+class ThreadLoader {
+    private static final String COLUMNS = "ID, PARENT_ID, MESSAGE_ID, SUBJECT, IN_REPLY_TO, SENT_FROM, DATE, BODY, HIDDEN";
+
+    private final BulkEmailRepository repository;
+
+    ThreadLoader(EmailDataset dataset) {
+        this.repository = new BulkEmailRepository(dataset);
+    }
+
+    /**
+     * Loads the threads of a batch of roots, with all replies that aren't
+     * hidden.
+     *
+     * @param rootIds   The ids of the roots of the threads.
+     * @param firstRank The rank of the first thread.
+     * @return The threads, in the same order as the given ids. Ids for which
+     *         no email exists are skipped, but still count towards the ranks.
+     */
+    List<ExportThread> load(List<Long> rootIds, int firstRank) {
+        Set<Long> roots = new HashSet<>(rootIds.size());
+        repository.forEachChunk(rootIds, "SELECT ID FROM EMAIL WHERE ID IN (%s)", rs -> roots.add(rs.getLong(1)));
+
+        Map<Long, List<Long>> replies = new HashMap<>();
+        // Guards against cycles in corrupted data, and emails that are in several threads of the batch.
+        Set<Long> visited = new HashSet<>(roots);
+        Collection<Long> parentIds = roots;
+        while (!parentIds.isEmpty()) {
+            List<Long> nextParentIds = new ArrayList<>();
+            repository.forEachChunk(
+                    parentIds,
+                    "SELECT ID, PARENT_ID FROM EMAIL WHERE PARENT_ID IN (%s) AND HIDDEN = FALSE ORDER BY DATE",
+                    rs -> {
+                        long id = rs.getLong(1);
+                        if (visited.add(id)) {
+                            replies.computeIfAbsent(rs.getLong(2), parentId -> new ArrayList<>()).add(id);
+                            nextParentIds.add(id);
+                        }
+                    }
+            );
+            parentIds = nextParentIds;
+        }
+
+        List<ExportThread> threads = new ArrayList<>(rootIds.size());
+        for (int i = 0; i < rootIds.size(); i++) {
+            long rootId = rootIds.get(i);
+            if (!roots.contains(rootId)) continue;
+            threads.add(depthFirst(firstRank + i, rootId, replies));
+        }
+        return threads;
+    }
+
+    /**
+     * Orders a root and all of its replies, each reply directly after the
+     * email it replies to. This uses a stack rather than recursion, since
+     * threads can be very deep.
+     */
+    private ExportThread depthFirst(int rank, long rootId, Map<Long, List<Long>> replies) {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        Deque<long[]> stack = new ArrayDeque<>();
+        stack.push(new long[]{rootId, 0});
+        while (!stack.isEmpty()) {
+            long[] entry = stack.pop();
+            ids.add(entry[0]);
+            depths.add((int) entry[1]);
+            List<Long> children = replies.getOrDefault(entry[0], List.of());
+            // Pushed in reverse, so that the earliest reply is written first.
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(new long[]{children.get(i), entry[1] + 1});
+            }
+        }
+        return new ExportThread(
+                rank,
+                ids.stream().mapToLong(Long::longValue).toArray(),
+                depths.stream().mapToInt(Integer::intValue).toArray(),
+                this
+        );
+    }
+
+    /**
+     * Reads a range of a thread's emails, with their bodies and tags.
+     *
+     * @param ids    The ids of all emails of the thread.
+     * @param depths The depth of each email.
+     * @param from   The index of the first email to read.
+     * @param to     The index after the last email to read.
+     * @return The emails that still exist, by their id.
+     */
+    Map<Long, ExportEmail> read(long[] ids, int[] depths, int from, int to) {
+        Map<Long, Integer> depthsById = new HashMap<>(to - from);
+        for (int i = from; i < to; i++) depthsById.put(ids[i], depths[i]);
+        Map<Long, List<Tag>> tags = repository.findTagsByEmailIds(depthsById.keySet());
+        Map<Long, ExportEmail> emails = new HashMap<>(to - from);
+        repository.forEachChunk(depthsById.keySet(), "SELECT " + COLUMNS + " FROM EMAIL WHERE ID IN (%s)", rs -> {
+            long id = rs.getLong(1);
+            long parentId = rs.getLong(2);
+            boolean isRoot = rs.wasNull();
+            OffsetDateTime date = rs.getObject(7, OffsetDateTime.class);
+            emails.put(id, new ExportEmail(
+                    id,
+                    isRoot ? null : parentId,
+                    rs.getString(3),
+                    rs.getString(4),
+                    rs.getString(5),
+                    rs.getString(6),
+                    date == null ? null : date.toZonedDateTime(),
+                    rs.getString(8),
+                    rs.getBoolean(9),
+                    tags.getOrDefault(id, List.of()).stream().map(Tag::name).toList(),
+                    depthsById.get(id)
+            ));
+        });
+        return emails;
+    }
+}
@@ -0,0 +1,18 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes threads to a single file. Closing the writer finishes the file, and
+ * closes its stream.
+ */
+public interface ThreadWriter extends Closeable {
+    /**
+     * Writes the next thread.
+     *
+     * @param thread The thread to write.
+     * @throws IOException If the thread couldn't be written.
+     */
+    void write(ExportThread thread) throws IOException;
+}
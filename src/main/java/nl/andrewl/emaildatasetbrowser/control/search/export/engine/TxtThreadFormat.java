@@ -0,0 +1,59 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.engine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Writes threads as plain text, with the headers and body of each email, and
+ * replies indented below the email they reply to.
+ */
+public class TxtThreadFormat implements ThreadExportFormat {
+    private static final String THREAD_SEPARATOR = "=".repeat(80);
+    private static final String EMAIL_SEPARATOR = "-".repeat(80);
+
+    @Override
+    public String getExtension() {
+        return "txt";
+    }
+
+    @Override
+    public ThreadWriter open(OutputStream out) {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        return new ThreadWriter() {
+            @Override
+            public void write(ExportThread thread) throws IOException {
+                boolean first = true;
+                for (var email : thread.emails()) {
+                    if (first) {
+                        writer.println(THREAD_SEPARATOR);
+                        writer.printf("Thread #%d: %s%n", thread.rank(), email.subject());
+                        writer.println(THREAD_SEPARATOR);
+                        first = false;
+                    }
+                    String indent = "    ".repeat(email.depth());
+                    writer.println(indent + EMAIL_SEPARATOR);
+                    writer.println(indent + "Id: " + email.id());
+                    writer.println(indent + "Message Id: " + Objects.toString(email.messageId(), ""));
+                    writer.println(indent + "Subject: " + Objects.toString(email.subject(), ""));
+                    writer.println(indent + "From: " + Objects.toString(email.sentFrom(), ""));
+                    writer.println(indent + "Date: " + Objects.toString(email.date(), ""));
+                    if (!email.tags().isEmpty()) {
+                        writer.println(indent + "Tags: " + String.join(", ", email.tags()));
+                    }
+                    writer.println();
+                    if (email.body() != null) {
+                        email.body().lines().forEach(line -> writer.println(indent + line));
+                    }
+                    writer.println();
+                }
+                if (writer.checkError()) throw new IOException("Could not write thread #" + thread.rank() + ".");
+            }
+
+            @Override
+            public void close() {
+                writer.close();
+            }
+        };
+    }
+}
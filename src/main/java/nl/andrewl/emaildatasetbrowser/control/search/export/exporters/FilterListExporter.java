@@ -0,0 +1,43 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.exporters;
+
+import java.util.List;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.export.ExporterParameters;
+import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
+import nl.andrewl.email_indexer.data.export.datasample.sampletype.FilterExporter;
+import nl.andrewl.email_indexer.data.export.datasample.sampletype.SampleExporter;
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportSample;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.FilterSampleSource;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.SampleSource;
+
+/**
+ * Factory object for sample exporters of a fixed list of search filters, for
+ * use outside of the browser's panels.
+ */
+public class FilterListExporter implements ExportSample {
+    private final List<SearchFilter> filters;
+
+    /**
+     * @param filters The filters that select the emails to export.
+     */
+    public FilterListExporter(List<SearchFilter> filters) {
+        this.filters = filters;
+    }
+
+    @Override
+    public ExporterParameters specifyParameters(ExporterParameters params, EmailDataset dataset, int maxResults) {
+        return params.withSearchFilters(this.filters);
+    }
+
+    @Override
+    public SampleExporter buildSampleExporter(TypeExporter typeExporter, ExporterParameters params) {
+        return new FilterExporter(typeExporter, params);
+    }
+
+    @Override
+    public SampleSource buildSampleSource(EmailDataset dataset) {
+        return new FilterSampleSource(dataset, this.filters);
+    }
+}
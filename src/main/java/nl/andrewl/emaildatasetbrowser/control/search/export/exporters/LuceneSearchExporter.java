@@ -1,10 +1,16 @@
 package nl.andrewl.emaildatasetbrowser.control.search.export.exporters;
 
+import java.util.List;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.export.ExporterParameters;
 import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
-import nl.andrewl.email_indexer.data.export.datasample.sampletype.QueryExporter;
+import nl.andrewl.email_indexer.data.export.datasample.sampletype.FilterExporter;
 import nl.andrewl.email_indexer.data.export.datasample.sampletype.SampleExporter;
 import nl.andrewl.emaildatasetbrowser.control.search.export.ExportSample;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.EmailIdFilter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.QuerySampleSource;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.SampleSource;
 import nl.andrewl.emaildatasetbrowser.view.search.LuceneSearchPanel;
 
 /**
@@ -21,12 +27,18 @@ public class LuceneSearchExporter implements ExportSample {
     }
 
     @Override
-    public ExporterParameters specifyParameters(ExporterParameters params) {
-        return params.withQuery(this.searchPanel.getQuery());
+    public ExporterParameters specifyParameters(ExporterParameters params, EmailDataset dataset, int maxResults) {
+        // The results are found with the browser's own index, which is always up to date, unlike the email indexer's.
+        return params.withSearchFilters(List.of(EmailIdFilter.of(buildSampleSource(dataset), maxResults)));
     }
 
     @Override
     public SampleExporter buildSampleExporter(TypeExporter typeExporter, ExporterParameters params) {
-        return new QueryExporter(typeExporter, params);
+        return new FilterExporter(typeExporter, params);
+    }
+
+    @Override
+    public SampleSource buildSampleSource(EmailDataset dataset) {
+        return new QuerySampleSource(dataset, this.searchPanel.getQuery());
     }
 }
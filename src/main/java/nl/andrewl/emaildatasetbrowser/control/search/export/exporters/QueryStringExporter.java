@@ -0,0 +1,44 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.exporters;
+
+import java.util.List;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.export.ExporterParameters;
+import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
+import nl.andrewl.email_indexer.data.export.datasample.sampletype.FilterExporter;
+import nl.andrewl.email_indexer.data.export.datasample.sampletype.SampleExporter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportSample;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.EmailIdFilter;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.QuerySampleSource;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.SampleSource;
+
+/**
+ * Factory object for sample exporters of a fixed Lucene query, for use
+ * outside of the browser's panels.
+ */
+public class QueryStringExporter implements ExportSample {
+    private final String query;
+
+    /**
+     * @param query The query whose results are exported.
+     */
+    public QueryStringExporter(String query) {
+        this.query = query;
+    }
+
+    @Override
+    public ExporterParameters specifyParameters(ExporterParameters params, EmailDataset dataset, int maxResults) {
+        // The results are found with the browser's own index, which is always up to date, unlike the email indexer's.
+        return params.withSearchFilters(List.of(EmailIdFilter.of(buildSampleSource(dataset), maxResults)));
+    }
+
+    @Override
+    public SampleExporter buildSampleExporter(TypeExporter typeExporter, ExporterParameters params) {
+        return new FilterExporter(typeExporter, params);
+    }
+
+    @Override
+    public SampleSource buildSampleSource(EmailDataset dataset) {
+        return new QuerySampleSource(dataset, this.query);
+    }
+}
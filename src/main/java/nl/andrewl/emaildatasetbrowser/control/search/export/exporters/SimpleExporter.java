@@ -1,10 +1,13 @@
 package nl.andrewl.emaildatasetbrowser.control.search.export.exporters;
 
+import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.export.ExporterParameters;
 import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
 import nl.andrewl.email_indexer.data.export.datasample.sampletype.FilterExporter;
 import nl.andrewl.email_indexer.data.export.datasample.sampletype.SampleExporter;
 import nl.andrewl.emaildatasetbrowser.control.search.export.ExportSample;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.FilterSampleSource;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.SampleSource;
 import nl.andrewl.emaildatasetbrowser.view.search.SimpleBrowsePanel;
 
 /**
@@ -21,7 +24,7 @@ public class SimpleExporter implements ExportSample {
     }
 
     @Override
-    public ExporterParameters specifyParameters(ExporterParameters params) {
+    public ExporterParameters specifyParameters(ExporterParameters params, EmailDataset dataset, int maxResults) {
         params.withSearchFilters(this.browsePanel.getCurrentSearchFilters());
         return params;
     }
@@ -30,4 +33,9 @@ public class SimpleExporter implements ExportSample {
     public SampleExporter buildSampleExporter(TypeExporter typeExporter, ExporterParameters params) {
         return new FilterExporter(typeExporter, params);
     }
+
+    @Override
+    public SampleSource buildSampleSource(EmailDataset dataset) {
+        return new FilterSampleSource(dataset, this.browsePanel.getCurrentSearchFilters());
+    }
 }
@@ -0,0 +1,32 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets;
+
+import java.util.Optional;
+
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ArrowThreadFormat;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ThreadExportFormat;
+
+/**
+ * Factory object for typed, columnar Arrow IPC (Feather) file exporters.
+ * These are only written by the export engine, since the email indexer has
+ * no exporter for them.
+ */
+public class ArrowExportType implements ExportType {
+
+    @Override
+    public String getName() {
+        return "Arrow File";
+    }
+
+    @Override
+    public FileNameExtensionFilter getFileNameExtentionFilter() {
+        return new FileNameExtensionFilter("Arrow Files", "arrow", "feather");
+    }
+
+    @Override
+    public Optional<ThreadExportFormat> getThreadFormat() {
+        return Optional.of(new ArrowThreadFormat());
+    }
+}
@@ -1,15 +1,35 @@
 package nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets;
 
+import java.util.Optional;
+
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import nl.andrewl.email_indexer.data.export.datasample.datatype.CsvExporter;
 import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
 import nl.andrewl.emaildatasetbrowser.control.search.export.ExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.CsvThreadFormat;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ThreadExportFormat;
 
 /**
- * Factory object for CSV file exporters.
+ * Factory object for CSV file exporters. By default, files are written by the
+ * email indexer's exporter, in its layout. The thread layout of
+ * {@link CsvThreadFormat} is opt-in, since it's a different layout.
  */
 public class CsvExportType implements ExportType {
+    private final boolean threadLayout;
+
+    /**
+     * @param threadLayout Whether files are written in the thread layout,
+     *                     a thread at a time, instead of by the email
+     *                     indexer's exporter.
+     */
+    public CsvExportType(boolean threadLayout) {
+        this.threadLayout = threadLayout;
+    }
+
+    public CsvExportType() {
+        this(false);
+    }
 
     @Override
     public String getName() {
@@ -22,7 +42,12 @@ public class CsvExportType implements ExportType {
     }
 
     @Override
-    public TypeExporter buildTypeExporter() {
-        return new CsvExporter();
+    public Optional<TypeExporter> buildTypeExporter() {
+        return Optional.of(new CsvExporter());
+    }
+
+    @Override
+    public Optional<ThreadExportFormat> getThreadFormat() {
+        return threadLayout ? Optional.of(new CsvThreadFormat()) : Optional.empty();
     }
 }
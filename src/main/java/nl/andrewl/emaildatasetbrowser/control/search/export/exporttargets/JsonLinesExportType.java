@@ -0,0 +1,63 @@
+package nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets;
+
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import nl.andrewl.emaildatasetbrowser.control.search.export.ExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat.Compression;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat.Field;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ThreadExportFormat;
+
+/**
+ * Factory object for JSON Lines file exporters, which write either a thread
+ * or an email per line, optionally compressed. These are only written by the
+ * export engine, since the email indexer has no exporter for them.
+ */
+public class JsonLinesExportType implements ExportType {
+    private final Set<Field> fields;
+    private final boolean threadPerLine;
+    private final Compression compression;
+
+    /**
+     * @param fields        The fields of each email to write.
+     * @param threadPerLine Whether each line is a whole thread, rather than a
+     *                      single email.
+     * @param compression   How to compress the file.
+     */
+    public JsonLinesExportType(Set<Field> fields, boolean threadPerLine, Compression compression) {
+        this.fields = Set.copyOf(fields);
+        this.threadPerLine = threadPerLine;
+        this.compression = compression;
+    }
+
+    /**
+     * Writes all fields, a thread per line, without compression.
+     */
+    public JsonLinesExportType() {
+        this(EnumSet.allOf(Field.class), true, Compression.NONE);
+    }
+
+    @Override
+    public String getName() {
+        return "JSON Lines File";
+    }
+
+    @Override
+    public FileNameExtensionFilter getFileNameExtentionFilter() {
+        // The filter only looks at the last extension, so compressed files are matched on theirs.
+        return switch (compression) {
+            case NONE -> new FileNameExtensionFilter("JSON Lines Files", "jsonl");
+            case GZIP -> new FileNameExtensionFilter("Gzipped JSON Lines Files", "gz");
+            case ZSTD -> new FileNameExtensionFilter("Zstandard JSON Lines Files", "zst");
+        };
+    }
+
+    @Override
+    public Optional<ThreadExportFormat> getThreadFormat() {
+        return Optional.of(new JsonLinesThreadFormat(fields, threadPerLine, compression));
+    }
+}
@@ -1,5 +1,7 @@
 package nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets;
 
+import java.util.Optional;
+
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import nl.andrewl.email_indexer.data.export.datasample.datatype.PdfExporter;
@@ -22,7 +24,7 @@ public class PdfExportType implements ExportType {
     }
 
     @Override
-    public TypeExporter buildTypeExporter() {
-        return new PdfExporter();
+    public Optional<TypeExporter> buildTypeExporter() {
+        return Optional.of(new PdfExporter());
     }
 }
@@ -1,15 +1,35 @@
 package nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets;
 
+import java.util.Optional;
+
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import nl.andrewl.email_indexer.data.export.datasample.datatype.TxtExporter;
 import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
 import nl.andrewl.emaildatasetbrowser.control.search.export.ExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.TxtThreadFormat;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ThreadExportFormat;
 
 /**
- * Factory object for text file exporters.
+ * Factory object for text file exporters. By default, files are written by the
+ * email indexer's exporter, in its layout. The thread layout of
+ * {@link TxtThreadFormat} is opt-in, since it's a different layout.
  */
 public class TxtExportType implements ExportType {
+    private final boolean threadLayout;
+
+    /**
+     * @param threadLayout Whether files are written in the thread layout,
+     *                     a thread at a time, instead of by the email
+     *                     indexer's exporter.
+     */
+    public TxtExportType(boolean threadLayout) {
+        this.threadLayout = threadLayout;
+    }
+
+    public TxtExportType() {
+        this(false);
+    }
 
     @Override
     public String getName() {
@@ -22,7 +42,12 @@ public class TxtExportType implements ExportType {
     }
 
     @Override
-    public TypeExporter buildTypeExporter() {
-        return new TxtExporter();
+    public Optional<TypeExporter> buildTypeExporter() {
+        return Optional.of(new TxtExporter());
+    }
+
+    @Override
+    public Optional<ThreadExportFormat> getThreadFormat() {
+        return threadLayout ? Optional.of(new TxtThreadFormat()) : Optional.empty();
     }
 }
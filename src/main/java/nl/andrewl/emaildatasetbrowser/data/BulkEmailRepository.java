@@ -0,0 +1,145 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.email_indexer.data.Tag;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * A repository for resolving whole lists of email ids at once. Where the
+ * {@link nl.andrewl.email_indexer.data.EmailRepository} offers lookups for a
+ * single email, this repository splits a list of ids into chunks and issues
+ * one set-based query per chunk, so resolving thousands of search results
+ * only takes a handful of round trips to the database.
+ */
+public class BulkEmailRepository {
+	/**
+	 * The maximum number of ids that are placed in a single IN clause.
+	 */
+	public static final int CHUNK_SIZE = 500;
+
+	/**
+	 * The columns that must be selected, in order, to construct an
+	 * {@link EmailEntryPreview} from a result set row.
+	 */
+	public static final String PREVIEW_COLUMNS = "ID, PARENT_ID, MESSAGE_ID, SUBJECT, SENT_FROM, DATE, HIDDEN";
+
+	private final Connection conn;
+
+	public BulkEmailRepository(EmailDataset ds) {
+		this.conn = ds.getConnection();
+	}
+
+	/**
+	 * Finds the previews for a list of email ids.
+	 * @param ids The ids to look up.
+	 * @return The previews, in the same order as the given ids. Ids for which
+	 * no email exists are skipped.
+	 */
+	public List<EmailEntryPreview> findPreviewsByIds(List<Long> ids) {
+		Map<Long, EmailEntryPreview> previews = new HashMap<>(ids.size());
+		forEachChunk(ids, "SELECT " + PREVIEW_COLUMNS + " FROM EMAIL WHERE ID IN (%s)", rs -> {
+			var preview = new EmailEntryPreview(rs);
+			previews.put(preview.id(), preview);
+		});
+		List<EmailEntryPreview> results = new ArrayList<>(previews.size());
+		for (long id : ids) {
+			var preview = previews.get(id);
+			if (preview != null) results.add(preview);
+		}
+		return results;
+	}
+
+	/**
+	 * Finds the direct replies to each of a collection of emails.
+	 * @param parentIds The ids of the emails to get replies for.
+	 * @return A map from email id to the list of that email's replies, ordered
+	 * by date. Emails without any replies are mapped to an empty list.
+	 */
+	public Map<Long, List<EmailEntryPreview>> findRepliesByParentIds(Collection<Long> parentIds) {
+		Map<Long, List<EmailEntryPreview>> replies = new HashMap<>(parentIds.size());
+		for (long id : parentIds) replies.put(id, new ArrayList<>());
+		forEachChunk(
+				parentIds,
+				"SELECT " + PREVIEW_COLUMNS + " FROM EMAIL WHERE PARENT_ID IN (%s) ORDER BY DATE",
+				rs -> {
+					var preview = new EmailEntryPreview(rs);
+					replies.get(preview.parentId()).add(preview);
+				}
+		);
+		return replies;
+	}
+
+	/**
+	 * Finds the tags for each of a collection of emails.
+	 * @param emailIds The ids of the emails to get tags for.
+	 * @return A map from email id to the list of that email's tags, ordered
+	 * by name. Emails without any tags are mapped to an empty list.
+	 */
+	public Map<Long, List<Tag>> findTagsByEmailIds(Collection<Long> emailIds) {
+		Map<Long, List<Tag>> tags = new HashMap<>(emailIds.size());
+		for (long id : emailIds) tags.put(id, new ArrayList<>());
+		forEachChunk(
+				emailIds,
+				"""
+				SELECT EMAIL_TAG.EMAIL_ID, TAG.ID, TAG.NAME, TAG.DESCRIPTION
+				FROM EMAIL_TAG
+				JOIN TAG ON TAG.ID = EMAIL_TAG.TAG_ID
+				WHERE EMAIL_TAG.EMAIL_ID IN (%s)
+				ORDER BY TAG.NAME""",
+				rs -> tags.get(rs.getLong(1)).add(new Tag(rs.getInt(2), rs.getString(3), rs.getString(4)))
+		);
+		return tags;
+	}
+
+	/**
+	 * Determines which of a collection of emails have at least one tag.
+	 * @param emailIds The ids of the emails to check.
+	 * @return The subset of the given ids which belong to tagged emails.
+	 */
+	public Set<Long> findTaggedEmailIds(Collection<Long> emailIds) {
+		Set<Long> taggedIds = new HashSet<>();
+		forEachChunk(
+				emailIds,
+				"SELECT DISTINCT EMAIL_ID FROM EMAIL_TAG WHERE EMAIL_ID IN (%s)",
+				rs -> taggedIds.add(rs.getLong(1))
+		);
+		return taggedIds;
+	}
+
+	/**
+	 * Runs a query once for each chunk of the given ids, and passes every row
+	 * of each result set to the given handler.
+	 * @param ids The ids to query.
+	 * @param queryFormat The query, with a single <code>%s</code> where the
+	 *                    list of parameter placeholders should go.
+	 * @param handler The handler for each row.
+	 */
+	public void forEachChunk(Collection<Long> ids, String queryFormat, RowHandler handler) {
+		List<Long> idList = ids instanceof List<Long> l ? l : new ArrayList<>(ids);
+		for (int start = 0; start < idList.size(); start += CHUNK_SIZE) {
+			List<Long> chunk = idList.subList(start, Math.min(idList.size(), start + CHUNK_SIZE));
+			String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+			try (PreparedStatement stmt = conn.prepareStatement(queryFormat.formatted(placeholders))) {
+				for (int i = 0; i < chunk.size(); i++) {
+					stmt.setLong(i + 1, chunk.get(i));
+				}
+				try (ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) handler.handle(rs);
+				}
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	public interface RowHandler {
+		void handle(ResultSet rs) throws SQLException;
+	}
+}
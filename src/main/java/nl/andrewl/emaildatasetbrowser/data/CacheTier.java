@@ -0,0 +1,180 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * A single, thread-safe, size-bounded cache with least-recently-used eviction.
+ * Each entry has a weight (which is just 1 for most tiers), and once the total
+ * weight exceeds the tier's capacity, the least recently used entries are
+ * evicted until it fits again.
+ * <p>
+ *     Values are loaded outside the tier's lock, so a slow query never blocks
+ *     other readers. To make sure that a load which overlaps an invalidation
+ *     can't put stale data back into the cache, every invalidation bumps an
+ *     epoch, and a loaded value is only stored if the epoch didn't change in
+ *     the meantime.
+ * </p>
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class CacheTier<K, V> {
+	/**
+	 * A snapshot of a tier's usage statistics.
+	 */
+	public record Stats(String name, int size, long weight, long capacity, long hits, long misses, long evictions) {
+		public double hitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 0 : (double) hits / requests;
+		}
+	}
+
+	private final String name;
+	private final long capacity;
+	private final ToLongFunction<V> weigher;
+	private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private long weight = 0;
+	private long epoch = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Creates a tier that holds a maximum number of entries.
+	 * @param name The name of the tier, for statistics.
+	 * @param maxEntries The maximum number of entries.
+	 */
+	public CacheTier(String name, long maxEntries) {
+		this(name, maxEntries, v -> 1);
+	}
+
+	/**
+	 * Creates a tier whose entries are weighed individually.
+	 * @param name The name of the tier, for statistics.
+	 * @param capacity The maximum total weight of all entries.
+	 * @param weigher A function that computes the weight of a value.
+	 */
+	public CacheTier(String name, long capacity, ToLongFunction<V> weigher) {
+		this.name = name;
+		this.capacity = capacity;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Gets a value from the cache, loading it if it's not present.
+	 * @param key The key to get.
+	 * @param loader The function that loads the value for a key. It may be
+	 *               called concurrently for the same key.
+	 * @return The value.
+	 */
+	public V get(K key, Function<K, V> loader) {
+		long loadEpoch;
+		synchronized (this) {
+			V value = entries.get(key);
+			if (value != null) {
+				hits++;
+				return value;
+			}
+			misses++;
+			loadEpoch = epoch;
+		}
+		V value = loader.apply(key);
+		if (value != null) putIfEpoch(key, value, loadEpoch);
+		return value;
+	}
+
+	/**
+	 * Gets the values for many keys at once, loading all missing values with a
+	 * single call to the given bulk loader.
+	 * @param keys The keys to get.
+	 * @param loader The function that loads the values for a set of keys.
+	 *               Keys that it has no value for are simply left out.
+	 * @return A map with the values for all keys that have one.
+	 */
+	public Map<K, V> getAll(Collection<K> keys, Function<Collection<K>, Map<K, V>> loader) {
+		Map<K, V> result = new HashMap<>();
+		List<K> missing = new ArrayList<>();
+		long loadEpoch;
+		synchronized (this) {
+			for (var key : keys) {
+				V value = entries.get(key);
+				if (value != null) {
+					result.put(key, value);
+				} else if (!result.containsKey(key)) {
+					missing.add(key);
+				}
+			}
+			hits += result.size();
+			misses += missing.size();
+			loadEpoch = epoch;
+		}
+		if (!missing.isEmpty()) {
+			Map<K, V> loaded = loader.apply(missing);
+			result.putAll(loaded);
+			loaded.forEach((k, v) -> putIfEpoch(k, v, loadEpoch));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets a value only if it's already cached. This doesn't count as a hit
+	 * or a miss.
+	 * @param key The key to get.
+	 * @return The value, if present.
+	 */
+	public synchronized Optional<V> getIfPresent(K key) {
+		return Optional.ofNullable(entries.get(key));
+	}
+
+	public synchronized void put(K key, V value) {
+		V old = entries.put(key, value);
+		if (old != null) weight -= weigher.applyAsLong(old);
+		weight += weigher.applyAsLong(value);
+		evictIfNeeded();
+	}
+
+	public synchronized void invalidate(K key) {
+		epoch++;
+		V old = entries.remove(key);
+		if (old != null) weight -= weigher.applyAsLong(old);
+	}
+
+	public synchronized void invalidateIf(Predicate<V> predicate) {
+		epoch++;
+		var iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			V value = iterator.next();
+			if (predicate.test(value)) {
+				weight -= weigher.applyAsLong(value);
+				iterator.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		epoch++;
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized Stats getStats() {
+		return new Stats(name, entries.size(), weight, capacity, hits, misses, evictions);
+	}
+
+	private synchronized void putIfEpoch(K key, V value, long loadEpoch) {
+		if (epoch == loadEpoch) put(key, value);
+	}
+
+	private void evictIfNeeded() {
+		var iterator = entries.values().iterator();
+		// Always keep the most recent entry, even if it alone is too heavy.
+		while (weight > capacity && entries.size() > 1) {
+			V eldest = iterator.next();
+			weight -= weigher.applyAsLong(eldest);
+			iterator.remove();
+			evictions++;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.Tag;
+
+/**
+ * An event that describes a single change that the browser made to a dataset.
+ * These are published with a {@link DatasetEventBus}, so that views can
+ * update only the parts of their state that are affected by the change.
+ */
+public sealed interface DatasetEvent {
+	/**
+	 * A single email was hidden.
+	 * @param emailId The id of the email.
+	 */
+	record EmailHidden(long emailId) implements DatasetEvent {}
+
+	/**
+	 * A single email was shown again, after being hidden.
+	 * @param emailId The id of the email.
+	 */
+	record EmailShown(long emailId) implements DatasetEvent {}
+
+	/**
+	 * Any number of emails were hidden at once, such as by author, body or an
+	 * SQL clause. The ids of the affected emails aren't known.
+	 * @param count The number of emails that were hidden.
+	 */
+	record EmailsHidden(long count) implements DatasetEvent {}
+
+	/**
+	 * New emails were added to the dataset, and may have been linked into
+	 * existing threads.
+	 * @param count The number of emails that were added.
+	 */
+	record EmailsAdded(long count) implements DatasetEvent {}
+
+	/**
+	 * All hidden emails were permanently deleted.
+	 */
+	record HiddenEmailsDeleted() implements DatasetEvent {}
+
+	/**
+	 * A tag was added to an email.
+	 * @param emailId The id of the email.
+	 * @param tag The tag that was added.
+	 */
+	record TagAdded(long emailId, Tag tag) implements DatasetEvent {}
+
+	/**
+	 * A tag was removed from an email.
+	 * @param emailId The id of the email.
+	 * @param tag The tag that was removed.
+	 */
+	record TagRemoved(long emailId, Tag tag) implements DatasetEvent {}
+
+	/**
+	 * A new tag was created.
+	 * @param tagId The id of the new tag.
+	 */
+	record TagCreated(int tagId) implements DatasetEvent {}
+
+	/**
+	 * A tag's name or description was changed.
+	 * @param tagId The id of the tag.
+	 */
+	record TagUpdated(int tagId) implements DatasetEvent {}
+
+	/**
+	 * A tag was deleted, and thus removed from all emails.
+	 * @param tagId The id of the tag.
+	 */
+	record TagDeleted(int tagId) implements DatasetEvent {}
+}
@@ -0,0 +1,75 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A stream of {@link DatasetEvent}s for a single dataset. Anything that
+ * modifies a dataset publishes an event here, and views subscribe to it to
+ * update themselves. Use {@link #of(EmailDataset)} to get the bus for a
+ * dataset.
+ * <p>
+ *     Before any subscriber is notified, the dataset's {@link DatasetVersion}
+ *     is incremented and its {@link EmailCache} is invalidated, so subscribers
+ *     can immediately read fresh data. Subscribers are called on the thread
+ *     that published the event, so views must hand off to the event dispatch
+ *     thread themselves.
+ * </p>
+ */
+public class DatasetEventBus {
+	private static final Map<EmailDataset, DatasetEventBus> buses = new WeakHashMap<>();
+
+	private final EmailDataset dataset;
+	private final List<Consumer<DatasetEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+	private DatasetEventBus(EmailDataset dataset) {
+		this.dataset = dataset;
+	}
+
+	/**
+	 * Gets the event bus for a dataset, creating it if needed.
+	 * @param ds The dataset.
+	 * @return The dataset's event bus.
+	 */
+	public static synchronized DatasetEventBus of(EmailDataset ds) {
+		return buses.computeIfAbsent(ds, DatasetEventBus::new);
+	}
+
+	/**
+	 * Discards the event bus for a dataset, once it's been closed.
+	 * @param ds The dataset.
+	 */
+	public static synchronized void release(EmailDataset ds) {
+		buses.remove(ds);
+	}
+
+	public void subscribe(Consumer<DatasetEvent> subscriber) {
+		subscribers.add(subscriber);
+	}
+
+	public void unsubscribe(Consumer<DatasetEvent> subscriber) {
+		subscribers.remove(subscriber);
+	}
+
+	/**
+	 * Publishes an event to all subscribers. This should be called right after
+	 * the change has been made to the dataset.
+	 * @param event The event to publish.
+	 */
+	public void publish(DatasetEvent event) {
+		DatasetVersion.increment(dataset);
+		EmailCache.of(dataset).handle(event);
+		for (var subscriber : subscribers) {
+			try {
+				subscriber.accept(event);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
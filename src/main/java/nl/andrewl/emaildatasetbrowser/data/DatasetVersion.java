@@ -0,0 +1,41 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps an in-memory version number for each open dataset, which is bumped
+ * every time the browser modifies the dataset. Anything that caches derived
+ * data, like result counts, can remember the version it was computed at, and
+ * treat it as stale once the version changes.
+ */
+public final class DatasetVersion {
+	private static final Map<EmailDataset, AtomicLong> versions = new WeakHashMap<>();
+
+	private DatasetVersion() {
+	}
+
+	private static synchronized AtomicLong counter(EmailDataset ds) {
+		return versions.computeIfAbsent(ds, d -> new AtomicLong());
+	}
+
+	/**
+	 * Gets the current version of a dataset.
+	 * @param ds The dataset.
+	 * @return The dataset's version.
+	 */
+	public static long get(EmailDataset ds) {
+		return counter(ds).get();
+	}
+
+	/**
+	 * Marks a dataset as having been modified.
+	 * @param ds The dataset that was modified.
+	 */
+	public static void increment(EmailDataset ds) {
+		counter(ds).incrementAndGet();
+	}
+}
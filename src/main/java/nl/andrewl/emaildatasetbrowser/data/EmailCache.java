@@ -0,0 +1,217 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.EmailEntry;
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.email_indexer.data.Tag;
+import nl.andrewl.email_indexer.data.TagRepository;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A read-through cache of the data that the browser shows about emails, which
+ * is shared by all views of a single dataset. Use {@link #of(EmailDataset)}
+ * to get the cache for a dataset.
+ * <p>
+ *     The cache is split into separately bounded tiers, for email previews,
+ *     full emails (weighed by the size of their body), reply lists, the tags
+ *     of each email, the inherited tags of each email, and the list of all
+ *     tags. Every {@link DatasetEvent} that's published for the dataset is
+ *     passed to {@link #handle(DatasetEvent)}, so that only the affected
+ *     entries are dropped.
+ * </p>
+ */
+public class EmailCache {
+	private static final Map<EmailDataset, EmailCache> caches = new WeakHashMap<>();
+
+	/**
+	 * The inherited tags of an email.
+	 * @param parentTags The tags of all emails that this email replies to.
+	 * @param childTags The tags of all replies to this email.
+	 */
+	private record ThreadTags(Set<Tag> parentTags, Set<Tag> childTags) {}
+
+	private final EmailDataset dataset;
+	private final CacheTier<Long, EmailEntryPreview> previews = new CacheTier<>("Previews", 20_000);
+	private final CacheTier<Long, EmailEntry> emails = new CacheTier<>(
+			"Emails", 64L * 1024 * 1024,
+			email -> 256 + 2L * (email.body() == null ? 0 : email.body().length())
+	);
+	private final CacheTier<Long, List<EmailEntryPreview>> replies = new CacheTier<>("Replies", 5_000);
+	private final CacheTier<Long, List<Tag>> tags = new CacheTier<>("Email tags", 20_000);
+	private final CacheTier<Long, ThreadTags> threadTags = new CacheTier<>("Thread tags", 5_000);
+	private final CacheTier<Boolean, List<Tag>> allTags = new CacheTier<>("All tags", 1);
+
+	private EmailCache(EmailDataset dataset) {
+		this.dataset = dataset;
+	}
+
+	/**
+	 * Gets the cache for a dataset, creating it if needed.
+	 * @param ds The dataset.
+	 * @return The dataset's cache.
+	 */
+	public static synchronized EmailCache of(EmailDataset ds) {
+		return caches.computeIfAbsent(ds, EmailCache::new);
+	}
+
+	/**
+	 * Discards the cache for a dataset, once it's been closed.
+	 * @param ds The dataset.
+	 */
+	public static synchronized void release(EmailDataset ds) {
+		caches.remove(ds);
+	}
+
+	public Optional<EmailEntryPreview> getPreview(long id) {
+		return Optional.ofNullable(previews.get(id, key -> new EmailRepository(dataset).findPreviewById(key).orElse(null)));
+	}
+
+	/**
+	 * Gets the previews of many emails at once. All that aren't cached yet are
+	 * fetched with bulk queries.
+	 * @param ids The ids of the emails to get.
+	 * @return The previews, in the same order as the given ids. Ids for which
+	 * no email exists are left out.
+	 */
+	public List<EmailEntryPreview> getPreviews(List<Long> ids) {
+		Map<Long, EmailEntryPreview> found = previews.getAll(ids, missing ->
+				new BulkEmailRepository(dataset).findPreviewsByIds(List.copyOf(missing)).stream()
+						.collect(Collectors.toMap(EmailEntryPreview::id, Function.identity(), (a, b) -> a))
+		);
+		return ids.stream().map(found::get).filter(Objects::nonNull).toList();
+	}
+
+	public Optional<EmailEntry> getEmail(long id) {
+		return Optional.ofNullable(emails.get(id, key -> new EmailRepository(dataset).findEmailById(key).orElse(null)));
+	}
+
+	public List<EmailEntryPreview> getReplies(long id) {
+		return replies.get(id, key -> List.copyOf(new EmailRepository(dataset).findAllReplies(key)));
+	}
+
+	/**
+	 * Gets the replies of many emails at once. All that aren't cached yet are
+	 * fetched with bulk queries.
+	 * @param ids The ids of the emails to get the replies of.
+	 * @return A map with the list of replies of each email.
+	 */
+	public Map<Long, List<EmailEntryPreview>> getRepliesByParentIds(Collection<Long> ids) {
+		return replies.getAll(ids, missing -> {
+			Map<Long, List<EmailEntryPreview>> loaded = new HashMap<>(new BulkEmailRepository(dataset).findRepliesByParentIds(missing));
+			// Also remember which emails have no replies at all.
+			for (var id : missing) loaded.putIfAbsent(id, List.of());
+			return loaded;
+		});
+	}
+
+	public List<Tag> getTags(long emailId) {
+		return tags.get(emailId, key -> List.copyOf(new TagRepository(dataset).getTags(key)));
+	}
+
+	public Set<Tag> getParentTags(long emailId) {
+		return getThreadTags(emailId).parentTags();
+	}
+
+	public Set<Tag> getChildTags(long emailId) {
+		return getThreadTags(emailId).childTags();
+	}
+
+	private ThreadTags getThreadTags(long emailId) {
+		return threadTags.get(emailId, key -> {
+			var repo = new TagRepository(dataset);
+			return new ThreadTags(Set.copyOf(repo.getAllParentTags(key)), Set.copyOf(repo.getAllChildTags(key)));
+		});
+	}
+
+	public List<Tag> getAllTags() {
+		return allTags.get(true, key -> List.copyOf(new TagRepository(dataset).findAll()));
+	}
+
+	/**
+	 * Invalidates everything that's cached about a single email, after it was
+	 * hidden or shown. This includes any reply list that contains it.
+	 * @param id The id of the email.
+	 */
+	private void invalidateEmail(long id) {
+		previews.invalidate(id);
+		emails.invalidate(id);
+		replies.invalidateIf(list -> list.stream().anyMatch(reply -> reply.id() == id));
+	}
+
+	/**
+	 * Invalidates all cached emails, previews and reply lists, after any bulk
+	 * operation that might have affected many of them.
+	 */
+	private void invalidateEmails() {
+		previews.clear();
+		emails.clear();
+		replies.clear();
+	}
+
+	/**
+	 * Invalidates the cached tags of an email, after a tag was added to or
+	 * removed from it. Since the inherited tags of every email in the same
+	 * thread may change, and we don't know the thread here, all inherited
+	 * tags are dropped.
+	 * @param emailId The id of the email.
+	 */
+	private void invalidateEmailTags(long emailId) {
+		tags.invalidate(emailId);
+		threadTags.clear();
+	}
+
+	/**
+	 * Invalidates all cached tags, after a tag was created, edited or deleted.
+	 */
+	private void invalidateTags() {
+		tags.clear();
+		threadTags.clear();
+		allTags.clear();
+	}
+
+	/**
+	 * Invalidates everything that's affected by a change to the dataset.
+	 * @param event The event that describes the change.
+	 */
+	public void handle(DatasetEvent event) {
+		if (event instanceof DatasetEvent.EmailHidden e) {
+			invalidateEmail(e.emailId());
+		} else if (event instanceof DatasetEvent.EmailShown e) {
+			invalidateEmail(e.emailId());
+		} else if (event instanceof DatasetEvent.EmailsHidden) {
+			invalidateEmails();
+		} else if (event instanceof DatasetEvent.TagAdded e) {
+			invalidateEmailTags(e.emailId());
+		} else if (event instanceof DatasetEvent.TagRemoved e) {
+			invalidateEmailTags(e.emailId());
+		} else if (
+				event instanceof DatasetEvent.TagCreated ||
+				event instanceof DatasetEvent.TagUpdated ||
+				event instanceof DatasetEvent.TagDeleted
+		) {
+			invalidateTags();
+		} else {
+			invalidateAll();
+		}
+	}
+
+	private void invalidateAll() {
+		invalidateEmails();
+		invalidateTags();
+	}
+
+	public List<CacheTier.Stats> getStats() {
+		return List.of(
+				previews.getStats(),
+				emails.getStats(),
+				replies.getStats(),
+				tags.getStats(),
+				threadTags.getStats(),
+				allTags.getStats()
+		);
+	}
+}
@@ -0,0 +1,57 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.util.DbUtils;
+import nl.andrewl.emaildatasetbrowser.index.IndexChangeLog;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Repository for hiding emails in bulk, which is shared by the browser's
+ * actions and the command-line interface.
+ */
+public class HiddenEmailRepository {
+	private final EmailDataset dataset;
+
+	public HiddenEmailRepository(EmailDataset dataset) {
+		this.dataset = dataset;
+	}
+
+	/**
+	 * Builds the query that hides all emails matching an SQL clause.
+	 * @param clause The SQL WHERE clause that selects emails to hide.
+	 * @return The update query.
+	 */
+	public static String buildHideQuery(String clause) {
+		return "UPDATE EMAIL SET HIDDEN = TRUE WHERE HIDDEN = FALSE AND " + clause;
+	}
+
+	/**
+	 * Counts the emails that are not hidden yet, and match an SQL clause.
+	 * @param clause The SQL WHERE clause that selects emails.
+	 * @return The number of emails.
+	 */
+	public long countHideableBySql(String clause) {
+		return DbUtils.count(dataset.getConnection(), "SELECT COUNT(ID) FROM EMAIL WHERE HIDDEN = FALSE AND " + clause);
+	}
+
+	/**
+	 * Hides all emails that match an SQL clause, and records this as a
+	 * mutation of the dataset, as well as in its {@link IndexChangeLog}.
+	 * @param clause The SQL WHERE clause that selects emails to hide.
+	 * @return The number of emails that were hidden.
+	 */
+	public int hideBySql(String clause) {
+		AtomicInteger count = new AtomicInteger();
+		var changeLog = new IndexChangeLog(dataset);
+		DbUtils.doTransaction(dataset.getConnection(), c -> {
+			long mutId = DbUtils.insertWithId(c, "INSERT INTO MUTATION (DESCRIPTION) VALUES (?)", "Hiding all by SQL clause: " + clause);
+			changeLog.recordAll(c, IndexChangeLog.Kind.HIDDEN, "HIDDEN = FALSE AND " + clause);
+			int hiddenCount = DbUtils.update(c, buildHideQuery(clause));
+			DbUtils.update(c, "UPDATE MUTATION SET AFFECTED_EMAIL_COUNT = ? WHERE ID = ?", hiddenCount, mutId);
+			count.set(hiddenCount);
+		});
+		DatasetEventBus.of(dataset).publish(new DatasetEvent.EmailsHidden(count.get()));
+		return count.get();
+	}
+}
@@ -0,0 +1,194 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Searcher that pages through the emails of a dataset using keyset (cursor)
+ * pagination on <code>(DATE, ID)</code>, newest first, with undated emails
+ * last. Unlike offset-based
+ * paging, fetching a page costs the same no matter how deep into the results
+ * it is, since the database can seek directly to the cursor position.
+ * <p>
+ *     Once the dataset's {@link TagIndex} is ready, pages and counts for the
+ *     filters it supports are computed from it instead of the database.
+ *     Otherwise, total result counts are cached per combination of filters,
+ *     until the dataset's {@link DatasetVersion} changes.
+ * </p>
+ */
+public class KeysetEmailSearcher {
+	/**
+	 * A position in the ordered list of emails. A page starting at a cursor
+	 * contains the emails that come strictly after it.
+	 * @param date The date of the last email before the cursor, or null if
+	 *             that email has no date.
+	 * @param id The id of the last email before the cursor.
+	 */
+	public record Cursor(ZonedDateTime date, long id) {
+		public static Cursor after(EmailEntryPreview email) {
+			return new Cursor(email.date(), email.id());
+		}
+	}
+
+	/**
+	 * A single page of emails.
+	 * @param emails The emails on this page.
+	 * @param nextCursor The cursor to fetch the next page with, or null if
+	 *                   this is the last page.
+	 */
+	public record Page(List<EmailEntryPreview> emails, Cursor nextCursor) {
+		public boolean hasNextPage() {
+			return nextCursor != null;
+		}
+	}
+
+	private record CachedCount(long datasetVersion, long count) {}
+
+	private final EmailDataset dataset;
+	private final Map<String, CachedCount> countCache = new ConcurrentHashMap<>();
+	private volatile boolean indexEnsured = false;
+
+	public KeysetEmailSearcher(EmailDataset dataset) {
+		this.dataset = dataset;
+	}
+
+	/**
+	 * Fetches a page of emails.
+	 * @param cursor The cursor to start after, or null to get the first page.
+	 * @param size The maximum number of emails on the page.
+	 * @param filters The filters to apply.
+	 * @return A future that completes when the page has been fetched.
+	 */
+	public CompletableFuture<Page> findPage(Cursor cursor, int size, List<SearchFilter> filters) {
+		return CompletableFuture.supplyAsync(() -> fetchPage(cursor, 0, size, filters));
+	}
+
+	/**
+	 * Fetches a page of emails starting at an arbitrary offset. This is only
+	 * meant for jumping to a position for which no cursor is known, since the
+	 * database must skip over all preceding rows. The returned page's cursor
+	 * can be used to continue from there at constant cost.
+	 * @param offset The number of emails to skip.
+	 * @param size The maximum number of emails on the page.
+	 * @param filters The filters to apply.
+	 * @return A future that completes when the page has been fetched.
+	 */
+	public CompletableFuture<Page> findPageAtOffset(long offset, int size, List<SearchFilter> filters) {
+		return CompletableFuture.supplyAsync(() -> fetchPage(null, offset, size, filters));
+	}
+
+	private Page fetchPage(Cursor cursor, long offset, int size, List<SearchFilter> filters) {
+		// Fetch one extra row to find out if there's a next page.
+		List<EmailEntryPreview> emails = TagIndex.of(dataset).findIds(cursor, offset, size + 1, filters)
+				.map(ids -> EmailCache.of(dataset).getPreviews(ids))
+				.orElseGet(() -> queryPage(cursor, offset, size + 1, filters));
+		if (emails.size() > size) {
+			emails = emails.subList(0, size);
+			return new Page(emails, Cursor.after(emails.get(emails.size() - 1)));
+		}
+		return new Page(emails, null);
+	}
+
+	private List<EmailEntryPreview> queryPage(Cursor cursor, long offset, int limit, List<SearchFilter> filters) {
+		ensureIndex();
+		List<String> conditions = new ArrayList<>(filterConditions(filters));
+		if (cursor != null && cursor.date() != null) {
+			conditions.add("(DATE < ? OR DATE IS NULL OR (DATE = ? AND ID < ?))");
+		} else if (cursor != null) {
+			// Undated emails come after all others, so only undated ones are left.
+			conditions.add("(DATE IS NULL AND ID < ?)");
+		}
+		String query = "SELECT " + BulkEmailRepository.PREVIEW_COLUMNS + " FROM EMAIL" +
+				whereClause(conditions) +
+				" ORDER BY DATE DESC NULLS LAST, ID DESC LIMIT ? OFFSET ?";
+		List<EmailEntryPreview> emails = new ArrayList<>(limit);
+		try (PreparedStatement stmt = dataset.getConnection().prepareStatement(query)) {
+			int idx = 1;
+			if (cursor != null && cursor.date() != null) {
+				stmt.setObject(idx++, cursor.date().toOffsetDateTime());
+				stmt.setObject(idx++, cursor.date().toOffsetDateTime());
+			}
+			if (cursor != null) {
+				stmt.setLong(idx++, cursor.id());
+			}
+			stmt.setInt(idx++, limit);
+			stmt.setLong(idx, offset);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) emails.add(new EmailEntryPreview(rs));
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+		return emails;
+	}
+
+	/**
+	 * Counts the total number of emails that match the given filters. The
+	 * result is cached until the dataset is modified.
+	 * @param filters The filters to apply.
+	 * @return A future that completes with the count.
+	 */
+	public CompletableFuture<Long> countAll(List<SearchFilter> filters) {
+		OptionalLong indexedCount = TagIndex.of(dataset).count(filters);
+		if (indexedCount.isPresent()) return CompletableFuture.completedFuture(indexedCount.getAsLong());
+		String where = whereClause(filterConditions(filters));
+		long version = DatasetVersion.get(dataset);
+		CachedCount cached = countCache.get(where);
+		if (cached != null && cached.datasetVersion() == version) {
+			return CompletableFuture.completedFuture(cached.count());
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			try (Statement stmt = dataset.getConnection().createStatement();
+				 ResultSet rs = stmt.executeQuery("SELECT COUNT(ID) FROM EMAIL" + where)) {
+				long count = rs.next() ? rs.getLong(1) : 0;
+				countCache.put(where, new CachedCount(version, count));
+				return count;
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	/**
+	 * Makes sure that there's an index which matches the sort order that we
+	 * page through, since without it, every page would still need a sort.
+	 */
+	private void ensureIndex() {
+		if (indexEnsured) return;
+		Connection c = dataset.getConnection();
+		try (Statement stmt = c.createStatement()) {
+			stmt.executeUpdate("CREATE INDEX IF NOT EXISTS IDX_EMAIL_DATE_ID ON EMAIL(DATE DESC NULLS LAST, ID DESC)");
+			indexEnsured = true;
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static List<String> filterConditions(List<SearchFilter> filters) {
+		return filters.stream()
+				.map(SearchFilter::getWhereClause)
+				.filter(clause -> clause != null && !clause.isBlank())
+				.map(clause -> "(" + clause + ")")
+				.toList();
+	}
+
+	private static String whereClause(List<String> conditions) {
+		if (conditions.isEmpty()) return "";
+		return conditions.stream().collect(Collectors.joining(" AND ", " WHERE ", ""));
+	}
+}
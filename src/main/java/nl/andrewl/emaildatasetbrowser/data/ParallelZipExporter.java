@@ -0,0 +1,209 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Exports all files of a dataset's directory to a ZIP file, like the email
+ * indexer's exporter, but compressed on all cores.
+ * <p>
+ *     Each file is deflated into a temporary file of its own by a pool of
+ *     worker threads, and the compressed files are then copied into the
+ *     archive one after another. Lucene index files are mostly compressed
+ *     already, so they can be stored as they are instead, which is much
+ *     faster and barely makes the archive larger.
+ * </p>
+ */
+public class ParallelZipExporter {
+	private static final long PROGRESS_INTERVAL_MS = 1_000;
+
+	private final boolean storeIndexFiles;
+	private final int parallelism;
+
+	/**
+	 * @param storeIndexFiles Whether the files of Lucene indexes are stored
+	 *                        without compressing them.
+	 * @param parallelism The number of files to compress at once.
+	 */
+	public ParallelZipExporter(boolean storeIndexFiles, int parallelism) {
+		this.storeIndexFiles = storeIndexFiles;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public ParallelZipExporter(boolean storeIndexFiles) {
+		this(storeIndexFiles, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Exports a dataset. Its search index isn't changed until the export is
+	 * done, so that the archive contains a consistent copy of it.
+	 * @param ds The dataset to export.
+	 * @param file The ZIP file to write.
+	 * @param messages Receives messages about each step of the export.
+	 * @param progress Receives the number of bytes compressed so far, the
+	 *                 rate and the estimated remaining time, about every
+	 *                 second.
+	 * @return A future that completes when the file has been written.
+	 */
+	public CompletableFuture<Void> export(EmailDataset ds, Path file, Consumer<String> messages, Consumer<ZipExportProgress> progress) {
+		try (Statement stmt = ds.getConnection().createStatement()) {
+			// Writes all pending changes to the database file, so that it's complete.
+			stmt.execute("CHECKPOINT SYNC");
+		} catch (SQLException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return EmailIndex.of(ds).withCommittedFiles(indexFiles -> write(ds, file, indexFiles, messages, progress));
+	}
+
+	private void write(EmailDataset ds, Path file, List<Path> indexFiles, Consumer<String> messages, Consumer<ZipExportProgress> progress) throws IOException, InterruptedException, ExecutionException {
+		final long start = System.currentTimeMillis();
+		Path dir = ds.getOpenDir();
+		List<Path> files = listFiles(dir, file.toAbsolutePath(), indexFiles);
+		long totalBytes = 0;
+		for (var f : files) totalBytes += Files.size(f);
+		messages.accept("Compressing %d files (%.1f MB) on %d threads.".formatted(files.size(), totalBytes / (1024.0 * 1024), parallelism));
+
+		AtomicLong bytesRead = new AtomicLong();
+		Map<Path, Boolean> indexDirs = new HashMap<>();
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+			Thread thread = new Thread(r, "zip-exporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "zip-exporter-progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final long total = totalBytes;
+		reporter.scheduleAtFixedRate(
+				() -> progress.accept(new ZipExportProgress(bytesRead.get(), total, Duration.ofMillis(System.currentTimeMillis() - start))),
+				PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS
+		);
+		try {
+			// The creator shuts down the workers once all entries are written.
+			ParallelScatterZipCreator creator = new ParallelScatterZipCreator(workers);
+			for (var f : files) {
+				String name = dir.relativize(f).toString().replace(f.getFileSystem().getSeparator(), "/");
+				ZipArchiveEntry entry = new ZipArchiveEntry(f.toFile(), name);
+				boolean store = storeIndexFiles && isIndexFile(f, indexDirs);
+				entry.setMethod(store ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED);
+				creator.addArchiveEntry(entry, () -> {
+					try {
+						return new CountingInputStream(Files.newInputStream(f), bytesRead);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+			try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(file)) {
+				out.setUseZip64(Zip64Mode.AsNeeded);
+				creator.writeTo(out);
+			}
+		} finally {
+			workers.shutdownNow();
+			reporter.shutdownNow();
+		}
+		progress.accept(new ZipExportProgress(bytesRead.get(), totalBytes, Duration.ofMillis(System.currentTimeMillis() - start)));
+		double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+		messages.accept("Compressed %.1f MB into %.1f MB in %.1f seconds (%.1f MB/sec).".formatted(
+				totalBytes / (1024.0 * 1024),
+				Files.size(file) / (1024.0 * 1024),
+				seconds,
+				totalBytes / (1024.0 * 1024) / seconds
+		));
+	}
+
+	/**
+	 * Lists all files of a dataset. For the browser's search index, only the
+	 * files of its last commit are listed, and lock files are skipped, as is
+	 * the marker that older versions of the {@link ZipDatasetCache} wrote
+	 * into the directories of extracted datasets.
+	 */
+	private static List<Path> listFiles(Path dir, Path outputFile, List<Path> indexFiles) throws IOException {
+		Path indexDir = dir.resolve(EmailIndex.DIRECTORY_NAME);
+		Path legacyMarker = dir.resolve(".complete");
+		List<Path> files = new ArrayList<>(indexFiles);
+		try (Stream<Path> s = Files.walk(dir)) {
+			s.filter(Files::isRegularFile)
+					.filter(f -> !f.startsWith(indexDir))
+					.filter(f -> !f.toAbsolutePath().equals(outputFile))
+					.filter(f -> !f.equals(legacyMarker))
+					.filter(f -> {
+						String name = f.getFileName().toString();
+						return !name.equals("write.lock") && !name.endsWith(".lock.db");
+					})
+					.forEach(files::add);
+		}
+		// The largest files are compressed first, so that they don't hold up the end of the export.
+		files.sort(Comparator.comparingLong(ParallelZipExporter::sizeOf).reversed());
+		return files;
+	}
+
+	private static long sizeOf(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Tells whether a file belongs to a Lucene index, which is the case if
+	 * its directory has a commit.
+	 */
+	private static boolean isIndexFile(Path file, Map<Path, Boolean> indexDirs) {
+		return indexDirs.computeIfAbsent(file.getParent(), dir -> {
+			try (Stream<Path> s = Files.list(dir)) {
+				return s.anyMatch(f -> f.getFileName().toString().startsWith("segments_"));
+			} catch (IOException e) {
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Adds the number of bytes that are read from a stream to a counter.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private final AtomicLong count;
+
+		CountingInputStream(InputStream in, AtomicLong count) {
+			super(in);
+			this.count = count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) count.incrementAndGet();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) count.addAndGet(n);
+			return n;
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+import nl.andrewl.email_indexer.data.search.filter.HiddenFilter;
+import nl.andrewl.email_indexer.data.search.filter.RootFilter;
+import nl.andrewl.email_indexer.data.search.filter.TagFilter;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory index of which emails have which tags, and which emails are
+ * hidden or roots, stored as compressed bitmaps of email ids. With it, tag
+ * filters combined with the hidden and root selects, as well as the number of
+ * emails with each tag, can be computed without querying the database. Use
+ * {@link #of(EmailDataset)} to get the index for a dataset.
+ * <p>
+ *     The index is built in the background when it's first requested, and is
+ *     then kept up-to-date by listening to the dataset's
+ *     {@link DatasetEventBus}. Until it's ready, all methods return an empty
+ *     result, so that callers can fall back to SQL. The same goes for datasets
+ *     whose email ids don't fit in an int, and for filters that the index
+ *     doesn't understand.
+ * </p>
+ * <p>
+ *     Besides the bitmaps, the index keeps all email ids in the same order as
+ *     {@link KeysetEmailSearcher} pages through them, so that a page of
+ *     matching emails can be found by simply walking that order.
+ * </p>
+ */
+public class TagIndex {
+	private static final Map<EmailDataset, TagIndex> indexes = new WeakHashMap<>();
+
+	/**
+	 * The contents of a fully built index.
+	 */
+	private static class State {
+		final RoaringBitmap all = new RoaringBitmap();
+		final RoaringBitmap hidden = new RoaringBitmap();
+		final RoaringBitmap roots = new RoaringBitmap();
+		final Map<Integer, RoaringBitmap> tags = new HashMap<>();
+		/**
+		 * All email ids, ordered by date and id, both descending.
+		 */
+		int[] idsByDate;
+		/**
+		 * The date of each email in {@link #idsByDate}, as returned by
+		 * {@link #dateKey(ZonedDateTime)}.
+		 */
+		long[] dateKeys;
+	}
+
+	private final EmailDataset dataset;
+	private final Consumer<DatasetEvent> eventSubscriber = this::handle;
+	private State state = null;
+	private boolean building = false;
+	/**
+	 * Set when a change arrives that we can't apply incrementally while
+	 * building, so that we know to build again.
+	 */
+	private boolean rebuildNeeded = false;
+	private boolean released = false;
+
+	private TagIndex(EmailDataset dataset) {
+		this.dataset = dataset;
+		DatasetEventBus.of(dataset).subscribe(eventSubscriber);
+	}
+
+	/**
+	 * Gets the index for a dataset, creating it and starting to build it in
+	 * the background if needed.
+	 * @param ds The dataset.
+	 * @return The dataset's index.
+	 */
+	public static synchronized TagIndex of(EmailDataset ds) {
+		return indexes.computeIfAbsent(ds, d -> {
+			var index = new TagIndex(d);
+			index.rebuildAsync();
+			return index;
+		});
+	}
+
+	/**
+	 * Discards the index for a dataset, once it's been closed.
+	 * @param ds The dataset.
+	 */
+	public static synchronized void release(EmailDataset ds) {
+		TagIndex index = indexes.remove(ds);
+		if (index != null) {
+			synchronized (index) {
+				index.released = true;
+				index.state = null;
+			}
+			DatasetEventBus.of(ds).unsubscribe(index.eventSubscriber);
+		}
+	}
+
+	public synchronized boolean isReady() {
+		return state != null;
+	}
+
+	/**
+	 * Counts the emails that match the given filters.
+	 * @param filters The filters to apply.
+	 * @return The count, or empty if the index can't answer this.
+	 */
+	public synchronized OptionalLong count(List<SearchFilter> filters) {
+		RoaringBitmap matches = match(filters);
+		return matches == null ? OptionalLong.empty() : OptionalLong.of(matches.getLongCardinality());
+	}
+
+	/**
+	 * Counts the emails that have each tag.
+	 * @return A map from tag id to the number of emails with that tag, or
+	 * empty if the index isn't ready. Tags without emails may be missing.
+	 */
+	public synchronized Optional<Map<Integer, Long>> countTaggedEmails() {
+		if (state == null) return Optional.empty();
+		Map<Integer, Long> counts = new HashMap<>();
+		state.tags.forEach((tagId, emails) -> counts.put(tagId, emails.getLongCardinality()));
+		return Optional.of(counts);
+	}
+
+	/**
+	 * Counts the emails among the given ones that have each tag.
+	 * @param emailIds The ids of the emails to count.
+	 * @return A map from tag id to the number of the given emails with that
+	 * tag, or empty if the index isn't ready. Tags without any of the given
+	 * emails are missing.
+	 */
+	public synchronized Optional<Map<Integer, Long>> countTaggedEmails(RoaringBitmap emailIds) {
+		if (state == null) return Optional.empty();
+		Map<Integer, Long> counts = new HashMap<>();
+		state.tags.forEach((tagId, emails) -> {
+			long count = RoaringBitmap.andCardinality(emails, emailIds);
+			if (count > 0) counts.put(tagId, count);
+		});
+		return Optional.of(counts);
+	}
+
+	/**
+	 * Finds the ids of the emails on a page, in the same order that
+	 * {@link KeysetEmailSearcher} uses.
+	 * @param cursor The cursor to start after, or null to start at the top.
+	 * @param offset The number of matching emails to skip after the cursor.
+	 * @param size The maximum number of ids to find.
+	 * @param filters The filters to apply.
+	 * @return The ids, or empty if the index can't answer this.
+	 */
+	public synchronized Optional<List<Long>> findIds(KeysetEmailSearcher.Cursor cursor, long offset, int size, List<SearchFilter> filters) {
+		RoaringBitmap matches = match(filters);
+		if (matches == null) return Optional.empty();
+		int position = cursor == null ? 0 : positionAfter(cursor);
+		List<Long> ids = new ArrayList<>(size);
+		long skipped = 0;
+		for (int i = position; i < state.idsByDate.length && ids.size() < size; i++) {
+			int id = state.idsByDate[i];
+			if (!matches.contains(id)) continue;
+			if (skipped < offset) {
+				skipped++;
+			} else {
+				ids.add((long) id);
+			}
+		}
+		return Optional.of(ids);
+	}
+
+	/**
+	 * Computes the set of emails that match all filters.
+	 * @return The matching emails, or null if the index isn't ready or one of
+	 * the filters isn't supported.
+	 */
+	private RoaringBitmap match(List<SearchFilter> filters) {
+		if (state == null) return null;
+		RoaringBitmap result = state.all.clone();
+		for (var filter : filters) {
+			if (filter instanceof HiddenFilter f) {
+				if (f.hidden()) {
+					result.and(state.hidden);
+				} else {
+					result.andNot(state.hidden);
+				}
+			} else if (filter instanceof RootFilter f) {
+				if (f.root()) {
+					result.and(state.roots);
+				} else {
+					result.andNot(state.roots);
+				}
+			} else if (filter instanceof TagFilter f) {
+				RoaringBitmap tagged = new RoaringBitmap();
+				for (int tagId : f.tagIds()) {
+					RoaringBitmap emails = state.tags.get(tagId);
+					if (emails != null) tagged.or(emails);
+				}
+				if (f.type() == TagFilter.Type.INCLUDE_ANY) {
+					if (f.tagIds().isEmpty()) return null;
+					result.and(tagged);
+				} else if (f.type() == TagFilter.Type.EXCLUDE_ANY) {
+					result.andNot(tagged);
+				} else {
+					// Other kinds of tag filters are left to the database.
+					return null;
+				}
+			} else {
+				return null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the position of the first email that comes after the given cursor.
+	 */
+	private int positionAfter(KeysetEmailSearcher.Cursor cursor) {
+		long date = dateKey(cursor.date());
+		int low = 0;
+		int high = state.idsByDate.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			long d = state.dateKeys[mid];
+			boolean before = d > date || (d == date && state.idsByDate[mid] >= cursor.id());
+			if (before) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private synchronized void handle(DatasetEvent event) {
+		if (released) return;
+		if (building) {
+			rebuildNeeded = true;
+			return;
+		}
+		if (state == null) return;
+		if (event instanceof DatasetEvent.EmailHidden e && fitsInt(e.emailId())) {
+			state.hidden.add((int) e.emailId());
+		} else if (event instanceof DatasetEvent.EmailShown e && fitsInt(e.emailId())) {
+			state.hidden.remove((int) e.emailId());
+		} else if (event instanceof DatasetEvent.TagAdded e && fitsInt(e.emailId())) {
+			state.tags.computeIfAbsent(e.tag().id(), id -> new RoaringBitmap()).add((int) e.emailId());
+		} else if (event instanceof DatasetEvent.TagRemoved e && fitsInt(e.emailId())) {
+			RoaringBitmap emails = state.tags.get(e.tag().id());
+			if (emails != null) emails.remove((int) e.emailId());
+		} else if (event instanceof DatasetEvent.TagDeleted e) {
+			state.tags.remove(e.tagId());
+		} else if (event instanceof DatasetEvent.TagCreated || event instanceof DatasetEvent.TagUpdated) {
+			// Nothing to do, since we only store tag ids.
+		} else {
+			// Bulk changes can affect any email, so we start over.
+			state = null;
+			rebuildAsync();
+		}
+	}
+
+	private synchronized void rebuildAsync() {
+		if (building || released) return;
+		building = true;
+		rebuildNeeded = false;
+		CompletableFuture.supplyAsync(this::build).whenComplete((newState, throwable) -> {
+			synchronized (this) {
+				building = false;
+				if (released) return;
+				if (throwable != null) {
+					throwable.printStackTrace();
+					state = null;
+				} else if (rebuildNeeded) {
+					state = null;
+					rebuildAsync();
+				} else {
+					state = newState;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Builds the index by reading all emails and tags from the database.
+	 * @return The new state, or null if the dataset has email ids that don't
+	 * fit in an int.
+	 */
+	private State build() {
+		State s = new State();
+		int[] ids = new int[1024];
+		long[] dates = new long[1024];
+		int count = 0;
+		var c = dataset.getConnection();
+		try (PreparedStatement stmt = c.prepareStatement("SELECT ID, PARENT_ID, HIDDEN, DATE FROM EMAIL ORDER BY DATE DESC NULLS LAST, ID DESC");
+			 ResultSet rs = stmt.executeQuery()) {
+			while (rs.next()) {
+				long id = rs.getLong(1);
+				if (!fitsInt(id)) return null;
+				rs.getLong(2);
+				boolean root = rs.wasNull();
+				boolean hidden = rs.getBoolean(3);
+				OffsetDateTime date = rs.getObject(4, OffsetDateTime.class);
+				if (count == ids.length) {
+					ids = Arrays.copyOf(ids, count * 2);
+					dates = Arrays.copyOf(dates, count * 2);
+				}
+				ids[count] = (int) id;
+				dates[count] = dateKey(date == null ? null : date.toZonedDateTime());
+				count++;
+				s.all.add((int) id);
+				if (root) s.roots.add((int) id);
+				if (hidden) s.hidden.add((int) id);
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+		s.idsByDate = Arrays.copyOf(ids, count);
+		s.dateKeys = Arrays.copyOf(dates, count);
+		try (PreparedStatement stmt = c.prepareStatement("SELECT EMAIL_ID, TAG_ID FROM EMAIL_TAG");
+			 ResultSet rs = stmt.executeQuery()) {
+			while (rs.next()) {
+				long emailId = rs.getLong(1);
+				if (!fitsInt(emailId)) return null;
+				s.tags.computeIfAbsent(rs.getInt(2), id -> new RoaringBitmap()).add((int) emailId);
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+		s.all.runOptimize();
+		s.roots.runOptimize();
+		s.hidden.runOptimize();
+		s.tags.values().forEach(RoaringBitmap::runOptimize);
+		return s;
+	}
+
+	/**
+	 * Converts a date to a number that sorts the same way as the database
+	 * sorts dates. Missing dates sort after all others, in descending order.
+	 */
+	private static long dateKey(ZonedDateTime date) {
+		if (date == null) return Long.MIN_VALUE;
+		return date.toEpochSecond() * 1_000_000_000L + date.getNano();
+	}
+
+	private static boolean fitsInt(long id) {
+		return id >= 0 && id <= Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,487 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
+import nl.andrewl.emaildatasetbrowser.util.FileHelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Opens datasets from ZIP files by extracting them to a cache directory, so
+ * that opening the same archive again doesn't extract it again.
+ * <p>
+ *     Each archive is extracted to a directory that's named after a hash of
+ *     its entries' names, sizes and checksums, so a changed archive gets a
+ *     directory of its own. Entries are extracted in parallel. The database
+ *     is extracted first, and the dataset is opened as soon as it's done,
+ *     while the search indexes are extracted in the background. Searches and
+ *     the browser's {@link EmailIndex} wait for that with
+ *     {@link #whenExtracted(Path)}. Once everything is extracted, a
+ *     {@value #COMPLETE_MARKER} file is written next to the directory, and
+ *     only directories with that marker are reused. The marker isn't written
+ *     inside the directory, so that it doesn't end up in the dataset when
+ *     it's exported again.
+ * </p>
+ * <p>
+ *     Reading the archive, and deleting an unfinished earlier extraction,
+ *     happens in the background, never on the caller's thread. While an
+ *     archive is extracted, a lock is held on a {@value #LOCK_SUFFIX} file
+ *     next to its directory, so that another running instance of the browser
+ *     waits for the extraction to finish instead of deleting it.
+ * </p>
+ * <p>
+ *     Just like when the email indexer extracts a dataset, changes are saved
+ *     in the extracted directory, not in the ZIP file. The first time a
+ *     dataset from the cache is changed, as seen on its
+ *     {@link DatasetEventBus}, its marker is removed, so that the archive is
+ *     extracted again the next time it's opened, instead of reusing a
+ *     directory that no longer matches it. Within the same run of the
+ *     browser, the changed directory is still reused, since it may be open.
+ * </p>
+ * <p>
+ *     Whenever an archive is opened, directories that haven't been used for
+ *     {@link #MAX_UNUSED} are removed from the cache, and if the cache is
+ *     larger than {@link #MAX_SIZE}, the least recently used directories are
+ *     removed until it fits. The modification time of a directory's lock file
+ *     is the last time it was used. Directories that are open or being
+ *     extracted are never removed.
+ * </p>
+ */
+public final class ZipDatasetCache {
+	private static final String COMPLETE_MARKER = ".complete";
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final Duration MAX_UNUSED = Duration.ofDays(30);
+	private static final long MAX_SIZE = 20L * 1024 * 1024 * 1024;
+
+	/**
+	 * The extractions that are still running, by the directory of their
+	 * dataset.
+	 */
+	private static final Map<Path, Extraction> pendingExtractions = new ConcurrentHashMap<>();
+
+	/**
+	 * The directories that have been opened in this run of the browser. These
+	 * are never removed, since their dataset may still be open.
+	 */
+	private static final Set<Path> openedDirs = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The directories whose dataset has been changed in this run of the
+	 * browser, which must not get a marker anymore.
+	 */
+	private static final Set<Path> changedDirs = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * An extraction that's running.
+	 * @param database Completes with the dataset's directory once the
+	 *                 database is extracted.
+	 * @param all Completes once all files are extracted.
+	 */
+	private record Extraction(CompletableFuture<Path> database, CompletableFuture<Void> all) {}
+
+	private ZipDatasetCache() {}
+
+	/**
+	 * Gets the directory that archives are extracted to.
+	 * @return The cache directory.
+	 */
+	public static Path getCacheDir() {
+		return Path.of(System.getProperty("user.home"), ".email-dataset-browser", "zip-cache");
+	}
+
+	/**
+	 * Opens a dataset. ZIP files are extracted to the cache first, or reused
+	 * if they were extracted before, and all other paths are opened by the
+	 * email indexer directly.
+	 * @param path The path to the dataset's directory or ZIP file.
+	 * @param messages Receives messages about extracting the archive.
+	 * @return A future that completes when the dataset is open.
+	 */
+	public static CompletableFuture<EmailDataset> open(Path path, Consumer<String> messages) {
+		if (!isZipFile(path)) return EmailDataset.open(path);
+		return CompletableFuture.supplyAsync(() -> extract(path, messages))
+				.thenCompose(database -> database)
+				.thenCompose(datasetDir -> EmailDataset.open(datasetDir).thenApply(ds -> {
+					Path dir = cacheDirOf(datasetDir);
+					DatasetEventBus.of(ds).subscribe(event -> onChanged(dir));
+					return ds;
+				}));
+	}
+
+	/**
+	 * Removes the marker of a directory once its dataset is changed, so that
+	 * it won't be reused after this run of the browser.
+	 */
+	private static void onChanged(Path dir) {
+		if (!changedDirs.add(dir)) return;
+		try {
+			Files.deleteIfExists(markerOf(dir));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Gets a future that completes when a dataset's files are all extracted.
+	 * @param datasetDir The directory of the dataset.
+	 * @return A future that completes when the dataset's extraction is done,
+	 * which is right away if it's not being extracted. It never completes
+	 * exceptionally.
+	 */
+	public static CompletableFuture<Void> whenExtracted(Path datasetDir) {
+		Extraction pending = pendingExtractions.get(datasetDir.toAbsolutePath().normalize());
+		if (pending == null) return CompletableFuture.completedFuture(null);
+		return pending.all().exceptionally(throwable -> null);
+	}
+
+	private static Path markerOf(Path dir) {
+		return dir.resolveSibling(dir.getFileName() + COMPLETE_MARKER);
+	}
+
+	private static Path lockFileOf(Path dir) {
+		return dir.resolveSibling(dir.getFileName() + LOCK_SUFFIX);
+	}
+
+	/**
+	 * Gets the directory in the cache that a dataset was extracted to.
+	 */
+	private static Path cacheDirOf(Path datasetDir) {
+		Path cacheDir = getCacheDir().toAbsolutePath().normalize();
+		Path dir = datasetDir;
+		while (dir.getParent() != null && !dir.getParent().equals(cacheDir)) {
+			dir = dir.getParent();
+		}
+		return dir;
+	}
+
+	private static boolean isZipFile(Path path) {
+		return Files.isRegularFile(path) && path.getFileName().toString().toLowerCase().endsWith(".zip");
+	}
+
+	/**
+	 * Extracts an archive, or finds its earlier extraction. This blocks while
+	 * the archive is read, and while another instance of the browser is
+	 * extracting it.
+	 * @return A future that completes with the dataset's directory once its
+	 * database is extracted.
+	 */
+	private static CompletableFuture<Path> extract(Path zipFile, Consumer<String> messages) {
+		ZipFile zip = null;
+		FileChannel lockChannel = null;
+		Path datasetDir = null;
+		Extraction extraction = null;
+		try {
+			zip = new ZipFile(zipFile.toFile());
+			List<? extends ZipEntry> entries = Collections.list(zip.entries());
+			Path dir = getCacheDir().resolve(cacheName(zipFile, entries)).toAbsolutePath().normalize();
+			datasetDir = findDatasetDir(dir, entries);
+			Extraction created = new Extraction(new CompletableFuture<>(), new CompletableFuture<>());
+			Extraction pending = pendingExtractions.putIfAbsent(datasetDir, created);
+			if (pending != null) {
+				zip.close();
+				return pending.database();
+			}
+			extraction = created;
+
+			// Added before locking, so that it isn't removed from the cache while we wait for the lock.
+			openedDirs.add(dir);
+			Files.createDirectories(dir.getParent());
+			Path lockFile = lockFileOf(dir);
+			lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if (lockChannel.tryLock() == null) {
+				messages.accept("Waiting for another instance of the browser to finish extracting the dataset.");
+				lockChannel.lock();
+			}
+			Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis()));
+			long size = 0;
+			for (var entry : entries) size += Math.max(0, entry.getSize());
+			evict(dir, size, messages);
+			// A directory that was changed in this run is reused even without a marker, since it may still be open.
+			if (Files.exists(markerOf(dir)) || changedDirs.contains(dir)) {
+				lockChannel.close();
+				zip.close();
+				messages.accept("Using the dataset that was extracted before to " + dir);
+				pendingExtractions.remove(datasetDir);
+				extraction.all().complete(null);
+				extraction.database().complete(datasetDir);
+				return extraction.database();
+			}
+			// An earlier extraction didn't finish or was changed since, and nobody is working on it anymore, so we start over.
+			FileHelper.deleteRecursively(dir);
+			Files.createDirectories(dir);
+			messages.accept("Extracting %d files to %s".formatted(entries.size(), dir));
+			startExtraction(zip, entries, dir, datasetDir, lockChannel, extraction, messages);
+			return extraction.database();
+		} catch (IOException | RuntimeException e) {
+			closeQuietly(zip);
+			closeQuietly(lockChannel);
+			if (extraction != null) {
+				pendingExtractions.remove(datasetDir);
+				extraction.all().completeExceptionally(e);
+				extraction.database().completeExceptionally(e);
+			}
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Starts extracting all entries of an archive, and completes the given
+	 * extraction's futures as it goes. The archive and the lock are closed
+	 * once all entries are extracted.
+	 */
+	private static void startExtraction(
+			ZipFile zip,
+			List<? extends ZipEntry> entries,
+			Path dir,
+			Path datasetDir,
+			FileChannel lockChannel,
+			Extraction extraction,
+			Consumer<String> messages
+	) throws IOException {
+		final long start = System.currentTimeMillis();
+		Set<String> indexDirs = findIndexDirs(entries);
+		List<ZipEntry> databaseEntries = new ArrayList<>();
+		List<ZipEntry> indexEntries = new ArrayList<>();
+		Path legacyMarker = datasetDir.resolve(COMPLETE_MARKER);
+		for (var entry : entries) {
+			Path target = resolve(dir, entry);
+			// Archives exported from the cache by older versions of the browser may contain its marker.
+			if (target.equals(legacyMarker)) continue;
+			if (entry.isDirectory()) {
+				Files.createDirectories(target);
+			} else {
+				Files.createDirectories(target.getParent());
+				(indexDirs.contains(parentName(entry)) ? indexEntries : databaseEntries).add(entry);
+			}
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread thread = new Thread(r, "zip-extractor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// The database is submitted first, so the workers get to the indexes once it's done.
+		CompletableFuture<Void> database = extractAll(zip, databaseEntries, dir, workers);
+		CompletableFuture<Void> indexes = extractAll(zip, indexEntries, dir, workers);
+		database.whenComplete((unused, throwable) -> {
+			if (throwable != null) {
+				extraction.database().completeExceptionally(throwable);
+				return;
+			}
+			if (!indexEntries.isEmpty()) {
+				messages.accept("Extracted the database in %.1f seconds. The search indexes are extracted in the background.".formatted(
+						(System.currentTimeMillis() - start) / 1000.0
+				));
+			}
+			extraction.database().complete(datasetDir);
+		});
+		CompletableFuture.allOf(database, indexes).thenRun(() -> {
+			try {
+				Path marker = markerOf(dir);
+				Files.createFile(marker);
+				// The dataset may have been changed while the indexes were extracted.
+				if (changedDirs.contains(dir)) Files.deleteIfExists(marker);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).whenComplete((unused, throwable) -> {
+			workers.shutdown();
+			closeQuietly(zip);
+			// Only now may another instance use or replace the directory.
+			closeQuietly(lockChannel);
+			pendingExtractions.remove(datasetDir);
+			if (throwable != null) {
+				messages.accept("Could not extract all files: " + throwable.getMessage());
+				extraction.all().completeExceptionally(throwable);
+			} else {
+				messages.accept("Extracted all files in %.1f seconds.".formatted((System.currentTimeMillis() - start) / 1000.0));
+				extraction.all().complete(null);
+			}
+		});
+	}
+
+	/**
+	 * Removes directories from the cache that haven't been used for a while,
+	 * and the least recently used ones while the cache is too large. The
+	 * given directory is never removed.
+	 * @param keep The directory that's being opened.
+	 * @param keepSize The size of the files in that directory.
+	 * @param messages Receives a message for each removed directory.
+	 */
+	private static void evict(Path keep, long keepSize, Consumer<String> messages) throws IOException {
+		record CachedDir(Path dir, long lastUsed, long size) {}
+		List<CachedDir> candidates = new ArrayList<>();
+		long totalSize = keepSize;
+		try (Stream<Path> s = Files.list(keep.getParent())) {
+			for (var dir : s.filter(Files::isDirectory).toList()) {
+				if (dir.equals(keep)) continue;
+				long size = sizeOf(dir);
+				totalSize += size;
+				if (openedDirs.contains(dir)) continue;
+				Path lockFile = lockFileOf(dir);
+				Path lastUsedFile = Files.exists(lockFile) ? lockFile : dir;
+				candidates.add(new CachedDir(dir, Files.getLastModifiedTime(lastUsedFile).toMillis(), size));
+			}
+		}
+		candidates.sort(Comparator.comparingLong(CachedDir::lastUsed));
+		long unusedSince = System.currentTimeMillis() - MAX_UNUSED.toMillis();
+		for (var candidate : candidates) {
+			boolean unused = candidate.lastUsed() < unusedSince;
+			if (!unused && totalSize <= MAX_SIZE) break;
+			if (remove(candidate.dir())) {
+				totalSize -= candidate.size();
+				messages.accept("Removed %s from the cache, since %s.".formatted(
+						candidate.dir(),
+						unused ? "it wasn't used for " + MAX_UNUSED.toDays() + " days" : "the cache was too large"
+				));
+			}
+		}
+	}
+
+	/**
+	 * Removes a directory from the cache, unless another instance of the
+	 * browser is extracting it.
+	 * @return Whether the directory was removed.
+	 */
+	private static boolean remove(Path dir) throws IOException {
+		try (
+				FileChannel channel = FileChannel.open(lockFileOf(dir), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = channel.tryLock()
+		) {
+			if (lock == null) return false;
+			// The marker goes first, so that a directory that's only partly removed is never reused.
+			Files.deleteIfExists(markerOf(dir));
+			FileHelper.deleteRecursively(dir);
+			return true;
+		} catch (OverlappingFileLockException e) {
+			return false;
+		}
+	}
+
+	private static long sizeOf(Path dir) throws IOException {
+		try (Stream<Path> s = Files.walk(dir)) {
+			return s.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null) return;
+		try {
+			closeable.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	private static CompletableFuture<Void> extractAll(ZipFile zip, List<ZipEntry> entries, Path dir, ExecutorService workers) {
+		// Large entries are started first, so that they don't hold up the end.
+		entries.sort(Comparator.comparingLong(ZipEntry::getSize).reversed());
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[entries.size()];
+		for (int i = 0; i < entries.size(); i++) {
+			ZipEntry entry = entries.get(i);
+			futures[i] = CompletableFuture.runAsync(() -> {
+				try (InputStream in = zip.getInputStream(entry)) {
+					Files.copy(in, resolve(dir, entry), StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, workers);
+		}
+		return CompletableFuture.allOf(futures);
+	}
+
+	/**
+	 * Gets the path that an entry is extracted to, and makes sure that it's
+	 * inside the directory.
+	 */
+	private static Path resolve(Path dir, ZipEntry entry) throws IOException {
+		Path target = dir.resolve(entry.getName()).normalize();
+		if (!target.startsWith(dir)) throw new IOException("Invalid entry in ZIP file: " + entry.getName());
+		return target;
+	}
+
+	/**
+	 * Gets the name of the directory of an entry, or an empty string if it's
+	 * at the top of the archive.
+	 */
+	private static String parentName(ZipEntry entry) {
+		String name = entry.getName();
+		int slash = name.lastIndexOf('/', name.endsWith("/") ? name.length() - 2 : name.length() - 1);
+		return slash < 0 ? "" : name.substring(0, slash);
+	}
+
+	/**
+	 * Finds the directories in the archive that contain a Lucene index, which
+	 * is the case if they contain a commit.
+	 */
+	private static Set<String> findIndexDirs(List<? extends ZipEntry> entries) {
+		Set<String> indexDirs = new HashSet<>();
+		for (var entry : entries) {
+			String name = entry.getName();
+			String fileName = name.substring(name.lastIndexOf('/') + 1);
+			if (!entry.isDirectory() && fileName.startsWith("segments_")) indexDirs.add(parentName(entry));
+		}
+		return indexDirs;
+	}
+
+	/**
+	 * Gets the directory of the dataset, which is the extraction directory
+	 * itself, unless all entries are in a single directory.
+	 */
+	private static Path findDatasetDir(Path dir, List<? extends ZipEntry> entries) {
+		String topDir = null;
+		for (var entry : entries) {
+			int slash = entry.getName().indexOf('/');
+			if (slash < 0) return dir;
+			String name = entry.getName().substring(0, slash);
+			if (topDir == null) {
+				topDir = name;
+			} else if (!topDir.equals(name)) {
+				return dir;
+			}
+		}
+		return topDir == null ? dir : dir.resolve(topDir).normalize();
+	}
+
+	/**
+	 * Gets the name of the directory that an archive is extracted to, which
+	 * includes a hash of the names, sizes and checksums of its entries. This
+	 * only reads the archive's central directory, so it's fast even for very
+	 * large archives.
+	 */
+	private static String cacheName(Path zipFile, List<? extends ZipEntry> entries) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		for (var entry : entries) {
+			digest.update("%s:%d:%d\n".formatted(entry.getName(), entry.getSize(), entry.getCrc()).getBytes(StandardCharsets.UTF_8));
+		}
+		String hash = HexFormat.of().formatHex(digest.digest(), 0, 12);
+		String name = zipFile.getFileName().toString();
+		name = name.substring(0, name.length() - ".zip".length()).replaceAll("[^A-Za-z0-9._-]", "_");
+		return name + "-" + hash;
+	}
+}
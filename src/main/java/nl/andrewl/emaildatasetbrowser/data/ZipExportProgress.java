@@ -0,0 +1,49 @@
+package nl.andrewl.emaildatasetbrowser.data;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The progress of exporting a dataset to a ZIP file, which is reported
+ * periodically while the export is running.
+ * @param bytesRead The number of bytes of the dataset's files that have been
+ *                  compressed so far.
+ * @param totalBytes The total size of the dataset's files.
+ * @param elapsed The time since the export started.
+ */
+public record ZipExportProgress(long bytesRead, long totalBytes, Duration elapsed) {
+	private static final double MEGABYTE = 1024 * 1024;
+
+	/**
+	 * Gets the average number of bytes compressed per second so far.
+	 * @return The rate.
+	 */
+	public double getBytesPerSecond() {
+		return bytesRead / (Math.max(1, elapsed.toMillis()) / 1000.0);
+	}
+
+	/**
+	 * Estimates the remaining time until all files are compressed, based on
+	 * the average rate so far.
+	 * @return The estimated remaining time, or empty if nothing has been
+	 * compressed yet.
+	 */
+	public Optional<Duration> getEta() {
+		double rate = getBytesPerSecond();
+		if (bytesRead == 0 || rate <= 0) return Optional.empty();
+		return Optional.of(Duration.ofMillis((long) ((totalBytes - bytesRead) / rate * 1000)));
+	}
+
+	/**
+	 * Describes the progress in a single line of text.
+	 * @return The description.
+	 */
+	public String describe() {
+		String eta = getEta()
+				.map(d -> "%d:%02d".formatted(d.toMinutes(), d.toSecondsPart()))
+				.orElse("unknown");
+		return "Compressed %.1f of %.1f MB (%.1f MB/sec, ETA %s).".formatted(
+				bytesRead / MEGABYTE, totalBytes / MEGABYTE, getBytesPerSecond() / MEGABYTE, eta
+		);
+	}
+}
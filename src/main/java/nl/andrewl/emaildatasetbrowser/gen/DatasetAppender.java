@@ -0,0 +1,183 @@
+package nl.andrewl.emaildatasetbrowser.gen;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.util.DbUtils;
+import nl.andrewl.email_indexer.util.Status;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.index.IndexChangeLog;
+import nl.andrewl.emaildatasetbrowser.util.FileHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Adds the emails from new mbox files to an existing dataset, without
+ * touching its tags, hidden emails or anything else.
+ * <p>
+ *     Every mbox file that's appended is recorded in the dataset, by its name,
+ *     size and checksum, so that appending the same files again skips them
+ *     without parsing them. The remaining files are parsed into a temporary
+ *     dataset, whose emails are then merged into the existing one by a
+ *     {@link DatasetMerger}: emails whose message id is already present are
+ *     skipped, and replies are linked into existing threads. The new and
+ *     relinked emails are recorded in the dataset's {@link IndexChangeLog},
+ *     so that only they are added to the browser's search index.
+ * </p>
+ */
+public class DatasetAppender {
+	private final Status status;
+
+	public DatasetAppender(Status status) {
+		this.status = status;
+	}
+
+	/**
+	 * The result of appending to a dataset.
+	 * @param insertedCount The number of emails that were added.
+	 * @param duplicateCount The number of emails that were skipped, because
+	 *                       their message id was already in the dataset.
+	 * @param linkedCount The number of emails that were linked to a parent
+	 *                    that they couldn't be linked to before.
+	 * @param skippedFileCount The number of mbox files that were skipped,
+	 *                         because they were appended before.
+	 */
+	public record Result(long insertedCount, long duplicateCount, long linkedCount, int skippedFileCount) {}
+
+	/**
+	 * A single mbox file to append.
+	 */
+	private record MboxFile(Path path, long size, String checksum) {}
+
+	/**
+	 * Appends the emails in all mbox files in the given directories.
+	 * @param ds The dataset to append to.
+	 * @param mboxDirs The directories containing the mbox files.
+	 * @return A future that completes when the emails have been appended.
+	 */
+	public CompletableFuture<Result> append(EmailDataset ds, Collection<Path> mboxDirs) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return doAppend(ds, mboxDirs);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	private Result doAppend(EmailDataset ds, Collection<Path> mboxDirs) throws Exception {
+		final long start = System.currentTimeMillis();
+		var c = ds.getConnection();
+		try (Statement stmt = c.createStatement()) {
+			stmt.execute("""
+					CREATE TABLE IF NOT EXISTS APPENDED_MBOX_FILE (
+						ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+						NAME VARCHAR(1024) NOT NULL,
+						SIZE BIGINT NOT NULL,
+						CHECKSUM VARCHAR(64) NOT NULL,
+						APPENDED_AT TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+					)""");
+		}
+
+		List<MboxFile> newFiles = new ArrayList<>();
+		int skippedFiles = 0;
+		List<Path> mboxFiles = MboxPartitioner.findMboxFiles(mboxDirs, file -> status.sendMessage("Skipping " + file + ", since it's not an mbox file."));
+		for (var path : mboxFiles) {
+			long size = Files.size(path);
+			String checksum = checksum(path);
+			if (DbUtils.count(c, "SELECT COUNT(ID) FROM APPENDED_MBOX_FILE WHERE SIZE = ? AND CHECKSUM = ?", size, checksum) > 0) {
+				status.sendMessage("Skipping " + path.getFileName() + ", since it was appended before.");
+				skippedFiles++;
+			} else {
+				newFiles.add(new MboxFile(path, size, checksum));
+			}
+		}
+		if (newFiles.isEmpty()) {
+			status.sendMessage("There are no new mbox files to append.");
+			return new Result(0, 0, 0, skippedFiles);
+		}
+
+		Path tempDir = Files.createTempDirectory("edb-append");
+		try {
+			Path mboxDir = tempDir.resolve("mbox");
+			Path tempDatasetDir = tempDir.resolve("dataset");
+			MboxPartitioner.writePartition(
+					newFiles.stream().map(f -> new MboxPartitioner.Segment(f.path(), 0, f.size())).toList(),
+					mboxDir
+			);
+			Files.createDirectories(tempDatasetDir);
+			status.sendMessage("Parsing %d new mbox files.".formatted(newFiles.size()));
+			new ParallelDatasetGenerator(status).generate(List.of(mboxDir), tempDatasetDir).join();
+
+			status.sendMessage("Merging the new emails into the dataset.");
+			DatasetMerger merger = new DatasetMerger(ds);
+			merger.prepareTarget();
+			var changeLog = new IndexChangeLog(ds);
+			// New emails always get a higher id than all existing ones.
+			long lastExistingId = DbUtils.count(c, "SELECT COALESCE(MAX(ID), 0) FROM EMAIL");
+			EmailDataset source = EmailDataset.open(tempDatasetDir).join();
+			DatasetMerger.Result mergeResult;
+			try {
+				mergeResult = merger.merge(source);
+			} finally {
+				source.close().join();
+			}
+			List<Long> linkedIds = merger.linkOrphanedReplies();
+			long linked = linkedIds.size();
+			DbUtils.doTransaction(c, conn -> {
+				changeLog.recordAll(conn, IndexChangeLog.Kind.CONTENT, "ID > ?", lastExistingId);
+				for (long id : linkedIds) {
+					if (id <= lastExistingId) changeLog.record(conn, id, IndexChangeLog.Kind.PARENT);
+				}
+				DbUtils.insertWithId(
+						conn,
+						"INSERT INTO MUTATION (DESCRIPTION, AFFECTED_EMAIL_COUNT) VALUES (?, ?)",
+						"Appended %d emails from %d mbox files.".formatted(mergeResult.insertedCount(), newFiles.size()),
+						mergeResult.insertedCount()
+				);
+				for (var file : newFiles) {
+					DbUtils.insertWithId(
+							conn,
+							"INSERT INTO APPENDED_MBOX_FILE (NAME, SIZE, CHECKSUM) VALUES (?, ?, ?)",
+							file.path().getFileName().toString(), file.size(), file.checksum()
+					);
+				}
+			});
+			status.sendMessage("Added %d emails, skipped %d duplicates, and linked %d replies to existing emails.".formatted(
+					mergeResult.insertedCount(), mergeResult.duplicateCount(), linked
+			));
+
+			if (mergeResult.insertedCount() > 0 || linked > 0) {
+				// This also makes the browser's index apply the recorded changes.
+				DatasetEventBus.of(ds).publish(new DatasetEvent.EmailsAdded(mergeResult.insertedCount()));
+			}
+			status.sendMessage("Appending took %.1f seconds.".formatted((System.currentTimeMillis() - start) / 1000.0));
+			return new Result(mergeResult.insertedCount(), mergeResult.duplicateCount(), linked, skippedFiles);
+		} finally {
+			FileHelper.deleteRecursively(tempDir);
+		}
+	}
+
+	private static String checksum(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[1024 * 1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
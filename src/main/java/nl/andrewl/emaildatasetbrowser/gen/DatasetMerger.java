@@ -0,0 +1,356 @@
+package nl.andrewl.emaildatasetbrowser.gen;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.emaildatasetbrowser.data.BulkEmailRepository;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Copies the emails of one dataset into another, through a single writer that
+ * batches its inserts. Emails whose message id already exists in the target
+ * are skipped, and replies are linked to their parents in the target, even if
+ * the parent came from a different source. Tags, hidden flags and everything
+ * else that's already in the target is left untouched.
+ * <p>
+ *     Columns are copied by name, so this works for any two datasets of the
+ *     same version. Email ids are assigned by the target database.
+ * </p>
+ */
+public class DatasetMerger {
+	/**
+	 * The number of emails that are inserted with a single batch.
+	 */
+	private static final int BATCH_SIZE = BulkEmailRepository.CHUNK_SIZE;
+	/**
+	 * The maximum number of ancestors that are followed when checking whether
+	 * linking a reply would create a cycle.
+	 */
+	private static final int MAX_THREAD_DEPTH = 10_000;
+
+	/**
+	 * The result of a merge.
+	 * @param insertedCount The number of emails that were inserted.
+	 * @param duplicateCount The number of emails that were skipped because
+	 *                       their message id already existed.
+	 */
+	public record Result(long insertedCount, long duplicateCount) {}
+
+	private final Connection conn;
+
+	public DatasetMerger(EmailDataset target) {
+		this.conn = target.getConnection();
+	}
+
+	/**
+	 * Creates an index on message ids in the target, if there isn't one yet,
+	 * since every merge looks up emails by their message id.
+	 * @throws SQLException If the index couldn't be created.
+	 */
+	public void prepareTarget() throws SQLException {
+		try (var stmt = conn.createStatement()) {
+			stmt.execute("CREATE INDEX IF NOT EXISTS EMAIL_MESSAGE_ID_IDX ON EMAIL (MESSAGE_ID)");
+		}
+	}
+
+	/**
+	 * Copies all emails from a source dataset into the target, in a single
+	 * transaction. Replies whose parent isn't in the source aren't linked yet;
+	 * call {@link #linkOrphanedReplies()} once all sources are merged.
+	 * @param source The dataset to copy emails from.
+	 * @return The number of emails that were inserted and skipped.
+	 * @throws SQLException If the emails couldn't be copied.
+	 */
+	public Result merge(EmailDataset source) throws SQLException {
+		Connection src = source.getConnection();
+		List<String> columns = copiedColumns(src);
+		int messageIdColumn = columns.indexOf("MESSAGE_ID");
+		if (messageIdColumn == -1) throw new SQLException("The EMAIL table has no MESSAGE_ID column.");
+		String columnList = String.join(", ", columns);
+		String insertSql = "INSERT INTO EMAIL (%s) VALUES (%s)".formatted(columnList, String.join(", ", Collections.nCopies(columns.size(), "?")));
+
+		IdMap ids = new IdMap();
+		long inserted = 0;
+		long duplicates = 0;
+		boolean autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		try (
+				PreparedStatement select = src.prepareStatement("SELECT ID, " + columnList + " FROM EMAIL ORDER BY ID");
+				PreparedStatement insert = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)
+		) {
+			select.setFetchSize(BATCH_SIZE);
+			List<Long> batchIds = new ArrayList<>(BATCH_SIZE);
+			List<Object[]> batchRows = new ArrayList<>(BATCH_SIZE);
+			try (ResultSet rs = select.executeQuery()) {
+				while (rs.next()) {
+					Object[] row = new Object[columns.size()];
+					for (int i = 0; i < row.length; i++) row[i] = rs.getObject(i + 2);
+					batchIds.add(rs.getLong(1));
+					batchRows.add(row);
+					if (batchRows.size() == BATCH_SIZE) {
+						inserted += insertBatch(insert, batchIds, batchRows, messageIdColumn, ids);
+						batchIds.clear();
+						batchRows.clear();
+					}
+				}
+			}
+			if (!batchRows.isEmpty()) {
+				inserted += insertBatch(insert, batchIds, batchRows, messageIdColumn, ids);
+			}
+			duplicates = ids.size() - inserted;
+			linkCopiedReplies(src, ids);
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(autoCommit);
+		}
+		return new Result(inserted, duplicates);
+	}
+
+	/**
+	 * Inserts a batch of emails, skipping those whose message id already
+	 * exists in the target or earlier in the batch.
+	 * @return The number of emails that were inserted.
+	 */
+	private int insertBatch(PreparedStatement insert, List<Long> sourceIds, List<Object[]> rows, int messageIdColumn, IdMap ids) throws SQLException {
+		Set<String> messageIds = new HashSet<>();
+		for (var row : rows) {
+			if (row[messageIdColumn] != null) messageIds.add(row[messageIdColumn].toString());
+		}
+		Map<String, Long> existing = findIdsByMessageIds(messageIds);
+		List<Long> insertedSourceIds = new ArrayList<>(rows.size());
+		Map<String, Long> batchMessageIds = new HashMap<>();
+		// Duplicates of existing emails, mapped to the id of the existing email.
+		Map<Long, Long> existingDuplicates = new HashMap<>();
+		// Duplicates within the batch, mapped to the source id of their first occurrence.
+		Map<Long, Long> batchDuplicates = new HashMap<>();
+		for (int i = 0; i < rows.size(); i++) {
+			Object[] row = rows.get(i);
+			long sourceId = sourceIds.get(i);
+			String messageId = row[messageIdColumn] == null ? null : row[messageIdColumn].toString();
+			if (messageId != null && existing.containsKey(messageId)) {
+				existingDuplicates.put(sourceId, existing.get(messageId));
+				continue;
+			}
+			if (messageId != null) {
+				Long first = batchMessageIds.putIfAbsent(messageId, sourceId);
+				if (first != null) {
+					batchDuplicates.put(sourceId, first);
+					continue;
+				}
+			}
+			for (int c = 0; c < row.length; c++) insert.setObject(c + 1, row[c]);
+			insert.addBatch();
+			insertedSourceIds.add(sourceId);
+		}
+		Map<Long, Long> newIds = new HashMap<>(insertedSourceIds.size());
+		if (!insertedSourceIds.isEmpty()) {
+			insert.executeBatch();
+			try (ResultSet keys = insert.getGeneratedKeys()) {
+				int i = 0;
+				while (keys.next() && i < insertedSourceIds.size()) newIds.put(insertedSourceIds.get(i++), keys.getLong(1));
+				if (i != insertedSourceIds.size()) {
+					throw new SQLException("Expected %d generated ids, but got %d.".formatted(insertedSourceIds.size(), i));
+				}
+			}
+		}
+		// Source ids must be added in ascending order, which is the order they were read in.
+		for (long sourceId : sourceIds) {
+			if (newIds.containsKey(sourceId)) {
+				ids.add(sourceId, newIds.get(sourceId), true);
+			} else if (batchDuplicates.containsKey(sourceId)) {
+				ids.add(sourceId, newIds.get(batchDuplicates.get(sourceId)), false);
+			} else {
+				ids.add(sourceId, existingDuplicates.get(sourceId), false);
+			}
+		}
+		return insertedSourceIds.size();
+	}
+
+	/**
+	 * Links each inserted email to its parent, using the parent ids from the
+	 * source dataset.
+	 */
+	private void linkCopiedReplies(Connection src, IdMap ids) throws SQLException {
+		try (
+				PreparedStatement select = src.prepareStatement("SELECT ID, PARENT_ID FROM EMAIL WHERE PARENT_ID IS NOT NULL");
+				PreparedStatement update = conn.prepareStatement("UPDATE EMAIL SET PARENT_ID = ? WHERE ID = ?")
+		) {
+			select.setFetchSize(BATCH_SIZE);
+			int batchSize = 0;
+			try (ResultSet rs = select.executeQuery()) {
+				while (rs.next()) {
+					int child = ids.indexOf(rs.getLong(1));
+					int parent = ids.indexOf(rs.getLong(2));
+					if (child == -1 || parent == -1 || !ids.isInserted(child)) continue;
+					update.setLong(1, ids.targetId(parent));
+					update.setLong(2, ids.targetId(child));
+					update.addBatch();
+					if (++batchSize == BATCH_SIZE) {
+						update.executeBatch();
+						batchSize = 0;
+					}
+				}
+			}
+			if (batchSize > 0) update.executeBatch();
+		}
+	}
+
+	/**
+	 * Links all emails in the target that have no parent, but that reply to
+	 * an email that is in the target, to that email. This happens when a
+	 * reply and its parent came from different sources, or when a reply was
+	 * added before its parent. Links that would create a cycle are skipped.
+	 * @return The ids of the emails that were linked.
+	 * @throws SQLException If the emails couldn't be linked.
+	 */
+	public List<Long> linkOrphanedReplies() throws SQLException {
+		Map<Long, String> orphans = new LinkedHashMap<>();
+		try (
+				PreparedStatement stmt = conn.prepareStatement("SELECT ID, IN_REPLY_TO FROM EMAIL WHERE PARENT_ID IS NULL AND IN_REPLY_TO IS NOT NULL ORDER BY ID");
+				ResultSet rs = stmt.executeQuery()
+		) {
+			while (rs.next()) orphans.put(rs.getLong(1), rs.getString(2));
+		}
+		if (orphans.isEmpty()) return List.of();
+
+		Map<String, Long> parents = findIdsByMessageIds(new HashSet<>(orphans.values()));
+		// The root of each thread that has been linked to another one during this call.
+		Map<Long, Long> linkedRoots = new HashMap<>();
+		List<Long> linked = new ArrayList<>();
+		boolean autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		try (PreparedStatement update = conn.prepareStatement("UPDATE EMAIL SET PARENT_ID = ? WHERE ID = ?")) {
+			for (var entry : orphans.entrySet()) {
+				Long parentId = parents.get(entry.getValue());
+				if (parentId == null) continue;
+				long childId = entry.getKey();
+				if (findRoot(findThreadRoot(parentId), linkedRoots) == childId) continue;
+				update.setLong(1, parentId);
+				update.setLong(2, childId);
+				update.addBatch();
+				linkedRoots.put(childId, parentId);
+				linked.add(childId);
+				if (linked.size() % BATCH_SIZE == 0) update.executeBatch();
+			}
+			update.executeBatch();
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(autoCommit);
+		}
+		return linked;
+	}
+
+	/**
+	 * Follows the links that were made during {@link #linkOrphanedReplies()},
+	 * up to the root of the combined thread.
+	 */
+	private long findRoot(long rootId, Map<Long, Long> linkedRoots) throws SQLException {
+		long current = rootId;
+		for (int i = 0; i < MAX_THREAD_DEPTH; i++) {
+			Long parent = linkedRoots.get(current);
+			if (parent == null) return current;
+			current = findThreadRoot(parent);
+		}
+		return current;
+	}
+
+	/**
+	 * Finds the root of an email's thread, using the links in the database as
+	 * they were before {@link #linkOrphanedReplies()} started.
+	 */
+	private long findThreadRoot(long emailId) throws SQLException {
+		long current = emailId;
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT PARENT_ID FROM EMAIL WHERE ID = ?")) {
+			for (int i = 0; i < MAX_THREAD_DEPTH; i++) {
+				stmt.setLong(1, current);
+				try (ResultSet rs = stmt.executeQuery()) {
+					if (!rs.next()) return current;
+					long parent = rs.getLong(1);
+					if (rs.wasNull()) return current;
+					current = parent;
+				}
+			}
+		}
+		return current;
+	}
+
+	private Map<String, Long> findIdsByMessageIds(Collection<String> messageIds) throws SQLException {
+		Map<String, Long> ids = new HashMap<>(messageIds.size());
+		List<String> list = new ArrayList<>(messageIds);
+		for (int i = 0; i < list.size(); i += BATCH_SIZE) {
+			List<String> chunk = list.subList(i, Math.min(i + BATCH_SIZE, list.size()));
+			String sql = "SELECT MESSAGE_ID, ID FROM EMAIL WHERE MESSAGE_ID IN (%s)".formatted(String.join(", ", Collections.nCopies(chunk.size(), "?")));
+			try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+				for (int j = 0; j < chunk.size(); j++) stmt.setString(j + 1, chunk.get(j));
+				try (ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) ids.putIfAbsent(rs.getString(1), rs.getLong(2));
+				}
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Gets the names of the columns of the EMAIL table that are copied, which
+	 * are all except the id and parent id.
+	 */
+	private static List<String> copiedColumns(Connection c) throws SQLException {
+		List<String> columns = new ArrayList<>();
+		try (
+				PreparedStatement stmt = c.prepareStatement("SELECT * FROM EMAIL WHERE 1 = 0");
+				ResultSet rs = stmt.executeQuery()
+		) {
+			ResultSetMetaData meta = rs.getMetaData();
+			for (int i = 1; i <= meta.getColumnCount(); i++) {
+				String name = meta.getColumnName(i).toUpperCase(Locale.ROOT);
+				if (!name.equals("ID") && !name.equals("PARENT_ID")) columns.add(name);
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * A map from source email ids to target email ids. Source ids must be
+	 * added in ascending order, so they can be looked up with a binary search.
+	 */
+	private static class IdMap {
+		private long[] sourceIds = new long[1024];
+		private long[] targetIds = new long[1024];
+		private final BitSet inserted = new BitSet();
+		private int size = 0;
+
+		void add(long sourceId, long targetId, boolean wasInserted) {
+			if (size == sourceIds.length) {
+				sourceIds = Arrays.copyOf(sourceIds, size * 2);
+				targetIds = Arrays.copyOf(targetIds, size * 2);
+			}
+			sourceIds[size] = sourceId;
+			targetIds[size] = targetId;
+			if (wasInserted) inserted.set(size);
+			size++;
+		}
+
+		int indexOf(long sourceId) {
+			int index = Arrays.binarySearch(sourceIds, 0, size, sourceId);
+			return index < 0 ? -1 : index;
+		}
+
+		long targetId(int index) {
+			return targetIds[index];
+		}
+
+		boolean isInserted(int index) {
+			return inserted.get(index);
+		}
+
+		int size() {
+			return size;
+		}
+	}
+}
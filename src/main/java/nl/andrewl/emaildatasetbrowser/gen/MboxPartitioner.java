@@ -0,0 +1,182 @@
+package nl.andrewl.emaildatasetbrowser.gen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Splits a set of mbox files into partitions of roughly equal size, which can
+ * then be parsed independently. Partitions are contiguous, so emails that are
+ * close together in the input, like most emails of a thread, usually end up
+ * in the same partition. Large files are cut at message boundaries, which are
+ * found by scanning a small memory-mapped window around each cut, so the
+ * files never have to be read as a whole.
+ */
+public class MboxPartitioner {
+	/**
+	 * A range of bytes in an mbox file, which contains whole messages.
+	 * @param file The mbox file.
+	 * @param start The offset of the first byte.
+	 * @param end The offset after the last byte.
+	 */
+	public record Segment(Path file, long start, long end) {
+		public long size() {
+			return end - start;
+		}
+	}
+
+	private static final byte[] FROM_LINE = "From ".getBytes();
+	private static final int WINDOW_SIZE = 1024 * 1024;
+
+	/**
+	 * Finds all mbox files in the given directories, and their subdirectories,
+	 * in order of their path. A file is an mbox file if its name ends with
+	 * ".mbox", in any case, or if it starts with a "From " line, so that
+	 * mailboxes without that extension aren't silently left out.
+	 * @param dirs The directories to search.
+	 * @param skipped Receives every other file, which isn't parsed.
+	 * @return The mbox files.
+	 * @throws IOException If a directory or file can't be read.
+	 */
+	public static List<Path> findMboxFiles(Iterable<Path> dirs, Consumer<Path> skipped) throws IOException {
+		List<Path> files = new ArrayList<>();
+		for (var dir : dirs) {
+			List<Path> regularFiles;
+			try (Stream<Path> paths = Files.walk(dir)) {
+				regularFiles = paths.filter(Files::isRegularFile).sorted().toList();
+			}
+			for (var file : regularFiles) {
+				if (isMboxFile(file)) {
+					files.add(file);
+				} else {
+					skipped.accept(file);
+				}
+			}
+		}
+		return files;
+	}
+
+	private static boolean isMboxFile(Path file) throws IOException {
+		if (file.getFileName().toString().toLowerCase().endsWith(".mbox")) return true;
+		byte[] start = new byte[FROM_LINE.length];
+		try (InputStream in = Files.newInputStream(file)) {
+			return in.readNBytes(start, 0, start.length) == start.length && Arrays.equals(start, FROM_LINE);
+		}
+	}
+
+	/**
+	 * Splits the given files into at most the given number of partitions.
+	 * @param files The mbox files to split.
+	 * @param partitionCount The maximum number of partitions.
+	 * @return The partitions, each of which is a list of segments. There may
+	 * be fewer than requested, but none of them are empty.
+	 * @throws IOException If a file can't be read.
+	 */
+	public static List<List<Segment>> partition(List<Path> files, int partitionCount) throws IOException {
+		long totalSize = 0;
+		for (var file : files) totalSize += Files.size(file);
+		long targetSize = Math.max(1, totalSize / Math.max(1, partitionCount));
+
+		List<List<Segment>> partitions = new ArrayList<>();
+		List<Segment> current = new ArrayList<>();
+		int cutsMade = 0;
+		long fileOffset = 0;
+		for (var file : files) {
+			long size = Files.size(file);
+			long position = 0;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				while (cutsMade < partitionCount - 1 && targetSize * (cutsMade + 1) < fileOffset + size) {
+					long cut = nextMessageStart(channel, Math.max(position, targetSize * (cutsMade + 1) - fileOffset), size);
+					if (cut > position) {
+						current.add(new Segment(file, position, cut));
+						position = cut;
+					}
+					cutsMade++;
+					if (!current.isEmpty()) {
+						partitions.add(current);
+						current = new ArrayList<>();
+					}
+				}
+			}
+			if (position < size) current.add(new Segment(file, position, size));
+			fileOffset += size;
+		}
+		if (!current.isEmpty()) partitions.add(current);
+		return partitions;
+	}
+
+	/**
+	 * Writes a partition's segments to a directory, as one mbox file per
+	 * segment. Whole files are linked instead of copied where possible.
+	 * @param partition The partition to write.
+	 * @param dir The directory to write to. It's created if needed.
+	 * @throws IOException If the files can't be written.
+	 */
+	public static void writePartition(List<Segment> partition, Path dir) throws IOException {
+		Files.createDirectories(dir);
+		for (int i = 0; i < partition.size(); i++) {
+			Segment segment = partition.get(i);
+			String name = segment.file().getFileName().toString();
+			// The generator only looks at files with the mbox extension.
+			if (!name.toLowerCase().endsWith(".mbox")) name += ".mbox";
+			Path target = dir.resolve("%05d-%s".formatted(i, name));
+			if (segment.start() == 0 && segment.end() == Files.size(segment.file())) {
+				try {
+					Files.createLink(target, segment.file());
+					continue;
+				} catch (IOException | UnsupportedOperationException e) {
+					// Fall back to copying, for example across file systems.
+				}
+			}
+			try (
+					FileChannel in = FileChannel.open(segment.file(), StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+			) {
+				long position = segment.start();
+				while (position < segment.end()) {
+					position += in.transferTo(position, segment.end() - position, out);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the first message that starts at or after the given position,
+	 * which is a line that starts with "From ".
+	 * @return The offset of the message, or the file's size if there is none.
+	 */
+	private static long nextMessageStart(FileChannel channel, long position, long size) throws IOException {
+		if (position == 0) return 0;
+		// Start one byte early, so that a line starting right at the position is found.
+		long windowStart = position - 1;
+		while (windowStart < size) {
+			long scanLength = Math.min(WINDOW_SIZE, size - windowStart);
+			int mapLength = (int) Math.min(scanLength + 1 + FROM_LINE.length, size - windowStart);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, mapLength);
+			for (int i = 0; i < scanLength; i++) {
+				if (buffer.get(i) == '\n' && matchesFromLine(buffer, i + 1, mapLength)) {
+					return windowStart + i + 1;
+				}
+			}
+			windowStart += scanLength;
+		}
+		return size;
+	}
+
+	private static boolean matchesFromLine(MappedByteBuffer buffer, int index, int limit) {
+		if (index + FROM_LINE.length > limit) return false;
+		for (int j = 0; j < FROM_LINE.length; j++) {
+			if (buffer.get(index + j) != FROM_LINE[j]) return false;
+		}
+		return true;
+	}
+}
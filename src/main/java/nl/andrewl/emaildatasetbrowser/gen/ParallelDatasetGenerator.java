@@ -0,0 +1,186 @@
+package nl.andrewl.emaildatasetbrowser.gen;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.gen.EmailDatasetGenerator;
+import nl.andrewl.email_indexer.gen.EmailIndexGenerator;
+import nl.andrewl.email_indexer.util.DbUtils;
+import nl.andrewl.email_indexer.util.Status;
+import nl.andrewl.emaildatasetbrowser.util.FileHelper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates a dataset from mbox files using several threads.
+ * <p>
+ *     The input is first split into partitions of about equal size by a
+ *     {@link MboxPartitioner}. Each partition is parsed into its own dataset
+ *     by an {@link EmailDatasetGenerator}, all at the same time, with the
+ *     first one being generated directly in the target directory. As soon as
+ *     the next partition is done, its emails are copied into the target by a
+ *     single {@link DatasetMerger}, while the other partitions are still being
+ *     parsed. Once all are merged, replies are linked across partitions, and
+ *     the search index is built for the whole dataset.
+ * </p>
+ */
+public class ParallelDatasetGenerator {
+	/**
+	 * Inputs smaller than this aren't split, since merging would take longer
+	 * than parsing them in parallel saves.
+	 */
+	private static final long MIN_PARTITION_SIZE = 16 * 1024 * 1024;
+
+	private final Status status;
+	private final int parallelism;
+
+	/**
+	 * @param status The status to send progress messages to.
+	 * @param parallelism The maximum number of partitions to parse at once.
+	 */
+	public ParallelDatasetGenerator(Status status, int parallelism) {
+		this.status = status;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public ParallelDatasetGenerator(Status status) {
+		this(status, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Generates a dataset.
+	 * @param mboxDirs The directories containing the mbox files to parse.
+	 * @param datasetDir The empty directory to generate the dataset in.
+	 * @return A future that completes when the dataset is generated.
+	 */
+	public CompletableFuture<Void> generate(Collection<Path> mboxDirs, Path datasetDir) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				doGenerate(mboxDirs, datasetDir);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	private void doGenerate(Collection<Path> mboxDirs, Path datasetDir) throws Exception {
+		final long start = System.currentTimeMillis();
+		List<Path> files = MboxPartitioner.findMboxFiles(mboxDirs, file -> status.sendMessage("Skipping " + file + ", since it's not an mbox file."));
+		long totalSize = 0;
+		for (var file : files) totalSize += Files.size(file);
+		int partitionCount = (int) Math.max(1, Math.min(parallelism, totalSize / MIN_PARTITION_SIZE));
+		if (partitionCount == 1) {
+			status.sendMessage("Input is small enough to generate the dataset on a single thread.");
+			// The files are linked into one directory, so that exactly the files found above are parsed.
+			Path tempDir = Files.createTempDirectory("edb-generate");
+			try {
+				List<MboxPartitioner.Segment> segments = new ArrayList<>(files.size());
+				for (var file : files) segments.add(new MboxPartitioner.Segment(file, 0, Files.size(file)));
+				Path mboxDir = tempDir.resolve("mbox");
+				MboxPartitioner.writePartition(segments, mboxDir);
+				new EmailDatasetGenerator(status).generate(List.of(mboxDir), datasetDir).join();
+			} finally {
+				FileHelper.deleteRecursively(tempDir);
+			}
+			return;
+		}
+
+		List<List<MboxPartitioner.Segment>> partitions = MboxPartitioner.partition(files, partitionCount);
+		status.sendMessage("Split %d mbox files (%d MB) into %d partitions.".formatted(files.size(), totalSize / (1024 * 1024), partitions.size()));
+		Path tempDir = Files.createTempDirectory("edb-generate");
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, partitions.size()));
+		List<CompletableFuture<Path>> parsedPartitions = new ArrayList<>(partitions.size());
+		Exception failure = null;
+		try {
+			for (int i = 0; i < partitions.size(); i++) {
+				final int partition = i;
+				parsedPartitions.add(CompletableFuture.supplyAsync(() -> {
+					try {
+						return parsePartition(partitions.get(partition), partition, partitions.size(), tempDir, datasetDir);
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}, executor));
+			}
+
+			parsedPartitions.get(0).join();
+			EmailDataset target = EmailDataset.open(datasetDir).join();
+			try {
+				DatasetMerger merger = new DatasetMerger(target);
+				merger.prepareTarget();
+				long emailCount = DbUtils.count(target.getConnection(), "SELECT COUNT(ID) FROM EMAIL");
+				reportThroughput("Partition 1 of %d is ready".formatted(partitions.size()), emailCount, start);
+				for (int i = 1; i < partitions.size(); i++) {
+					Path partitionDir = parsedPartitions.get(i).join();
+					EmailDataset source = EmailDataset.open(partitionDir).join();
+					DatasetMerger.Result result;
+					try {
+						result = merger.merge(source);
+					} finally {
+						source.close().join();
+					}
+					FileHelper.deleteRecursively(partitionDir);
+					emailCount += result.insertedCount();
+					reportThroughput(
+							"Merged partition %d of %d, with %d new emails and %d duplicates".formatted(
+									i + 1, partitions.size(), result.insertedCount(), result.duplicateCount()
+							),
+							emailCount,
+							start
+					);
+				}
+				status.sendMessage("Linked %d replies to emails in other partitions.".formatted(merger.linkOrphanedReplies().size()));
+				status.sendMessage("Building the search index for all emails.");
+				new EmailIndexGenerator(status).generateIndex(target);
+				reportThroughput("Generated a dataset with %d emails".formatted(emailCount), emailCount, start);
+			} finally {
+				target.close().join();
+			}
+		} catch (Exception e) {
+			failure = e;
+			parsedPartitions.forEach(f -> f.cancel(true));
+		}
+		// Cancelling doesn't stop the partitions that are already being generated, so we wait for them before deleting their files.
+		executor.shutdownNow();
+		try {
+			if (!executor.awaitTermination(1, TimeUnit.HOURS)) {
+				throw new IOException("Timed out while waiting for partitions to finish, so " + tempDir + " was not deleted.");
+			}
+			FileHelper.deleteRecursively(tempDir);
+		} catch (IOException | InterruptedException e) {
+			if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+			if (failure == null) throw e;
+			failure.addSuppressed(e);
+		}
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * Writes a partition's mbox files and generates a dataset from them.
+	 * @return The directory of the generated dataset.
+	 */
+	private Path parsePartition(List<MboxPartitioner.Segment> partition, int index, int count, Path tempDir, Path datasetDir) throws Exception {
+		Path mboxDir = tempDir.resolve("mbox-" + index);
+		MboxPartitioner.writePartition(partition, mboxDir);
+		Path partitionDatasetDir = index == 0 ? datasetDir : tempDir.resolve("dataset-" + index);
+		Files.createDirectories(partitionDatasetDir);
+		String prefix = "[%d/%d] ".formatted(index + 1, count);
+		Status partitionStatus = new Status().withMessageConsumer(msg -> status.sendMessage(prefix + msg));
+		new EmailDatasetGenerator(partitionStatus).generate(List.of(mboxDir), partitionDatasetDir).join();
+		FileHelper.deleteRecursively(mboxDir);
+		return partitionDatasetDir;
+	}
+
+	private void reportThroughput(String message, long emailCount, long start) {
+		double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+		status.sendMessage("%s after %.1f seconds (%.0f emails/sec).".formatted(message, seconds, emailCount / seconds));
+	}
+}
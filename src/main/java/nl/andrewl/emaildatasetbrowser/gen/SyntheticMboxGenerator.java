@@ -0,0 +1,212 @@
+package nl.andrewl.emaildatasetbrowser.gen;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Generates mbox files full of realistic-looking mailing list emails, which
+ * can be turned into a dataset like any other mbox files. This is used to
+ * test how the browser scales, without needing a real mailing list archive.
+ * <p>
+ *     Emails are grouped into threads, several of which are active at the
+ *     same time, so that the messages of a thread are interleaved with other
+ *     threads like on a real list. Replies may quote the email they reply to,
+ *     and some bodies are HTML. See {@link SyntheticMboxParameters} for the
+ *     distributions that can be tuned.
+ * </p>
+ */
+public class SyntheticMboxGenerator {
+	/**
+	 * The number of threads that new emails are spread over.
+	 */
+	private static final int ACTIVE_THREADS = 16;
+	private static final int WORDS_PER_LINE = 12;
+	private static final int LINES_PER_PARAGRAPH = 5;
+	private static final DateTimeFormatter MBOX_DATE = DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy", Locale.ENGLISH);
+	private static final String[] WORDS = {
+			"cache", "release", "vote", "thread", "pool", "index", "commit", "build", "patch", "review",
+			"broker", "consumer", "producer", "partition", "schema", "query", "latency", "memory", "disk", "config",
+			"cluster", "node", "leader", "replica", "snapshot", "checkpoint", "api", "client", "server", "protocol",
+			"test", "failure", "timeout", "retry", "upgrade", "migration", "deprecate", "feature", "issue", "branch",
+			"the", "a", "we", "should", "could", "this", "that", "with", "for", "and", "is", "not", "it", "be",
+			"from", "to", "in", "on", "of", "if", "when", "then", "think", "agree", "propose", "maybe", "also"
+	};
+
+	/**
+	 * A single email in a thread, as far as later replies need to know it.
+	 * @param messageId The email's message id.
+	 * @param subject The email's subject.
+	 * @param depth The number of ancestors the email has in its thread.
+	 * @param parent The index of the email's parent in the thread, or -1.
+	 * @param author The index of the email's author.
+	 * @param date The email's date.
+	 * @param quotableLines The first lines of the email's body, in plain text.
+	 */
+	private record Message(String messageId, String subject, int depth, int parent, int author, ZonedDateTime date, List<String> quotableLines) {}
+
+	private final SyntheticMboxParameters params;
+
+	public SyntheticMboxGenerator(SyntheticMboxParameters params) {
+		this.params = params;
+	}
+
+	/**
+	 * Generates the mbox files.
+	 * @param dir The directory to write the files to. It's created if needed.
+	 * @param progress A consumer for progress messages.
+	 * @return The files that were written.
+	 * @throws IOException If the files couldn't be written.
+	 */
+	public List<Path> generate(Path dir, Consumer<String> progress) throws IOException {
+		Files.createDirectories(dir);
+		Random rand = new Random(params.getSeed());
+		List<List<Message>> threads = new ArrayList<>(ACTIVE_THREADS);
+		List<Path> files = new ArrayList<>();
+		ZonedDateTime date = params.getStartDate();
+		long threadCount = 0;
+		BufferedWriter out = null;
+		try {
+			for (long i = 0; i < params.getEmailCount(); i++) {
+				if (i % params.getEmailsPerFile() == 0) {
+					if (out != null) out.close();
+					Path file = dir.resolve("synthetic-%05d.mbox".formatted(files.size() + 1));
+					out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+					files.add(file);
+				}
+				// On average, every thread gets the configured number of emails.
+				date = date.plusSeconds(1 + rand.nextInt(600));
+				if (threads.isEmpty() || rand.nextDouble() < 1.0 / params.getMeanThreadSize()) {
+					if (threads.size() == ACTIVE_THREADS) threads.remove(rand.nextInt(threads.size()));
+					List<Message> thread = new ArrayList<>();
+					threads.add(thread);
+					writeEmail(out, rand, i, thread, capitalize(sentence(rand, 3 + rand.nextInt(8))), -1, date);
+					threadCount++;
+				} else {
+					List<Message> thread = threads.get(rand.nextInt(threads.size()));
+					int parent = rand.nextDouble() < params.getReplyToLatestRatio()
+							? thread.size() - 1
+							: rand.nextInt(thread.size());
+					while (thread.get(parent).depth() >= params.getMaxThreadDepth() && thread.get(parent).parent() != -1) {
+						parent = thread.get(parent).parent();
+					}
+					writeEmail(out, rand, i, thread, thread.get(0).subject(), parent, date);
+				}
+				if ((i + 1) % 100_000 == 0) {
+					progress.accept("Generated %d of %d emails.".formatted(i + 1, params.getEmailCount()));
+				}
+			}
+		} finally {
+			if (out != null) out.close();
+		}
+		progress.accept("Generated %d emails in %d threads, in %d mbox files.".formatted(params.getEmailCount(), threadCount, files.size()));
+		return files;
+	}
+
+	private void writeEmail(Writer out, Random rand, long number, List<Message> thread, String subject, int parentIndex, ZonedDateTime date) throws IOException {
+		Message parent = parentIndex == -1 ? null : thread.get(parentIndex);
+		int author = (int) (params.getAuthorCount() * Math.pow(rand.nextDouble(), 2));
+		String messageId = "<synthetic-%d-%d@lists.example.org>".formatted(params.getSeed(), number);
+		boolean html = rand.nextDouble() < params.getHtmlRatio();
+
+		List<String> lines = bodyLines(rand);
+		List<String> quotableLines = new ArrayList<>(lines.subList(0, Math.min(lines.size(), params.getMaxQuotedLines())));
+		List<String> quote = new ArrayList<>();
+		if (parent != null && !html && rand.nextDouble() < params.getQuoteRatio()) {
+			quote.add("On %s, Developer %d wrote:".formatted(parent.date().format(DateTimeFormatter.RFC_1123_DATE_TIME), parent.author()));
+			for (var line : parent.quotableLines()) {
+				quote.add(line.startsWith(">") ? ">" + line : "> " + line);
+			}
+			quote.add("");
+			quotableLines.addAll(0, quote.subList(0, Math.min(quote.size(), params.getMaxQuotedLines() / 2)));
+		}
+
+		out.write("From dev" + author + "@lists.example.org " + date.format(MBOX_DATE) + "\n");
+		out.write("From: Developer " + author + " <dev" + author + "@lists.example.org>\n");
+		out.write("Date: " + date.format(DateTimeFormatter.RFC_1123_DATE_TIME) + "\n");
+		out.write("Subject: " + (parent == null ? subject : "Re: " + subject) + "\n");
+		out.write("Message-ID: " + messageId + "\n");
+		if (parent != null) {
+			out.write("In-Reply-To: " + parent.messageId() + "\n");
+			out.write("References: " + parent.messageId() + "\n");
+		}
+		out.write("MIME-Version: 1.0\n");
+		out.write("Content-Type: " + (html ? "text/html" : "text/plain") + "; charset=UTF-8\n\n");
+		if (html) {
+			out.write("<html><body>\n");
+			StringBuilder paragraph = new StringBuilder();
+			for (var line : lines) {
+				if (line.isEmpty()) {
+					writeBodyLine(out, "<p>" + paragraph.toString().trim() + "</p>");
+					paragraph.setLength(0);
+				} else {
+					paragraph.append(line).append(' ');
+				}
+			}
+			if (!paragraph.isEmpty()) writeBodyLine(out, "<p>" + paragraph.toString().trim() + "</p>");
+			out.write("</body></html>\n");
+		} else {
+			for (var line : quote) writeBodyLine(out, line);
+			for (var line : lines) writeBodyLine(out, line);
+		}
+		out.write('\n');
+
+		thread.add(new Message(messageId, subject, parent == null ? 0 : parent.depth() + 1, parentIndex, author, date, List.copyOf(quotableLines)));
+	}
+
+	/**
+	 * Generates the lines of a plain-text body, whose number of words follows
+	 * a log-normal distribution. Paragraphs are separated by empty lines.
+	 */
+	private List<String> bodyLines(Random rand) {
+		double size = params.getMedianBodyWords() * Math.exp(params.getBodySizeSpread() * rand.nextGaussian());
+		int words = (int) Math.max(1, Math.min(params.getMaxBodyWords(), Math.round(size)));
+		List<String> lines = new ArrayList<>(words / WORDS_PER_LINE + words / (WORDS_PER_LINE * LINES_PER_PARAGRAPH) + 2);
+		int linesInParagraph = 0;
+		while (words > 0) {
+			int lineWords = Math.min(words, WORDS_PER_LINE);
+			lines.add(linesInParagraph == 0 ? capitalize(sentence(rand, lineWords)) : sentence(rand, lineWords));
+			words -= lineWords;
+			if (++linesInParagraph == LINES_PER_PARAGRAPH && words > 0) {
+				lines.add("");
+				linesInParagraph = 0;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Writes a line of a body, escaping it in the same way as mboxrd files do,
+	 * so that it can't be mistaken for the start of a new email.
+	 */
+	private static void writeBodyLine(Writer out, String line) throws IOException {
+		int i = 0;
+		while (i < line.length() && line.charAt(i) == '>') i++;
+		if (line.startsWith("From ", i)) out.write('>');
+		out.write(line);
+		out.write('\n');
+	}
+
+	private static String sentence(Random rand, int words) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) sb.append(' ');
+			sb.append(WORDS[rand.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+
+	private static String capitalize(String s) {
+		return s.isEmpty() ? s : Character.toUpperCase(s.charAt(0)) + s.substring(1);
+	}
+}
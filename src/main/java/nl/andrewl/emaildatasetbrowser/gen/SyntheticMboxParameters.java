@@ -0,0 +1,213 @@
+package nl.andrewl.emaildatasetbrowser.gen;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * The parameters that control what a {@link SyntheticMboxGenerator}
+ * produces. All distributions are sampled from a random generator with a
+ * fixed seed, so the same parameters always produce the same mbox files.
+ */
+public class SyntheticMboxParameters {
+	private long emailCount = 10_000;
+	private int authorCount = 200;
+	private double meanThreadSize = 6;
+	private int maxThreadDepth = 8;
+	private double replyToLatestRatio = 0.6;
+	private int medianBodyWords = 120;
+	private double bodySizeSpread = 1.0;
+	private int maxBodyWords = 50_000;
+	private double htmlRatio = 0.1;
+	private double quoteRatio = 0.7;
+	private int maxQuotedLines = 30;
+	private long emailsPerFile = 100_000;
+	private long seed = 42;
+	private ZonedDateTime startDate = ZonedDateTime.of(2015, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+	/**
+	 * @param emailCount The total number of emails to generate.
+	 */
+	public SyntheticMboxParameters withEmailCount(long emailCount) {
+		if (emailCount < 0) throw new IllegalArgumentException("Email count may not be negative.");
+		this.emailCount = emailCount;
+		return this;
+	}
+
+	/**
+	 * @param authorCount The number of distinct authors. Some authors write
+	 *                    far more emails than others, like on real lists.
+	 */
+	public SyntheticMboxParameters withAuthorCount(int authorCount) {
+		if (authorCount < 1) throw new IllegalArgumentException("There must be at least one author.");
+		this.authorCount = authorCount;
+		return this;
+	}
+
+	/**
+	 * @param meanThreadSize The average number of emails in a thread. Thread
+	 *                       sizes follow a geometric distribution.
+	 */
+	public SyntheticMboxParameters withMeanThreadSize(double meanThreadSize) {
+		if (meanThreadSize < 1) throw new IllegalArgumentException("Mean thread size must be at least 1.");
+		this.meanThreadSize = meanThreadSize;
+		return this;
+	}
+
+	/**
+	 * @param maxThreadDepth The maximum depth of a reply within its thread,
+	 *                       where the thread's first email has depth 0.
+	 */
+	public SyntheticMboxParameters withMaxThreadDepth(int maxThreadDepth) {
+		if (maxThreadDepth < 0) throw new IllegalArgumentException("Max thread depth may not be negative.");
+		this.maxThreadDepth = maxThreadDepth;
+		return this;
+	}
+
+	/**
+	 * @param replyToLatestRatio The chance that a reply is to the thread's
+	 *                           latest email, rather than to a random one.
+	 *                           Higher values produce deeper threads.
+	 */
+	public SyntheticMboxParameters withReplyToLatestRatio(double replyToLatestRatio) {
+		this.replyToLatestRatio = checkRatio(replyToLatestRatio);
+		return this;
+	}
+
+	/**
+	 * @param medianBodyWords The median number of words in a body. Body sizes
+	 *                        follow a log-normal distribution.
+	 */
+	public SyntheticMboxParameters withMedianBodyWords(int medianBodyWords) {
+		if (medianBodyWords < 1) throw new IllegalArgumentException("Median body size must be at least 1 word.");
+		this.medianBodyWords = medianBodyWords;
+		return this;
+	}
+
+	/**
+	 * @param bodySizeSpread The standard deviation of the logarithm of the
+	 *                       body size. 0 makes all bodies the same size.
+	 */
+	public SyntheticMboxParameters withBodySizeSpread(double bodySizeSpread) {
+		if (bodySizeSpread < 0) throw new IllegalArgumentException("Body size spread may not be negative.");
+		this.bodySizeSpread = bodySizeSpread;
+		return this;
+	}
+
+	/**
+	 * @param maxBodyWords The maximum number of words in a body.
+	 */
+	public SyntheticMboxParameters withMaxBodyWords(int maxBodyWords) {
+		if (maxBodyWords < 1) throw new IllegalArgumentException("Max body size must be at least 1 word.");
+		this.maxBodyWords = maxBodyWords;
+		return this;
+	}
+
+	/**
+	 * @param htmlRatio The share of emails with an HTML body.
+	 */
+	public SyntheticMboxParameters withHtmlRatio(double htmlRatio) {
+		this.htmlRatio = checkRatio(htmlRatio);
+		return this;
+	}
+
+	/**
+	 * @param quoteRatio The share of plain-text replies that quote the email
+	 *                   they reply to.
+	 */
+	public SyntheticMboxParameters withQuoteRatio(double quoteRatio) {
+		this.quoteRatio = checkRatio(quoteRatio);
+		return this;
+	}
+
+	/**
+	 * @param maxQuotedLines The maximum number of lines that a reply quotes.
+	 */
+	public SyntheticMboxParameters withMaxQuotedLines(int maxQuotedLines) {
+		if (maxQuotedLines < 0) throw new IllegalArgumentException("Max quoted lines may not be negative.");
+		this.maxQuotedLines = maxQuotedLines;
+		return this;
+	}
+
+	/**
+	 * @param emailsPerFile The maximum number of emails in a single mbox file.
+	 */
+	public SyntheticMboxParameters withEmailsPerFile(long emailsPerFile) {
+		if (emailsPerFile < 1) throw new IllegalArgumentException("Emails per file must be at least 1.");
+		this.emailsPerFile = emailsPerFile;
+		return this;
+	}
+
+	public SyntheticMboxParameters withSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param startDate The date of the first email.
+	 */
+	public SyntheticMboxParameters withStartDate(ZonedDateTime startDate) {
+		this.startDate = startDate;
+		return this;
+	}
+
+	private static double checkRatio(double ratio) {
+		if (ratio < 0 || ratio > 1) throw new IllegalArgumentException("Ratio must be between 0 and 1.");
+		return ratio;
+	}
+
+	public long getEmailCount() {
+		return emailCount;
+	}
+
+	public int getAuthorCount() {
+		return authorCount;
+	}
+
+	public double getMeanThreadSize() {
+		return meanThreadSize;
+	}
+
+	public int getMaxThreadDepth() {
+		return maxThreadDepth;
+	}
+
+	public double getReplyToLatestRatio() {
+		return replyToLatestRatio;
+	}
+
+	public int getMedianBodyWords() {
+		return medianBodyWords;
+	}
+
+	public double getBodySizeSpread() {
+		return bodySizeSpread;
+	}
+
+	public int getMaxBodyWords() {
+		return maxBodyWords;
+	}
+
+	public double getHtmlRatio() {
+		return htmlRatio;
+	}
+
+	public double getQuoteRatio() {
+		return quoteRatio;
+	}
+
+	public int getMaxQuotedLines() {
+		return maxQuotedLines;
+	}
+
+	public long getEmailsPerFile() {
+		return emailsPerFile;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public ZonedDateTime getStartDate() {
+		return startDate;
+	}
+}
@@ -0,0 +1,78 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+
+/**
+ * Defines the fields of the documents in an {@link EmailIndex}, of which
+ * there's one for each email, and builds them from rows of the EMAIL table.
+ * <p>
+ *     The root and hidden fields are only stored as doc values, so that they
+ *     can be updated in place when an email is hidden, shown or linked to
+ *     another thread, without analyzing its body again.
+ * </p>
+ */
+final class EmailDocuments {
+	static final String ID = "id";
+	static final String ROOT_ID = "root_id";
+	static final String HIDDEN = "hidden";
+	static final String DATE = "date";
+	static final String SENT_FROM = "sent_from";
+	static final String SUBJECT = "subject";
+	static final String BODY = "body";
+
+	/**
+	 * The columns that must be selected, in order, to build a document with
+	 * {@link #fromRow(ResultSet, long)}.
+	 */
+	static final String COLUMNS = "ID, SUBJECT, SENT_FROM, DATE, BODY, HIDDEN";
+
+	/**
+	 * The maximum length of the sender that's stored, since sorted doc values
+	 * are limited in size.
+	 */
+	private static final int MAX_SENT_FROM_LENGTH = 512;
+
+	private EmailDocuments() {}
+
+	static Term idTerm(long id) {
+		return new Term(ID, Long.toString(id));
+	}
+
+	/**
+	 * Builds the document for the email in the current row.
+	 * @param rs The result set, which must have selected {@link #COLUMNS}.
+	 * @param rootId The id of the root of the email's thread.
+	 * @return The document.
+	 * @throws SQLException If the row couldn't be read.
+	 */
+	static Document fromRow(ResultSet rs, long rootId) throws SQLException {
+		long id = rs.getLong(1);
+		String subject = rs.getString(2);
+		String sentFrom = rs.getString(3);
+		OffsetDateTime date = rs.getObject(4, OffsetDateTime.class);
+		String body = rs.getString(5);
+		boolean hidden = rs.getBoolean(6);
+
+		Document doc = new Document();
+		doc.add(new StringField(ID, Long.toString(id), Field.Store.NO));
+		doc.add(new NumericDocValuesField(ID, id));
+		doc.add(new NumericDocValuesField(ROOT_ID, rootId));
+		doc.add(new NumericDocValuesField(HIDDEN, hidden ? 1 : 0));
+		if (date != null) {
+			doc.add(new NumericDocValuesField(DATE, date.toInstant().toEpochMilli()));
+		}
+		if (sentFrom != null) {
+			String sender = sentFrom.length() > MAX_SENT_FROM_LENGTH ? sentFrom.substring(0, MAX_SENT_FROM_LENGTH) : sentFrom;
+			doc.add(new SortedDocValuesField(SENT_FROM, new BytesRef(sender)));
+		}
+		if (subject != null) doc.add(new TextField(SUBJECT, subject, Field.Store.NO));
+		if (body != null) doc.add(new TextField(BODY, body, Field.Store.NO));
+		return doc;
+	}
+}
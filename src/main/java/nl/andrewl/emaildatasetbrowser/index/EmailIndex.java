@@ -0,0 +1,905 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.data.search.EmailIndexSearcher;
+import nl.andrewl.email_indexer.util.DbUtils;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.data.TagIndex;
+import nl.andrewl.emaildatasetbrowser.data.ZipDatasetCache;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * The browser's own Lucene index of a dataset's emails, which is kept
+ * up-to-date incrementally as emails are added, hidden, shown, deleted or
+ * linked to other threads. Use {@link #of(EmailDataset)} to get the index for
+ * a dataset.
+ * <p>
+ *     The index is stored in the {@value #DIRECTORY_NAME} directory of the
+ *     dataset, and contains one document per email, as defined by
+ *     {@link EmailDocuments}. It's opened in the background when it's first
+ *     requested, and only built from scratch if it doesn't exist yet, or
+ *     can't be read. After that, whenever an event is published on the
+ *     dataset's {@link DatasetEventBus}, the changes in the dataset's
+ *     {@link IndexChangeLog} are applied to it and removed from the log. All
+ *     changes to the index are made on a single thread.
+ * </p>
+ * <p>
+ *     Searches share a single searcher, which is kept open for as long as the
+ *     index is, and refreshed right after changes are applied, so that they
+ *     show up in searches before they're committed. Each new searcher is
+ *     warmed up with the queries given to {@link #warmUp(List)}, so that the
+ *     first search after opening a dataset doesn't have to load everything
+ *     from disk.
+ * </p>
+ * <p>
+ *     Results can be fetched in pages with {@link #searchPage(String, Cursor, int)},
+ *     where each page continues after the last hit of the previous one, so
+ *     that deep pages cost about as much as the first one. Recent searchers
+ *     are kept around for a while, so that all pages of a search are found
+ *     with the same searcher, even if the index changes in between.
+ *     Cancelling the future of a page, or giving it a deadline, stops the
+ *     search itself, and not just the wait for it.
+ * </p>
+ * <p>
+ *     Besides the threads themselves, {@link #countFacets(String, Instant)}
+ *     counts all emails that match a query in several ways, using only doc
+ *     values and the dataset's {@link TagIndex}.
+ * </p>
+ * <p>
+ *     Until the index is ready, searches fall back to the index of the email
+ *     indexer. That index isn't updated when emails are appended, so those
+ *     searches may miss them. Everything else, including exports of query
+ *     results, only uses this index.
+ * </p>
+ */
+public class EmailIndex {
+	/**
+	 * The name of the index's directory, within the dataset's directory.
+	 */
+	public static final String DIRECTORY_NAME = "browser-index";
+
+	private static final String SCHEMA_VERSION_KEY = "schemaVersion";
+	/**
+	 * The version of the fields in {@link EmailDocuments}. When it changes,
+	 * existing indexes are built again.
+	 */
+	private static final String SCHEMA_VERSION = "1";
+	private static final int CHANGE_BATCH_SIZE = 10_000;
+	/**
+	 * The number of changes in a batch above which the structure of all
+	 * emails is loaded at once, instead of finding the root of each email
+	 * separately.
+	 */
+	private static final int STRUCTURE_THRESHOLD = 1_000;
+	private static final int ID_CHUNK_SIZE = 500;
+	private static final String[] SEARCH_FIELDS = {EmailDocuments.SUBJECT, EmailDocuments.BODY};
+	/**
+	 * The number of threads to find for each warm-up query.
+	 */
+	private static final int WARMUP_RESULTS = 100;
+	/**
+	 * Segments with more documents than this are searched on their own
+	 * thread, while smaller ones are grouped together.
+	 */
+	private static final int MAX_DOCS_PER_SLICE = 10_000;
+	private static final int MAX_SEGMENTS_PER_SLICE = 5;
+	/**
+	 * The time after which a searcher that was replaced by a newer one can be
+	 * closed, after which the next page of a search that used it is found
+	 * with the current searcher instead.
+	 */
+	private static final double SEARCHER_MAX_AGE_SECONDS = 600;
+	private static final long NO_SEARCHER_VERSION = -1;
+	/**
+	 * The maximum number of senders whose number of matching emails is
+	 * counted separately.
+	 */
+	private static final int MAX_FACET_SENDERS = 25;
+
+	private static final Map<EmailDataset, EmailIndex> indexes = new WeakHashMap<>();
+
+	private final EmailDataset dataset;
+	private final Analyzer analyzer = new StandardAnalyzer();
+	private final ExecutorService writerExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "email-index-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final ExecutorService searchExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+		Thread thread = new Thread(r, "email-index-searcher");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Consumer<DatasetEvent> eventSubscriber = this::handle;
+	/**
+	 * Set while a task to apply changes is waiting to run, so that a burst of
+	 * events only queues it once.
+	 */
+	private final AtomicBoolean applyQueued = new AtomicBoolean(false);
+
+	// These are only modified on the writer thread.
+	private IndexChangeLog changeLog;
+	private Directory directory;
+	private volatile IndexWriter writer;
+	private volatile SearcherManager searcherManager;
+	private final SearcherLifetimeManager searcherLifetimes = new SearcherLifetimeManager();
+
+	private volatile List<Query> warmupQueries = List.of();
+	private volatile boolean ready = false;
+	private volatile boolean released = false;
+
+	/**
+	 * A position in the results of a search, after which the next page
+	 * starts.
+	 */
+	public static final class Cursor {
+		/**
+		 * The version of the searcher that found the previous page, or
+		 * {@link #NO_SEARCHER_VERSION} if the index wasn't ready.
+		 */
+		private final long searcherVersion;
+		/**
+		 * The last hit that was looked at, which is only meaningful for the
+		 * searcher that found it.
+		 */
+		private final ScoreDoc after;
+		/**
+		 * The roots of all threads on the previous pages, since other emails
+		 * of those threads may still match.
+		 */
+		private final Set<Long> seenRootIds;
+
+		private Cursor(long searcherVersion, ScoreDoc after, Set<Long> seenRootIds) {
+			this.searcherVersion = searcherVersion;
+			this.after = after;
+			this.seenRootIds = seenRootIds;
+		}
+	}
+
+	/**
+	 * A single page of search results.
+	 * @param rootIds The ids of the roots of the threads on this page, with
+	 *                the best match first.
+	 * @param nextCursor The cursor to fetch the next page with, or null if
+	 *                   this is the last page.
+	 * @param truncated Whether the search was stopped at its deadline before
+	 *                  all emails were searched. The page then only contains
+	 *                  the best threads among the emails that were searched,
+	 *                  and it's always the last page.
+	 */
+	public record Page(List<Long> rootIds, Cursor nextCursor, boolean truncated) {
+		public boolean hasNextPage() {
+			return nextCursor != null;
+		}
+	}
+
+	private EmailIndex(EmailDataset dataset) {
+		this.dataset = dataset;
+		DatasetEventBus.of(dataset).subscribe(eventSubscriber);
+	}
+
+	/**
+	 * Gets the index for a dataset, creating it and starting to open it in
+	 * the background if needed. If the dataset is still being extracted from
+	 * a ZIP file, it's opened once that's done.
+	 * @param ds The dataset.
+	 * @return The dataset's index.
+	 */
+	public static synchronized EmailIndex of(EmailDataset ds) {
+		return indexes.computeIfAbsent(ds, d -> {
+			var index = new EmailIndex(d);
+			ZipDatasetCache.whenExtracted(d.getOpenDir()).thenRun(() -> index.submit(index::open));
+			return index;
+		});
+	}
+
+	/**
+	 * Closes the index for a dataset. This must be done before the dataset is
+	 * closed, and waits for any change that's being applied to finish. A build
+	 * of the index that's in progress is stopped.
+	 * @param ds The dataset.
+	 */
+	public static void release(EmailDataset ds) {
+		EmailIndex index;
+		synchronized (EmailIndex.class) {
+			index = indexes.remove(ds);
+		}
+		if (index == null) return;
+		DatasetEventBus.of(ds).unsubscribe(index.eventSubscriber);
+		index.released = true;
+		index.ready = false;
+		index.writerExecutor.submit(index::closeWriter);
+		index.writerExecutor.shutdown();
+		try {
+			if (!index.writerExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+				System.err.println("Timed out while closing the email index.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Tells whether the index is ready to be searched. If not, searches are
+	 * done with the email indexer's index.
+	 * @return True if the index is ready.
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Searches for the threads that contain emails which match a query, and
+	 * which aren't hidden.
+	 * @param queryString The Lucene query, which searches the subject and body
+	 *                    by default.
+	 * @param maxResults The maximum number of threads to find.
+	 * @return A future that completes with the ids of the roots of the
+	 * matching threads, with the best match first.
+	 */
+	public CompletableFuture<List<Long>> search(String queryString, int maxResults) {
+		return searchPage(queryString, null, maxResults).thenApply(Page::rootIds);
+	}
+
+	/**
+	 * Searches for a page of the threads that contain emails which match a
+	 * query, and which aren't hidden.
+	 * @param queryString The Lucene query, which searches the subject and body
+	 *                    by default.
+	 * @param cursor The cursor to continue after, or null to get the first
+	 *               page.
+	 * @param size The maximum number of threads on the page.
+	 * @return A future that completes with the page.
+	 */
+	public CompletableFuture<Page> searchPage(String queryString, Cursor cursor, int size) {
+		return searchPage(queryString, cursor, size, null);
+	}
+
+	/**
+	 * Searches for a page of the threads that contain emails which match a
+	 * query, and which aren't hidden, for at most a limited time. Cancelling
+	 * the returned future stops the search as well.
+	 * @param queryString The Lucene query, which searches the subject and body
+	 *                    by default.
+	 * @param cursor The cursor to continue after, or null to get the first
+	 *               page.
+	 * @param size The maximum number of threads on the page.
+	 * @param deadline The time at which the search is stopped, and the threads
+	 *                 that were found until then are returned, or null if the
+	 *                 search may take as long as it needs. It's ignored while
+	 *                 the index isn't ready.
+	 * @return A future that completes with the page.
+	 */
+	public CompletableFuture<Page> searchPage(String queryString, Cursor cursor, int size, Instant deadline) {
+		Set<Long> seenRootIds = cursor == null ? Set.of() : cursor.seenRootIds;
+		SearcherManager manager = searcherManager;
+		if (!ready || manager == null) {
+			// The email indexer can't continue after a hit, so we find all threads up to the end of the page.
+			int maxResults = seenRootIds.size() + size;
+			// The email indexer's index may still be extracted from a ZIP file.
+			return ZipDatasetCache.whenExtracted(dataset.getOpenDir())
+					.thenCompose(unused -> new EmailIndexSearcher().searchAsync(dataset, queryString, maxResults))
+					.thenApply(ids -> {
+						List<Long> rootIds = ids.stream()
+								.filter(id -> !seenRootIds.contains(id))
+								.limit(size)
+								.toList();
+						if (ids.size() < maxResults) return new Page(rootIds, null, false);
+						Set<Long> seen = new HashSet<>(seenRootIds);
+						seen.addAll(rootIds);
+						return new Page(rootIds, new Cursor(NO_SEARCHER_VERSION, null, seen), false);
+					});
+		}
+		CompletableFuture<Page> future = new CompletableFuture<>();
+		BooleanSupplier shouldStop = () -> future.isDone() || (deadline != null && Instant.now().isAfter(deadline));
+		CompletableFuture.runAsync(() -> {
+			if (future.isDone()) return;
+			try {
+				Query query = parseQuery(queryString);
+				IndexSearcher searcher = null;
+				ScoreDoc after = null;
+				if (cursor != null && cursor.searcherVersion != NO_SEARCHER_VERSION) {
+					searcher = searcherLifetimes.acquire(cursor.searcherVersion);
+					// If the searcher was closed, we start over and skip the threads that were already found.
+					if (searcher != null) after = cursor.after;
+				}
+				if (searcher == null) searcher = manager.acquire();
+				try {
+					long version = searcherLifetimes.record(searcher);
+					future.complete(findPage(searcher, query, after, seenRootIds, size, version, shouldStop));
+				} finally {
+					manager.release(searcher);
+				}
+			} catch (IOException | ParseException | RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Counts the emails that match a query by month, sender, tag, thread role
+	 * and whether they're hidden, for at most a limited time. Cancelling the
+	 * returned future stops counting as well.
+	 * @param queryString The Lucene query, which searches the subject and body
+	 *                    by default.
+	 * @param deadline The time at which counting is stopped, and the counts
+	 *                 until then are returned, or null if there's no limit.
+	 * @return A future that completes with the counts, or with empty if the
+	 * index isn't ready yet.
+	 */
+	public CompletableFuture<Optional<SearchFacets>> countFacets(String queryString, Instant deadline) {
+		SearcherManager manager = searcherManager;
+		if (!ready || manager == null) return CompletableFuture.completedFuture(Optional.empty());
+		CompletableFuture<Optional<SearchFacets>> future = new CompletableFuture<>();
+		BooleanSupplier shouldStop = () -> future.isDone() || (deadline != null && Instant.now().isAfter(deadline));
+		CompletableFuture.runAsync(() -> {
+			if (future.isDone()) return;
+			try {
+				// Hidden emails are counted too, so the query isn't limited to visible ones.
+				Query query = new MultiFieldQueryParser(SEARCH_FIELDS, analyzer).parse(queryString);
+				var collectorManager = new FacetCollectorManager(shouldStop);
+				IndexSearcher searcher = manager.acquire();
+				FacetCollectorManager.FacetCollector counts;
+				try {
+					counts = searcher.search(query, collectorManager);
+				} finally {
+					manager.release(searcher);
+				}
+				Optional<Map<Integer, Long>> tagCounts = counts.idsOutOfRange
+						? Optional.empty()
+						: TagIndex.of(dataset).countTaggedEmails(counts.shownIds);
+				future.complete(Optional.of(new SearchFacets(
+						counts.shownCount,
+						counts.hiddenCount,
+						counts.rootCount,
+						counts.replyCount,
+						counts.getMonthCounts(),
+						counts.undatedCount,
+						counts.getTopSenders(MAX_FACET_SENDERS),
+						counts.senderCounts.size(),
+						tagCounts,
+						collectorManager.isStopped()
+				)));
+			} catch (IOException | ParseException | RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Sets the queries that are used to warm up new searchers, and warms up
+	 * the current one with them in the background. Queries that can't be
+	 * parsed are ignored.
+	 * @param queries The queries, which should be representative of the
+	 *                searches that will be done, like the most recent ones.
+	 * @return A future that completes when the current searcher is warm.
+	 */
+	public CompletableFuture<Void> warmUp(List<String> queries) {
+		List<Query> parsed = new ArrayList<>(queries.size());
+		for (String query : queries) {
+			try {
+				parsed.add(parseQuery(query));
+			} catch (ParseException e) {
+				// Invalid queries are simply not used.
+			}
+		}
+		warmupQueries = List.copyOf(parsed);
+		return submit(this::warmCurrentSearcher);
+	}
+
+	/**
+	 * Builds the index from scratch, using all cores. This is only needed to
+	 * recover from a corrupted index, since it's otherwise kept up-to-date by
+	 * itself.
+	 * @param messages Receives messages about each step of the build.
+	 * @param progress Receives the number of emails indexed so far, the rate
+	 *                 and the estimated remaining time, about every second.
+	 * @return A future that completes when the index has been built.
+	 */
+	public CompletableFuture<Void> rebuild(Consumer<String> messages, Consumer<IndexBuildProgress> progress) {
+		return submit(() -> {
+			if (writer == null) {
+				// The index couldn't be opened before, so we try again from the start.
+				open(true, messages, progress);
+			} else {
+				build(messages, progress);
+			}
+		});
+	}
+
+	/**
+	 * Runs a task with the files of the index's last commit, for example to
+	 * copy them. The task runs on the writer thread, so nothing is committed
+	 * and none of these files are deleted until it's done. Changes that are
+	 * made meanwhile are applied after.
+	 * @param task Receives the paths of the files, which is empty if the index
+	 *             doesn't exist.
+	 * @return A future that completes when the task is done.
+	 */
+	public CompletableFuture<Void> withCommittedFiles(CommittedFilesTask task) {
+		if (released) return CompletableFuture.failedFuture(new IllegalStateException("The email index was closed."));
+		return submit(() -> {
+			List<Path> files = new ArrayList<>();
+			if (directory != null && DirectoryReader.indexExists(directory)) {
+				Path dir = dataset.getOpenDir().resolve(DIRECTORY_NAME);
+				for (String name : SegmentInfos.readLatestCommit(directory).files(true)) {
+					files.add(dir.resolve(name));
+				}
+			}
+			task.run(files);
+		});
+	}
+
+	@FunctionalInterface
+	public interface CommittedFilesTask {
+		void run(List<Path> files) throws Exception;
+	}
+
+	/**
+	 * Parses a query, and limits it to emails that aren't hidden.
+	 */
+	private Query parseQuery(String queryString) throws ParseException {
+		return visibleOnly(new MultiFieldQueryParser(SEARCH_FIELDS, analyzer).parse(queryString));
+	}
+
+	private static Query visibleOnly(Query query) {
+		return new BooleanQuery.Builder()
+				.add(query, BooleanClause.Occur.MUST)
+				.add(NumericDocValuesField.newSlowExactQuery(EmailDocuments.HIDDEN, 0), BooleanClause.Occur.FILTER)
+				.build();
+	}
+
+	/**
+	 * Finds the next threads with matching emails, after the given hit.
+	 * Several emails of a thread may match, so this goes through batches of
+	 * hits until enough new threads are found, or until it should stop.
+	 */
+	private static Page findPage(
+			IndexSearcher searcher,
+			Query query,
+			ScoreDoc after,
+			Set<Long> seenRootIds,
+			int size,
+			long searcherVersion,
+			BooleanSupplier shouldStop
+	) throws IOException {
+		Set<Long> seen = new HashSet<>(seenRootIds);
+		List<Long> rootIds = new ArrayList<>(size);
+		List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		int batchSize = Math.max(100, Math.min(size * 2, 10_000));
+		while (true) {
+			var collectorManager = new StoppableCollectorManager(batchSize, after, shouldStop);
+			TopDocs batch = searcher.search(query, collectorManager);
+			// The hits of a stopped search are incomplete, so there's no way to continue after them.
+			boolean stopped = collectorManager.isStopped();
+			for (ScoreDoc hit : batch.scoreDocs) {
+				if (rootIds.size() == size) {
+					return stopped ? new Page(rootIds, null, true) : new Page(rootIds, new Cursor(searcherVersion, after, seen), false);
+				}
+				after = hit;
+				LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+				NumericDocValues roots = leaf.reader().getNumericDocValues(EmailDocuments.ROOT_ID);
+				if (roots != null && roots.advanceExact(hit.doc - leaf.docBase) && seen.add(roots.longValue())) {
+					rootIds.add(roots.longValue());
+				}
+			}
+			if (stopped) return new Page(rootIds, null, true);
+			if (batch.scoreDocs.length < batchSize) return new Page(rootIds, null, false);
+		}
+	}
+
+	/**
+	 * Creates a searcher for a new reader, which searches large segments in
+	 * parallel. Searchers for a whole new index are warmed up before they're
+	 * used, while searchers that are refreshed after a change share most of
+	 * their segments, and thus their caches, with the previous one.
+	 */
+	private IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+		IndexSearcher searcher = new IndexSearcher(reader, searchExecutor) {
+			@Override
+			protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+				return slices(leaves, MAX_DOCS_PER_SLICE, MAX_SEGMENTS_PER_SLICE);
+			}
+		};
+		if (previousReader == null) warm(searcher);
+		return searcher;
+	}
+
+	/**
+	 * Runs the warm-up queries on a searcher, which loads the parts of the
+	 * index they need from disk, and fills the cache of the hidden filter.
+	 */
+	private void warm(IndexSearcher searcher) throws IOException {
+		Query visible = visibleOnly(new MatchAllDocsQuery());
+		findPage(searcher, visible, null, Set.of(), WARMUP_RESULTS, NO_SEARCHER_VERSION, () -> released);
+		for (Query query : warmupQueries) {
+			findPage(searcher, query, null, Set.of(), WARMUP_RESULTS, NO_SEARCHER_VERSION, () -> released);
+		}
+	}
+
+	private void warmCurrentSearcher() throws IOException {
+		SearcherManager manager = searcherManager;
+		if (manager == null) return;
+		IndexSearcher searcher = manager.acquire();
+		try {
+			warm(searcher);
+		} finally {
+			manager.release(searcher);
+		}
+	}
+
+	private void handle(DatasetEvent event) {
+		if (
+				event instanceof DatasetEvent.TagAdded ||
+				event instanceof DatasetEvent.TagRemoved ||
+				event instanceof DatasetEvent.TagCreated ||
+				event instanceof DatasetEvent.TagUpdated ||
+				event instanceof DatasetEvent.TagDeleted
+		) {
+			return; // Tags aren't part of the index.
+		}
+		if (applyQueued.compareAndSet(false, true)) {
+			submit(() -> {
+				applyQueued.set(false);
+				if (ready) applyChanges();
+			});
+		}
+	}
+
+	@FunctionalInterface
+	private interface IndexTask {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Runs a task on the writer thread.
+	 */
+	private CompletableFuture<Void> submit(IndexTask task) {
+		if (released) return CompletableFuture.completedFuture(null);
+		try {
+			return CompletableFuture.runAsync(() -> {
+				if (released) return;
+				try {
+					task.run();
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, writerExecutor).whenComplete((unused, throwable) -> {
+				if (throwable != null) throwable.printStackTrace();
+			});
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	private void open() throws IOException, SQLException {
+		open(false, message -> {}, progress -> {});
+	}
+
+	/**
+	 * Opens the index, and builds it if it doesn't exist, can't be read, or
+	 * if a build is forced. Otherwise, any changes that were made since it was
+	 * last opened are applied.
+	 */
+	private void open(boolean forceBuild, Consumer<String> messages, Consumer<IndexBuildProgress> progress) throws IOException, SQLException {
+		changeLog = new IndexChangeLog(dataset);
+		Path dir = dataset.getOpenDir().resolve(DIRECTORY_NAME);
+		Files.createDirectories(dir);
+		if (directory == null) directory = FSDirectory.open(dir);
+		boolean valid = !forceBuild && isValid(directory);
+		try {
+			writer = new IndexWriter(directory, newConfig(valid ? IndexWriterConfig.OpenMode.APPEND : IndexWriterConfig.OpenMode.CREATE));
+		} catch (LockObtainFailedException e) {
+			throw e; // The index is in use by another process.
+		} catch (IOException e) {
+			System.err.println("The email index can't be opened, so it will be built again: " + e.getMessage());
+			valid = false;
+			writer = new IndexWriter(directory, newConfig(IndexWriterConfig.OpenMode.CREATE));
+		}
+		searcherManager = new SearcherManager(writer, new SearcherFactory() {
+			@Override
+			public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+				return EmailIndex.this.newSearcher(reader, previousReader);
+			}
+		});
+		if (!valid) {
+			build(messages, progress);
+		} else {
+			long emailCount = DbUtils.count(dataset.getConnection(), "SELECT COUNT(ID) FROM EMAIL");
+			if (writer.getDocStats().numDocs != emailCount) {
+				// The dataset was changed without recording it, for example by an older version.
+				changeLog.recordUnknownChanges();
+			}
+			ready = true;
+			applyChanges();
+		}
+	}
+
+	private static boolean isValid(Directory directory) {
+		try {
+			if (!DirectoryReader.indexExists(directory)) return false;
+			return SCHEMA_VERSION.equals(SegmentInfos.readLatestCommit(directory).getUserData().get(SCHEMA_VERSION_KEY));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private IndexWriterConfig newConfig(IndexWriterConfig.OpenMode mode) {
+		return new IndexWriterConfig(analyzer)
+				.setOpenMode(mode)
+				.setRAMBufferSizeMB(64);
+	}
+
+	/**
+	 * Replaces all documents in the index with new ones, built from the
+	 * database. Changes that are recorded while building are applied after.
+	 * If there was an index already, searches keep using it until the new one
+	 * is done.
+	 */
+	private void build(Consumer<String> messages, Consumer<IndexBuildProgress> progress) throws IOException, SQLException {
+		long lastChangeId = changeLog.getLatestId();
+		try {
+			writer.deleteAll();
+			int parallelism = Runtime.getRuntime().availableProcessors();
+			new EmailIndexBuilder(dataset, writer, parallelism, messages, progress, () -> released).build();
+			commit();
+		} catch (IOException | SQLException | RuntimeException e) {
+			// Discard the partial index, leaving the last commit in place.
+			ready = false;
+			searcherManager.close();
+			searcherManager = null;
+			writer.rollback();
+			writer = null;
+			throw e;
+		}
+		changeLog.removeUpTo(lastChangeId);
+		applyChanges();
+		searcherManager.maybeRefreshBlocking();
+		warmCurrentSearcher();
+		ready = true;
+	}
+
+	private void commit() throws IOException {
+		writer.setLiveCommitData(Map.of(SCHEMA_VERSION_KEY, SCHEMA_VERSION).entrySet());
+		writer.commit();
+	}
+
+	private void closeWriter() {
+		try {
+			searcherLifetimes.close();
+			if (searcherManager != null) searcherManager.close();
+			if (writer != null) writer.close();
+			if (directory != null) directory.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		searcherManager = null;
+		writer = null;
+		directory = null;
+		searchExecutor.shutdown();
+	}
+
+	/**
+	 * Applies all changes in the change log to the index, in batches. Each
+	 * batch is committed before it's removed from the log.
+	 */
+	private void applyChanges() throws IOException, SQLException {
+		while (!released && writer != null) {
+			List<IndexChangeLog.Change> changes = changeLog.findOldest(CHANGE_BATCH_SIZE);
+			if (changes.isEmpty()) return;
+			apply(changes);
+			// Searches see the changes right away, while committing them may take a while.
+			searcherManager.maybeRefreshBlocking();
+			searcherLifetimes.prune(new SearcherLifetimeManager.PruneByAge(SEARCHER_MAX_AGE_SECONDS));
+			commit();
+			changeLog.removeUpTo(changes.get(changes.size() - 1).id());
+			if (changes.size() < CHANGE_BATCH_SIZE) return;
+		}
+	}
+
+	private void apply(List<IndexChangeLog.Change> changes) throws IOException, SQLException {
+		Set<Long> contentIds = new LinkedHashSet<>();
+		Set<Long> hiddenIds = new LinkedHashSet<>();
+		Set<Long> parentIds = new LinkedHashSet<>();
+		Set<Long> deletedIds = new LinkedHashSet<>();
+		for (var change : changes) {
+			switch (change.kind()) {
+				case CONTENT -> contentIds.add(change.emailId());
+				case HIDDEN -> hiddenIds.add(change.emailId());
+				case PARENT -> parentIds.add(change.emailId());
+				case DELETED -> deletedIds.add(change.emailId());
+				case ALL -> {
+					reconcile();
+					return;
+				}
+			}
+		}
+		RootFinder roots;
+		if (changes.size() > STRUCTURE_THRESHOLD) {
+			EmailStructure structure = EmailStructure.load(dataset.getConnection());
+			roots = structure::getRootOf;
+		} else {
+			roots = id -> EmailStructure.findRoot(dataset.getConnection(), id);
+		}
+		deletedIds.removeAll(contentIds);
+		// Emails that still exist, for example because deleting them failed, are indexed again.
+		contentIds.addAll(delete(deletedIds));
+		reindex(contentIds, roots);
+		hiddenIds.removeAll(contentIds);
+		updateHidden(hiddenIds);
+		updateThreads(parentIds, roots);
+	}
+
+	@FunctionalInterface
+	private interface RootFinder {
+		long findRoot(long emailId) throws SQLException;
+	}
+
+	/**
+	 * Replaces the documents of the given emails, or deletes them if the
+	 * emails no longer exist.
+	 */
+	private void reindex(Collection<Long> ids, RootFinder roots) throws IOException, SQLException {
+		Set<Long> missing = new HashSet<>(ids);
+		forEachRow(ids, "SELECT " + EmailDocuments.COLUMNS + " FROM EMAIL WHERE ID IN (%s)", rs -> {
+			long id = rs.getLong(1);
+			writer.updateDocument(EmailDocuments.idTerm(id), EmailDocuments.fromRow(rs, roots.findRoot(id)));
+			missing.remove(id);
+		});
+		for (long id : missing) writer.deleteDocuments(EmailDocuments.idTerm(id));
+	}
+
+	/**
+	 * Deletes the documents of the given emails, without building any
+	 * documents, as long as the emails no longer exist.
+	 * @return The ids of the emails that still exist.
+	 */
+	private Set<Long> delete(Collection<Long> ids) throws IOException, SQLException {
+		Set<Long> existing = new HashSet<>();
+		forEachRow(ids, "SELECT ID FROM EMAIL WHERE ID IN (%s)", rs -> existing.add(rs.getLong(1)));
+		for (long id : ids) {
+			if (!existing.contains(id)) writer.deleteDocuments(EmailDocuments.idTerm(id));
+		}
+		return existing;
+	}
+
+	/**
+	 * Updates the hidden flag of the given emails, or deletes their documents
+	 * if the emails no longer exist.
+	 */
+	private void updateHidden(Collection<Long> ids) throws IOException, SQLException {
+		Set<Long> missing = new HashSet<>(ids);
+		forEachRow(ids, "SELECT ID, HIDDEN FROM EMAIL WHERE ID IN (%s)", rs -> {
+			long id = rs.getLong(1);
+			writer.updateNumericDocValue(EmailDocuments.idTerm(id), EmailDocuments.HIDDEN, rs.getBoolean(2) ? 1 : 0);
+			missing.remove(id);
+		});
+		for (long id : missing) writer.deleteDocuments(EmailDocuments.idTerm(id));
+	}
+
+	/**
+	 * Updates the root of the given emails, and of all of their replies, or
+	 * deletes their documents if the emails no longer exist.
+	 */
+	private void updateThreads(Collection<Long> ids, RootFinder roots) throws IOException, SQLException {
+		Set<Long> missing = new HashSet<>(ids);
+		forEachRow(ids, "SELECT ID FROM EMAIL WHERE ID IN (%s)", rs -> missing.remove(rs.getLong(1)));
+		for (long id : ids) {
+			if (missing.contains(id)) {
+				writer.deleteDocuments(EmailDocuments.idTerm(id));
+				continue;
+			}
+			long rootId = roots.findRoot(id);
+			Set<Long> visited = new HashSet<>();
+			List<Long> level = List.of(id);
+			for (int depth = 0; !level.isEmpty() && depth < EmailStructure.MAX_THREAD_DEPTH; depth++) {
+				List<Long> next = new ArrayList<>();
+				for (long emailId : level) {
+					if (!visited.add(emailId)) continue;
+					writer.updateNumericDocValue(EmailDocuments.idTerm(emailId), EmailDocuments.ROOT_ID, rootId);
+				}
+				forEachRow(level, "SELECT ID FROM EMAIL WHERE PARENT_ID IN (%s)", rs -> next.add(rs.getLong(1)));
+				next.removeAll(visited);
+				level = next;
+			}
+		}
+	}
+
+	/**
+	 * Compares every document in the index to the database, and fixes all
+	 * differences. Only the documents of emails that are missing from the
+	 * index are built, so this is still much faster than building the index
+	 * from scratch.
+	 */
+	private void reconcile() throws IOException, SQLException {
+		EmailStructure structure = EmailStructure.load(dataset.getConnection());
+		BitSet indexed = new BitSet(structure.size());
+		List<Long> duplicateIds = new ArrayList<>();
+		try (DirectoryReader reader = DirectoryReader.open(writer)) {
+			for (LeafReaderContext leaf : reader.leaves()) {
+				LeafReader leafReader = leaf.reader();
+				Bits liveDocs = leafReader.getLiveDocs();
+				NumericDocValues ids = leafReader.getNumericDocValues(EmailDocuments.ID);
+				NumericDocValues rootIds = leafReader.getNumericDocValues(EmailDocuments.ROOT_ID);
+				NumericDocValues hidden = leafReader.getNumericDocValues(EmailDocuments.HIDDEN);
+				if (ids == null || rootIds == null || hidden == null) continue;
+				for (int doc = ids.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = ids.nextDoc()) {
+					if (liveDocs != null && !liveDocs.get(doc)) continue;
+					long id = ids.longValue();
+					int position = structure.indexOf(id);
+					if (position < 0) {
+						writer.deleteDocuments(EmailDocuments.idTerm(id));
+						continue;
+					}
+					if (indexed.get(position)) {
+						duplicateIds.add(id);
+						continue;
+					}
+					indexed.set(position);
+					long expectedHidden = structure.isHidden(position) ? 1 : 0;
+					if (!hidden.advanceExact(doc) || hidden.longValue() != expectedHidden) {
+						writer.updateNumericDocValue(EmailDocuments.idTerm(id), EmailDocuments.HIDDEN, expectedHidden);
+					}
+					if (!rootIds.advanceExact(doc) || rootIds.longValue() != structure.getRoot(position)) {
+						writer.updateNumericDocValue(EmailDocuments.idTerm(id), EmailDocuments.ROOT_ID, structure.getRoot(position));
+					}
+				}
+			}
+		}
+		List<Long> missingIds = new ArrayList<>(duplicateIds);
+		for (int i = indexed.nextClearBit(0); i < structure.size(); i = indexed.nextClearBit(i + 1)) {
+			missingIds.add(structure.getId(i));
+		}
+		// Replacing a document removes all duplicates of it as well.
+		reindex(missingIds, structure::getRootOf);
+	}
+
+	@FunctionalInterface
+	private interface RowHandler {
+		void handle(ResultSet rs) throws SQLException, IOException;
+	}
+
+	/**
+	 * Runs a query once for each chunk of the given ids, and passes every row
+	 * of each result set to the given handler.
+	 */
+	private void forEachRow(Collection<Long> ids, String queryFormat, RowHandler handler) throws SQLException, IOException {
+		List<Long> idList = ids instanceof List<Long> l ? l : new ArrayList<>(ids);
+		for (int start = 0; start < idList.size(); start += ID_CHUNK_SIZE) {
+			List<Long> chunk = idList.subList(start, Math.min(idList.size(), start + ID_CHUNK_SIZE));
+			String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+			try (PreparedStatement stmt = dataset.getConnection().prepareStatement(queryFormat.formatted(placeholders))) {
+				for (int i = 0; i < chunk.size(); i++) stmt.setLong(i + 1, chunk.get(i));
+				try (ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) handler.handle(rs);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Builds the documents of an {@link EmailIndex} from scratch, by reading all
+ * emails from the database. This is only needed when the index doesn't exist
+ * yet, or is corrupted.
+ * <p>
+ *     The EMAIL table is split into ranges of ids with about the same number
+ *     of emails, which are read by several worker threads at once. Each
+ *     worker adds its documents to the same {@link IndexWriter}, which gives
+ *     every thread its own in-memory segment, so that analyzing the emails
+ *     uses all cores. Once all ranges are done, the segments are merged.
+ * </p>
+ */
+class EmailIndexBuilder {
+	/**
+	 * The number of emails in each range. Ranges are much smaller than a
+	 * worker's share, so that workers that are done early take over the rest.
+	 */
+	private static final int RANGE_SIZE = 5_000;
+	private static final long PROGRESS_INTERVAL_MS = 1_000;
+	/**
+	 * The size of the writer's buffer while building. Larger buffers mean
+	 * larger segments, and thus less merging.
+	 */
+	private static final double BUILD_RAM_BUFFER_MB = 256;
+
+	private final EmailDataset dataset;
+	private final IndexWriter writer;
+	private final int parallelism;
+	private final Consumer<String> messages;
+	private final Consumer<IndexBuildProgress> progress;
+	private final BooleanSupplier cancelled;
+
+	/**
+	 * A range of email ids, including both ends.
+	 */
+	private record IdRange(long firstId, long lastId) {}
+
+	/**
+	 * @param dataset The dataset to read emails from.
+	 * @param writer The writer to add documents to. It's expected to be empty.
+	 * @param parallelism The number of worker threads to use.
+	 * @param messages Receives messages about each step of the build.
+	 * @param progress Receives the progress of the build about every second.
+	 * @param cancelled Tells whether the build should be stopped.
+	 */
+	EmailIndexBuilder(
+			EmailDataset dataset,
+			IndexWriter writer,
+			int parallelism,
+			Consumer<String> messages,
+			Consumer<IndexBuildProgress> progress,
+			BooleanSupplier cancelled
+	) {
+		this.dataset = dataset;
+		this.writer = writer;
+		this.parallelism = Math.max(1, parallelism);
+		this.messages = messages;
+		this.progress = progress;
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * Adds a document for each email to the writer, and merges the segments,
+	 * without committing.
+	 * @return The number of documents that were added.
+	 * @throws SQLException If the emails couldn't be read.
+	 * @throws IOException If the documents couldn't be added.
+	 * @throws CancellationException If the build was stopped.
+	 */
+	long build() throws SQLException, IOException {
+		final long start = System.currentTimeMillis();
+		EmailStructure structure = EmailStructure.load(dataset.getConnection());
+		List<IdRange> ranges = new ArrayList<>();
+		for (int i = 0; i < structure.size(); i += RANGE_SIZE) {
+			int last = Math.min(structure.size(), i + RANGE_SIZE) - 1;
+			ranges.add(new IdRange(structure.getId(i), structure.getId(last)));
+		}
+		int workerCount = Math.max(1, Math.min(parallelism, ranges.size()));
+		messages.accept("Indexing %d emails on %d threads.".formatted(structure.size(), workerCount));
+
+		AtomicLong count = new AtomicLong();
+		// Workers are never interrupted, since that breaks the writer's files, so a failure is signalled with this.
+		AtomicBoolean failed = new AtomicBoolean(false);
+		ConcurrentLinkedQueue<IdRange> queue = new ConcurrentLinkedQueue<>(ranges);
+		ExecutorService workers = Executors.newFixedThreadPool(workerCount, r -> {
+			Thread thread = new Thread(r, "email-index-builder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "email-index-progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(
+				() -> progress.accept(new IndexBuildProgress(count.get(), structure.size(), Duration.ofMillis(System.currentTimeMillis() - start))),
+				PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS
+		);
+		double ramBuffer = writer.getConfig().getRAMBufferSizeMB();
+		writer.getConfig().setRAMBufferSizeMB(Math.max(ramBuffer, BUILD_RAM_BUFFER_MB));
+		try {
+			List<Future<Void>> futures = new ArrayList<>(workerCount);
+			for (int i = 0; i < workerCount; i++) {
+				futures.add(workers.submit(() -> {
+					IdRange range;
+					try {
+						while (!failed.get() && (range = queue.poll()) != null) {
+							indexRange(range, structure, count, failed);
+						}
+					} catch (Exception e) {
+						failed.set(true);
+						throw e;
+					}
+					return null;
+				}));
+			}
+			awaitAll(futures);
+		} finally {
+			workers.shutdown();
+			reporter.shutdownNow();
+			writer.getConfig().setRAMBufferSizeMB(ramBuffer);
+		}
+		progress.accept(new IndexBuildProgress(count.get(), structure.size(), Duration.ofMillis(System.currentTimeMillis() - start)));
+
+		// Searches use a thread per segment, so we keep one segment per worker.
+		messages.accept("Merging the index into %d segments.".formatted(workerCount));
+		writer.forceMerge(workerCount);
+		double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+		messages.accept("Indexed %d emails in %.1f seconds (%.0f emails/sec).".formatted(count.get(), seconds, count.get() / seconds));
+		return count.get();
+	}
+
+	private void indexRange(IdRange range, EmailStructure structure, AtomicLong count, AtomicBoolean failed) throws SQLException, IOException {
+		try (PreparedStatement stmt = dataset.getConnection().prepareStatement(
+				"SELECT " + EmailDocuments.COLUMNS + " FROM EMAIL WHERE ID BETWEEN ? AND ?"
+		)) {
+			stmt.setLong(1, range.firstId());
+			stmt.setLong(2, range.lastId());
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					if (failed.get()) return;
+					if (cancelled.getAsBoolean()) throw new CancellationException("The index build was cancelled.");
+					writer.addDocument(EmailDocuments.fromRow(rs, structure.getRootOf(rs.getLong(1))));
+					count.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for all workers to stop, and rethrows the first failure, if any.
+	 */
+	private static void awaitAll(List<Future<Void>> futures) throws SQLException, IOException {
+		ExecutionException failure = null;
+		for (var future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException("The index build was interrupted.");
+			} catch (ExecutionException e) {
+				if (failure == null) failure = e;
+			}
+		}
+		if (failure != null) {
+			Throwable cause = failure.getCause();
+			if (cause instanceof SQLException sqlException) throw sqlException;
+			if (cause instanceof IOException ioException) throw ioException;
+			if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+			throw new IllegalStateException(cause);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A compact snapshot of the ids, thread roots and hidden flags of all emails
+ * in a dataset, without their contents. It's used to find the root of each
+ * email while building the index, and to compare the index to the database.
+ */
+final class EmailStructure {
+	/**
+	 * The maximum number of parents that are followed to find the root of a
+	 * thread, which guards against cycles in broken datasets.
+	 */
+	static final int MAX_THREAD_DEPTH = 10_000;
+
+	private final long[] ids;
+	private final long[] roots;
+	private final BitSet hidden;
+
+	private EmailStructure(long[] ids, long[] roots, BitSet hidden) {
+		this.ids = ids;
+		this.roots = roots;
+		this.hidden = hidden;
+	}
+
+	/**
+	 * Loads the structure of all emails from the database.
+	 * @param c The connection to use.
+	 * @return The structure.
+	 * @throws SQLException If the emails couldn't be read.
+	 */
+	static EmailStructure load(Connection c) throws SQLException {
+		long[] ids = new long[1024];
+		long[] parents = new long[1024];
+		BitSet hidden = new BitSet();
+		int count = 0;
+		try (PreparedStatement stmt = c.prepareStatement("SELECT ID, PARENT_ID, HIDDEN FROM EMAIL ORDER BY ID");
+			 ResultSet rs = stmt.executeQuery()) {
+			while (rs.next()) {
+				if (count == ids.length) {
+					ids = Arrays.copyOf(ids, count * 2);
+					parents = Arrays.copyOf(parents, count * 2);
+				}
+				ids[count] = rs.getLong(1);
+				long parent = rs.getLong(2);
+				parents[count] = rs.wasNull() ? -1 : parent;
+				if (rs.getBoolean(3)) hidden.set(count);
+				count++;
+			}
+		}
+		ids = Arrays.copyOf(ids, count);
+		return new EmailStructure(ids, findRoots(ids, parents, count), hidden);
+	}
+
+	/**
+	 * Finds the root of each email, by following parents until an email
+	 * without a known parent is found. Roots that were already found are
+	 * reused, so each email is only visited a few times.
+	 */
+	private static long[] findRoots(long[] ids, long[] parents, int count) {
+		long[] roots = new long[count];
+		Arrays.fill(roots, -1);
+		int[] path = new int[64];
+		for (int i = 0; i < count; i++) {
+			if (roots[i] != -1) continue;
+			int length = 0;
+			int current = i;
+			long root = ids[i];
+			while (length < MAX_THREAD_DEPTH) {
+				if (length == path.length) path = Arrays.copyOf(path, length * 2);
+				path[length++] = current;
+				if (roots[current] != -1) {
+					root = roots[current];
+					break;
+				}
+				root = ids[current];
+				int parent = parents[current] == -1 ? -1 : Arrays.binarySearch(ids, 0, count, parents[current]);
+				if (parent < 0 || parent == current) break;
+				current = parent;
+			}
+			for (int j = 0; j < length; j++) roots[path[j]] = root;
+		}
+		return roots;
+	}
+
+	int size() {
+		return ids.length;
+	}
+
+	long getId(int position) {
+		return ids[position];
+	}
+
+	long getRoot(int position) {
+		return roots[position];
+	}
+
+	boolean isHidden(int position) {
+		return hidden.get(position);
+	}
+
+	/**
+	 * Finds the position of an email.
+	 * @param id The id of the email.
+	 * @return The position, or a negative number if there's no such email.
+	 */
+	int indexOf(long id) {
+		return Arrays.binarySearch(ids, id);
+	}
+
+	/**
+	 * Finds the root of an email's thread.
+	 * @param id The id of the email.
+	 * @return The id of the root, which is the email itself if it's unknown.
+	 */
+	long getRootOf(long id) {
+		int position = indexOf(id);
+		return position < 0 ? id : roots[position];
+	}
+
+	/**
+	 * Finds the root of a single email's thread by querying the database,
+	 * which is faster than loading the whole structure when only a few emails
+	 * have changed.
+	 * @param c The connection to use.
+	 * @param id The id of the email.
+	 * @return The id of the root.
+	 * @throws SQLException If the emails couldn't be read.
+	 */
+	static long findRoot(Connection c, long id) throws SQLException {
+		long current = id;
+		try (PreparedStatement stmt = c.prepareStatement("SELECT PARENT_ID FROM EMAIL WHERE ID = ?")) {
+			for (int i = 0; i < MAX_THREAD_DEPTH; i++) {
+				stmt.setLong(1, current);
+				try (ResultSet rs = stmt.executeQuery()) {
+					if (!rs.next()) return current;
+					long parent = rs.getLong(1);
+					if (rs.wasNull() || parent == id) return current;
+					current = parent;
+				}
+			}
+		}
+		return current;
+	}
+}
@@ -0,0 +1,187 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.*;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Counts the emails that match a query by month, sender, thread role and
+ * whether they're hidden, in a single pass over the doc values of all hits,
+ * without scoring them. The ids of the matching emails that aren't hidden are
+ * collected as well, so that they can be counted by tag with the dataset's
+ * tag index.
+ * <p>
+ *     Like {@link StoppableCollectorManager}, counting stops when the search
+ *     should be stopped, in which case the counts are incomplete.
+ * </p>
+ */
+final class FacetCollectorManager implements CollectorManager<FacetCollectorManager.FacetCollector, FacetCollectorManager.FacetCollector> {
+	private static final int CHECK_INTERVAL_MASK = 1023;
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+	private final BooleanSupplier shouldStop;
+	private volatile boolean stopped = false;
+
+	FacetCollectorManager(BooleanSupplier shouldStop) {
+		this.shouldStop = shouldStop;
+	}
+
+	boolean isStopped() {
+		return stopped;
+	}
+
+	private boolean checkStop() {
+		if (!stopped && shouldStop.getAsBoolean()) stopped = true;
+		return stopped;
+	}
+
+	@Override
+	public FacetCollector newCollector() {
+		return new FacetCollector();
+	}
+
+	@Override
+	public FacetCollector reduce(Collection<FacetCollector> collectors) throws IOException {
+		FacetCollector result = new FacetCollector();
+		for (var collector : collectors) result.merge(collector);
+		return result;
+	}
+
+	/**
+	 * Collects the counts of the segments of a single slice. Senders are
+	 * counted by their ordinal within a segment, and only looked up once the
+	 * segment is done.
+	 */
+	final class FacetCollector extends SimpleCollector {
+		long shownCount = 0;
+		long hiddenCount = 0;
+		long rootCount = 0;
+		long replyCount = 0;
+		long undatedCount = 0;
+		final Map<Integer, Long> monthCounts = new HashMap<>();
+		final Map<String, Long> senderCounts = new HashMap<>();
+		final RoaringBitmap shownIds = new RoaringBitmap();
+		/**
+		 * Set when an email's id doesn't fit in the bitmap, so that counts by
+		 * tag would be wrong.
+		 */
+		boolean idsOutOfRange = false;
+
+		private NumericDocValues ids;
+		private NumericDocValues rootIds;
+		private NumericDocValues hidden;
+		private NumericDocValues dates;
+		private SortedDocValues senders;
+		private int[] senderOrdCounts;
+		private int count = 0;
+
+		@Override
+		protected void doSetNextReader(LeafReaderContext context) throws IOException {
+			flushSenders();
+			// Throwing this skips the segment, so every remaining segment is skipped once we've stopped.
+			if (checkStop()) throw new CollectionTerminatedException();
+			var reader = context.reader();
+			ids = reader.getNumericDocValues(EmailDocuments.ID);
+			rootIds = reader.getNumericDocValues(EmailDocuments.ROOT_ID);
+			hidden = reader.getNumericDocValues(EmailDocuments.HIDDEN);
+			dates = reader.getNumericDocValues(EmailDocuments.DATE);
+			senders = reader.getSortedDocValues(EmailDocuments.SENT_FROM);
+			senderOrdCounts = senders == null ? null : new int[senders.getValueCount()];
+		}
+
+		@Override
+		public void collect(int doc) throws IOException {
+			if ((++count & CHECK_INTERVAL_MASK) == 0 && checkStop()) {
+				throw new CollectionTerminatedException();
+			}
+			if (hidden != null && hidden.advanceExact(doc) && hidden.longValue() != 0) {
+				hiddenCount++;
+				return;
+			}
+			shownCount++;
+			long id = ids != null && ids.advanceExact(doc) ? ids.longValue() : -1;
+			if (id >= 0 && id <= Integer.MAX_VALUE) {
+				shownIds.add((int) id);
+			} else {
+				idsOutOfRange = true;
+			}
+			if (rootIds != null && rootIds.advanceExact(doc) && rootIds.longValue() != id) {
+				replyCount++;
+			} else {
+				rootCount++;
+			}
+			if (dates != null && dates.advanceExact(doc)) {
+				LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(dates.longValue(), MILLIS_PER_DAY));
+				monthCounts.merge(date.getYear() * 12 + date.getMonthValue() - 1, 1L, Long::sum);
+			} else {
+				undatedCount++;
+			}
+			if (senders != null && senders.advanceExact(doc)) {
+				senderOrdCounts[senders.ordValue()]++;
+			}
+		}
+
+		@Override
+		public ScoreMode scoreMode() {
+			return ScoreMode.COMPLETE_NO_SCORES;
+		}
+
+		/**
+		 * Adds the counts of the senders of the last segment to the totals.
+		 */
+		private void flushSenders() throws IOException {
+			if (senders == null) return;
+			for (int ord = 0; ord < senderOrdCounts.length; ord++) {
+				if (senderOrdCounts[ord] > 0) {
+					senderCounts.merge(senders.lookupOrd(ord).utf8ToString(), (long) senderOrdCounts[ord], Long::sum);
+				}
+			}
+			senders = null;
+			senderOrdCounts = null;
+		}
+
+		private void merge(FacetCollector other) throws IOException {
+			other.flushSenders();
+			shownCount += other.shownCount;
+			hiddenCount += other.hiddenCount;
+			rootCount += other.rootCount;
+			replyCount += other.replyCount;
+			undatedCount += other.undatedCount;
+			other.monthCounts.forEach((month, n) -> monthCounts.merge(month, n, Long::sum));
+			other.senderCounts.forEach((sender, n) -> senderCounts.merge(sender, n, Long::sum));
+			shownIds.or(other.shownIds);
+			idsOutOfRange |= other.idsOutOfRange;
+		}
+
+		/**
+		 * Gets the month counts by month, in order.
+		 */
+		SortedMap<YearMonth, Long> getMonthCounts() {
+			SortedMap<YearMonth, Long> counts = new TreeMap<>();
+			monthCounts.forEach((month, n) -> counts.put(YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1), n));
+			return counts;
+		}
+
+		/**
+		 * Gets the senders with the most emails.
+		 * @param limit The maximum number of senders.
+		 * @return The counts by sender, ordered by count, descending.
+		 */
+		Map<String, Long> getTopSenders(int limit) {
+			Map<String, Long> top = new LinkedHashMap<>();
+			senderCounts.entrySet().stream()
+					.sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+					.limit(limit)
+					.forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+			return top;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The progress of building an {@link EmailIndex} from scratch, which is
+ * reported periodically while the build is running.
+ * @param indexedCount The number of emails that have been indexed so far.
+ * @param totalCount The total number of emails to index.
+ * @param elapsed The time since the build started.
+ */
+public record IndexBuildProgress(long indexedCount, long totalCount, Duration elapsed) {
+	/**
+	 * Gets the average number of emails indexed per second so far.
+	 * @return The rate.
+	 */
+	public double getDocumentsPerSecond() {
+		return indexedCount / (Math.max(1, elapsed.toMillis()) / 1000.0);
+	}
+
+	/**
+	 * Estimates the remaining time until all emails are indexed, based on the
+	 * average rate so far.
+	 * @return The estimated remaining time, or empty if nothing has been
+	 * indexed yet.
+	 */
+	public Optional<Duration> getEta() {
+		double rate = getDocumentsPerSecond();
+		if (indexedCount == 0 || rate <= 0) return Optional.empty();
+		return Optional.of(Duration.ofMillis((long) ((totalCount - indexedCount) / rate * 1000)));
+	}
+
+	/**
+	 * Describes the progress in a single line of text.
+	 * @return The description.
+	 */
+	public String describe() {
+		String eta = getEta()
+				.map(d -> "%d:%02d".formatted(d.toMinutes(), d.toSecondsPart()))
+				.orElse("unknown");
+		return "Indexed %d of %d emails (%.0f emails/sec, ETA %s).".formatted(
+				indexedCount, totalCount, getDocumentsPerSecond(), eta
+		);
+	}
+}
@@ -0,0 +1,172 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import nl.andrewl.email_indexer.data.EmailDataset;
+import nl.andrewl.email_indexer.util.DbUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The log of changes to a dataset's emails that haven't been applied to its
+ * {@link EmailIndex} yet. It's stored in the INDEX_CHANGE table, next to the
+ * MUTATION table, so that changes can be recorded in the same transaction
+ * that makes them, and survive a crash before the index is updated.
+ * <p>
+ *     Anything that modifies emails records what it changed here, and then
+ *     publishes an event on the dataset's
+ *     {@link nl.andrewl.emaildatasetbrowser.data.DatasetEventBus}, after which
+ *     the index applies all pending changes and removes them from the log.
+ *     Applying a change always reads the current state of the email from the
+ *     database, so applying a change twice is harmless.
+ * </p>
+ */
+public class IndexChangeLog {
+	/**
+	 * The kinds of changes that can be made to an email.
+	 */
+	public enum Kind {
+		/**
+		 * The email was added, or its contents changed.
+		 */
+		CONTENT,
+		/**
+		 * The email was hidden or shown.
+		 */
+		HIDDEN,
+		/**
+		 * The email was linked to a different parent, which changes the thread
+		 * of the email and all of its replies.
+		 */
+		PARENT,
+		/**
+		 * The email was deleted, so its document can be removed without
+		 * building a new one.
+		 */
+		DELETED,
+		/**
+		 * Any number of emails changed in an unknown way, so the whole index
+		 * must be compared to the database. This doesn't refer to an email.
+		 */
+		ALL
+	}
+
+	/**
+	 * A single change in the log.
+	 * @param id The id of the change, which increases for each change.
+	 * @param emailId The id of the email that changed, or null for
+	 *                {@link Kind#ALL}.
+	 * @param kind The kind of change.
+	 */
+	public record Change(long id, Long emailId, Kind kind) {}
+
+	private final Connection conn;
+
+	/**
+	 * Creates the log for a dataset, and creates its table if it doesn't
+	 * exist yet. Since H2 commits any open transaction when a table is
+	 * created, this must not be called within a transaction.
+	 * @param ds The dataset.
+	 */
+	public IndexChangeLog(EmailDataset ds) {
+		this.conn = ds.getConnection();
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute("""
+					CREATE TABLE IF NOT EXISTS INDEX_CHANGE (
+						ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+						EMAIL_ID BIGINT,
+						KIND VARCHAR(16) NOT NULL,
+						CREATED_AT TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+					)""");
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Records a change to a single email.
+	 * @param emailId The id of the email.
+	 * @param kind The kind of change.
+	 */
+	public void record(long emailId, Kind kind) {
+		record(conn, emailId, kind);
+	}
+
+	/**
+	 * Records a change to a single email, as part of a transaction.
+	 * @param c The connection of the transaction.
+	 * @param emailId The id of the email.
+	 * @param kind The kind of change.
+	 */
+	public void record(Connection c, long emailId, Kind kind) {
+		DbUtils.update(c, "INSERT INTO INDEX_CHANGE (EMAIL_ID, KIND) VALUES (?, ?)", emailId, kind.name());
+	}
+
+	/**
+	 * Records the same change to all emails that match an SQL clause, as part
+	 * of a transaction. To record changes to emails that are about to be
+	 * modified or deleted, call this before doing so.
+	 * @param c The connection of the transaction.
+	 * @param kind The kind of change.
+	 * @param clause The SQL WHERE clause that selects the emails.
+	 * @param args The arguments for the clause.
+	 * @return The number of changes that were recorded.
+	 */
+	public int recordAll(Connection c, Kind kind, String clause, Object... args) {
+		Object[] allArgs = new Object[args.length + 1];
+		allArgs[0] = kind.name();
+		System.arraycopy(args, 0, allArgs, 1, args.length);
+		return DbUtils.update(c, "INSERT INTO INDEX_CHANGE (EMAIL_ID, KIND) SELECT ID, ? FROM EMAIL WHERE " + clause, allArgs);
+	}
+
+	/**
+	 * Records that any number of emails changed in a way that we can't tell,
+	 * for example by a bulk operation of the email indexer.
+	 */
+	public void recordUnknownChanges() {
+		DbUtils.update(conn, "INSERT INTO INDEX_CHANGE (KIND) VALUES (?)", Kind.ALL.name());
+	}
+
+	/**
+	 * Finds the oldest changes in the log.
+	 * @param limit The maximum number of changes to find.
+	 * @return The changes, ordered by their id.
+	 */
+	public List<Change> findOldest(int limit) {
+		List<Change> changes = new ArrayList<>();
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT ID, EMAIL_ID, KIND FROM INDEX_CHANGE ORDER BY ID LIMIT ?")) {
+			stmt.setInt(1, limit);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					long emailId = rs.getLong(2);
+					Long email = rs.wasNull() ? null : emailId;
+					changes.add(new Change(rs.getLong(1), email, Kind.valueOf(rs.getString(3))));
+				}
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+		return changes;
+	}
+
+	/**
+	 * Gets the id of the latest change in the log.
+	 * @return The id, or 0 if the log is empty.
+	 */
+	public long getLatestId() {
+		return DbUtils.count(conn, "SELECT COALESCE(MAX(ID), 0) FROM INDEX_CHANGE");
+	}
+
+	/**
+	 * Removes all changes up to and including the given one, once they've been
+	 * applied to the index.
+	 * @param lastId The id of the last change to remove.
+	 */
+	public void removeUpTo(long lastId) {
+		DbUtils.update(conn, "DELETE FROM INDEX_CHANGE WHERE ID <= ?", lastId);
+	}
+}
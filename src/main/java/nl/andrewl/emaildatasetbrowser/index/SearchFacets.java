@@ -0,0 +1,38 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+
+/**
+ * The number of emails that match a query, broken down in several ways. All
+ * counts except {@link #hiddenCount()} are of the matching emails that aren't
+ * hidden, just like the search results themselves.
+ * @param shownCount The number of matching emails that aren't hidden.
+ * @param hiddenCount The number of matching emails that are hidden.
+ * @param rootCount The number of matching emails that start a thread.
+ * @param replyCount The number of matching emails that reply to another one.
+ * @param monthCounts The number of matching emails sent in each month, in
+ *                    UTC, ordered by month.
+ * @param undatedCount The number of matching emails without a date.
+ * @param topSenders The number of matching emails from each of the senders
+ *                   with the most of them, ordered by count, descending.
+ * @param senderCount The number of different senders of matching emails.
+ * @param tagCounts The number of matching emails with each tag, by tag id, or
+ *                  empty if the dataset's tag index isn't ready.
+ * @param truncated Whether counting was stopped before all emails were
+ *                  counted.
+ */
+public record SearchFacets(
+		long shownCount,
+		long hiddenCount,
+		long rootCount,
+		long replyCount,
+		SortedMap<YearMonth, Long> monthCounts,
+		long undatedCount,
+		Map<String, Long> topSenders,
+		long senderCount,
+		Optional<Map<Integer, Long>> tagCounts,
+		boolean truncated
+) {}
@@ -0,0 +1,103 @@
+package nl.andrewl.emaildatasetbrowser.index;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Collects the top hits of a search, just like {@link IndexSearcher#searchAfter(ScoreDoc, Query, int)},
+ * but stops collecting as soon as the search should be stopped, for example
+ * because it was cancelled or took too long. The hits that were collected
+ * until then are still returned.
+ * <p>
+ *     Whether to stop is checked before each segment, which is also before
+ *     the terms of wildcard queries are expanded for it, and periodically
+ *     while collecting the segment's hits.
+ * </p>
+ */
+final class StoppableCollectorManager implements CollectorManager<StoppableCollectorManager.StoppableCollector, TopDocs> {
+	/**
+	 * The number of hits that are collected between checks, minus one. It's
+	 * a power of two minus one, so that it can be used as a mask.
+	 */
+	private static final int CHECK_INTERVAL_MASK = 1023;
+	/**
+	 * The number of hits after which the total hit count is no longer exact,
+	 * which allows skipping non-competitive hits. This is the same as for
+	 * {@link IndexSearcher#searchAfter(ScoreDoc, Query, int)}.
+	 */
+	private static final int TOTAL_HITS_THRESHOLD = 1_000;
+
+	private final CollectorManager<TopScoreDocCollector, TopDocs> delegate;
+	private final BooleanSupplier shouldStop;
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param numHits The maximum number of hits to collect.
+	 * @param after The hit to collect hits after, or null to start at the
+	 *              best one.
+	 * @param shouldStop Tells whether the search should be stopped. It's
+	 *                   called concurrently when segments are searched in
+	 *                   parallel.
+	 */
+	StoppableCollectorManager(int numHits, ScoreDoc after, BooleanSupplier shouldStop) {
+		this.delegate = TopScoreDocCollector.createSharedManager(numHits, after, TOTAL_HITS_THRESHOLD);
+		this.shouldStop = shouldStop;
+	}
+
+	/**
+	 * Tells whether collecting was stopped before all hits were seen.
+	 * @return True if the search was stopped.
+	 */
+	boolean isStopped() {
+		return stopped;
+	}
+
+	private boolean checkStop() {
+		if (!stopped && shouldStop.getAsBoolean()) stopped = true;
+		return stopped;
+	}
+
+	@Override
+	public StoppableCollector newCollector() throws IOException {
+		return new StoppableCollector(delegate.newCollector());
+	}
+
+	@Override
+	public TopDocs reduce(Collection<StoppableCollector> collectors) throws IOException {
+		List<TopScoreDocCollector> topCollectors = new ArrayList<>(collectors.size());
+		for (var collector : collectors) topCollectors.add(collector.topCollector);
+		return delegate.reduce(topCollectors);
+	}
+
+	final class StoppableCollector extends FilterCollector {
+		private final TopScoreDocCollector topCollector;
+
+		private StoppableCollector(TopScoreDocCollector topCollector) {
+			super(topCollector);
+			this.topCollector = topCollector;
+		}
+
+		@Override
+		public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+			// Throwing this skips the segment, so every remaining segment is skipped once we've stopped.
+			if (checkStop()) throw new CollectionTerminatedException();
+			return new FilterLeafCollector(super.getLeafCollector(context)) {
+				private int count = 0;
+
+				@Override
+				public void collect(int doc) throws IOException {
+					if ((++count & CHECK_INTERVAL_MASK) == 0 && checkStop()) {
+						throw new CollectionTerminatedException();
+					}
+					super.collect(doc);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package nl.andrewl.emaildatasetbrowser.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public final class FileHelper {
+    private FileHelper() {
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it. Nothing happens if
+     * the path doesn't exist.
+     * @param path The path to delete.
+     * @throws IOException If something couldn't be deleted.
+     */
+    public static void deleteRecursively(Path path) throws IOException {
+        if (Files.notExists(path)) return;
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (var p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
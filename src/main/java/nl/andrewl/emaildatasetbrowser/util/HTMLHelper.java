@@ -2,24 +2,174 @@ package nl.andrewl.emaildatasetbrowser.util;
 
 import java.util.regex.Pattern;
 
+/**
+ * Helper for detecting whether an email body contains HTML.
+ * <p>
+ *     A body is considered HTML if it contains a start tag that is followed
+ *     somewhere by an end tag, a self-closing tag, or a named HTML entity.
+ *     This is the same as what {@link #htmlPattern} matches, but it's checked
+ *     in a single pass without backtracking, and without allocating anything.
+ *     Individual tags and entities are never scanned for more than
+ *     {@link #MAX_TAG_LENGTH} characters, so the running time is bounded
+ *     even for long plain-text bodies full of <code>&lt;user@host&gt;</code>
+ *     addresses.
+ * </p>
+ */
 public final class HTMLHelper {
 
     public static final String TAG_START = "<\\w+((\\s+\\w+(\\s*=\\s*(?:\".*?\"|'.*?'|[^'\">\\s]+))?)+\\s*|\\s*)>";
     public static final String TAG_END = "</\\w+>";
     public static final String TAG_SELF_CLOSING = "<\\w+((\\s+\\w+(\\s*=\\s*(?:\".*?\"|'.*?'|[^'\">\\s]+))?)+\\s*|\\s*)/>";
     public static final String HTML_ENTITY = "&[a-zA-Z][a-zA-Z0-9]+;";
+    /**
+     * The regular expression that was originally used to detect HTML. It's
+     * kept only as a reference for benchmarks, since it can backtrack
+     * excessively on large bodies.
+     */
     public static final Pattern htmlPattern = Pattern
             .compile("(" + TAG_START + ".*" + TAG_END + ")|(" + TAG_SELF_CLOSING + ")|(" + HTML_ENTITY + ")",
                     Pattern.DOTALL);
 
+    /**
+     * The maximum number of characters that a single tag or entity may span.
+     */
+    public static final int MAX_TAG_LENGTH = 2048;
+
+    /**
+     * Returned by {@link #parseTag(String, int)} if there's no tag. For a
+     * start tag, it returns the index after the tag instead, which is never
+     * negative.
+     */
+    private static final int NO_TAG = -1;
+    private static final int SELF_CLOSING_TAG = -2;
+
     private HTMLHelper() {
     }
 
     public static boolean isHtml(String htmlString) {
-        boolean isHTML = false;
-        if (htmlString != null) {
-            isHTML = htmlPattern.matcher(htmlString).find();
+        if (htmlString == null) return false;
+        final int length = htmlString.length();
+        // An end tag only counts if it comes after the end of a start tag, and not within one.
+        // Scanning still continues inside tags, since attribute values may contain other tags.
+        int firstStartTagEnd = Integer.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            char c = htmlString.charAt(i);
+            if (c == '<') {
+                if (i >= firstStartTagEnd && isEndTag(htmlString, i)) return true;
+                int tag = parseTag(htmlString, i);
+                if (tag == SELF_CLOSING_TAG) return true;
+                if (tag != NO_TAG) firstStartTagEnd = Math.min(firstStartTagEnd, tag);
+            } else if (c == '&' && isEntity(htmlString, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if there's an end tag, like <code>&lt;/p&gt;</code>, at the given
+     * position.
+     */
+    private static boolean isEndTag(String s, int start) {
+        int i = start + 1;
+        if (i >= s.length() || s.charAt(i) != '/') return false;
+        int nameEnd = skipWord(s, i + 1, start);
+        return nameEnd > i + 1 && nameEnd < s.length() && s.charAt(nameEnd) == '>';
+    }
+
+    /**
+     * Tries to parse a start tag or self-closing tag, including attributes, at
+     * the given position.
+     * @return The index just after a start tag, or {@link #NO_TAG} or
+     * {@link #SELF_CLOSING_TAG}.
+     */
+    private static int parseTag(String s, int start) {
+        final int length = s.length();
+        int i = skipWord(s, start + 1, start);
+        if (i == start + 1) return NO_TAG;
+        while (i < length && i - start <= MAX_TAG_LENGTH) {
+            int whitespaceStart = i;
+            i = skipWhitespace(s, i, start);
+            if (i >= length) return NO_TAG;
+            char c = s.charAt(i);
+            if (c == '>') return i + 1;
+            if (c == '/') return i + 1 < length && s.charAt(i + 1) == '>' ? SELF_CLOSING_TAG : NO_TAG;
+            // Anything else must be an attribute, which must be preceded by whitespace.
+            if (i == whitespaceStart || !isWordChar(c)) return NO_TAG;
+            i = skipWord(s, i, start);
+            int afterName = i;
+            i = skipWhitespace(s, i, start);
+            if (i >= length || s.charAt(i) != '=') {
+                // An attribute without a value.
+                i = afterName;
+                continue;
+            }
+            i = skipWhitespace(s, i + 1, start);
+            if (i >= length) return NO_TAG;
+            c = s.charAt(i);
+            if (c == '"' || c == '\'') {
+                // The closing quote is only looked for within the tag's maximum length.
+                int end = Math.min(length, start + MAX_TAG_LENGTH + 1);
+                int close = i + 1;
+                while (close < end && s.charAt(close) != c) close++;
+                if (close == end) return NO_TAG;
+                i = close + 1;
+            } else {
+                int valueStart = i;
+                while (i < length && i - start <= MAX_TAG_LENGTH && isUnquotedValueChar(s.charAt(i))) i++;
+                if (i == valueStart) return NO_TAG;
+                // An unquoted value may run into the "/" of "/>".
+                if (i < length && s.charAt(i) == '>' && s.charAt(i - 1) == '/' && i - 1 > valueStart) {
+                    return SELF_CLOSING_TAG;
+                }
+            }
         }
-        return isHTML;
+        return NO_TAG;
+    }
+
+    /**
+     * Checks if there's a named entity, like <code>&amp;nbsp;</code>, at the
+     * given position.
+     */
+    private static boolean isEntity(String s, int start) {
+        final int length = s.length();
+        int i = start + 1;
+        if (i >= length || !isAsciiLetter(s.charAt(i))) return false;
+        i++;
+        int nameStart = i;
+        while (i < length && i - start <= MAX_TAG_LENGTH && isAsciiLetterOrDigit(s.charAt(i))) i++;
+        return i > nameStart && i < length && s.charAt(i) == ';';
+    }
+
+    private static int skipWord(String s, int i, int start) {
+        while (i < s.length() && i - start <= MAX_TAG_LENGTH && isWordChar(s.charAt(i))) i++;
+        return i;
+    }
+
+    private static int skipWhitespace(String s, int i, int start) {
+        while (i < s.length() && i - start <= MAX_TAG_LENGTH && isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    // Equivalent to \w in a Java regex.
+    private static boolean isWordChar(char c) {
+        return isAsciiLetterOrDigit(c) || c == '_';
+    }
+
+    // Equivalent to \s in a Java regex.
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isUnquotedValueChar(char c) {
+        return c != '\'' && c != '"' && c != '>' && !isWhitespace(c);
     }
 }
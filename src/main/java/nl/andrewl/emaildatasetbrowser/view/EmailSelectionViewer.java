@@ -1,15 +1,14 @@
 package nl.andrewl.emaildatasetbrowser.view;
 
 import nl.andrewl.email_indexer.data.EmailDataset;
-import nl.andrewl.email_indexer.data.EmailEntryPreview;
-import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailTreeView;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 import nl.andrewl.emaildatasetbrowser.view.search.EmailTreeSelectionListener;
 
 import javax.swing.*;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A separate view for browsing a pre-defined list of emails.
@@ -25,11 +24,8 @@ public class EmailSelectionViewer extends JFrame {
 		var treeView = new EmailTreeView();
 		treeView.addSelectionListener(new EmailTreeSelectionListener(emailViewPanel, treeView.getTree()));
 
-		var repo = new EmailRepository(dataset);
-		List<EmailEntryPreview> emails = emailIds.stream()
-				.map(id -> repo.findPreviewById(id).orElse(null))
-				.filter(Objects::nonNull).toList();
-		treeView.setEmails(emails, dataset);
+		CompletableFuture.supplyAsync(() -> EmailCache.of(dataset).getPreviews(emailIds))
+				.thenAccept(emails -> SwingUtilities.invokeLater(() -> treeView.setEmails(emails, dataset)));
 
 		JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
 		splitPane.add(treeView);
@@ -11,12 +11,15 @@ import java.util.function.Consumer;
 
 /**
  * A dialog that can be used to show the progress of an ongoing task by
- * periodically posting messages to the dialog's log text component.
+ * periodically posting messages to the dialog's log text component. Tasks
+ * that know how much work is left can also show a progress bar, with
+ * {@link #setProgress(long, long, String)}.
  */
 public class ProgressDialog extends JDialog implements Consumer<String> {
 	private static final int MIN_OPEN_TIME = 2000;
 
 	private final JTextArea textBox;
+	private final JProgressBar progressBar = new JProgressBar();
 	private final JButton doneButton;
 	private final JButton cancelButton;
 	private Runnable cancelAction;
@@ -30,9 +33,14 @@ public class ProgressDialog extends JDialog implements Consumer<String> {
 		super(owner, title, ModalityType.APPLICATION_MODAL);
 
 		JPanel p = new JPanel(new BorderLayout());
+		JPanel topPanel = new JPanel(new BorderLayout());
 		if (description != null) {
-			p.add(new JLabel(description), BorderLayout.NORTH);
+			topPanel.add(new JLabel(description), BorderLayout.NORTH);
 		}
+		progressBar.setStringPainted(true);
+		progressBar.setVisible(false);
+		topPanel.add(progressBar, BorderLayout.SOUTH);
+		p.add(topPanel, BorderLayout.NORTH);
 
 		if (showText) {
 			textBox = new JTextArea();
@@ -153,6 +161,28 @@ public class ProgressDialog extends JDialog implements Consumer<String> {
 		}
 	}
 
+	/**
+	 * Shows how much of the task is done in the dialog's progress bar, which
+	 * is shown the first time this is called.
+	 * @param value The amount of work that's done.
+	 * @param max The total amount of work.
+	 * @param text The text to show on the progress bar.
+	 */
+	public void setProgress(long value, long max, String text) {
+		SwingUtilities.invokeLater(() -> {
+			// The bar only takes ints, so large amounts are scaled down.
+			int scale = (int) Math.max(1, max / Integer.MAX_VALUE + 1);
+			progressBar.setMaximum((int) (max / scale));
+			progressBar.setValue((int) (Math.min(value, max) / scale));
+			progressBar.setString(text);
+			if (!progressBar.isVisible()) {
+				progressBar.setVisible(true);
+				if (textBox == null) pack();
+				revalidate();
+			}
+		});
+	}
+
 	/**
 	 * Helper function to append a formatted string to the dialog.
 	 * @param msg The format string.
@@ -1,20 +1,41 @@
 package nl.andrewl.emaildatasetbrowser.view.email;
 
 import java.awt.BorderLayout;
+import java.awt.CardLayout;
 import java.awt.Font;
+import java.util.concurrent.CompletableFuture;
 
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
 
 import nl.andrewl.email_indexer.data.EmailEntry;
-import nl.andrewl.emaildatasetbrowser.util.HTMLHelper;
 
 /**
  * A panel containing some basic components for viewing the body of an email.
+ * Bodies are rendered in the background by an {@link EmailBodyRenderer}, and
+ * very large bodies are shown in a list that only lays out the visible lines.
  */
 public class EmailBodyPanel extends JPanel implements EmailViewListener {
+	private static final String TEXT_CARD = "text";
+	private static final String LINES_CARD = "lines";
+
 	private final JTextPane textPane = new JTextPane();
+	private final JList<String> lineList = new JList<>();
+	private final JLabel largeBodyLabel = new JLabel();
+	private final CardLayout cardLayout = new CardLayout();
+	private final JPanel cardPanel = new JPanel(cardLayout);
+	private final EmailBodyRenderer renderer = new EmailBodyRenderer();
+	/**
+	 * Incremented for each email that's shown, so that a slow render of a
+	 * previous email is never shown over the current one.
+	 */
+	private long renderCounter = 0;
 
 	public EmailBodyPanel() {
 		super(new BorderLayout());
@@ -22,23 +43,64 @@ public class EmailBodyPanel extends JPanel implements EmailViewListener {
 		textPane.setFont(new Font("monospaced", textPane.getFont().getStyle(), 16));
 		textPane.setBackground(textPane.getBackground().darker());
 		JScrollPane scrollPane = new JScrollPane(textPane);
-		add(scrollPane, BorderLayout.CENTER);
+		cardPanel.add(scrollPane, TEXT_CARD);
+
+		lineList.setFont(textPane.getFont());
+		lineList.setBackground(textPane.getBackground());
+		lineList.setFixedCellHeight(lineList.getFontMetrics(lineList.getFont()).getHeight());
+		JPanel linesPanel = new JPanel(new BorderLayout());
+		largeBodyLabel.setBorder(BorderFactory.createEmptyBorder(3, 3, 3, 3));
+		linesPanel.add(largeBodyLabel, BorderLayout.NORTH);
+		linesPanel.add(new JScrollPane(lineList), BorderLayout.CENTER);
+		cardPanel.add(linesPanel, LINES_CARD);
+
+		add(cardPanel, BorderLayout.CENTER);
 	}
 
 	private void setEmail(EmailEntry email) {
+		final long render = ++renderCounter;
 		if (email != null) {
-			if (HTMLHelper.isHtml(email.body())) {
-				textPane.setContentType("text/html");
-			} else {
-				textPane.setContentType("text/plain");
-			}
-			textPane.setText(email.body());
-			textPane.setCaretPosition(0);
+			CompletableFuture.supplyAsync(() -> renderer.render(email))
+					.whenComplete((rendered, throwable) -> SwingUtilities.invokeLater(() -> {
+						if (render != renderCounter) return;
+						if (throwable != null) {
+							throwable.printStackTrace();
+							showText("text/plain", email.body());
+						} else {
+							showRenderedBody(rendered);
+						}
+					}));
 		} else {
-			textPane.setText(null);
+			showText("text/plain", null);
 		}
 	}
 
+	private void showRenderedBody(EmailBodyRenderer.RenderedBody rendered) {
+		if (rendered.isLarge()) {
+			LineListModel lines = rendered.lines();
+			largeBodyLabel.setText("This email's body is very large (%d characters, %d lines), so it's shown as plain text."
+					.formatted(rendered.bodyLength(), lines.getSize()));
+			lineList.setFixedCellWidth(lineList.getFontMetrics(lineList.getFont()).charWidth('m') * (lines.getLongestLineLength() + 1));
+			lineList.setModel(lines);
+			lineList.ensureIndexIsVisible(0);
+			cardLayout.show(cardPanel, LINES_CARD);
+		} else {
+			// Setting the content type installs a new editor kit, which resets the document.
+			textPane.setContentType(rendered.contentType());
+			textPane.setDocument(rendered.document());
+			textPane.setCaretPosition(0);
+			lineList.setModel(new DefaultListModel<>());
+			cardLayout.show(cardPanel, TEXT_CARD);
+		}
+	}
+
+	private void showText(String contentType, String text) {
+		textPane.setContentType(contentType);
+		textPane.setText(text);
+		lineList.setModel(new DefaultListModel<>());
+		cardLayout.show(cardPanel, TEXT_CARD);
+	}
+
 	@Override
 	public void emailUpdated(EmailEntry email) {
 		setEmail(email);
@@ -0,0 +1,114 @@
+package nl.andrewl.emaildatasetbrowser.view.email;
+
+import nl.andrewl.email_indexer.data.EmailEntry;
+import nl.andrewl.emaildatasetbrowser.data.CacheTier;
+import nl.andrewl.emaildatasetbrowser.util.HTMLHelper;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Document;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Prepares email bodies for display, off the event dispatch thread. Normal
+ * bodies are parsed into a ready-to-use {@link Document}, while very large
+ * bodies are only indexed by line, so that they can be shown through a
+ * {@link LineListModel} which only lays out the visible lines.
+ * <p>
+ *     Rendered bodies are cached by email id, so that navigating back and
+ *     forth between emails doesn't parse them again. The cache is bounded by
+ *     an estimate of the memory that each rendered body takes up, which
+ *     depends on its kind, since a parsed document is much larger than its
+ *     text.
+ * </p>
+ */
+public class EmailBodyRenderer {
+	/**
+	 * Bodies with more characters than this are shown line by line as plain
+	 * text, instead of in a fully laid out document.
+	 */
+	public static final int LARGE_BODY_LENGTH = 200_000;
+
+	/**
+	 * A body that's ready to be shown. Exactly one of the document or lines is
+	 * set.
+	 * @param contentType The content type of the document, if set.
+	 * @param document The parsed document, for normal bodies.
+	 * @param lines The line index, for large bodies.
+	 * @param bodyLength The length of the body that was rendered.
+	 * @param bodyHash The hash of the body that was rendered.
+	 */
+	public record RenderedBody(
+			String contentType,
+			Document document,
+			LineListModel lines,
+			int bodyLength,
+			int bodyHash
+	) {
+		public boolean isLarge() {
+			return lines != null;
+		}
+
+		private boolean isRenderOf(String body) {
+			return bodyLength == body.length() && bodyHash == body.hashCode();
+		}
+
+		/**
+		 * Estimates the number of bytes that this body takes up in memory.
+		 * The factors were measured for typical email bodies: an HTML
+		 * document's element tree and attributes take about 10 bytes per
+		 * character of the body, and a plain text document's paragraphs about
+		 * 6, each on top of a fixed overhead. A line index only holds the
+		 * text and the start of each line.
+		 */
+		private long estimateSize() {
+			if (isLarge()) return 256 + 2L * bodyLength + 4L * lines.getSize();
+			if ("text/html".equals(contentType)) return 12 * 1024 + 10L * bodyLength;
+			return 8 * 1024 + 6L * bodyLength;
+		}
+	}
+
+	private static final CacheTier<Long, RenderedBody> cache = new CacheTier<>(
+			"Rendered bodies", 32L * 1024 * 1024,
+			RenderedBody::estimateSize
+	);
+
+	/**
+	 * Renders an email's body, or gets it from the cache. This may take a
+	 * while for large bodies, so call it from a background thread.
+	 * @param email The email to render.
+	 * @return The rendered body.
+	 */
+	public RenderedBody render(EmailEntry email) {
+		String body = email.body() == null ? "" : email.body();
+		var cached = cache.getIfPresent(email.id());
+		// Ids are only unique within a dataset, so check that it's the same body.
+		if (cached.isPresent() && cached.get().isRenderOf(body)) return cached.get();
+		RenderedBody rendered = doRender(body);
+		cache.put(email.id(), rendered);
+		return rendered;
+	}
+
+	private RenderedBody doRender(String body) {
+		if (body.length() > LARGE_BODY_LENGTH) {
+			return new RenderedBody(null, null, new LineListModel(body), body.length(), body.hashCode());
+		}
+		try {
+			if (HTMLHelper.isHtml(body)) {
+				HTMLEditorKit kit = new HTMLEditorKit();
+				HTMLDocument doc = (HTMLDocument) kit.createDefaultDocument();
+				doc.putProperty("IgnoreCharsetDirective", true);
+				kit.read(new StringReader(body), doc, 0);
+				return new RenderedBody("text/html", doc, null, body.length(), body.hashCode());
+			}
+			DefaultStyledDocument doc = new DefaultStyledDocument();
+			doc.insertString(0, body, null);
+			return new RenderedBody("text/plain", doc, null, body.length(), body.hashCode());
+		} catch (IOException | BadLocationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
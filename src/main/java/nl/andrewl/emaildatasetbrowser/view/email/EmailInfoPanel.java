@@ -1,13 +1,15 @@
 package nl.andrewl.emaildatasetbrowser.view.email;
 
+import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.EmailEntry;
-import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.time.format.DateTimeFormatter;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A panel that shows some auxiliary details about an email, aside from the main
@@ -86,30 +88,34 @@ public class EmailInfoPanel extends JPanel implements EmailViewListener {
 			this.subjectLabel.setText("<html>%s</html>".formatted(email.subject()));
 			this.dateLabel.setText(email.date().format(DateTimeFormatter.ofPattern("dd MMMM, yyyy HH:mm:ss Z")));
 			this.sentFromLabel.setText("<html>%s</html>".formatted(email.sentFrom()));
-			String inReplyToButtonText;
-			Optional<EmailEntry> optionalParent = Optional.empty();
-			if (this.parent.getCurrentDataset() != null && email.parentId() != null) {
-				optionalParent = new EmailRepository(this.parent.getCurrentDataset()).findEmailById(email.parentId());
-			}
 			if (inReplyToActionListener != null) inReplyToButton.removeActionListener(inReplyToActionListener);
-			if (optionalParent.isEmpty()) {
-				inReplyToButtonText = "None";
-				inReplyToButton.setEnabled(false);
-			} else {
-				var parentEmail = optionalParent.get();
-				inReplyToButtonText = "<html><strong>%s</strong><br>by <em>%s</em></html>".formatted(parentEmail.subject(), parentEmail.sentFrom());
-				inReplyToButton.setEnabled(true);
-				inReplyToActionListener = e -> {
-					SwingUtilities.invokeLater(() -> this.parent.fetchAndSetEmail(email.parentId()));
-				};
-				inReplyToButton.addActionListener(inReplyToActionListener);
+			inReplyToActionListener = null;
+			this.inReplyToButton.setText("None");
+			this.inReplyToButton.setEnabled(false);
+			final EmailDataset ds = this.parent.getCurrentDataset();
+			if (ds != null && email.parentId() != null) {
+				// We only need the parent's subject and author, so a preview is enough.
+				CompletableFuture.supplyAsync(() -> EmailCache.of(ds).getPreview(email.parentId()))
+						.thenAccept(optionalParent -> SwingUtilities.invokeLater(() -> {
+							if (optionalParent.isPresent() && email.equals(this.parent.getEmail())) {
+								showParent(email, optionalParent.get());
+							}
+						}));
 			}
-			this.inReplyToButton.setText(inReplyToButtonText);
 		} else {
 			this.inReplyToButton.setEnabled(false);
 		}
 	}
 
+	private void showParent(EmailEntry email, EmailEntryPreview parentEmail) {
+		inReplyToButton.setText("<html><strong>%s</strong><br>by <em>%s</em></html>".formatted(parentEmail.subject(), parentEmail.sentFrom()));
+		inReplyToButton.setEnabled(true);
+		inReplyToActionListener = e -> {
+			SwingUtilities.invokeLater(() -> this.parent.fetchAndSetEmail(email.parentId()));
+		};
+		inReplyToButton.addActionListener(inReplyToActionListener);
+	}
+
 	@Override
 	public void emailUpdated(EmailEntry email) {
 		setEmail(email);
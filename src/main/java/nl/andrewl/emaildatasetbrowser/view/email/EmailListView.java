@@ -0,0 +1,74 @@
+package nl.andrewl.emaildatasetbrowser.view.email;
+
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+import nl.andrewl.emaildatasetbrowser.EmailListItemRenderer;
+import nl.andrewl.emaildatasetbrowser.data.KeysetEmailSearcher;
+import nl.andrewl.emaildatasetbrowser.view.search.VirtualEmailListModel;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A flat, infinitely scrolling list of emails, backed by a
+ * {@link VirtualEmailListModel}. Every row has a fixed height and width, so
+ * the list never has to measure its rows, and only asks the model for the
+ * rows that it actually paints. This means it can be used to scroll through
+ * any number of results with bounded memory.
+ */
+public class EmailListView extends JPanel {
+	private final JList<EmailEntryPreview> list = new JList<>();
+	private VirtualEmailListModel model = null;
+
+	public EmailListView(EmailViewPanel emailViewPanel) {
+		super(new BorderLayout());
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.setCellRenderer(new EmailListItemRenderer());
+		FontMetrics metrics = list.getFontMetrics(list.getFont());
+		list.setFixedCellHeight(metrics.getHeight() + 6);
+		// Without a fixed width, the list's UI would fetch every row just to
+		// measure it. The list is stretched to fill the viewport anyway.
+		list.setFixedCellWidth(metrics.charWidth('m') * 40);
+		list.addListSelectionListener(e -> {
+			if (e.getValueIsAdjusting()) return;
+			EmailEntryPreview email = list.getSelectedValue();
+			if (email != null) emailViewPanel.fetchAndSetEmail(email.id());
+		});
+		JScrollPane scrollPane = new JScrollPane(list);
+		scrollPane.getViewport().addChangeListener(e -> prefetchAroundViewport());
+		add(scrollPane, BorderLayout.CENTER);
+	}
+
+	/**
+	 * Shows all emails that match the given filters.
+	 * @param searcher The searcher to fetch emails with.
+	 * @param filters The filters to apply.
+	 * @return A future that completes with the total number of results.
+	 */
+	public CompletableFuture<Long> setQuery(KeysetEmailSearcher searcher, List<SearchFilter> filters) {
+		if (model != null) model.dispose();
+		model = new VirtualEmailListModel(searcher, filters);
+		list.setModel(model);
+		return model.load();
+	}
+
+	public void clear() {
+		if (model != null) model.dispose();
+		model = null;
+		list.setModel(new DefaultListModel<>());
+	}
+
+	/**
+	 * Fetches one block of rows above and below what's currently visible, so
+	 * that regular scrolling rarely shows unloaded rows.
+	 */
+	private void prefetchAroundViewport() {
+		if (model == null) return;
+		int first = list.getFirstVisibleIndex();
+		int last = list.getLastVisibleIndex();
+		if (first == -1 || last == -1) return;
+		model.ensureLoaded(first - VirtualEmailListModel.BLOCK_SIZE, last + VirtualEmailListModel.BLOCK_SIZE);
+	}
+}
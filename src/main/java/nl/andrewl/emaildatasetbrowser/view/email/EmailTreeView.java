@@ -2,26 +2,45 @@ package nl.andrewl.emaildatasetbrowser.view.email;
 
 import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
 import nl.andrewl.emaildatasetbrowser.view.search.EmailTreeNode;
 
 import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 import java.awt.*;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A tree view that shows a set of emails as tree nodes. This can be used as a
  * general-purpose result set display.
+ * <p>
+ *     Replies are loaded lazily in the background: whenever a set of nodes
+ *     becomes visible, the replies of all of them are fetched with a single
+ *     query, so that by the time the user expands a node, its children are
+ *     usually already present. The event dispatch thread never waits on the
+ *     database.
+ * </p>
  */
 public class EmailTreeView extends JPanel {
 	private final JTree tree;
 	private final DefaultTreeModel treeModel;
 	private final DefaultMutableTreeNode rootNode;
 
+	private EmailDataset dataset;
+	/**
+	 * Incremented whenever the set of shown emails changes, so that replies
+	 * which arrive for a previous set of emails can be discarded.
+	 */
+	private long generation = 0;
+
 	public EmailTreeView() {
 		super(new BorderLayout());
 		rootNode = new DefaultMutableTreeNode();
@@ -29,29 +48,64 @@ public class EmailTreeView extends JPanel {
 		tree = new JTree(treeModel);
 		tree.setRootVisible(false);
 		tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+		tree.addTreeWillExpandListener(new TreeWillExpandListener() {
+			@Override
+			public void treeWillExpand(TreeExpansionEvent event) {
+				if (event.getPath().getLastPathComponent() instanceof EmailTreeNode node) {
+					loadRepliesAsync(node.isRepliesLoaded() ? node.getReplyNodes() : List.of(node));
+				}
+			}
+
+			@Override
+			public void treeWillCollapse(TreeExpansionEvent event) {
+				// ignored
+			}
+		});
 
 		add(new JScrollPane(tree), BorderLayout.CENTER);
 	}
 
 	public void setEmails(List<EmailEntryPreview> emails, EmailDataset ds) {
-		rootNode.removeAllChildren();
-		emails.stream().map(email -> {
-			var node = new EmailTreeNode(email);
-			node.loadReplies(ds);
-			return node;
-		}).forEachOrdered(rootNode::add);
-		treeModel.nodeStructureChanged(rootNode);
-		tree.expandPath(new TreePath(rootNode.getPath()));
+		setEmailNodes(emails.stream().map(EmailTreeNode::new).toList(), ds);
 	}
 
-	public void setEmailNodes(List<EmailTreeNode> nodes) {
+	public void setEmailNodes(List<EmailTreeNode> nodes, EmailDataset ds) {
+		this.dataset = ds;
+		generation++;
 		rootNode.removeAllChildren();
 		nodes.forEach(rootNode::add);
 		treeModel.nodeStructureChanged(rootNode);
 		tree.expandPath(new TreePath(rootNode.getPath()));
+		loadRepliesAsync(nodes);
+	}
+
+	/**
+	 * Adds nodes after the ones that are already shown, without changing the
+	 * selection or the nodes that are expanded. This is meant for showing
+	 * results as they arrive.
+	 * @param nodes The nodes to add.
+	 */
+	public void addEmailNodes(List<EmailTreeNode> nodes) {
+		if (nodes.isEmpty()) return;
+		int[] indices = new int[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			indices[i] = rootNode.getChildCount();
+			rootNode.add(nodes.get(i));
+		}
+		treeModel.nodesWereInserted(rootNode, indices);
+		loadRepliesAsync(nodes);
+	}
+
+	/**
+	 * Gets the number of top-level nodes that are shown.
+	 * @return The number of nodes.
+	 */
+	public int getEmailNodeCount() {
+		return rootNode.getChildCount();
 	}
 
 	public void clear() {
+		generation++;
 		rootNode.removeAllChildren();
 		treeModel.nodeStructureChanged(rootNode);
 	}
@@ -63,4 +117,46 @@ public class EmailTreeView extends JPanel {
 	public JTree getTree() {
 		return tree;
 	}
+
+	/**
+	 * Fetches the replies of all the given nodes in the background, using a
+	 * single bulk query, and then adds them to the tree. Nodes that are
+	 * already loaded or loading are skipped. Once a node's replies are added,
+	 * if that node is expanded, its new children are loaded in turn.
+	 * @param nodes The nodes to load replies for.
+	 */
+	private void loadRepliesAsync(List<EmailTreeNode> nodes) {
+		if (dataset == null) return;
+		List<EmailTreeNode> nodesToLoad = nodes.stream()
+				.filter(node -> !node.isRepliesLoaded() && !node.isRepliesLoading())
+				.toList();
+		if (nodesToLoad.isEmpty()) return;
+		nodesToLoad.forEach(node -> node.setRepliesLoading(true));
+		final EmailDataset ds = dataset;
+		final long requestGeneration = generation;
+		List<Long> ids = nodesToLoad.stream().map(node -> node.getEmail().id()).toList();
+		CompletableFuture.supplyAsync(() -> EmailCache.of(ds).getRepliesByParentIds(ids))
+				.whenComplete((replies, throwable) -> SwingUtilities.invokeLater(() -> {
+					if (requestGeneration != generation) return;
+					if (throwable != null) {
+						throwable.printStackTrace();
+						nodesToLoad.forEach(node -> node.setRepliesLoading(false));
+					} else {
+						showReplies(nodesToLoad, replies);
+					}
+				}));
+	}
+
+	private void showReplies(List<EmailTreeNode> nodes, Map<Long, List<EmailEntryPreview>> replies) {
+		for (var node : nodes) {
+			TreePath path = new TreePath(node.getPath());
+			boolean expanded = tree.isExpanded(path);
+			node.setReplies(replies.getOrDefault(node.getEmail().id(), List.of()));
+			treeModel.nodeStructureChanged(node);
+			if (expanded) {
+				tree.expandPath(path);
+				loadRepliesAsync(node.getReplyNodes());
+			}
+		}
+	}
 }
@@ -1,10 +1,20 @@
 package nl.andrewl.emaildatasetbrowser.view.email;
 
 import nl.andrewl.email_indexer.data.EmailEntry;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
 
 /**
  * Listener for when the email a user is viewing is updated.
  */
 public interface EmailViewListener {
 	void emailUpdated(EmailEntry email);
+
+	/**
+	 * Called on the event dispatch thread whenever the dataset that's being
+	 * viewed is changed, after the email view has applied the change to its
+	 * own email. Listeners can use this to update just the affected parts of
+	 * their state, instead of waiting for a full {@link #emailUpdated}.
+	 * @param event The event that describes the change.
+	 */
+	default void datasetChanged(DatasetEvent event) {}
 }
@@ -2,12 +2,17 @@ package nl.andrewl.emaildatasetbrowser.view.email;
 
 import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.EmailEntry;
-import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * A panel that displays all information about an email. This is the main user
@@ -18,6 +23,8 @@ public class EmailViewPanel extends JPanel {
 	private EmailEntry email;
 	private final EmailInfoPanel infoPanel;
 	private final Set<EmailViewListener> listeners = new HashSet<>();
+	private final AtomicLong fetchCounter = new AtomicLong();
+	private final Consumer<DatasetEvent> eventSubscriber = event -> SwingUtilities.invokeLater(() -> onDatasetEvent(event));
 
 	public EmailViewPanel() {
 		super(new BorderLayout());
@@ -41,7 +48,9 @@ public class EmailViewPanel extends JPanel {
 	}
 
 	public void setDataset(EmailDataset dataset) {
+		if (this.currentDataset != null) DatasetEventBus.of(this.currentDataset).unsubscribe(eventSubscriber);
 		this.currentDataset = dataset;
+		if (dataset != null) DatasetEventBus.of(dataset).subscribe(eventSubscriber);
 		setEmail(null);
 	}
 
@@ -58,10 +67,22 @@ public class EmailViewPanel extends JPanel {
 		listeners.forEach(l -> SwingUtilities.invokeLater(() -> l.emailUpdated(email)));
 	}
 
+	/**
+	 * Fetches an email in the background, and then shows it. If this is
+	 * called again before the fetch completes, only the most recently
+	 * requested email is shown.
+	 * @param id The id of the email to show.
+	 */
 	public void fetchAndSetEmail(long id) {
-		if (this.currentDataset != null) {
-			new EmailRepository(currentDataset).findEmailById(id)
-					.ifPresentOrElse(this::setEmail, () -> setEmail(null));
+		long request = fetchCounter.incrementAndGet();
+		final EmailDataset ds = this.currentDataset;
+		if (ds != null) {
+			ForkJoinPool.commonPool().execute(() -> {
+				EmailEntry fetchedEmail = EmailCache.of(ds).getEmail(id).orElse(null);
+				SwingUtilities.invokeLater(() -> {
+					if (request == fetchCounter.get() && ds == currentDataset) setEmail(fetchedEmail);
+				});
+			});
 		} else {
 			setEmail(null);
 		}
@@ -71,6 +92,45 @@ public class EmailViewPanel extends JPanel {
 		if (this.email != null) fetchAndSetEmail(email.id());
 	}
 
+	/**
+	 * Applies a change to the dataset to the email that's currently shown.
+	 * If the shown email itself was hidden or shown, only its entry is fetched
+	 * again, without notifying listeners of a whole new email. Bulk changes
+	 * cause the email to be shown again from scratch. Listeners are then told
+	 * about the change, so they can update just what it affects.
+	 * @param event The event that describes the change.
+	 */
+	private void onDatasetEvent(DatasetEvent event) {
+		if (email == null) return;
+		if (
+				(event instanceof DatasetEvent.EmailHidden e && e.emailId() == email.id()) ||
+				(event instanceof DatasetEvent.EmailShown s && s.emailId() == email.id())
+		) {
+			final long id = email.id();
+			final EmailDataset ds = currentDataset;
+			ForkJoinPool.commonPool().execute(() -> {
+				EmailEntry updatedEmail = EmailCache.of(ds).getEmail(id).orElse(null);
+				SwingUtilities.invokeLater(() -> {
+					if (ds != currentDataset || email == null || email.id() != id) return;
+					if (updatedEmail == null) {
+						setEmail(null);
+						return;
+					}
+					this.email = updatedEmail;
+					listeners.forEach(l -> l.datasetChanged(event));
+				});
+			});
+		} else if (
+				event instanceof DatasetEvent.EmailsHidden ||
+				event instanceof DatasetEvent.HiddenEmailsDeleted ||
+				event instanceof DatasetEvent.EmailsAdded
+		) {
+			refresh();
+		} else {
+			listeners.forEach(l -> l.datasetChanged(event));
+		}
+	}
+
 	public EmailInfoPanel getInfoPanel() {
 		return infoPanel;
 	}
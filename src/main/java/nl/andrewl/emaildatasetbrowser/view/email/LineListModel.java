@@ -0,0 +1,69 @@
+package nl.andrewl.emaildatasetbrowser.view.email;
+
+import javax.swing.*;
+
+/**
+ * A read-only list model that presents each line of a large text as a row,
+ * without ever copying the text. Lines are only extracted when the list asks
+ * for them, which is just for the rows that are visible.
+ */
+public class LineListModel extends AbstractListModel<String> {
+	/**
+	 * The maximum number of characters shown for a single line, so that one
+	 * enormous line can't stall rendering.
+	 */
+	public static final int MAX_LINE_LENGTH = 2000;
+
+	private final String text;
+	private final int[] lineStarts;
+	private final int longestLineLength;
+
+	/**
+	 * Indexes the lines of a text. This takes time proportional to the length
+	 * of the text, so it should be done off the event dispatch thread.
+	 * @param text The text to index.
+	 */
+	public LineListModel(String text) {
+		this.text = text;
+		int count = 1;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') count++;
+		}
+		lineStarts = new int[count];
+		int line = 1;
+		int longest = 0;
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') {
+				longest = Math.max(longest, i - start);
+				start = i + 1;
+				lineStarts[line++] = start;
+			}
+		}
+		longestLineLength = Math.min(MAX_LINE_LENGTH, Math.max(longest, text.length() - start));
+	}
+
+	/**
+	 * @return The length of the longest line, up to {@link #MAX_LINE_LENGTH}.
+	 * This can be used to size the list without measuring every row.
+	 */
+	public int getLongestLineLength() {
+		return longestLineLength;
+	}
+
+	@Override
+	public int getSize() {
+		return lineStarts.length;
+	}
+
+	@Override
+	public String getElementAt(int index) {
+		int start = lineStarts[index];
+		int end = index + 1 < lineStarts.length ? lineStarts[index + 1] - 1 : text.length();
+		if (end > start && text.charAt(end - 1) == '\r') end--;
+		end = Math.min(end, start + MAX_LINE_LENGTH);
+		// Labels don't expand tabs, and an empty label would collapse the row.
+		String line = text.substring(start, end).replace("\t", "    ");
+		return line.isEmpty() ? " " : line;
+	}
+}
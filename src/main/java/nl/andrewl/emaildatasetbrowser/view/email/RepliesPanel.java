@@ -1,7 +1,7 @@
 package nl.andrewl.emaildatasetbrowser.view.email;
 
 import nl.andrewl.email_indexer.data.EmailEntry;
-import nl.andrewl.email_indexer.data.EmailRepository;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
 
 import javax.swing.*;
 import java.awt.*;
@@ -31,8 +31,7 @@ public class RepliesPanel extends JPanel implements EmailViewListener {
 		buttonPanel.removeAll();
 		if (email != null) {
 			ForkJoinPool.commonPool().execute(() -> {
-				var repo = new EmailRepository(parent.getCurrentDataset());
-				var replies = repo.findAllReplies(email.id());
+				var replies = EmailCache.of(parent.getCurrentDataset()).getReplies(email.id());
 				List<JButton> buttonsToAdd = new ArrayList<>();
 				for (var reply : replies) {
 					JButton button = new JButton("<html><strong>%s</strong><br>by <em>%s</em></html>".formatted(reply.subject(), reply.sentFrom()));
@@ -3,12 +3,16 @@ package nl.andrewl.emaildatasetbrowser.view.email;
 import nl.andrewl.email_indexer.data.EmailEntry;
 import nl.andrewl.email_indexer.data.Tag;
 import nl.andrewl.email_indexer.data.TagRepository;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
 import nl.andrewl.emaildatasetbrowser.view.tag.TagEditDialog;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.concurrent.ForkJoinPool;
 
 /**
@@ -23,6 +27,11 @@ public class TagPanel extends JPanel implements EmailViewListener {
 	private final DefaultComboBoxModel<Tag> tagComboBoxModel = new DefaultComboBoxModel<>();
 	private EmailEntry email = null;
 	private final JButton removeButton = new JButton("Remove");
+	/**
+	 * Set while we change the combo box's contents ourselves, so that doing so
+	 * isn't mistaken for the user selecting a tag to add.
+	 */
+	private boolean updatingComboBox = false;
 
 	public TagPanel(EmailViewPanel parent) {
 		super(new BorderLayout());
@@ -69,7 +78,7 @@ public class TagPanel extends JPanel implements EmailViewListener {
 		tagComboBox.setToolTipText("Select tags to add to this email.");
 		buttonPanel.add(tagComboBox, BorderLayout.CENTER);
 		tagComboBox.addActionListener(e -> {
-			if (e.getActionCommand().equals("comboBoxChanged")) {
+			if (!updatingComboBox && e.getActionCommand().equals("comboBoxChanged")) {
 				onTagSelected(tagComboBox);
 			}
 		});
@@ -80,10 +89,11 @@ public class TagPanel extends JPanel implements EmailViewListener {
 
 		removeButton.addActionListener(e -> {
 			var repo = new TagRepository(parent.getCurrentDataset());
+			var bus = DatasetEventBus.of(parent.getCurrentDataset());
 			for (var tag : tagList.getSelectedValuesList()) {
 				repo.removeTag(email.id(), tag.id());
+				bus.publish(new DatasetEvent.TagRemoved(email.id(), tag));
 			}
-			parent.refresh();
 		});
 		JPanel topButtonPanel = new JPanel();
 		topButtonPanel.add(removeButton);
@@ -110,7 +120,6 @@ public class TagPanel extends JPanel implements EmailViewListener {
 							parent.getCurrentDataset()
 					);
 					dialog.setVisible(true);
-					refreshTags();
 				}
 			}
 		});
@@ -129,12 +138,12 @@ public class TagPanel extends JPanel implements EmailViewListener {
 		this.parentTagListModel.removeAllElements();
 		this.childTagListModel.removeAllElements();
 		ForkJoinPool.commonPool().execute(() -> {
-			var repo = new TagRepository(parent.getCurrentDataset());
-			var addableTags = repo.findAll();
-			var thisTags = repo.getTags(email.id());
+			var cache = EmailCache.of(parent.getCurrentDataset());
+			var addableTags = new ArrayList<>(cache.getAllTags());
+			var thisTags = cache.getTags(email.id());
 			addableTags.removeAll(thisTags); // Remove any tags that this email already has.
-			var parentTags = repo.getAllParentTags(email.id());
-			var childTags = repo.getAllChildTags(email.id());
+			var parentTags = cache.getParentTags(email.id());
+			var childTags = cache.getChildTags(email.id());
 			SwingUtilities.invokeLater(() -> {
 				this.tagComboBoxModel.addAll(addableTags);
 				this.tagListModel.addAll(thisTags);
@@ -148,11 +157,48 @@ public class TagPanel extends JPanel implements EmailViewListener {
 		Tag tag = (Tag) tagComboBox.getSelectedItem();
 		if (tag == null) return;
 		new TagRepository(parent.getCurrentDataset()).addTag(email.id(), tag.id());
-		parent.refresh();
+		DatasetEventBus.of(parent.getCurrentDataset()).publish(new DatasetEvent.TagAdded(email.id(), tag));
 	}
 
 	@Override
 	public void emailUpdated(EmailEntry email) {
 		setEmail(email);
 	}
+
+	/**
+	 * Applies tag changes incrementally. Adding or removing a tag on the shown
+	 * email only moves that tag between the list and the combo box, since the
+	 * inherited tags of an email don't depend on its own tags. Any change to
+	 * the tags themselves means that all lists must be reloaded.
+	 * @param event The event that describes the change.
+	 */
+	@Override
+	public void datasetChanged(DatasetEvent event) {
+		if (email == null) return;
+		if (event instanceof DatasetEvent.TagAdded e && e.emailId() == email.id()) {
+			if (!tagListModel.contains(e.tag())) tagListModel.addElement(e.tag());
+			updatingComboBox = true;
+			tagComboBoxModel.setSelectedItem(null);
+			tagComboBoxModel.removeElement(e.tag());
+			updatingComboBox = false;
+		} else if (event instanceof DatasetEvent.TagRemoved e && e.emailId() == email.id()) {
+			tagListModel.removeElement(e.tag());
+			updatingComboBox = true;
+			if (tagComboBoxModel.getIndexOf(e.tag()) == -1) {
+				// Keep the combo box sorted by name, like the list we got it from.
+				int index = 0;
+				while (index < tagComboBoxModel.getSize() && tagComboBoxModel.getElementAt(index).name().compareTo(e.tag().name()) < 0) {
+					index++;
+				}
+				tagComboBoxModel.insertElementAt(e.tag(), index);
+			}
+			updatingComboBox = false;
+		} else if (
+				event instanceof DatasetEvent.TagCreated ||
+				event instanceof DatasetEvent.TagUpdated ||
+				event instanceof DatasetEvent.TagDeleted
+		) {
+			refreshTags();
+		}
+	}
 }
@@ -1,22 +1,28 @@
 package nl.andrewl.emaildatasetbrowser.view.search;
 
-import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.EmailEntryPreview;
-import nl.andrewl.email_indexer.data.EmailRepository;
 
 import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A node that's used to display an email in a tree-styled search results JTree.
+ * Its replies are loaded lazily; until they are, the node holds a single
+ * placeholder child so that the tree still shows it as expandable.
  */
 public class EmailTreeNode extends DefaultMutableTreeNode {
+    private static final String PLACEHOLDER_TEXT = "Loading...";
+
     private Integer rootResultIndex;
     private final EmailEntryPreview email;
     private boolean loadedReplies = false;
+    private boolean loadingReplies = false;
 
     public EmailTreeNode(EmailEntryPreview email, Integer rootResultIndex) {
         this.email = email;
         this.rootResultIndex = rootResultIndex;
+        add(new DefaultMutableTreeNode(PLACEHOLDER_TEXT, false));
     }
 
     public EmailTreeNode(EmailEntryPreview email) {
@@ -27,17 +33,49 @@ public class EmailTreeNode extends DefaultMutableTreeNode {
         return email;
     }
 
-    public void loadReplies(EmailDataset dataset) {
-        if (loadedReplies) return;
-        for (var reply : new EmailRepository(dataset).findAllReplies(email.id())) {
+    public boolean isRepliesLoaded() {
+        return loadedReplies;
+    }
+
+    public boolean isRepliesLoading() {
+        return loadingReplies;
+    }
+
+    /**
+     * Marks this node as having a load of its replies in progress, so that it
+     * isn't queued for loading a second time.
+     * @param loading Whether the replies are being loaded.
+     */
+    public void setRepliesLoading(boolean loading) {
+        this.loadingReplies = loading;
+    }
+
+    /**
+     * Replaces this node's placeholder with a child node for each reply.
+     * This should only be called on the Swing event dispatch thread.
+     * @param replies The replies to this node's email.
+     */
+    public void setReplies(List<EmailEntryPreview> replies) {
+        removeAllChildren();
+        for (var reply : replies) {
             add(new EmailTreeNode(reply));
         }
         loadedReplies = true;
+        loadingReplies = false;
     }
 
-    public void unloadReplies() {
-        removeAllChildren();
-        loadedReplies = false;
+    /**
+     * Gets the child nodes that represent replies to this email. This is
+     * empty if the replies haven't been loaded yet.
+     * @return The list of reply nodes.
+     */
+    public List<EmailTreeNode> getReplyNodes() {
+        if (!loadedReplies) return List.of();
+        List<EmailTreeNode> nodes = new ArrayList<>(getChildCount());
+        for (int i = 0; i < getChildCount(); i++) {
+            nodes.add((EmailTreeNode) getChildAt(i));
+        }
+        return nodes;
     }
 
     public void setRootResultIndex(Integer rootResultIndex) {
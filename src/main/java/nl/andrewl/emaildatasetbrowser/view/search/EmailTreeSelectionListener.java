@@ -9,8 +9,8 @@ import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.TreePath;
 
 /**
- * A listener that will lazily-load email replies and expand an email tree node
- * when it's selected.
+ * A listener that shows the selected email and expands its tree node when
+ * it's selected. Expanding the node lets the tree view lazily load replies.
  */
 public class EmailTreeSelectionListener implements TreeSelectionListener {
 	private final EmailViewPanel emailViewPanel;
@@ -26,10 +26,6 @@ public class EmailTreeSelectionListener implements TreeSelectionListener {
 		EmailDataset dataset = emailViewPanel.getCurrentDataset();
 		if (e.getPath().getLastPathComponent() instanceof EmailTreeNode node && dataset != null) {
 			emailViewPanel.fetchAndSetEmail(node.getEmail().id());
-			node.loadReplies(dataset);
-			node.children().asIterator().forEachRemaining(childNode -> {
-				if (childNode instanceof EmailTreeNode cn) cn.loadReplies(dataset);
-			});
 			tree.expandPath(new TreePath(node.getPath()));
 		}
 	}
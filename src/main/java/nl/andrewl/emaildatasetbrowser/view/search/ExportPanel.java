@@ -1,6 +1,12 @@
 package nl.andrewl.emaildatasetbrowser.view.search;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.awt.*;
 import java.nio.file.Path;
 
@@ -8,13 +14,15 @@ import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import nl.andrewl.email_indexer.data.EmailDataset;
-import nl.andrewl.email_indexer.data.export.ExporterParameters;
-import nl.andrewl.email_indexer.data.export.datasample.datatype.TypeExporter;
-import nl.andrewl.email_indexer.data.export.datasample.sampletype.SampleExporter;
 import nl.andrewl.emaildatasetbrowser.control.DirectoryFileFilter;
 import nl.andrewl.emaildatasetbrowser.control.search.export.ExportSample;
 import nl.andrewl.emaildatasetbrowser.control.search.export.ExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.ExportEngine;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat.Compression;
+import nl.andrewl.emaildatasetbrowser.control.search.export.engine.JsonLinesThreadFormat.Field;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.ArrowExportType;
 import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.CsvExportType;
+import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.JsonLinesExportType;
 import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.PdfExportType;
 import nl.andrewl.emaildatasetbrowser.control.search.export.exporttargets.TxtExportType;
 import nl.andrewl.emaildatasetbrowser.view.PathSelectField;
@@ -22,24 +30,33 @@ import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
 
 /**
  * Dialog with a number of fields relevant to exporting emails.
- * Does not manage the type of data exported, but does manage the output format.
+ * Does not manage the type of data exported, but does manage the output
+ * formats, several of which can be exported at once.
  */
 public class ExportPanel extends JDialog {
 
     private final ExportSample exporter;
     private final EmailDataset dataset;
-    private final HashMap<String, ExportType> exportTargets = new HashMap<>();
-    private ExportType currentTarget;
+    private final Map<JCheckBox, Supplier<ExportType>> exportTargets = new LinkedHashMap<>();
 
     private final JPanel exportPanel = new JPanel();
     private final JPanel fileSelectPanel = new JPanel();
-    private final JComboBox<String> exportTypes = new JComboBox<>();;
-    private final JSpinner maxResultsSpinner = new JSpinner(new SpinnerNumberModel(100, 1, 10000, 1));
+    private final JPanel exportTypesPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+    private final JSpinner maxResultsSpinner = new JSpinner(new SpinnerNumberModel(100, 1, 1_000_000, 1));
     private final PathSelectField dirSelectField = new PathSelectField(JFileChooser.DIRECTORIES_ONLY, false, false,
             new DirectoryFileFilter(), "Select Directory", "Select Export Directory", "Select");;
     private final PathSelectField fileSelectField = new PathSelectField(JFileChooser.FILES_ONLY, true, false,
             new FileNameExtensionFilter("No Filter", ".*"), "Select File", "Select Export File", "Select");
     private final JCheckBox separateThreadsToggle = new JCheckBox("Separate mailing threads");
+    private final JCheckBox threadLayoutToggle = new JCheckBox("Thread layout for CSV and text files");
+
+    private final JPanel jsonLinesPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+    private final JComboBox<String> jsonLinesPerLineBox = new JComboBox<>(new String[] { "Thread per line", "Email per line" });
+    private final JComboBox<String> jsonLinesCompressionBox = new JComboBox<>(new String[] { "No compression", "gzip", "zstd" });
+    private final Set<Field> jsonLinesFields = EnumSet.allOf(Field.class);
+    private JCheckBox jsonLinesCheckBox;
+    private JCheckBox txtCheckBox;
+    private JCheckBox csvCheckBox;
 
     /**
      * @param owner          Window that owns this object.
@@ -51,15 +68,33 @@ public class ExportPanel extends JDialog {
         this.exporter = sampleExporter;
         this.dataset = dataset;
 
-        exportPanel.setLayout(new GridLayout(6, 1));
+        exportPanel.setLayout(new GridLayout(8, 1));
         exportPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
 
         // Adds all export types.
-        addExportTarget(new PdfExportType());
-        addExportTarget(new TxtExportType());
-        addExportTarget(new CsvExportType());
-        exportTypes.addActionListener(e -> updateCurrentTarget());
-        exportPanel.add(exportTypes);
+        addExportTarget(PdfExportType::new);
+        // CSV and text files are only written in the thread layout when asked for, since it's not the email indexer's.
+        txtCheckBox = addExportTarget(() -> new TxtExportType(threadLayoutToggle.isSelected()));
+        csvCheckBox = addExportTarget(() -> new CsvExportType(threadLayoutToggle.isSelected()));
+        addExportTarget(ArrowExportType::new);
+        // JSON Lines files are built when exporting, from the options below.
+        jsonLinesCheckBox = addExportTarget(() -> new JsonLinesExportType(
+                jsonLinesFields,
+                jsonLinesPerLineBox.getSelectedIndex() == 0,
+                Compression.values()[jsonLinesCompressionBox.getSelectedIndex()]));
+        exportPanel.add(exportTypesPanel);
+
+        // Adds JSON Lines options
+        jsonLinesPanel.add(new JLabel("JSON Lines:"));
+        jsonLinesPanel.add(jsonLinesPerLineBox);
+        jsonLinesCompressionBox.addActionListener(e -> updateSelectedTargets());
+        jsonLinesPanel.add(jsonLinesCompressionBox);
+        JButton jsonLinesFieldsButton = new JButton("Fields...");
+        jsonLinesFieldsButton.addActionListener(e -> selectJsonLinesFields());
+        jsonLinesPanel.add(jsonLinesFieldsButton);
+        exportPanel.add(jsonLinesPanel);
+        threadLayoutToggle.setToolTipText("Writes CSV and text files in the browser's own layout, with each email's thread and depth, instead of the email indexer's.");
+        exportPanel.add(threadLayoutToggle);
 
         // Adds Contents
         exportPanel.add(new JLabel("Max. result count:"));
@@ -85,20 +120,58 @@ public class ExportPanel extends JDialog {
         // Final setup
         setContentPane(exportPanel);
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
-        setBounds(0, 0, 400, 225);
+        setBounds(0, 0, 520, 290);
         setLocationRelativeTo(owner);
-        updateCurrentTarget();
+        updateSelectedTargets();
         updateSeparateThreadsToggle();
     }
 
-    private void addExportTarget(ExportType target) {
-        exportTypes.addItem(target.getName());
-        exportTargets.put(target.getName(), target);
+    private JCheckBox addExportTarget(Supplier<ExportType> target) {
+        JCheckBox checkBox = new JCheckBox(target.get().getName(), exportTargets.isEmpty());
+        checkBox.addActionListener(e -> updateSelectedTargets());
+        exportTypesPanel.add(checkBox);
+        exportTargets.put(checkBox, target);
+        return checkBox;
+    }
+
+    private List<ExportType> getSelectedTargets() {
+        List<ExportType> targets = new ArrayList<>();
+        exportTargets.forEach((checkBox, target) -> {
+            if (checkBox.isSelected()) targets.add(target.get());
+        });
+        return targets;
     }
 
-    private void updateCurrentTarget() {
-        this.currentTarget = exportTargets.get((String) exportTypes.getSelectedItem());
-        this.fileSelectField.setFileFilter(this.currentTarget.getFileNameExtentionFilter());
+    /**
+     * Asks which fields of each email are written to JSON Lines files.
+     */
+    private void selectJsonLinesFields() {
+        JPanel fieldsPanel = new JPanel(new GridLayout(0, 2));
+        Map<Field, JCheckBox> checkBoxes = new LinkedHashMap<>();
+        for (var field : Field.values()) {
+            JCheckBox checkBox = new JCheckBox(field.getJsonName(), jsonLinesFields.contains(field));
+            checkBoxes.put(field, checkBox);
+            fieldsPanel.add(checkBox);
+        }
+        int result = JOptionPane.showConfirmDialog(this, fieldsPanel, "JSON Lines Fields",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION) return;
+        jsonLinesFields.clear();
+        checkBoxes.forEach((field, checkBox) -> {
+            if (checkBox.isSelected()) jsonLinesFields.add(field);
+        });
+    }
+
+    private void updateSelectedTargets() {
+        List<ExportType> targets = getSelectedTargets();
+        // With several targets, each one's file gets its own extension, so any file name will do.
+        this.fileSelectField.setFileFilter(targets.size() == 1
+                ? targets.get(0).getFileNameExtentionFilter()
+                : new FileNameExtensionFilter("No Filter", ".*"));
+        for (var component : jsonLinesPanel.getComponents()) {
+            component.setEnabled(jsonLinesCheckBox.isSelected());
+        }
+        threadLayoutToggle.setEnabled(txtCheckBox.isSelected() || csvCheckBox.isSelected());
     }
 
     private void updateSeparateThreadsToggle() {
@@ -107,33 +180,40 @@ public class ExportPanel extends JDialog {
     }
 
     private void onExportClicked() {
+        List<ExportType> targets = getSelectedTargets();
+        if (targets.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Select at least one export type.", "No Export Type", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
         // Starts progress dialog.
         ProgressDialog progress = new ProgressDialog(
                 SwingUtilities.getWindowAncestor(this),
                 "Exporting Results",
                 null,
                 true,
-                false,
+                true,
                 true);
         progress.activate();
-        progress.append(String.format("Generating export with target %s ...", this.currentTarget.getName()));
-
-        // Generates export parameters.
-        ExporterParameters params = new ExporterParameters()
-                .withMaxResultCount((int) this.maxResultsSpinner.getValue())
-                .withSeparateMailingThreads(this.separateThreadsToggle.isSelected());
-        params = this.exporter.specifyParameters(params);
-
-        TypeExporter typeExporter = this.currentTarget.buildTypeExporter();
-        SampleExporter sampleExporter = this.exporter.buildSampleExporter(typeExporter, params);
+        progress.append(String.format("Generating export with target(s) %s ...",
+                String.join(", ", targets.stream().map(ExportType::getName).toList())));
 
-        Path outputPath = params.mailingThreadsAreSeparate()
+        boolean separateThreads = this.separateThreadsToggle.isSelected();
+        Path outputPath = separateThreads
                 ? this.dirSelectField.getSelectedPath()
                 : this.fileSelectField.getSelectedPath();
+        ExportEngine engine = new ExportEngine(
+                this.dataset,
+                this.exporter,
+                targets,
+                (int) this.maxResultsSpinner.getValue(),
+                separateThreads,
+                progress);
 
         // Performs export and completes dialog.
-        sampleExporter.export(this.dataset, outputPath)
-                .whenComplete((v, throwable) -> {
+        var future = engine.export(outputPath);
+        progress.onCancel(() -> future.cancel(true));
+        future.whenComplete((v, throwable) -> {
                     if (throwable != null) {
                         progress.append("Export failed with message:");
                         progress.append(throwable.getMessage());
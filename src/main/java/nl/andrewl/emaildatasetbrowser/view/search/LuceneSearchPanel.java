@@ -1,11 +1,12 @@
 package nl.andrewl.emaildatasetbrowser.view.search;
 
 import nl.andrewl.email_indexer.data.EmailDataset;
-import nl.andrewl.email_indexer.data.EmailRepository;
 import nl.andrewl.email_indexer.data.TagRepository;
-import nl.andrewl.email_indexer.data.search.EmailIndexSearcher;
+import nl.andrewl.emaildatasetbrowser.EmailDatasetBrowser;
 import nl.andrewl.emaildatasetbrowser.control.search.export.exporters.LuceneSearchExporter;
-import nl.andrewl.emaildatasetbrowser.view.ProgressDialog;
+import nl.andrewl.emaildatasetbrowser.data.BulkEmailRepository;
+import nl.andrewl.emaildatasetbrowser.data.EmailCache;
+import nl.andrewl.emaildatasetbrowser.index.EmailIndex;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailTreeView;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 
@@ -13,8 +14,17 @@ import javax.swing.*;
 import java.awt.*;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.prefs.Preferences;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 
@@ -22,15 +32,51 @@ import java.awt.event.KeyListener;
  * A panel for executing Lucene search queries and examining the results.
  */
 public class LuceneSearchPanel extends JPanel {
+    /**
+     * The prefix of the keys of recent queries, which are followed by the
+     * query's position, starting at 0 for the most recent one.
+     */
+    private static final String PREF_RECENT_QUERY_PREFIX = "recent_search_query_";
+    /**
+     * The key under which all recent queries used to be stored as one value.
+     */
+    private static final String PREF_LEGACY_RECENT_QUERIES = "recent_search_queries";
+    private static final int MAX_RECENT_QUERIES = 10;
+    /**
+     * The number of threads on the first page of results, which is kept small
+     * so that it's shown as soon as possible.
+     */
+    private static final int FIRST_PAGE_SIZE = 50;
+    private static final int PAGE_SIZE = 500;
+    private static final int PREVIEW_CHUNK_SIZE = 100;
+
     private EmailDataset dataset;
 
     private final EmailTreeView emailTreeView = new EmailTreeView();
+    private final SearchFacetsPanel facetsPanel = new SearchFacetsPanel();
 
     private final JTextArea queryField;
     private final JButton searchButton = new JButton("Search");
-    private final JSpinner resultCountSpinner = new JSpinner(new SpinnerNumberModel(100, 1, 10000, 1));
+    private final JSpinner resultCountSpinner = new JSpinner(new SpinnerNumberModel(100, 1, 1_000_000, 1));
     private final JCheckBox hideTaggedCheckbox = new JCheckBox("Hide Tagged");
     private final JButton exportButton = new JButton("Export");
+    private final JButton moreButton = new JButton("More Results");
+    private final JButton stopButton = new JButton("Stop");
+    private final JSpinner timeLimitSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 3600, 1));
+    private final JLabel statusLabel = new JLabel();
+
+    // These are only used on the event dispatch thread.
+    /**
+     * Incremented whenever a search is started or its results are cleared,
+     * so that pages which arrive for a previous search are discarded.
+     */
+    private long searchGeneration = 0;
+    private String currentQuery;
+    private EmailIndex.Cursor nextCursor;
+    private Instant searchStart;
+    private AtomicBoolean stopRequested = new AtomicBoolean(false);
+    private CompletableFuture<EmailIndex.Page> pendingPage;
+    private CompletableFuture<?> pendingFacets;
 
     public LuceneSearchPanel(EmailViewPanel emailViewPanel) {
         super(new BorderLayout());
@@ -52,10 +98,20 @@ public class LuceneSearchPanel extends JPanel {
         buttonPanel.add(clearButton);
         hideTaggedCheckbox.setToolTipText("Removes tagged emails from search results.");
         buttonPanel.add(hideTaggedCheckbox);
+        moreButton.setToolTipText("Shows the next results of the search.");
+        moreButton.setEnabled(false);
+        buttonPanel.add(moreButton);
+        stopButton.setToolTipText("Stops the search, and keeps the results that were found so far.");
+        stopButton.setEnabled(false);
+        buttonPanel.add(stopButton);
+        buttonPanel.add(statusLabel);
         bottomPanel.add(buttonPanel);
 
         JPanel exportPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         exportPanel.add(resultCountSpinner);
+        exportPanel.add(new JLabel("Time limit (s)"));
+        timeLimitSpinner.setToolTipText("Stops searches that take longer than this many seconds. 0 means no limit.");
+        exportPanel.add(timeLimitSpinner);
         exportPanel.add(exportButton);
         bottomPanel.add(exportPanel);
 
@@ -63,12 +119,16 @@ public class LuceneSearchPanel extends JPanel {
         add(inputPanel, BorderLayout.NORTH);
 
         emailTreeView.addSelectionListener(new EmailTreeSelectionListener(emailViewPanel, emailTreeView.getTree()));
-        add(emailTreeView, BorderLayout.CENTER);
+        var splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, emailTreeView, facetsPanel);
+        splitPane.setResizeWeight(0.75);
+        add(splitPane, BorderLayout.CENTER);
 
         searchButton.addActionListener(e -> doSearch());
+        moreButton.addActionListener(e -> doSearchMore());
+        stopButton.addActionListener(e -> doStop());
         clearButton.addActionListener(e -> {
             queryField.setText(null);
-            emailTreeView.clear();
+            resetResults();
         });
         exportButton.addActionListener((e) -> {
             ExportPanel panel = new ExportPanel(
@@ -81,7 +141,7 @@ public class LuceneSearchPanel extends JPanel {
 
     public void setDataset(EmailDataset dataset) {
         this.dataset = dataset;
-        emailTreeView.clear();
+        resetResults();
         searchButton.setEnabled(dataset != null);
         exportButton.setEnabled(dataset != null);
     }
@@ -102,64 +162,266 @@ public class LuceneSearchPanel extends JPanel {
         return (int) resultCountSpinner.getValue();
     }
 
+    /**
+     * Gets the maximum number of seconds that a search may take.
+     * @return The time limit, or 0 if there's no limit.
+     */
+    public int getTimeLimit() {
+        return (int) timeLimitSpinner.getValue();
+    }
+
+    /**
+     * Gets the queries that were searched for most recently, which are used
+     * to warm up the search index when a dataset is opened.
+     * @return The recent queries, with the most recent one first.
+     */
+    public static List<String> getRecentQueries() {
+        Preferences prefs = EmailDatasetBrowser.getPreferences();
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < MAX_RECENT_QUERIES; i++) {
+            String query = prefs.get(PREF_RECENT_QUERY_PREFIX + i, null);
+            if (query == null) break;
+            queries.add(query);
+        }
+        return queries;
+    }
+
+    private static void addRecentQuery(String query) {
+        // Preferences can't store longer values, and on some platforms, they're
+        // stored as XML, which can't hold most control characters.
+        if (query.length() > Preferences.MAX_VALUE_LENGTH || query.chars().anyMatch(Character::isISOControl)) return;
+        List<String> queries = new ArrayList<>(getRecentQueries());
+        queries.remove(query);
+        queries.add(0, query);
+        Preferences prefs = EmailDatasetBrowser.getPreferences();
+        for (int i = 0; i < MAX_RECENT_QUERIES; i++) {
+            if (i < queries.size()) {
+                prefs.put(PREF_RECENT_QUERY_PREFIX + i, queries.get(i));
+            } else {
+                prefs.remove(PREF_RECENT_QUERY_PREFIX + i);
+            }
+        }
+        prefs.remove(PREF_LEGACY_RECENT_QUERIES);
+    }
+
     private void doSearch() {
-        emailTreeView.clear();
+        resetResults();
         String query = getQuery();
         if (query == null) {
             return;
         }
+        addRecentQuery(query);
 
-        ProgressDialog progress = new ProgressDialog(
-                SwingUtilities.getWindowAncestor(this),
-                "Searching",
-                null,
-                true,
-                true,
-                false);
-        progress.activate();
-        progress.append("Searching over all emails using query: \"%s\"\nPlease be patient. This may take a while."
-                .formatted(query));
-        final Instant start = Instant.now();
-        var future = new EmailIndexSearcher().searchAsync(dataset, queryField.getText(), getResultCount())
-                .handleAsync((emailIds, throwable) -> {
+        currentQuery = query;
+        startFetching(null);
+        countFacets(searchGeneration, query);
+    }
+
+    /**
+     * Counts all emails that match the query in the background, and shows the
+     * counts once they're done. This uses the same time limit as the search.
+     */
+    private void countFacets(long generation, String query) {
+        final EmailDataset ds = dataset;
+        int timeLimit = getTimeLimit();
+        Instant deadline = timeLimit > 0 ? Instant.now().plusSeconds(timeLimit) : null;
+        facetsPanel.showMessage("Counting...");
+        var facetsFuture = EmailIndex.of(ds).countFacets(query, deadline);
+        pendingFacets = facetsFuture;
+        facetsFuture
+                .thenCombine(CompletableFuture.supplyAsync(() -> new TagRepository(ds).findAll()), (facets, tags) -> {
+                    Map<Integer, String> tagNames = new HashMap<>();
+                    tags.forEach(tag -> tagNames.put(tag.id(), tag.name()));
+                    return Map.entry(facets, tagNames);
+                })
+                .whenComplete((result, throwable) -> SwingUtilities.invokeLater(() -> {
+                    if (generation != searchGeneration) {
+                        return;
+                    }
+                    pendingFacets = null;
                     if (throwable != null) {
-                        progress.append("An error occurred: " + throwable);
+                        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                                ? throwable.getCause()
+                                : throwable;
+                        if (cause instanceof CancellationException) {
+                            facetsPanel.showMessage("Counting was stopped.");
+                        } else {
+                            cause.printStackTrace();
+                            facetsPanel.showMessage("An error occurred: " + cause.getMessage());
+                        }
+                    } else if (result.getKey().isEmpty()) {
+                        facetsPanel.showMessage("Counts are available once the\nsearch index is ready.");
                     } else {
-                        showResults(start, progress, emailIds);
+                        facetsPanel.setFacets(result.getKey().get(), result.getValue());
                     }
-                    progress.done();
-                    return null;
-                });
-        progress.onCancel(() -> future.cancel(true));
-    }
-
-    private void showResults(final Instant start, ProgressDialog progress, List<Long> emailIds) {
-        Duration dur = Duration.between(start, Instant.now());
-        progress.appendF("Found %d email threads in %.3f seconds whose emails matched the query.", emailIds.size(),
-                dur.toMillis() / 1000f);
-        progress.append("Loading detailed email thread information from the database. This may take a while.");
-        Instant start2 = Instant.now();
-        var repo = new EmailRepository(dataset);
-        var tagRepo = new TagRepository(dataset);
-        int resultCount = getResultCount();
-        progress.appendF("Showing the top %d results.", resultCount);
-        List<EmailTreeNode> nodes = emailIds.stream()
-                .map(id -> repo.findPreviewById(id).orElse(null))
-                .filter(Objects::nonNull)
-                .filter(email -> !this.hideTaggedCheckbox.isSelected() || tagRepo.getTags(email.id()).isEmpty())
-                .map(EmailTreeNode::new)
-                .limit(resultCount)
-                .toList();
-        dur = Duration.between(start2, Instant.now());
-        progress.appendF("Loaded email thread information from the database in %.3f seconds.", dur.toMillis() / 1000f);
-        SwingUtilities.invokeLater(() -> {
-            int i = 1;
-            for (var node : nodes) {
-                node.setRootResultIndex(i++);
-                node.loadReplies(dataset);
+                }));
+    }
+
+    /**
+     * Continues the last search after the threads that are shown, for up to
+     * the number of results that's set.
+     */
+    private void doSearchMore() {
+        if (nextCursor == null) {
+            return;
+        }
+        startFetching(nextCursor);
+    }
+
+    private void startFetching(EmailIndex.Cursor cursor) {
+        moreButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        searchStart = Instant.now();
+        int timeLimit = getTimeLimit();
+        Instant deadline = timeLimit > 0 ? searchStart.plusSeconds(timeLimit) : null;
+        stopRequested = new AtomicBoolean(false);
+        statusLabel.setText("Searching...");
+        fetchPages(searchGeneration, currentQuery, cursor, getResultCount(), deadline, stopRequested);
+    }
+
+    /**
+     * Stops the current search, keeping the results that are shown.
+     */
+    private void doStop() {
+        stopRequested.set(true);
+        if (pendingPage != null) {
+            pendingPage.cancel(true);
+        }
+        if (pendingFacets != null) {
+            pendingFacets.cancel(true);
+        }
+    }
+
+    /**
+     * Fetches pages of results one after the other, and adds each one to the
+     * tree as soon as its previews are loaded. The first page is small, so
+     * that it shows up right away. Pages that arrive after a new search was
+     * started are discarded, and no more pages are fetched for them.
+     * @param generation The search that the pages are for.
+     * @param query The query.
+     * @param cursor The cursor to continue after, or null to start over.
+     * @param remaining The number of threads that are still to be found.
+     * @param deadline The time at which the search is stopped, or null.
+     * @param stopRequested Set when the user stops the search.
+     */
+    private void fetchPages(
+            long generation,
+            String query,
+            EmailIndex.Cursor cursor,
+            int remaining,
+            Instant deadline,
+            AtomicBoolean stopRequested
+    ) {
+        final EmailDataset ds = dataset;
+        final boolean hideTagged = hideTaggedCheckbox.isSelected();
+        int size = Math.min(remaining, cursor == null ? FIRST_PAGE_SIZE : PAGE_SIZE);
+        BooleanSupplier shouldStop = () -> stopRequested.get() || (deadline != null && Instant.now().isAfter(deadline));
+        var pageFuture = EmailIndex.of(ds).searchPage(query, cursor, size, deadline);
+        pendingPage = pageFuture;
+        pageFuture
+                .thenApply(page -> loadNodes(ds, page, hideTagged, shouldStop))
+                .whenComplete((result, throwable) -> SwingUtilities.invokeLater(() -> {
+                    if (generation != searchGeneration) {
+                        return;
+                    }
+                    pendingPage = null;
+                    if (throwable != null) {
+                        stopButton.setEnabled(false);
+                        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                                ? throwable.getCause()
+                                : throwable;
+                        if (cause instanceof CancellationException) {
+                            // The previous page is complete, so the search can still be continued after it.
+                            showStopped("Stopped.");
+                            moreButton.setEnabled(nextCursor != null);
+                        } else {
+                            cause.printStackTrace();
+                            statusLabel.setText("An error occurred: " + cause.getMessage());
+                        }
+                        return;
+                    }
+                    showPage(result.nodes());
+                    // Threads whose previews weren't loaded would be skipped by the next page.
+                    nextCursor = result.previewsTruncated() ? null : result.page().nextCursor();
+                    int left = remaining - result.page().rootIds().size();
+                    if (result.page().truncated() || result.previewsTruncated()) {
+                        stopButton.setEnabled(false);
+                        showStopped(stopRequested.get()
+                                ? "Stopped, so the results are incomplete."
+                                : "The time limit was reached, so the results are incomplete.");
+                    } else if (stopRequested.get()) {
+                        stopButton.setEnabled(false);
+                        showStopped("Stopped.");
+                        moreButton.setEnabled(nextCursor != null);
+                    } else if (result.page().hasNextPage() && left > 0) {
+                        statusLabel.setText("Showing %d threads, searching for more...".formatted(emailTreeView.getEmailNodeCount()));
+                        fetchPages(generation, query, nextCursor, left, deadline, stopRequested);
+                    } else {
+                        stopButton.setEnabled(false);
+                        Duration dur = Duration.between(searchStart, Instant.now());
+                        statusLabel.setText("Showing %d threads, found in %.3f seconds.".formatted(
+                                emailTreeView.getEmailNodeCount(), dur.toMillis() / 1000f));
+                        moreButton.setEnabled(result.page().hasNextPage());
+                    }
+                }));
+    }
+
+    private void showStopped(String reason) {
+        Duration dur = Duration.between(searchStart, Instant.now());
+        statusLabel.setText("Showing %d threads after %.3f seconds. %s".formatted(
+                emailTreeView.getEmailNodeCount(), dur.toMillis() / 1000f, reason));
+    }
+
+    /**
+     * A page of results, together with the nodes of its threads.
+     * @param page The page.
+     * @param nodes The nodes of the threads whose previews were loaded.
+     * @param previewsTruncated Whether loading previews was stopped before
+     *                          all of them were loaded.
+     */
+    private record ResultPage(EmailIndex.Page page, List<EmailTreeNode> nodes, boolean previewsTruncated) {}
+
+    /**
+     * Loads the previews of a page's threads in chunks, so that loading can
+     * be stopped in between.
+     */
+    private static ResultPage loadNodes(EmailDataset ds, EmailIndex.Page page, boolean hideTagged, BooleanSupplier shouldStop) {
+        List<Long> rootIds = page.rootIds();
+        List<EmailTreeNode> nodes = new ArrayList<>(rootIds.size());
+        for (int i = 0; i < rootIds.size(); i += PREVIEW_CHUNK_SIZE) {
+            if (shouldStop.getAsBoolean()) {
+                return new ResultPage(page, nodes, true);
             }
-            emailTreeView.setEmailNodes(nodes);
-        });
+            List<Long> chunk = rootIds.subList(i, Math.min(rootIds.size(), i + PREVIEW_CHUNK_SIZE));
+            Set<Long> excludedIds = hideTagged ? new BulkEmailRepository(ds).findTaggedEmailIds(chunk) : Set.of();
+            EmailCache.of(ds).getPreviews(chunk).stream()
+                    .filter(email -> !excludedIds.contains(email.id()))
+                    .map(EmailTreeNode::new)
+                    .forEach(nodes::add);
+        }
+        return new ResultPage(page, nodes, false);
+    }
+
+    private void showPage(List<EmailTreeNode> nodes) {
+        int i = emailTreeView.getEmailNodeCount() + 1;
+        for (var node : nodes) {
+            node.setRootResultIndex(i++);
+        }
+        emailTreeView.addEmailNodes(nodes);
+    }
+
+    /**
+     * Stops showing the results of the current search, if any.
+     */
+    private void resetResults() {
+        searchGeneration++;
+        doStop();
+        nextCursor = null;
+        moreButton.setEnabled(false);
+        stopButton.setEnabled(false);
+        statusLabel.setText(null);
+        emailTreeView.setEmailNodes(List.of(), dataset);
+        facetsPanel.clear();
     }
 
     /**
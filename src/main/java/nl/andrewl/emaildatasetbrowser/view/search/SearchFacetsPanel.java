@@ -0,0 +1,89 @@
+package nl.andrewl.emaildatasetbrowser.view.search;
+
+import nl.andrewl.emaildatasetbrowser.index.SearchFacets;
+
+import javax.swing.*;
+import java.awt.*;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A panel that shows how many emails match a search, broken down by tag,
+ * year and month, sender, thread role and whether they're hidden.
+ */
+public class SearchFacetsPanel extends JPanel {
+	private final JTextArea textArea = new JTextArea();
+
+	public SearchFacetsPanel() {
+		super(new BorderLayout());
+		add(new JLabel("Matching Emails"), BorderLayout.NORTH);
+		textArea.setEditable(false);
+		textArea.setFont(new Font("monospaced", textArea.getFont().getStyle(), 12));
+		var scrollPane = new JScrollPane(textArea);
+		scrollPane.setPreferredSize(new Dimension(250, -1));
+		add(scrollPane, BorderLayout.CENTER);
+	}
+
+	public void clear() {
+		textArea.setText(null);
+	}
+
+	public void showMessage(String message) {
+		textArea.setText(message);
+	}
+
+	/**
+	 * Shows the counts of a search.
+	 * @param facets The counts.
+	 * @param tagNames The names of all tags, by id.
+	 */
+	public void setFacets(SearchFacets facets, Map<Integer, String> tagNames) {
+		StringBuilder sb = new StringBuilder();
+		if (facets.truncated()) {
+			sb.append("Counting was stopped early,\nso these counts are incomplete.\n\n");
+		}
+		sb.append("Shown: %d\nHidden: %d\n".formatted(facets.shownCount(), facets.hiddenCount()));
+		sb.append("\nThread Role\n");
+		sb.append("  Root: %d\n  Reply: %d\n".formatted(facets.rootCount(), facets.replyCount()));
+
+		sb.append("\nTags\n");
+		if (facets.tagCounts().isEmpty()) {
+			sb.append("  Not available yet.\n");
+		} else if (facets.tagCounts().get().isEmpty()) {
+			sb.append("  None\n");
+		} else {
+			facets.tagCounts().get().entrySet().stream()
+					.sorted(Map.Entry.<Integer, Long>comparingByValue().reversed())
+					.forEach(entry -> sb.append("  %s: %d\n".formatted(
+							tagNames.getOrDefault(entry.getKey(), "#" + entry.getKey()),
+							entry.getValue()
+					)));
+		}
+
+		sb.append("\nDate\n");
+		Map<Integer, Long> yearCounts = new TreeMap<>(Comparator.reverseOrder());
+		facets.monthCounts().forEach((month, count) -> yearCounts.merge(month.getYear(), count, Long::sum));
+		yearCounts.forEach((year, count) -> {
+			sb.append("  %d: %d\n".formatted(year, count));
+			for (int month = 12; month >= 1; month--) {
+				Long monthCount = facets.monthCounts().get(YearMonth.of(year, month));
+				if (monthCount != null) sb.append("    %d-%02d: %d\n".formatted(year, month, monthCount));
+			}
+		});
+		if (facets.undatedCount() > 0) {
+			sb.append("  Unknown: %d\n".formatted(facets.undatedCount()));
+		}
+
+		sb.append("\nSender");
+		if (facets.senderCount() > facets.topSenders().size()) {
+			sb.append(" (top %d of %d)".formatted(facets.topSenders().size(), facets.senderCount()));
+		}
+		sb.append('\n');
+		facets.topSenders().forEach((sender, count) -> sb.append("  %s: %d\n".formatted(sender, count)));
+
+		textArea.setText(sb.toString());
+		textArea.setCaretPosition(0);
+	}
+}
@@ -3,15 +3,16 @@ package nl.andrewl.emaildatasetbrowser.view.search;
 import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.Tag;
 import nl.andrewl.email_indexer.data.TagRepository;
-import nl.andrewl.email_indexer.data.search.EmailSearchResult;
-import nl.andrewl.email_indexer.data.search.EmailSearcher;
 import nl.andrewl.email_indexer.data.search.SearchFilter;
 import nl.andrewl.email_indexer.data.search.filter.HiddenFilter;
 import nl.andrewl.email_indexer.data.search.filter.RootFilter;
 import nl.andrewl.email_indexer.data.search.filter.TagFilter;
 import nl.andrewl.emaildatasetbrowser.control.search.export.exporters.SimpleExporter;
+import nl.andrewl.emaildatasetbrowser.data.DatasetVersion;
+import nl.andrewl.emaildatasetbrowser.data.KeysetEmailSearcher;
 import nl.andrewl.emaildatasetbrowser.view.BooleanSelect;
 import nl.andrewl.emaildatasetbrowser.view.SwingUtils;
+import nl.andrewl.emaildatasetbrowser.view.email.EmailListView;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailTreeView;
 import nl.andrewl.emaildatasetbrowser.view.email.EmailViewPanel;
 
@@ -19,16 +20,49 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Panel for browsing the dataset using some filters and a paginated results
- * list.
+ * list. Pages are fetched using a {@link KeysetEmailSearcher}, and the next
+ * page is always prefetched in the background so that it shows instantly.
+ * <p>
+ *     Alternatively, results can be shown as a single infinitely scrolling
+ *     list, which only loads the emails that are scrolled into view.
+ * </p>
  */
 public class SimpleBrowsePanel extends JPanel {
+	private static final int PAGE_SIZE = 20;
+
 	private EmailDataset currentDataset;
+	private KeysetEmailSearcher searcher;
 	private int currentPage = 1;
+	/**
+	 * The cursor to fetch each page with, where index 0 holds page 1's cursor
+	 * (which is always null). This lets us go back without any offsets.
+	 */
+	private final List<KeysetEmailSearcher.Cursor> pageCursors = new ArrayList<>();
+	private Prefetch prefetch = null;
+
+	/**
+	 * A page that's been requested ahead of time, together with the request
+	 * that produced it so that we only use it if nothing has changed since.
+	 */
+	private record Prefetch(
+			KeysetEmailSearcher.Cursor cursor,
+			String filterKey,
+			long datasetVersion,
+			CompletableFuture<KeysetEmailSearcher.Page> page
+	) {}
+
+	private static final String TREE_CARD = "tree";
+	private static final String LIST_CARD = "list";
 
 	private final EmailTreeView emailTreeView = new EmailTreeView();
+	private final EmailListView emailListView;
+	private final CardLayout resultsLayout = new CardLayout();
+	private final JPanel resultsPanel = new JPanel(resultsLayout);
 
 	private TagFilter currentTagFilter = TagFilter.excludeNone();
 	private final BooleanSelect showHiddenSelect = new BooleanSelect("All", "Only Hidden", "Only Shown");
@@ -38,20 +72,27 @@ public class SimpleBrowsePanel extends JPanel {
 	private final JButton nextPageButton = new JButton("Next");
 	private final JButton previousPageButton = new JButton("Prev");
 	private final JButton exportButton = new JButton("Export Selection");
+	private final JCheckBox infiniteScrollCheckBox = new JCheckBox("Infinite scroll");
 	private final JLabel currentPageLabel = new JLabel("Page 1 of 1");
 	private final JLabel sizeLabel = new JLabel("Showing 0 of 0 results");
 
 	public SimpleBrowsePanel(EmailViewPanel emailViewPanel) {
 		super(new BorderLayout());
+		this.emailListView = new EmailListView(emailViewPanel);
+		resultsPanel.add(emailTreeView, TREE_CARD);
+		resultsPanel.add(emailListView, LIST_CARD);
 		this.add(buildFilterPanel(), BorderLayout.NORTH);
-		this.add(emailTreeView, BorderLayout.CENTER);
+		this.add(resultsPanel, BorderLayout.CENTER);
 
 		emailTreeView.addSelectionListener(new EmailTreeSelectionListener(emailViewPanel, emailTreeView.getTree()));
 	}
 
 	public void setDataset(EmailDataset ds) {
 		emailTreeView.clear();
+		emailListView.clear();
 		this.currentDataset = ds;
+		this.searcher = ds == null ? null : new KeysetEmailSearcher(ds);
+		this.prefetch = null;
 
 		// Set all elements
 		boolean enabled = ds != null;
@@ -70,8 +111,7 @@ public class SimpleBrowsePanel extends JPanel {
 
 		// Set the dataset after updating all controls.
 		if (ds != null) {
-			this.currentPage = 1;
-			doSearch();
+			searchFromBeginning();
 		}
 	}
 
@@ -93,20 +133,72 @@ public class SimpleBrowsePanel extends JPanel {
 	private void doSearch() {
 		if (currentDataset == null) {
 			emailTreeView.clear();
+			emailListView.clear();
+			return;
+		}
+		if (infiniteScrollCheckBox.isSelected()) {
+			doListSearch();
 			return;
 		}
 		SwingUtils.setAllButtonsEnabled(this, false);
-		new EmailSearcher(currentDataset).findAll(this.currentPage, 20, getCurrentSearchFilters())
-				.handle((results, throwable) -> {
-					SwingUtilities.invokeLater(() -> {
-						SwingUtils.setAllButtonsEnabled(this, true);
-						showResults(results);
-						this.currentPageLabel.setText("Page %d of %d".formatted(results.page(), results.pageCount()));
-						this.sizeLabel.setText("Showing %d of %d results".formatted(results.emails().size(),
-								results.totalResultCount()));
-					});
-					return null;
-				});
+		final List<SearchFilter> filters = getCurrentSearchFilters();
+		final String filterKey = filterKey(filters);
+		final int page = this.currentPage;
+		final KeysetEmailSearcher.Cursor cursor = pageCursors.get(page - 1);
+		final KeysetEmailSearcher searcher = this.searcher;
+		final long datasetVersion = DatasetVersion.get(currentDataset);
+		CompletableFuture<KeysetEmailSearcher.Page> pageFuture;
+		if (
+				prefetch != null &&
+				Objects.equals(prefetch.cursor(), cursor) &&
+				prefetch.filterKey().equals(filterKey) &&
+				prefetch.datasetVersion() == datasetVersion
+		) {
+			pageFuture = prefetch.page();
+		} else {
+			pageFuture = searcher.findPage(cursor, PAGE_SIZE, filters);
+		}
+		prefetch = null;
+		pageFuture.thenCombine(searcher.countAll(filters), (results, totalCount) -> {
+			SwingUtilities.invokeLater(() -> {
+				SwingUtils.setAllButtonsEnabled(this, true);
+				showResults(results, page);
+				long pageCount = Math.max(1, (totalCount + PAGE_SIZE - 1) / PAGE_SIZE);
+				this.currentPageLabel.setText("Page %d of %d".formatted(page, pageCount));
+				this.sizeLabel.setText("Showing %d of %d results".formatted(results.emails().size(), totalCount));
+				if (results.hasNextPage()) {
+					prefetch = new Prefetch(
+							results.nextCursor(),
+							filterKey,
+							datasetVersion,
+							searcher.findPage(results.nextCursor(), PAGE_SIZE, filters)
+					);
+				}
+			});
+			return null;
+		}).exceptionally(throwable -> {
+			throwable.printStackTrace();
+			SwingUtilities.invokeLater(() -> SwingUtils.setAllButtonsEnabled(this, true));
+			return null;
+		});
+	}
+
+	/**
+	 * Shows all results in the infinitely scrolling list, instead of one page
+	 * at a time.
+	 */
+	private void doListSearch() {
+		prefetch = null;
+		nextPageButton.setEnabled(false);
+		previousPageButton.setEnabled(false);
+		currentPageLabel.setText("All results");
+		sizeLabel.setText("Loading results...");
+		emailListView.setQuery(searcher, getCurrentSearchFilters()).thenAccept(totalCount ->
+				SwingUtilities.invokeLater(() -> sizeLabel.setText("Showing all %d results".formatted(totalCount)))
+		).exceptionally(throwable -> {
+			throwable.printStackTrace();
+			return null;
+		});
 	}
 
 	public List<SearchFilter> getCurrentSearchFilters() {
@@ -124,13 +216,22 @@ public class SimpleBrowsePanel extends JPanel {
 
 	private void searchFromBeginning() {
 		this.currentPage = 1;
+		this.pageCursors.clear();
+		this.pageCursors.add(null);
 		doSearch();
 	}
 
-	private void showResults(EmailSearchResult result) {
+	private void showResults(KeysetEmailSearcher.Page result, int page) {
 		emailTreeView.setEmails(result.emails(), currentDataset);
+		// Remember where the next page starts, dropping anything beyond it.
+		while (pageCursors.size() > page) pageCursors.remove(pageCursors.size() - 1);
+		if (result.hasNextPage()) pageCursors.add(result.nextCursor());
 		nextPageButton.setEnabled(result.hasNextPage());
-		previousPageButton.setEnabled(result.hasPreviousPage());
+		previousPageButton.setEnabled(page > 1);
+	}
+
+	private static String filterKey(List<SearchFilter> filters) {
+		return String.join(" AND ", filters.stream().map(SearchFilter::getWhereClause).toList());
 	}
 
 	private JPanel buildFilterPanel() {
@@ -172,10 +273,22 @@ public class SimpleBrowsePanel extends JPanel {
 		pageControlPanel.add(nextPageButton);
 		searchPanel.add(pageControlPanel);
 
-		JPanel footerPanel = new JPanel(new GridLayout(3, 1));
+		infiniteScrollCheckBox.addActionListener(e -> {
+			boolean infinite = infiniteScrollCheckBox.isSelected();
+			resultsLayout.show(resultsPanel, infinite ? LIST_CARD : TREE_CARD);
+			if (infinite) {
+				emailTreeView.clear();
+			} else {
+				emailListView.clear();
+			}
+			searchFromBeginning();
+		});
+
+		JPanel footerPanel = new JPanel(new GridLayout(4, 1));
 		footerPanel.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
 		footerPanel.add(currentPageLabel);
 		footerPanel.add(sizeLabel);
+		footerPanel.add(infiniteScrollCheckBox);
 		exportButton.addActionListener(e -> doExport());
 		footerPanel.add(exportButton);
 		searchPanel.add(footerPanel);
@@ -222,7 +335,7 @@ public class SimpleBrowsePanel extends JPanel {
 		okayButton.addActionListener(ev -> {
 			currentTagFilter = tagFilterPanel.getFilter();
 			dialog.dispose();
-			doSearch();
+			searchFromBeginning();
 		});
 		buttonPanel.add(cancelButton);
 		buttonPanel.add(allTagsButton);
@@ -0,0 +1,138 @@
+package nl.andrewl.emaildatasetbrowser.view.search;
+
+import nl.andrewl.email_indexer.data.EmailEntryPreview;
+import nl.andrewl.email_indexer.data.search.SearchFilter;
+import nl.andrewl.emaildatasetbrowser.data.KeysetEmailSearcher;
+
+import javax.swing.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A list model for a very large set of email search results, which only keeps
+ * a bounded window of rows in memory. Rows are fetched in blocks on demand;
+ * while a block is being fetched, its rows are reported as <code>null</code>,
+ * and the list is notified once they arrive. The least recently used blocks
+ * are evicted once more than {@link #MAX_CACHED_BLOCKS} are held.
+ * <p>
+ *     Blocks are fetched with a keyset cursor whenever the preceding block
+ *     has been seen before, which is the case when scrolling normally. Only
+ *     jumping far ahead falls back to an offset query.
+ * </p>
+ * <p>
+ *     This model must only be used from the Swing event dispatch thread.
+ * </p>
+ */
+public class VirtualEmailListModel extends AbstractListModel<EmailEntryPreview> {
+	public static final int BLOCK_SIZE = 100;
+	private static final int MAX_CACHED_BLOCKS = 30;
+
+	private final KeysetEmailSearcher searcher;
+	private final List<SearchFilter> filters;
+	private int size = 0;
+	private boolean disposed = false;
+
+	private final Map<Integer, List<EmailEntryPreview>> blocks = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, List<EmailEntryPreview>> eldest) {
+			return size() > MAX_CACHED_BLOCKS;
+		}
+	};
+	/**
+	 * The cursor from which each block can be fetched, for blocks whose
+	 * predecessor has been fetched at least once.
+	 */
+	private final Map<Integer, KeysetEmailSearcher.Cursor> blockCursors = new HashMap<>();
+	private final Set<Integer> pendingBlocks = new HashSet<>();
+
+	public VirtualEmailListModel(KeysetEmailSearcher searcher, List<SearchFilter> filters) {
+		this.searcher = searcher;
+		this.filters = List.copyOf(filters);
+	}
+
+	/**
+	 * Loads the total number of results, and then makes all of them available
+	 * as (not yet fetched) rows of this model.
+	 * @return A future that completes with the total number of results.
+	 */
+	public CompletableFuture<Long> load() {
+		return searcher.countAll(filters).thenApply(count -> {
+			SwingUtilities.invokeLater(() -> {
+				if (disposed) return;
+				int oldSize = size;
+				size = (int) Math.min(count, Integer.MAX_VALUE);
+				if (oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+				if (size > 0) fireIntervalAdded(this, 0, size - 1);
+			});
+			return count;
+		});
+	}
+
+	/**
+	 * Stops this model from applying any more results that arrive from the
+	 * database. Call this once the model is no longer shown.
+	 */
+	public void dispose() {
+		disposed = true;
+		blocks.clear();
+		blockCursors.clear();
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public EmailEntryPreview getElementAt(int index) {
+		int block = index / BLOCK_SIZE;
+		List<EmailEntryPreview> emails = blocks.get(block);
+		if (emails == null) {
+			requestBlock(block);
+			return null;
+		}
+		int offset = index % BLOCK_SIZE;
+		return offset < emails.size() ? emails.get(offset) : null;
+	}
+
+	/**
+	 * Makes sure that all blocks covering the given range of rows are cached
+	 * or being fetched. This can be used to fetch rows just outside of the
+	 * viewport before the user scrolls to them.
+	 * @param fromIndex The first row, inclusive.
+	 * @param toIndex The last row, inclusive.
+	 */
+	public void ensureLoaded(int fromIndex, int toIndex) {
+		int first = Math.max(0, fromIndex) / BLOCK_SIZE;
+		int last = Math.min(size - 1, toIndex) / BLOCK_SIZE;
+		for (int block = first; block <= last; block++) {
+			if (!blocks.containsKey(block)) requestBlock(block);
+		}
+	}
+
+	private void requestBlock(int block) {
+		if (disposed || pendingBlocks.contains(block)) return;
+		pendingBlocks.add(block);
+		CompletableFuture<KeysetEmailSearcher.Page> future;
+		if (block == 0) {
+			future = searcher.findPage(null, BLOCK_SIZE, filters);
+		} else if (blockCursors.containsKey(block)) {
+			future = searcher.findPage(blockCursors.get(block), BLOCK_SIZE, filters);
+		} else {
+			future = searcher.findPageAtOffset((long) block * BLOCK_SIZE, BLOCK_SIZE, filters);
+		}
+		future.whenComplete((page, throwable) -> SwingUtilities.invokeLater(() -> {
+			pendingBlocks.remove(block);
+			if (disposed) return;
+			if (throwable != null) {
+				throwable.printStackTrace();
+				return;
+			}
+			blocks.put(block, page.emails());
+			if (page.hasNextPage()) blockCursors.put(block + 1, page.nextCursor());
+			int start = block * BLOCK_SIZE;
+			int end = Math.min(size - 1, start + BLOCK_SIZE - 1);
+			if (start <= end) fireContentsChanged(this, start, end);
+		}));
+	}
+}
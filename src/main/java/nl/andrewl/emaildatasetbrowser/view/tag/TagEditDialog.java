@@ -3,6 +3,8 @@ package nl.andrewl.emaildatasetbrowser.view.tag;
 import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.Tag;
 import nl.andrewl.email_indexer.data.TagRepository;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
 import nl.andrewl.emaildatasetbrowser.view.LabelledField;
 
 import javax.swing.*;
@@ -105,8 +107,10 @@ public class TagEditDialog extends JDialog {
 			if (!Objects.equals(description, tag.description())) {
 				repo.setDescription(tag.id(), description);
 			}
+			DatasetEventBus.of(ds).publish(new DatasetEvent.TagUpdated(tag.id()));
 		} else {
-			repo.createTag(getName(), getDescription());
+			int id = repo.createTag(getName(), getDescription());
+			DatasetEventBus.of(ds).publish(new DatasetEvent.TagCreated(id));
 		}
 	}
 }
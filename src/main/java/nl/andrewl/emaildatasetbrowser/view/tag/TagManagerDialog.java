@@ -3,6 +3,8 @@ package nl.andrewl.emaildatasetbrowser.view.tag;
 import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.Tag;
 import nl.andrewl.email_indexer.data.TagRepository;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEvent;
+import nl.andrewl.emaildatasetbrowser.data.DatasetEventBus;
 import nl.andrewl.emaildatasetbrowser.view.SwingUtils;
 
 import javax.swing.*;
@@ -89,6 +91,7 @@ public class TagManagerDialog extends JDialog {
 			if (tag == null) return;
 			if (SwingUtils.confirm(this, "Are you sure you want to remove this tag?")) {
 				new TagRepository(ds).deleteTag(tag.id());
+				DatasetEventBus.of(ds).publish(new DatasetEvent.TagDeleted(tag.id()));
 				tagTableModel.refreshTags(ds);
 			}
 		});
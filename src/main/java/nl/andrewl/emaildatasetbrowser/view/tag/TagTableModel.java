@@ -3,6 +3,7 @@ package nl.andrewl.emaildatasetbrowser.view.tag;
 import nl.andrewl.email_indexer.data.EmailDataset;
 import nl.andrewl.email_indexer.data.Tag;
 import nl.andrewl.email_indexer.data.TagRepository;
+import nl.andrewl.emaildatasetbrowser.data.TagIndex;
 
 import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
@@ -26,8 +27,12 @@ public class TagTableModel extends AbstractTableModel {
 		taggedEmailCounts.clear();
 		var repo = new TagRepository(ds);
 		tags.addAll(repo.findAll());
+		var indexedCounts = TagIndex.of(ds).countTaggedEmails();
 		for (var tag : tags) {
-			taggedEmailCounts.put(tag, repo.countTaggedEmails(tag.id()));
+			long count = indexedCounts.isPresent()
+					? indexedCounts.get().getOrDefault(tag.id(), 0L)
+					: repo.countTaggedEmails(tag.id());
+			taggedEmailCounts.put(tag, count);
 		}
 		fireTableDataChanged();
 	}